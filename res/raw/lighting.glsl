@@ -0,0 +1,38 @@
+// Diffuse point lighting, included by whichever stage lights: the fragment shader by default,
+// the vertex shader when VERTEX_LIGHTING is defined. Permutation defines:
+//   LIGHT_COUNT   number of lights in u_LightPos, 1 by default.
+//   ATTENUATION   how fast light falls off with distance.
+//   AMBIENT       light every surface gets regardless.
+#ifndef LIGHT_COUNT
+#define LIGHT_COUNT 1
+#endif
+#ifndef ATTENUATION
+#define ATTENUATION 0.10
+#endif
+#ifndef AMBIENT
+#define AMBIENT 0.3
+#endif
+
+uniform vec3 u_LightPos[LIGHT_COUNT];	// The position of each light in eye space.
+
+// The illumination level at an eye space position with the given normal.
+float lighting(vec3 position, vec3 normal)
+{
+	float diffuse = 0.0;
+	for (int i = 0; i < LIGHT_COUNT; i++)
+	{
+		// Will be used for attenuation.
+		float distance = length(u_LightPos[i] - position);
+
+		// Get a lighting direction vector from the light to the vertex.
+		vec3 lightVector = normalize(u_LightPos[i] - position);
+
+		// Calculate the dot product of the light vector and vertex normal. If the normal and light vector are
+		// pointing in the same direction then it will get max illumination.
+		// Add attenuation.
+		diffuse += max(dot(normal, lightVector), 0.0) * (1.0 / (1.0 + (float(ATTENUATION) * distance)));
+	}
+
+	// Add ambient lighting
+	return diffuse + float(AMBIENT);
+}
@@ -0,0 +1,42 @@
+uniform mat4 u_PMatrix;			// The projection matrix, shared by every instance in the batch.
+uniform mat4 u_MVMatrices[24];	// One model/view matrix per instance; must match BatchedMeshRenderer.PALETTE_SIZE.
+
+attribute vec4 a_Position;		// Per-vertex position information we will pass in.
+attribute vec4 a_Color;			// Per-vertex color information we will pass in.
+attribute vec3 a_Normal;		// Per-vertex normal information we will pass in.
+attribute vec2 a_TexCoordinate; // Per-vertex texture coordinate information we will pass in.
+attribute float a_InstanceIndex; // Which palette entry this vertex's copy of the mesh uses.
+
+varying vec3 v_Position;		// This will be passed into the fragment shader.
+varying vec4 v_Color;			// This will be passed into the fragment shader.
+varying vec3 v_Normal;			// This will be passed into the fragment shader.
+varying vec2 v_TexCoordinate;   // This will be passed into the fragment shader.
+#ifdef VERTEX_LIGHTING
+#include "lighting"
+varying float v_Lighting;		// Illumination level, lit here rather than per fragment.
+#endif
+
+// The entry point for our vertex shader.
+void main()
+{
+	mat4 mvMatrix = u_MVMatrices[int(a_InstanceIndex)];
+
+	// Transform the vertex into eye space.
+	vec4 eyePosition = mvMatrix * a_Position;
+	v_Position = vec3(eyePosition);
+
+	// Pass through the color.
+	v_Color = a_Color;
+
+	// Pass through the texture coordinate.
+	v_TexCoordinate = a_TexCoordinate;
+
+	// Transform the normal's orientation into eye space.
+	v_Normal = vec3(mvMatrix * vec4(a_Normal, 0.0));
+#ifdef VERTEX_LIGHTING
+	v_Lighting = lighting(v_Position, v_Normal);
+#endif
+
+	// The eye space position only needs the projection applied.
+	gl_Position = u_PMatrix * eyePosition;
+}
@@ -1,7 +1,20 @@
 precision mediump float;       	// Set the default precision to medium. We don't need as high of a 
 								// precision in the fragment shader.
-uniform vec3 u_LightPos;       	// The position of the light in eye space.
+// Permutation defines: VERTEX_LIGHTING takes the lighting from the vertex shader, and
+// TEXTURED 0 leaves out the texture; see lighting.glsl for the rest.
+#ifndef TEXTURED
+#define TEXTURED 1
+#endif
+
+#ifdef VERTEX_LIGHTING
+varying float v_Lighting;		// Illumination level computed per vertex.
+#else
+#include "lighting"
+#endif
+#if TEXTURED
 uniform sampler2D u_Texture;    // The input texture.
+uniform vec4 u_AtlasRect;       // This draw's image in the atlas: offset in xy, size in zw.
+#endif
   
 varying vec3 v_Position;		// Interpolated position for this fragment.
 varying vec4 v_Color;          	// This is the color from the vertex shader interpolated across the 
@@ -12,23 +25,19 @@ varying vec2 v_TexCoordinate;   // Interpolated texture coordinate per fragment.
 // The entry point for our fragment shader.
 void main()                    		
 {                              
-	// Will be used for attenuation.
-    float distance = length(u_LightPos - v_Position);                  
-	
-	// Get a lighting direction vector from the light to the vertex.
-    vec3 lightVector = normalize(u_LightPos - v_Position);              	
-
-	// Calculate the dot product of the light vector and vertex normal. If the normal and light vector are
-	// pointing in the same direction then it will get max illumination.
-    float diffuse = max(dot(v_Normal, lightVector), 0.0);               	  		  													  
+#ifdef VERTEX_LIGHTING
+    float diffuse = v_Lighting;
+#else
+    float diffuse = lighting(v_Position, v_Normal);
+#endif
 
-	// Add attenuation. 
-    diffuse = diffuse * (1.0 / (1.0 + (0.10 * distance)));
-    
-    // Add ambient lighting
-    diffuse = diffuse + 0.3;  
+#if TEXTURED
+	// Place the coordinate in the image's rect; tiling meshes are cut so each triangle stays within one tile.
+    vec2 atlasCoordinate = u_AtlasRect.xy + v_TexCoordinate * u_AtlasRect.zw;
 
 	// Multiply the color by the diffuse illumination level and texture value to get final output color.
-    gl_FragColor = (v_Color * diffuse * texture2D(u_Texture, v_TexCoordinate));                                  		
-}                                                                     	
-
+    gl_FragColor = (v_Color * diffuse * texture2D(u_Texture, atlasCoordinate));                                  		
+#else
+    gl_FragColor = v_Color * diffuse;
+#endif
+}
\ No newline at end of file
@@ -10,6 +10,10 @@ varying vec3 v_Position;		// This will be passed into the fragment shader.
 varying vec4 v_Color;			// This will be passed into the fragment shader.          		
 varying vec3 v_Normal;			// This will be passed into the fragment shader.  
 varying vec2 v_TexCoordinate;   // This will be passed into the fragment shader.    		
+#ifdef VERTEX_LIGHTING
+#include "lighting"
+varying float v_Lighting;		// Illumination level, lit here rather than per fragment.
+#endif
 		  
 // The entry point for our vertex shader.  
 void main()                                                 	
@@ -25,6 +29,9 @@ void main()
 	
 	// Transform the normal's orientation into eye space.
     v_Normal = vec3(u_MVMatrix * vec4(a_Normal, 0.0));
+#ifdef VERTEX_LIGHTING
+	v_Lighting = lighting(v_Position, v_Normal);
+#endif
           
 	// gl_Position is a special variable used to store the final position.
 	// Multiply the vertex by the matrix to get the final point in normalized screen coordinates.
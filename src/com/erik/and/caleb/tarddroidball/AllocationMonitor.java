@@ -0,0 +1,65 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Counts the objects one thread allocates between {@link #begin()} and
+ * {@link #end()} using the VM's allocation counters, and complains once the
+ * warm-up period is over and a section still allocates. Meant for checking
+ * that the frame loop and touch handling stay allocation free; the counters
+ * slow the VM down, so only enable it when looking for regressions.
+ * FrameAllocationCheck in tools fails the same frame path off the device.
+ */
+public class AllocationMonitor {
+
+  private static final String TAG = "AllocationMonitor";
+  private static final int REPORT_INTERVAL = 300;
+
+  private final String mName;
+  private final int mWarmupSections;
+  private boolean mStarted;
+  private int mSections;
+  private int mAllocatingSections;
+  private long mSteadyStateAllocations;
+
+  /**
+   * @param name           what the log lines call the measured section
+   * @param warmupSections sections to skip before allocations count (lazy setup, first touches)
+   */
+  public AllocationMonitor(String name, int warmupSections) {
+    mName = name;
+    mWarmupSections = warmupSections;
+  }
+
+  public void begin() {
+    if (!mStarted) {
+      Debug.startAllocCounting();
+      mStarted = true;
+    }
+    Debug.resetThreadAllocCount();
+  }
+
+  public void end() {
+    final int allocations = Debug.getThreadAllocCount();
+    if (++mSections <= mWarmupSections)
+      return;
+    if (allocations > 0) {
+      mAllocatingSections++;
+      mSteadyStateAllocations += allocations;
+    }
+    if ((mSections - mWarmupSections) % REPORT_INTERVAL == 0 && mAllocatingSections > 0) {
+      Log.w(TAG, mName + " allocated " + mSteadyStateAllocations + " objects in " + mAllocatingSections
+          + " of the last " + REPORT_INTERVAL + " steady-state runs");
+      mAllocatingSections = 0;
+      mSteadyStateAllocations = 0;
+    }
+  }
+
+  /**
+   * @return objects allocated after warm-up since the last report
+   */
+  public long getSteadyStateAllocations() {
+    return mSteadyStateAllocations;
+  }
+}
@@ -0,0 +1,209 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads assets in two stages: reading, decoding and parsing run on a pool of
+ * worker threads ({@link #load}), and whatever needs the GL context, like
+ * compiling shaders and uploading textures, is queued for the render thread
+ * ({@link #upload}) and drained a few milliseconds per frame by
+ * {@link #runUploads}, so frames keep coming while assets arrive.
+ * <p/>
+ * Both stages hand back Futures. A GL step lists the Futures it needs and is
+ * not run before they are all done; it can then get() them without blocking.
+ * A step fails when one of its inputs did, and the failure is rethrown from
+ * runUploads, on the render thread. Plain Java, no GL.
+ */
+public class AssetLoader {
+
+  private final ThreadPoolExecutor mWorkers;
+  private final ArrayList<Upload<?>> mUploads = new ArrayList<Upload<?>>();
+  private final ArrayList<Runnable> mLoadedCallbacks = new ArrayList<Runnable>();
+
+  /**
+   * @param threads worker threads; they exit when idle for a few seconds and start again for new loads
+   */
+  public AssetLoader(int threads) {
+    mWorkers = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+        new WorkerFactory());
+    mWorkers.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * One worker per core but one, leaving a core for the render thread.
+   */
+  public static int defaultThreadCount() {
+    return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+  }
+
+  /**
+   * Runs work on a worker thread. Any thread may call this.
+   */
+  public <T> Future<T> load(Callable<T> work) {
+    return mWorkers.submit(work);
+  }
+
+  /**
+   * @return the workers {@link #load} runs on, for code that takes an Executor. Any thread may use it.
+   */
+  public Executor getWorkers() {
+    return mWorkers;
+  }
+
+  /**
+   * Queues work for the render thread, to run once every Future in after is
+   * done. Call on the render thread.
+   */
+  public <T> Future<T> upload(Callable<T> work, Future<?>... after) {
+    final Upload<T> upload = new Upload<T>(work, after);
+    mUploads.add(upload);
+    return upload;
+  }
+
+  /**
+   * Runs callback on the render thread once everything queued so far has
+   * been uploaded; right away if nothing is. Call on the render thread.
+   */
+  public void whenLoaded(Runnable callback) {
+    mLoadedCallbacks.add(callback);
+    if (mUploads.isEmpty())
+      runLoadedCallbacks();
+  }
+
+  /**
+   * Runs queued GL steps whose inputs are ready, in the order queued, until
+   * the budget is spent. At least one ready step runs per call however long
+   * it takes, so a big upload cannot stall loading. Call on the render thread.
+   *
+   * @return true when nothing is left to upload
+   */
+  public boolean runUploads(long budgetNanos) {
+    final long start = System.nanoTime();
+    boolean ranAny = false;
+    for (int i = 0; i < mUploads.size(); ) {
+      if (ranAny && System.nanoTime() - start >= budgetNanos)
+        break;
+      final Upload<?> upload = mUploads.get(i);
+      if (!upload.isReady()) {
+        i++;
+        continue;
+      }
+      mUploads.remove(i);
+      upload.run();
+      ranAny = true;
+      try {
+        upload.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // a step that failed on its input's get() wraps the input's failure
+        Throwable cause = e.getCause();
+        while (cause instanceof ExecutionException && cause.getCause() != null)
+          cause = cause.getCause();
+        throw new RuntimeException("Error loading assets.", cause);
+      }
+    }
+    if (!mUploads.isEmpty())
+      return false;
+    runLoadedCallbacks();
+    return true;
+  }
+
+  /**
+   * Runs every queued GL step, waiting for the workers as needed. Call on the
+   * render thread.
+   */
+  public void finishUploads() {
+    while (!runUploads(Long.MAX_VALUE)) {
+      // everything left is waiting, directly or through another step, on a worker
+      try {
+        awaitWorker();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void awaitWorker() throws InterruptedException {
+    for (Upload<?> upload : mUploads) {
+      for (Future<?> input : upload.mAfter) {
+        if (input instanceof Upload || input.isDone())
+          continue;
+        try {
+          input.get();
+        } catch (ExecutionException e) {
+          // the step itself fails on it when run
+        }
+        return;
+      }
+    }
+    // a worker may have finished since runUploads looked, leaving a step to run
+    for (Upload<?> upload : mUploads) {
+      if (upload.isReady())
+        return;
+    }
+    throw new IllegalStateException("GL steps wait on each other, or on steps never queued");
+  }
+
+  /**
+   * Cancels every queued GL step and drops the callbacks waiting on them, for
+   * when the context they were meant for is gone. Work on the workers carries
+   * on. Call on the render thread.
+   */
+  public void cancelUploads() {
+    for (Upload<?> upload : mUploads)
+      upload.cancel(false);
+    mUploads.clear();
+    mLoadedCallbacks.clear();
+  }
+
+  public int getPendingUploadCount() {
+    return mUploads.size();
+  }
+
+  private void runLoadedCallbacks() {
+    while (!mLoadedCallbacks.isEmpty())
+      mLoadedCallbacks.remove(0).run();
+  }
+
+  private static class Upload<T> extends FutureTask<T> {
+    private final Future<?>[] mAfter;
+
+    Upload(Callable<T> work, Future<?>[] after) {
+      super(work);
+      mAfter = after;
+    }
+
+    boolean isReady() {
+      for (Future<?> input : mAfter) {
+        if (!input.isDone())
+          return false;
+      }
+      return true;
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    private final AtomicInteger mCount = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "AssetLoader-" + mCount.incrementAndGet());
+      thread.setDaemon(true);
+      // decoding should not take time from the render thread's frames
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Packs rectangles into one atlas with a skyline bottom-left packer, keeping
+ * a gutter of padding texels around each one so filtering never reaches a
+ * neighbour. Gutters may run off the atlas edge, where clamp-to-edge sampling
+ * makes them unnecessary. Pure Java: rectangles in, placements and texture
+ * coordinates out, plus {@link #blit} to build the atlas pixels.
+ * <p/>
+ * Texture coordinates follow the bitmap upload convention: v = 0 is the first
+ * row of an image.
+ */
+public class AtlasPacker {
+
+  private final int mPadding;
+  private final int mAlignment;
+  private final int mMaxSize;
+  private final boolean mPowerOfTwo;
+
+  private int mCount;
+  private int[] mWidths = new int[8];
+  private int[] mHeights = new int[8];
+  private int[] mXs;
+  private int[] mYs;
+  private int mAtlasWidth;
+  private int mAtlasHeight;
+
+  // scratch skyline: segment i starts at mSkylineX[i], is mSkylineWidth[i] wide and mSkylineY[i] high
+  private int[] mSkylineX;
+  private int[] mSkylineY;
+  private int[] mSkylineWidth;
+  private int mSegments;
+
+  /**
+   * @param padding    gutter texels on every side of each rectangle
+   * @param maxSize    largest atlas side, e.g. GL_MAX_TEXTURE_SIZE
+   * @param powerOfTwo whether both atlas sides must be powers of two (needed for
+   *                   mipmaps or GL_REPEAT on ES 2.0); otherwise the width is
+   *                   kept to a multiple of 4 texels
+   */
+  public AtlasPacker(int padding, int maxSize, boolean powerOfTwo) {
+    this(padding, 1, maxSize, powerOfTwo);
+  }
+
+  /**
+   * @param alignment rectangles are placed at multiples of this, and padded
+   *                  rectangles take up a multiple of it; with a power of two
+   *                  2^k, each image's own mip levels down to level k line up
+   *                  with texels
+   */
+  public AtlasPacker(int padding, int alignment, int maxSize, boolean powerOfTwo) {
+    mPadding = padding;
+    mAlignment = alignment;
+    mMaxSize = maxSize;
+    mPowerOfTwo = powerOfTwo;
+  }
+
+  /**
+   * @return the rectangle's index
+   */
+  public int add(int width, int height) {
+    if (width <= 0 || height <= 0 || width > mMaxSize || height > mMaxSize)
+      throw new IllegalArgumentException("Cannot pack a " + width + "x" + height + " rectangle into " + mMaxSize);
+    if (mCount == mWidths.length) {
+      mWidths = Arrays.copyOf(mWidths, mCount * 2);
+      mHeights = Arrays.copyOf(mHeights, mCount * 2);
+    }
+    mWidths[mCount] = width;
+    mHeights[mCount] = height;
+    mXs = null;
+    return mCount++;
+  }
+
+  public int getCount() {
+    return mCount;
+  }
+
+  /**
+   * Places every rectangle, choosing the atlas width that gives the smallest
+   * area, and the squarer atlas among equal areas.
+   *
+   * @throws IllegalStateException if they do not fit in maxSize x maxSize
+   */
+  public void pack() {
+    final Integer[] order = new Integer[mCount];
+    int widest = 1;
+    for (int i = 0; i < mCount; i++) {
+      order[i] = i;
+      widest = Math.max(widest, mWidths[i]);
+    }
+    // tallest first, then widest, keeps the skyline flat
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        if (mHeights[a] != mHeights[b])
+          return mHeights[b] - mHeights[a];
+        return mWidths[b] - mWidths[a];
+      }
+    });
+
+    final int[] xs = new int[mCount];
+    final int[] ys = new int[mCount];
+    long bestArea = Long.MAX_VALUE;
+    int bestSide = Integer.MAX_VALUE;
+    int width = mPowerOfTwo ? nextPowerOfTwo(widest) : roundUp(widest, Math.max(4, mAlignment));
+    while (width <= mMaxSize) {
+      int height = packInto(width, order, xs, ys);
+      if (height > 0) {
+        if (mPowerOfTwo)
+          height = nextPowerOfTwo(height);
+        final long area = (long) width * height;
+        final int side = Math.max(width, height);
+        if (height <= mMaxSize && (area < bestArea || area == bestArea && side < bestSide)) {
+          bestArea = area;
+          bestSide = side;
+          mAtlasWidth = width;
+          mAtlasHeight = height;
+          mXs = xs.clone();
+          mYs = ys.clone();
+        }
+      }
+      width = mPowerOfTwo ? width * 2 : width + Math.max(4, mAlignment);
+    }
+    if (mXs == null)
+      throw new IllegalStateException(mCount + " rectangles do not fit in " + mMaxSize + "x" + mMaxSize);
+  }
+
+  /**
+   * Skyline bottom-left into a bin of the given content width.
+   *
+   * @return the content height used, or 0 if a rectangle did not fit
+   */
+  private int packInto(int width, Integer[] order, int[] xs, int[] ys) {
+    // the bin is the atlas grown by the padding on every side, so gutters can hang off the edge
+    final int binWidth = width + 2 * mPadding;
+    if (mSkylineX == null || mSkylineX.length < mCount * 2 + 1) {
+      mSkylineX = new int[mCount * 2 + 1];
+      mSkylineY = new int[mCount * 2 + 1];
+      mSkylineWidth = new int[mCount * 2 + 1];
+    }
+    mSkylineX[0] = 0;
+    mSkylineY[0] = 0;
+    mSkylineWidth[0] = binWidth;
+    mSegments = 1;
+    int top = 0;
+    for (int item : order) {
+      // the skyline advances by the aligned size, but only the padded size has to fit in the bin
+      final int paddedWidth = mWidths[item] + 2 * mPadding;
+      final int paddedHeight = mHeights[item] + 2 * mPadding;
+      final int w = roundUp(paddedWidth, mAlignment);
+      final int h = roundUp(paddedHeight, mAlignment);
+      int bestSegment = -1;
+      int bestY = Integer.MAX_VALUE;
+      for (int s = 0; s < mSegments; s++) {
+        final int x = mSkylineX[s];
+        if (x + paddedWidth > binWidth)
+          break;
+        // the rectangle rests on the highest segment it spans
+        int y = 0;
+        for (int t = s; t < mSegments && mSkylineX[t] < x + w; t++)
+          y = Math.max(y, mSkylineY[t]);
+        if (y + h < bestY) {
+          bestY = y + h;
+          bestSegment = s;
+        }
+      }
+      if (bestSegment < 0)
+        return 0;
+      final int x = mSkylineX[bestSegment];
+      xs[item] = x;
+      ys[item] = bestY - h;
+      top = Math.max(top, ys[item] + paddedHeight);
+      raiseSkyline(x, Math.min(w, binWidth - x), bestY);
+    }
+    return top - 2 * mPadding;
+  }
+
+  private void raiseSkyline(int x, int w, int y) {
+    final int end = x + w;
+    // drop the segments the new one covers, keeping the uncovered tail of the last
+    int s = 0;
+    while (mSkylineX[s] != x)
+      s++;
+    int t = s;
+    while (t < mSegments && mSkylineX[t] + mSkylineWidth[t] <= end)
+      t++;
+    final int removed = t - s;
+    if (t < mSegments && mSkylineX[t] < end) {
+      mSkylineWidth[t] -= end - mSkylineX[t];
+      mSkylineX[t] = end;
+    }
+    // replace segments s..t-1 with a single one
+    final int shift = 1 - removed;
+    System.arraycopy(mSkylineX, t, mSkylineX, t + shift, mSegments - t);
+    System.arraycopy(mSkylineY, t, mSkylineY, t + shift, mSegments - t);
+    System.arraycopy(mSkylineWidth, t, mSkylineWidth, t + shift, mSegments - t);
+    mSegments += shift;
+    mSkylineX[s] = x;
+    mSkylineY[s] = y;
+    mSkylineWidth[s] = w;
+    // merge with neighbours of the same height
+    if (s + 1 < mSegments && mSkylineY[s + 1] == y)
+      mergeWithNext(s);
+    if (s > 0 && mSkylineY[s - 1] == y)
+      mergeWithNext(s - 1);
+  }
+
+  private void mergeWithNext(int s) {
+    mSkylineWidth[s] += mSkylineWidth[s + 1];
+    System.arraycopy(mSkylineX, s + 2, mSkylineX, s + 1, mSegments - s - 2);
+    System.arraycopy(mSkylineY, s + 2, mSkylineY, s + 1, mSegments - s - 2);
+    System.arraycopy(mSkylineWidth, s + 2, mSkylineWidth, s + 1, mSegments - s - 2);
+    mSegments--;
+  }
+
+  public int getAtlasWidth() {
+    return mAtlasWidth;
+  }
+
+  public int getAtlasHeight() {
+    return mAtlasHeight;
+  }
+
+  /** Left edge of the rectangle's content, valid after pack(). */
+  public int getX(int index) {
+    return mXs[index];
+  }
+
+  /** Top edge of the rectangle's content, valid after pack(). */
+  public int getY(int index) {
+    return mYs[index];
+  }
+
+  public int getWidth(int index) {
+    return mWidths[index];
+  }
+
+  public int getHeight(int index) {
+    return mHeights[index];
+  }
+
+  /**
+   * Writes u, v, width and height of the rectangle in atlas texture
+   * coordinates, running from the centre of its first texel to the centre of
+   * its last, so coordinates mapped into it never sample outside it.
+   */
+  public void getTextureRect(int index, float[] rect, int offset) {
+    textureRect(mXs[index], mYs[index], mWidths[index], mHeights[index], mAtlasWidth, mAtlasHeight, rect, offset);
+  }
+
+  /**
+   * {@link #getTextureRect} for an image placed at (x, y) in an atlas of the given size.
+   */
+  public static void textureRect(int x, int y, int width, int height, int atlasWidth, int atlasHeight, float[] rect, int offset) {
+    rect[offset] = (x + 0.5f) / atlasWidth;
+    rect[offset + 1] = (y + 0.5f) / atlasHeight;
+    rect[offset + 2] = (width - 1.0f) / atlasWidth;
+    rect[offset + 3] = (height - 1.0f) / atlasHeight;
+  }
+
+  /**
+   * Maps (u, v) pairs given in the rectangle's own 0..1 space into the atlas, in place.
+   */
+  public void remapTextureCoordinates(int index, float[] uvs, int offset, int count) {
+    final float[] rect = new float[4];
+    getTextureRect(index, rect, 0);
+    for (int i = offset; i < offset + count * 2; i += 2) {
+      uvs[i] = rect[0] + uvs[i] * rect[2];
+      uvs[i + 1] = rect[1] + uvs[i + 1] * rect[3];
+    }
+  }
+
+  /**
+   * Copies an image into the atlas at (x, y) and fills the padding around it,
+   * either by repeating its edge texels or, for images that tile, by wrapping
+   * around to the opposite edge. Pixels are packed ints, row by row.
+   */
+  public static void blit(int[] atlas, int atlasWidth, int atlasHeight, int[] image, int width, int height,
+                          int x, int y, int padding, boolean wrap) {
+    final int top = Math.max(0, y - padding);
+    final int bottom = Math.min(atlasHeight, y + height + padding);
+    final int left = Math.max(0, x - padding);
+    final int right = Math.min(atlasWidth, x + width + padding);
+    for (int ay = top; ay < bottom; ay++) {
+      final int sy = source(ay - y, height, wrap);
+      for (int ax = left; ax < right; ax++)
+        atlas[ay * atlasWidth + ax] = image[sy * width + source(ax - x, width, wrap)];
+    }
+  }
+
+  private static int source(int i, int size, boolean wrap) {
+    if (wrap)
+      return ((i % size) + size) % size;
+    return i < 0 ? 0 : i >= size ? size - 1 : i;
+  }
+
+  private static int nextPowerOfTwo(int value) {
+    int power = 1;
+    while (power < value)
+      power <<= 1;
+    return power;
+  }
+
+  private static int roundUp(int value, int multiple) {
+    return (value + multiple - 1) / multiple * multiple;
+  }
+}
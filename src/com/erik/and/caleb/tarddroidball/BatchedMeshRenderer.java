@@ -0,0 +1,258 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws many instances of one mesh with as few draw calls as ES 2.0 allows.
+ * <p/>
+ * Up to {@link #PALETTE_SIZE} instances go out in a single call: the mesh is
+ * stored PALETTE_SIZE times with a per-vertex instance index, and the vertex
+ * shader picks each copy's model-view matrix from a uniform array. When more
+ * instances are queued than the palette holds (or the device cannot fit the
+ * palette in its vertex uniforms), the instances are transformed into world
+ * space on the CPU instead and streamed as one big vertex buffer, split only
+ * where 16 bit indices run out. The palette copies are packed in the mesh's
+ * {@link VertexLayout} plus an unsigned byte instance index; the streamed
+ * vertices stay floats, since they are rewritten every frame.
+ */
+public class BatchedMeshRenderer {
+
+  /** Must match the array size of u_MVMatrices in palette_vertex_shader. */
+  public static final int PALETTE_SIZE = 24;
+
+  private static final int POSITION_ATTRIBUTE = 0;
+  private static final int NORMAL_ATTRIBUTE = 1;
+
+  private final GlStateTracker mState;
+  private final Gl mGl;
+  private final IndexedMesh mMesh;
+  private final ShaderProgram mPaletteProgram;
+  private final ShaderProgram mWorldSpaceProgram;
+  private final VertexLayout mStreamLayout;
+  private final int[] mPaletteAttributes;
+  private final int[] mWorldSpaceAttributes;
+  private final ShaderProgram.Uniform mPaletteProjection;
+  private final ShaderProgram.Uniform mPaletteMatrices;
+  private final ShaderProgram.Uniform mPaletteLightPos;
+  private final ShaderProgram.Uniform mPaletteTexture;
+  private final ShaderProgram.Uniform mPaletteAtlasRect;
+  private final ShaderProgram.Uniform mWorldSpaceMVMatrix;
+  private final ShaderProgram.Uniform mWorldSpaceMVPMatrix;
+  private final ShaderProgram.Uniform mWorldSpaceLightPos;
+  private final ShaderProgram.Uniform mWorldSpaceTexture;
+  private final ShaderProgram.Uniform mWorldSpaceAtlasRect;
+  private final boolean mPaletteSupported;
+
+  private final VertexBuffer mPaletteBuffer;
+  private final float[] mPalette = new float[PALETTE_SIZE * 16];
+  private final float[] mViewProjection = new float[16];
+
+  private float[] mModelMatrices = new float[16 * PALETTE_SIZE];
+  private final float[] mModelViewMatrices = new float[16 * PALETTE_SIZE];
+  private final boolean[] mHasModelView = new boolean[PALETTE_SIZE];
+  private int mInstanceCount;
+
+  private final int mInstancesPerStreamDraw;
+  private int mStreamCapacity;
+  private float[] mStreamVertices;
+  private FloatBuffer mStreamBuffer;
+  private int mStreamBufferHandle;
+  private int mStreamIndexBufferHandle;
+
+  /**
+   * Must be created on the GL thread with a current context.
+   *
+   * @param mesh              position, normal, then any other attributes
+   * @param layout            how to pack the mesh's attributes for the palette buffer
+   * @param paletteProgram    program built from palette_vertex_shader
+   * @param worldSpaceProgram the regular per-vertex-matrix program, used for CPU pre-transformed batches
+   * @throws IllegalArgumentException if the mesh has more vertices than 16 bit indices reach
+   */
+  public BatchedMeshRenderer(GlStateTracker state, IndexedMesh mesh, VertexLayout layout, ShaderProgram paletteProgram,
+                             ShaderProgram worldSpaceProgram) {
+    // even one instance per streamed draw must fit 16 bit indices
+    if (mesh.getVertexCount() > 65536)
+      throw new IllegalArgumentException("Mesh has " + mesh.getVertexCount() + " vertices, too many for 16 bit indices");
+    mState = state;
+    mGl = state.getGl();
+    mMesh = mesh;
+    mPaletteProgram = paletteProgram;
+    mWorldSpaceProgram = worldSpaceProgram;
+    final VertexLayout paletteLayout = layout.toBuilder().add("a_InstanceIndex", 1, VertexLayout.TYPE_UNSIGNED_BYTE, false).build();
+    mStreamLayout = layout.asFloats();
+    mPaletteAttributes = paletteProgram.getAttributeLocations(paletteLayout);
+    mWorldSpaceAttributes = worldSpaceProgram.getAttributeLocations(mStreamLayout);
+    mPaletteProjection = paletteProgram.getUniform("u_PMatrix");
+    mPaletteMatrices = paletteProgram.getUniform("u_MVMatrices");
+    mPaletteLightPos = paletteProgram.getUniform("u_LightPos");
+    mPaletteTexture = paletteProgram.getUniform("u_Texture");
+    mPaletteAtlasRect = paletteProgram.getUniform("u_AtlasRect");
+    mWorldSpaceMVMatrix = worldSpaceProgram.getUniform("u_MVMatrix");
+    mWorldSpaceMVPMatrix = worldSpaceProgram.getUniform("u_MVPMatrix");
+    mWorldSpaceLightPos = worldSpaceProgram.getUniform("u_LightPos");
+    mWorldSpaceTexture = worldSpaceProgram.getUniform("u_Texture");
+    mWorldSpaceAtlasRect = worldSpaceProgram.getUniform("u_AtlasRect");
+
+    // the palette plus the projection matrix, one vec4 per matrix column
+    final int[] maxVertexUniformVectors = new int[1];
+    mGl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, maxVertexUniformVectors, 0);
+    mPaletteSupported = maxVertexUniformVectors[0] >= (PALETTE_SIZE + 1) * 4;
+    mPaletteBuffer = mPaletteSupported ? new VertexBuffer(mGl, InstanceBatcher.replicate(mesh, PALETTE_SIZE), paletteLayout) : null;
+
+    mInstancesPerStreamDraw = 65536 / mesh.getVertexCount();
+  }
+
+  /**
+   * Starts a new batch, dropping the instances queued for the previous one.
+   */
+  public void begin() {
+    mInstanceCount = 0;
+  }
+
+  /**
+   * Queues one instance. Only grows storage when the batch is bigger than any before it.
+   */
+  public void add(float[] modelMatrix, int offset) {
+    add(modelMatrix, offset, null, 0);
+  }
+
+  /**
+   * Queues one instance whose model-view matrix is already known, so the
+   * palette path can use it instead of multiplying by the view matrix again.
+   */
+  public void add(float[] modelMatrix, int offset, float[] modelViewMatrix, int modelViewOffset) {
+    if ((mInstanceCount + 1) * 16 > mModelMatrices.length) {
+      final float[] grown = new float[mModelMatrices.length * 2];
+      System.arraycopy(mModelMatrices, 0, grown, 0, mInstanceCount * 16);
+      mModelMatrices = grown;
+    }
+    System.arraycopy(modelMatrix, offset, mModelMatrices, mInstanceCount * 16, 16);
+    if (mInstanceCount < PALETTE_SIZE) {
+      mHasModelView[mInstanceCount] = modelViewMatrix != null;
+      if (modelViewMatrix != null)
+        System.arraycopy(modelViewMatrix, modelViewOffset, mModelViewMatrices, mInstanceCount * 16, 16);
+    }
+    mInstanceCount++;
+  }
+
+  public int getInstanceCount() {
+    return mInstanceCount;
+  }
+
+  /**
+   * Draws every queued instance. The caller binds the texture beforehand, and
+   * the mesh's texture coordinates must already address it directly (atlas
+   * coordinates, not tiling ones); the light position is given in eye space.
+   */
+  public void flush(float[] viewMatrix, float[] projectionMatrix, float lightX, float lightY, float lightZ) {
+    if (mInstanceCount == 0)
+      return;
+    if (mPaletteSupported && mInstanceCount <= PALETTE_SIZE)
+      drawWithPalette(viewMatrix, projectionMatrix, lightX, lightY, lightZ);
+    else
+      drawPreTransformed(viewMatrix, projectionMatrix, lightX, lightY, lightZ);
+  }
+
+  private void drawWithPalette(float[] viewMatrix, float[] projectionMatrix, float lightX, float lightY, float lightZ) {
+    mPaletteProgram.use();
+    mPaletteProjection.setMatrix4(projectionMatrix, 0);
+    mPaletteLightPos.set3f(lightX, lightY, lightZ);
+    mPaletteTexture.set1i(0);
+    mPaletteAtlasRect.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+
+    for (int i = 0; i < mInstanceCount; i++) {
+      if (mHasModelView[i])
+        System.arraycopy(mModelViewMatrices, i * 16, mPalette, i * 16, 16);
+      else
+        Mat4.multiplyAffine(mPalette, i * 16, viewMatrix, 0, mModelMatrices, i * 16);
+    }
+    mPaletteMatrices.setMatrix4Array(mPalette, 0, mInstanceCount);
+
+    mPaletteBuffer.bind(mState, mPaletteAttributes);
+    mState.drawElements(GLES20.GL_TRIANGLES, mInstanceCount * mMesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+  }
+
+  private void drawPreTransformed(float[] viewMatrix, float[] projectionMatrix, float lightX, float lightY, float lightZ) {
+    ensureStreamCapacity(Math.min(mInstanceCount, mInstancesPerStreamDraw));
+
+    mWorldSpaceProgram.use();
+    mWorldSpaceMVMatrix.setMatrix4(viewMatrix, 0);
+    Mat4.multiplyByAffine(mViewProjection, 0, projectionMatrix, 0, viewMatrix, 0);
+    mWorldSpaceMVPMatrix.setMatrix4(mViewProjection, 0);
+    mWorldSpaceLightPos.set3f(lightX, lightY, lightZ);
+    mWorldSpaceTexture.set1i(0);
+    mWorldSpaceAtlasRect.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+
+    final InterleavedMesh vertices = mMesh.getVertices();
+    final int floatsPerInstance = vertices.getVertexCount() * vertices.getFloatsPerVertex();
+
+    mState.bindArrayBuffer(mStreamBufferHandle);
+    mState.bindElementArrayBuffer(mStreamIndexBufferHandle);
+    mStreamLayout.bind(mState, mWorldSpaceAttributes);
+
+    for (int first = 0; first < mInstanceCount; first += mStreamCapacity) {
+      final int count = Math.min(mStreamCapacity, mInstanceCount - first);
+      InstanceBatcher.transformInstances(vertices, POSITION_ATTRIBUTE, NORMAL_ATTRIBUTE, mModelMatrices, first, count, mStreamVertices);
+      mStreamBuffer.position(0);
+      mStreamBuffer.put(mStreamVertices, 0, count * floatsPerInstance).position(0);
+      // orphan the previous contents so the driver does not stall on the last draw still reading them
+      mGl.glBufferData(GLES20.GL_ARRAY_BUFFER, mStreamCapacity * floatsPerInstance * InterleavedMesh.BYTES_PER_FLOAT, null, GLES20.GL_STREAM_DRAW);
+      mGl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, count * floatsPerInstance * InterleavedMesh.BYTES_PER_FLOAT, mStreamBuffer);
+      mState.countCall(false);
+      mState.countCall(false);
+      mState.drawElements(GLES20.GL_TRIANGLES, count * mMesh.getIndexCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+    }
+  }
+
+  private void ensureStreamCapacity(int instances) {
+    if (instances <= mStreamCapacity)
+      return;
+    releaseStreamBuffers();
+
+    final InterleavedMesh vertices = mMesh.getVertices();
+    mStreamCapacity = instances;
+    mStreamVertices = new float[instances * vertices.getVertexCount() * vertices.getFloatsPerVertex()];
+    mStreamBuffer = ByteBuffer.allocateDirect(mStreamVertices.length * InterleavedMesh.BYTES_PER_FLOAT)
+        .order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+    final short[] indices = InstanceBatcher.replicateIndices(mMesh.getIndices(), vertices.getVertexCount(), instances);
+    final ShortBuffer indexData = ByteBuffer.allocateDirect(indices.length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+    indexData.put(indices).position(0);
+
+    final int[] handles = new int[2];
+    mGl.glGenBuffers(2, handles, 0);
+    mStreamBufferHandle = handles[0];
+    mStreamIndexBufferHandle = handles[1];
+    mState.bindElementArrayBuffer(mStreamIndexBufferHandle);
+    mGl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * 2, indexData, GLES20.GL_STATIC_DRAW);
+  }
+
+  private void releaseStreamBuffers() {
+    if (mStreamBufferHandle != 0) {
+      // deleting a bound buffer unbinds it, which the tracker would not see
+      mState.bindArrayBuffer(0);
+      mState.bindElementArrayBuffer(0);
+      mGl.glDeleteBuffers(2, new int[]{mStreamBufferHandle, mStreamIndexBufferHandle}, 0);
+      mStreamBufferHandle = 0;
+      mStreamIndexBufferHandle = 0;
+    }
+    mStreamCapacity = 0;
+  }
+
+  public boolean isPaletteSupported() {
+    return mPaletteSupported;
+  }
+
+  public void release() {
+    releaseStreamBuffers();
+    if (mPaletteBuffer != null)
+      mPaletteBuffer.release();
+  }
+}
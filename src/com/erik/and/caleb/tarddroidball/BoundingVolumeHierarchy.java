@@ -0,0 +1,281 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * A binary tree of axis-aligned boxes over a fixed set of items, for culling
+ * large numbers of objects against a {@link Frustum} without testing each one.
+ * <p/>
+ * build() splits the items at the median of their centres along the widest
+ * axis until at most {@link #LEAF_SIZE} remain. Afterwards items only move by
+ * having their boxes replaced; refit() then grows or shrinks just the nodes
+ * above the changed items. A box set to exactly what it was changes nothing,
+ * so items that turn in place only stay out of refit() if their boxes do not
+ * depend on their rotation. Refitting keeps the tree correct but not tight, so
+ * call build() again when items have moved far from where they started.
+ * <p/>
+ * Nodes are stored in flat arrays with children after their parent, and every
+ * node covers a contiguous run of the item order, so a node that is entirely
+ * inside the frustum accepts its whole run without visiting its children.
+ */
+public class BoundingVolumeHierarchy {
+
+  public static final int LEAF_SIZE = 4;
+
+  private int mItemCount;
+  private float[] mItemBounds = new float[0];
+  private int[] mOrder = new int[0];
+  private int[] mItemLeaf = new int[0];
+
+  private int mNodeCount;
+  private float[] mNodeBounds = new float[0];
+  private int[] mFirstChild = new int[0];
+  private int[] mParent = new int[0];
+  private int[] mFirstItem = new int[0];
+  private int[] mItemCountInNode = new int[0];
+  private boolean[] mNodeDirty = new boolean[0];
+  private boolean mDirty;
+
+  private int[] mStack = new int[64];
+  private int mLastNodesVisited;
+  private int mLastRefitNodes;
+
+  /**
+   * Builds the tree from scratch.
+   *
+   * @param bounds minX, minY, minZ, maxX, maxY, maxZ for each item
+   */
+  public void build(float[] bounds, int itemCount) {
+    mItemCount = itemCount;
+    // even an empty tree has its root
+    final int maxNodes = Math.max(1, 2 * itemCount);
+    if (mFirstChild.length < maxNodes) {
+      mItemBounds = new float[itemCount * 6];
+      mOrder = new int[itemCount];
+      mItemLeaf = new int[itemCount];
+      mNodeBounds = new float[maxNodes * 6];
+      mFirstChild = new int[maxNodes];
+      mParent = new int[maxNodes];
+      mFirstItem = new int[maxNodes];
+      mItemCountInNode = new int[maxNodes];
+      mNodeDirty = new boolean[maxNodes];
+    }
+    System.arraycopy(bounds, 0, mItemBounds, 0, itemCount * 6);
+    for (int i = 0; i < itemCount; i++)
+      mOrder[i] = i;
+    mNodeCount = 1;
+    mParent[0] = -1;
+    buildNode(0, 0, itemCount, 0);
+    mDirty = false;
+  }
+
+  private void buildNode(int node, int first, int count, int depth) {
+    mFirstItem[node] = first;
+    mItemCountInNode[node] = count;
+    mNodeDirty[node] = false;
+    if (count <= LEAF_SIZE || depth >= mStack.length - 2) {
+      mFirstChild[node] = -1;
+      for (int i = first; i < first + count; i++)
+        mItemLeaf[mOrder[i]] = node;
+      unionItems(node);
+      return;
+    }
+
+    // split at the median centre along the axis the centres spread furthest on
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    for (int i = first; i < first + count; i++) {
+      final int b = mOrder[i] * 6;
+      final float x = mItemBounds[b] + mItemBounds[b + 3];
+      final float y = mItemBounds[b + 1] + mItemBounds[b + 4];
+      final float z = mItemBounds[b + 2] + mItemBounds[b + 5];
+      minX = Math.min(minX, x);
+      minY = Math.min(minY, y);
+      minZ = Math.min(minZ, z);
+      maxX = Math.max(maxX, x);
+      maxY = Math.max(maxY, y);
+      maxZ = Math.max(maxZ, z);
+    }
+    final float spreadX = maxX - minX, spreadY = maxY - minY, spreadZ = maxZ - minZ;
+    final int axis = spreadX >= spreadY && spreadX >= spreadZ ? 0 : spreadY >= spreadZ ? 1 : 2;
+    final int half = count / 2;
+    selectMedian(first, first + count - 1, first + half, axis);
+
+    final int left = mNodeCount;
+    mNodeCount += 2;
+    mFirstChild[node] = left;
+    mParent[left] = node;
+    mParent[left + 1] = node;
+    buildNode(left, first, half, depth + 1);
+    buildNode(left + 1, first + half, count - half, depth + 1);
+    unionChildren(node);
+  }
+
+  /**
+   * Partially sorts mOrder[low..high] so that the k-th item by centre along the axis is in place.
+   */
+  private void selectMedian(int low, int high, int k, int axis) {
+    while (high > low) {
+      final float pivot = centre(mOrder[(low + high) >>> 1], axis);
+      int i = low, j = high;
+      while (i <= j) {
+        while (centre(mOrder[i], axis) < pivot)
+          i++;
+        while (centre(mOrder[j], axis) > pivot)
+          j--;
+        if (i <= j) {
+          final int swap = mOrder[i];
+          mOrder[i] = mOrder[j];
+          mOrder[j] = swap;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j)
+        high = j;
+      else if (k >= i)
+        low = i;
+      else
+        return;
+    }
+  }
+
+  private float centre(int item, int axis) {
+    return mItemBounds[item * 6 + axis] + mItemBounds[item * 6 + 3 + axis];
+  }
+
+  /**
+   * Replaces one item's box. The tree is only marked for refitting when the box actually changed.
+   */
+  public void setItemBounds(int item, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    final float[] b = mItemBounds;
+    final int i = item * 6;
+    if (b[i] == minX && b[i + 1] == minY && b[i + 2] == minZ && b[i + 3] == maxX && b[i + 4] == maxY && b[i + 5] == maxZ)
+      return;
+    b[i] = minX;
+    b[i + 1] = minY;
+    b[i + 2] = minZ;
+    b[i + 3] = maxX;
+    b[i + 4] = maxY;
+    b[i + 5] = maxZ;
+    // flag the path to the root, stopping where an earlier change already did
+    for (int node = mItemLeaf[item]; node != -1 && !mNodeDirty[node]; node = mParent[node])
+      mNodeDirty[node] = true;
+    mDirty = true;
+  }
+
+  /**
+   * Recomputes the boxes of nodes above items changed since the last build or refit.
+   */
+  public void refit() {
+    int refitted = 0;
+    if (mDirty) {
+      // children always come after their parent, so walking backwards refits bottom-up
+      for (int node = mNodeCount - 1; node >= 0; node--) {
+        if (!mNodeDirty[node])
+          continue;
+        if (mFirstChild[node] == -1)
+          unionItems(node);
+        else
+          unionChildren(node);
+        mNodeDirty[node] = false;
+        refitted++;
+      }
+      mDirty = false;
+    }
+    mLastRefitNodes = refitted;
+  }
+
+  /**
+   * Collects the items whose boxes touch the frustum. Call refit() first if items changed.
+   *
+   * @param visible receives item indices; must hold getItemCount() entries
+   * @return how many items were written to visible
+   */
+  public int cull(Frustum frustum, int[] visible) {
+    if (mItemCount == 0) {
+      mLastNodesVisited = 0;
+      return 0;
+    }
+    int visibleCount = 0;
+    int visited = 0;
+    int top = 0;
+    mStack[top++] = 0;
+    while (top > 0) {
+      final int node = mStack[--top];
+      visited++;
+      final int b = node * 6;
+      final int result = frustum.classifyBox(mNodeBounds[b], mNodeBounds[b + 1], mNodeBounds[b + 2],
+          mNodeBounds[b + 3], mNodeBounds[b + 4], mNodeBounds[b + 5]);
+      if (result == Frustum.OUTSIDE)
+        continue;
+      final int first = mFirstItem[node];
+      final int end = first + mItemCountInNode[node];
+      if (result == Frustum.INSIDE) {
+        for (int i = first; i < end; i++)
+          visible[visibleCount++] = mOrder[i];
+      } else if (mFirstChild[node] == -1) {
+        for (int i = first; i < end; i++) {
+          final int item = mOrder[i];
+          final int ib = item * 6;
+          if (frustum.classifyBox(mItemBounds[ib], mItemBounds[ib + 1], mItemBounds[ib + 2],
+              mItemBounds[ib + 3], mItemBounds[ib + 4], mItemBounds[ib + 5]) != Frustum.OUTSIDE)
+            visible[visibleCount++] = item;
+        }
+      } else {
+        mStack[top++] = mFirstChild[node] + 1;
+        mStack[top++] = mFirstChild[node];
+      }
+    }
+    mLastNodesVisited = visited;
+    return visibleCount;
+  }
+
+  public int getItemCount() {
+    return mItemCount;
+  }
+
+  public int getNodeCount() {
+    return mNodeCount;
+  }
+
+  public int getLastNodesVisited() {
+    return mLastNodesVisited;
+  }
+
+  public int getLastRefitNodes() {
+    return mLastRefitNodes;
+  }
+
+  private void unionItems(int node) {
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    final int first = mFirstItem[node];
+    for (int i = first; i < first + mItemCountInNode[node]; i++) {
+      final int b = mOrder[i] * 6;
+      minX = Math.min(minX, mItemBounds[b]);
+      minY = Math.min(minY, mItemBounds[b + 1]);
+      minZ = Math.min(minZ, mItemBounds[b + 2]);
+      maxX = Math.max(maxX, mItemBounds[b + 3]);
+      maxY = Math.max(maxY, mItemBounds[b + 4]);
+      maxZ = Math.max(maxZ, mItemBounds[b + 5]);
+    }
+    setNodeBounds(node, minX, minY, minZ, maxX, maxY, maxZ);
+  }
+
+  private void unionChildren(int node) {
+    final int l = mFirstChild[node] * 6;
+    final int r = l + 6;
+    final float[] b = mNodeBounds;
+    setNodeBounds(node, Math.min(b[l], b[r]), Math.min(b[l + 1], b[r + 1]), Math.min(b[l + 2], b[r + 2]),
+        Math.max(b[l + 3], b[r + 3]), Math.max(b[l + 4], b[r + 4]), Math.max(b[l + 5], b[r + 5]));
+  }
+
+  private void setNodeBounds(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    final int b = node * 6;
+    mNodeBounds[b] = minX;
+    mNodeBounds[b + 1] = minY;
+    mNodeBounds[b + 2] = minZ;
+    mNodeBounds[b + 3] = maxX;
+    mNodeBounds[b + 4] = maxY;
+    mNodeBounds[b + 5] = maxZ;
+  }
+}
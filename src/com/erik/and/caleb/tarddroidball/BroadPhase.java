@@ -0,0 +1,27 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Finds the pairs of bodies whose axis-aligned boxes overlap, so the narrow
+ * phase of a {@link PhysicsWorld} tests those instead of every pair. An
+ * implementation keeps what it learned about the boxes between steps and
+ * updates it for the bodies that moved. Plain Java, no GL; not thread-safe.
+ */
+public interface BroadPhase {
+
+  /**
+   * Brings the structure up to date with the boxes of bodies [0, count); any
+   * bodies it held past count are dropped. The arrays are read, not kept.
+   */
+  void update(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count);
+
+  /**
+   * Adds each pair whose boxes overlap as of the last update to pairs, once,
+   * the lower body first.
+   */
+  void findPairs(CollisionPairs pairs);
+
+  /**
+   * @return the box against box tests the last findPairs made, to compare with n(n-1)/2
+   */
+  int getLastTests();
+}
@@ -0,0 +1,75 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Run-length coding of a chunk's blocks in {@link VoxelChunk#index} order.
+ * Each run is the block, then the run's length less one as a varint of 7 bits
+ * a byte, low bits first. A chunk's layers are mostly all air or all one
+ * block, so a whole layer tends to be one run of three bytes. Plain Java, no GL.
+ */
+public class ChunkCodec {
+
+  /**
+   * The most an encoded chunk can take: every run one block long.
+   */
+  public static final int MAX_ENCODED_SIZE = VoxelChunk.VOLUME * 2;
+
+  private ChunkCodec() {
+  }
+
+  /**
+   * @param out at least {@link #MAX_ENCODED_SIZE} long
+   * @return the encoded length
+   */
+  public static int encode(byte[] blocks, byte[] out) {
+    int o = 0;
+    for (int i = 0; i < blocks.length; ) {
+      final byte block = blocks[i];
+      int run = 1;
+      while (i + run < blocks.length && blocks[i + run] == block)
+        run++;
+      out[o++] = block;
+      int rest = run - 1;
+      while (rest >= 0x80) {
+        out[o++] = (byte) (rest | 0x80);
+        rest >>>= 7;
+      }
+      out[o++] = (byte) rest;
+      i += run;
+    }
+    return o;
+  }
+
+  /**
+   * Decodes length bytes from in's position, which is left after them.
+   *
+   * @throws IOException if they do not decode to exactly one chunk
+   */
+  public static void decode(ByteBuffer in, int length, byte[] blocks) throws IOException {
+    final int end = in.position() + length;
+    int i = 0;
+    while (in.position() < end) {
+      final byte block = in.get();
+      int run = 0;
+      int shift = 0;
+      byte b;
+      do {
+        if (in.position() >= end || shift > 21)
+          throw new IOException("Chunk data is cut short");
+        b = in.get();
+        run |= (b & 0x7f) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      run++;
+      if (i + run > blocks.length)
+        throw new IOException("Chunk data runs past " + blocks.length + " blocks");
+      Arrays.fill(blocks, i, i + run, block);
+      i += run;
+    }
+    if (i != blocks.length)
+      throw new IOException("Chunk data covers " + i + " of " + blocks.length + " blocks");
+  }
+}
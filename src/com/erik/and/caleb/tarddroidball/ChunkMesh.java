@@ -0,0 +1,95 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The quads {@link ChunkMesher} built for one chunk, grouped by texture and
+ * packed in {@link #LAYOUT}, ready for glBufferData. Quads are four vertices
+ * each and drawn with a shared index buffer, so there are no indices here.
+ * Positions are in blocks from the chunk's corner; the chunk's place in the
+ * world goes in its model matrix.
+ */
+public class ChunkMesh {
+
+  public static final int VERTICES_PER_QUAD = 4;
+
+  /**
+   * 12 bytes a vertex. Block corners and tile coordinates are small whole
+   * numbers, so both are unnormalized unsigned bytes; every face is white.
+   */
+  public static final VertexLayout LAYOUT = new VertexLayout.Builder()
+      .add("a_Position", 3, VertexLayout.TYPE_UNSIGNED_BYTE, false)
+      .add("a_Normal", 3, VertexLayout.TYPE_BYTE, true)
+      .add("a_TexCoordinate", 2, VertexLayout.TYPE_UNSIGNED_BYTE, false)
+      .constant("a_Color", 1.0f, 1.0f, 1.0f, 1.0f)
+      .build();
+
+  private final int mChunkX;
+  private final int mChunkZ;
+  private final ByteBuffer mVertices;
+  private final int[] mFirstQuads;
+  private final int[] mQuadCounts;
+  private final int mMinY;
+  private final int mMaxY;
+
+  /**
+   * @param quadCounts quads per texture, stored one texture after another
+   */
+  public ChunkMesh(int chunkX, int chunkZ, ByteBuffer vertices, int[] quadCounts, int minY, int maxY) {
+    mChunkX = chunkX;
+    mChunkZ = chunkZ;
+    mVertices = vertices;
+    mQuadCounts = quadCounts;
+    mFirstQuads = new int[quadCounts.length];
+    for (int t = 1; t < quadCounts.length; t++)
+      mFirstQuads[t] = mFirstQuads[t - 1] + quadCounts[t - 1];
+    mMinY = minY;
+    mMaxY = maxY;
+  }
+
+  public int getChunkX() {
+    return mChunkX;
+  }
+
+  public int getChunkZ() {
+    return mChunkZ;
+  }
+
+  public ByteBuffer getVertices() {
+    return mVertices;
+  }
+
+  public int getFirstQuad(int texture) {
+    return mFirstQuads[texture];
+  }
+
+  public int getQuadCount(int texture) {
+    return mQuadCounts[texture];
+  }
+
+  public int getQuadCount() {
+    int quads = 0;
+    for (int count : mQuadCounts)
+      quads += count;
+    return quads;
+  }
+
+  public boolean isEmpty() {
+    return getQuadCount() == 0;
+  }
+
+  /**
+   * @return the box around the quads, in blocks from the chunk's corner
+   */
+  public MeshBounds getBounds() {
+    final float height = mMaxY - mMinY;
+    final float radius = (float) Math.sqrt(VoxelChunk.WIDTH * VoxelChunk.WIDTH + height * height
+        + VoxelChunk.DEPTH * VoxelChunk.DEPTH) * 0.5f;
+    return new MeshBounds(0, mMinY, 0, VoxelChunk.WIDTH, mMaxY, VoxelChunk.DEPTH, radius);
+  }
+
+  @Override
+  public String toString() {
+    return "chunk " + mChunkX + "," + mChunkZ + ": " + getQuadCount() + " quads, " + mVertices.capacity() + " bytes";
+  }
+}
@@ -0,0 +1,214 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds a {@link ChunkMesh} from a chunk. Only faces between a block and air
+ * are kept, and each slice of faces is merged greedily: a face grows along
+ * its row while the next face has the same texture, then row by row while
+ * the whole run below does, so a flat field of grass is one quad per slice
+ * instead of one per block. Texture coordinates count blocks, so a merged
+ * quad repeats its texture once per block with GL_REPEAT.
+ * <p/>
+ * Faces on the chunk's sides look into the neighbouring chunks; faces at the
+ * edge of the world or of what is resident are kept and the floor of the
+ * world is not. A mesher
+ * keeps scratch space between chunks and is not thread-safe: use one per
+ * worker thread. Plain Java, no GL.
+ */
+public class ChunkMesher {
+
+  public static final int TEXTURE_GRASS_SIDE = 0;
+  public static final int TEXTURE_GRASS_TOP = 1;
+  public static final int TEXTURE_DIRT = 2;
+  public static final int TEXTURE_STONE = 3;
+  public static final int TEXTURE_SAND = 4;
+  public static final int TEXTURE_COUNT = 5;
+
+  // faces in axis order, negative side first: -x, +x, -y, +y, -z, +z
+  public static final int FACES = 6;
+  // texture of each face of each block, -1 for air
+  private static final byte[] FACE_TEXTURES = {
+      -1, -1, -1, -1, -1, -1,
+      TEXTURE_GRASS_SIDE, TEXTURE_GRASS_SIDE, TEXTURE_DIRT, TEXTURE_GRASS_TOP, TEXTURE_GRASS_SIDE, TEXTURE_GRASS_SIDE,
+      TEXTURE_DIRT, TEXTURE_DIRT, TEXTURE_DIRT, TEXTURE_DIRT, TEXTURE_DIRT, TEXTURE_DIRT,
+      TEXTURE_STONE, TEXTURE_STONE, TEXTURE_STONE, TEXTURE_STONE, TEXTURE_STONE, TEXTURE_STONE,
+      TEXTURE_SAND, TEXTURE_SAND, TEXTURE_SAND, TEXTURE_SAND, TEXTURE_SAND, TEXTURE_SAND,
+  };
+  private static final int[] SIZES = {VoxelChunk.WIDTH, VoxelChunk.HEIGHT, VoxelChunk.DEPTH};
+  private static final int BYTES_PER_QUAD = ChunkMesh.VERTICES_PER_QUAD * 12;
+
+  // texture + 1 of each visible face in the slice being merged, 0 where there is none
+  private final int[] mMask = new int[VoxelChunk.HEIGHT * Math.max(VoxelChunk.WIDTH, VoxelChunk.DEPTH)];
+  private final int[] mCell = new int[3];
+  private final int[] mCorner = new int[3];
+  private final byte[][] mQuads = new byte[TEXTURE_COUNT][BYTES_PER_QUAD * 256];
+  private final int[] mQuadCounts = new int[TEXTURE_COUNT];
+  private int mMinY;
+  private int mMaxY;
+
+  /**
+   * @param face in axis order, negative side first: -x, +x, -y, +y, -z, +z
+   * @return the texture the face of a block is drawn with, -1 for air
+   */
+  public static int getFaceTexture(int block, int face) {
+    return FACE_TEXTURES[block * FACES + face];
+  }
+
+  /**
+   * @param greedy false to keep every visible face as its own quad, for comparison
+   */
+  public ChunkMesh mesh(VoxelWorld world, int chunkX, int chunkZ, boolean greedy) {
+    return mesh(world, world.getChunk(chunkX, chunkZ), greedy);
+  }
+
+  /**
+   * Meshes a chunk that may have left the world since, as a streamed one can
+   * while its mesh is built; neighbours that are not resident read as air.
+   */
+  public ChunkMesh mesh(VoxelWorld world, VoxelChunk chunk, boolean greedy) {
+    final int chunkX = chunk.getChunkX(), chunkZ = chunk.getChunkZ();
+    for (int t = 0; t < TEXTURE_COUNT; t++)
+      mQuadCounts[t] = 0;
+    mMinY = VoxelChunk.HEIGHT;
+    mMaxY = 0;
+    for (int axis = 0; axis < 3; axis++) {
+      for (int direction = -1; direction <= 1; direction += 2) {
+        for (int slice = 0; slice < SIZES[axis]; slice++) {
+          if (fillMask(world, chunk, axis, direction, slice))
+            mergeMask(axis, direction, slice, greedy);
+        }
+      }
+    }
+
+    int quads = 0;
+    for (int t = 0; t < TEXTURE_COUNT; t++)
+      quads += mQuadCounts[t];
+    final ByteBuffer vertices = ByteBuffer.allocateDirect(quads * BYTES_PER_QUAD).order(ByteOrder.nativeOrder());
+    for (int t = 0; t < TEXTURE_COUNT; t++)
+      vertices.put(mQuads[t], 0, mQuadCounts[t] * BYTES_PER_QUAD);
+    vertices.position(0);
+    return new ChunkMesh(chunkX, chunkZ, vertices, mQuadCounts.clone(), quads == 0 ? 0 : mMinY, quads == 0 ? 0 : mMaxY);
+  }
+
+  /**
+   * @return whether any face in the slice is visible
+   */
+  private boolean fillMask(VoxelWorld world, VoxelChunk chunk, int axis, int direction, int slice) {
+    final int u = (axis + 1) % 3, v = (axis + 2) % 3;
+    final int face = axis * 2 + (direction > 0 ? 1 : 0);
+    final byte[] blocks = chunk.getBlocks();
+    final int[] cell = mCell;
+    boolean any = false;
+    cell[axis] = slice;
+    for (int j = 0; j < SIZES[v]; j++) {
+      cell[v] = j;
+      for (int i = 0; i < SIZES[u]; i++) {
+        cell[u] = i;
+        final int block = blocks[VoxelChunk.index(cell[0], cell[1], cell[2])];
+        int texture = 0;
+        if (block != VoxelChunk.AIR) {
+          cell[axis] = slice + direction;
+          if (neighbour(world, chunk, blocks, cell) == VoxelChunk.AIR) {
+            texture = FACE_TEXTURES[block * FACES + face] + 1;
+            any = true;
+          }
+          cell[axis] = slice;
+        }
+        mMask[j * SIZES[u] + i] = texture;
+      }
+    }
+    return any;
+  }
+
+  private static int neighbour(VoxelWorld world, VoxelChunk chunk, byte[] blocks, int[] cell) {
+    final int x = cell[0], y = cell[1], z = cell[2];
+    // nothing is ever seen from below the world, so its floor has no faces
+    if (y < 0)
+      return VoxelChunk.GRASS;
+    if (y >= VoxelChunk.HEIGHT)
+      return VoxelChunk.AIR;
+    if (x >= 0 && x < VoxelChunk.WIDTH && z >= 0 && z < VoxelChunk.DEPTH)
+      return blocks[VoxelChunk.index(x, y, z)];
+    final int worldX = chunk.getChunkX() * VoxelChunk.WIDTH + x;
+    final int worldZ = chunk.getChunkZ() * VoxelChunk.DEPTH + z;
+    return worldX < 0 || worldZ < 0 ? VoxelChunk.AIR : world.getBlock(worldX, y, worldZ);
+  }
+
+  private void mergeMask(int axis, int direction, int slice, boolean greedy) {
+    final int u = (axis + 1) % 3, v = (axis + 2) % 3;
+    final int columns = SIZES[u], rows = SIZES[v];
+    final int[] mask = mMask;
+    for (int j = 0; j < rows; j++) {
+      for (int i = 0; i < columns; ) {
+        final int texture = mask[j * columns + i];
+        if (texture == 0) {
+          i++;
+          continue;
+        }
+        int width = 1;
+        int height = 1;
+        if (greedy) {
+          while (i + width < columns && mask[j * columns + i + width] == texture)
+            width++;
+          grow:
+          while (j + height < rows) {
+            for (int k = 0; k < width; k++) {
+              if (mask[(j + height) * columns + i + k] != texture)
+                break grow;
+            }
+            height++;
+          }
+        }
+        for (int h = 0; h < height; h++) {
+          for (int k = 0; k < width; k++)
+            mask[(j + h) * columns + i + k] = 0;
+        }
+        addQuad(axis, direction, slice, i, j, width, height, texture - 1);
+        i += width;
+      }
+    }
+  }
+
+  private void addQuad(int axis, int direction, int slice, int i, int j, int width, int height, int texture) {
+    final int u = (axis + 1) % 3, v = (axis + 2) % 3;
+    if ((mQuadCounts[texture] + 1) * BYTES_PER_QUAD > mQuads[texture].length) {
+      final byte[] grown = new byte[mQuads[texture].length * 2];
+      System.arraycopy(mQuads[texture], 0, grown, 0, mQuadCounts[texture] * BYTES_PER_QUAD);
+      mQuads[texture] = grown;
+    }
+    final byte[] out = mQuads[texture];
+    int o = mQuadCounts[texture]++ * BYTES_PER_QUAD;
+    final int[] corner = mCorner;
+    corner[axis] = direction > 0 ? slice + 1 : slice;
+    // (u, v) x (u, v) is the axis, so this order is counterclockwise seen from the positive side
+    for (int c = 0; c < 4; c++) {
+      final int k = direction > 0 ? c : (4 - c) & 3;
+      corner[u] = k == 1 || k == 2 ? i + width : i;
+      corner[v] = k >= 2 ? j + height : j;
+      out[o] = (byte) corner[0];
+      out[o + 1] = (byte) corner[1];
+      out[o + 2] = (byte) corner[2];
+      out[o + 3] = 0;
+      out[o + 4] = 0;
+      out[o + 5] = 0;
+      out[o + 6] = 0;
+      out[o + 4 + axis] = (byte) (direction * 127);
+      out[o + 7] = 0;
+      if (axis == 1) {
+        out[o + 8] = (byte) corner[0];
+        out[o + 9] = (byte) corner[2];
+      } else {
+        // v runs down the image, so each block's top edge lands on the top of the texture
+        out[o + 8] = (byte) (axis == 0 ? corner[2] : corner[0]);
+        out[o + 9] = (byte) (VoxelChunk.HEIGHT - corner[1]);
+      }
+      out[o + 10] = 0;
+      out[o + 11] = 0;
+      mMinY = Math.min(mMinY, corner[1]);
+      mMaxY = Math.max(mMaxY, corner[1]);
+      o += 12;
+    }
+  }
+}
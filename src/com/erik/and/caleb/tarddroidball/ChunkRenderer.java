@@ -0,0 +1,165 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Holds the uploaded {@link ChunkMesh}es, one vertex buffer each, in slots
+ * reused as chunks come and go, and draws them one texture at a time. Every
+ * chunk shares a single index buffer of quads, since quad i is always
+ * vertices 4i to 4i + 3; a chunk with more quads than 16 bit indices reach is
+ * drawn in runs, with the attributes pointed further into its buffer for
+ * each run.
+ */
+public class ChunkRenderer {
+
+  private static final int QUADS_PER_DRAW = 65536 / ChunkMesh.VERTICES_PER_QUAD;
+  private static final int INDICES_PER_QUAD = 6;
+
+  private final GlStateTracker mState;
+  private final Gl mGl;
+  private final int mIndexBufferHandle;
+  private int[] mBufferHandles = new int[16];
+  private ChunkMesh[] mMeshes = new ChunkMesh[16];
+  private int mSlotCount;
+
+  /**
+   * Must be created on the GL thread with a current context.
+   */
+  public ChunkRenderer(GlStateTracker state) {
+    mState = state;
+    mGl = state.getGl();
+    final ShortBuffer indices = ByteBuffer.allocateDirect(QUADS_PER_DRAW * INDICES_PER_QUAD * 2)
+        .order(ByteOrder.nativeOrder()).asShortBuffer();
+    for (int quad = 0; quad < QUADS_PER_DRAW; quad++) {
+      final int first = quad * ChunkMesh.VERTICES_PER_QUAD;
+      indices.put((short) first).put((short) (first + 1)).put((short) (first + 2));
+      indices.put((short) first).put((short) (first + 2)).put((short) (first + 3));
+    }
+    indices.position(0);
+    final int[] handles = new int[1];
+    mGl.glGenBuffers(1, handles, 0);
+    mIndexBufferHandle = handles[0];
+    mState.bindElementArrayBuffer(mIndexBufferHandle);
+    mGl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, QUADS_PER_DRAW * INDICES_PER_QUAD * 2, indices, GLES20.GL_STATIC_DRAW);
+  }
+
+  /**
+   * Uploads a chunk's quads, replacing the ones uploaded for it before. Must
+   * be called on the GL thread.
+   *
+   * @return the chunk's slot, for {@link #draw}
+   */
+  public int put(ChunkMesh mesh) {
+    int slot = find(mesh.getChunkX(), mesh.getChunkZ());
+    if (slot < 0)
+      slot = findEmpty();
+    if (slot < 0) {
+      if (mSlotCount == mMeshes.length) {
+        final int[] handles = new int[mSlotCount * 2];
+        System.arraycopy(mBufferHandles, 0, handles, 0, mSlotCount);
+        mBufferHandles = handles;
+        final ChunkMesh[] meshes = new ChunkMesh[mSlotCount * 2];
+        System.arraycopy(mMeshes, 0, meshes, 0, mSlotCount);
+        mMeshes = meshes;
+      }
+      slot = mSlotCount++;
+    }
+    deleteBuffer(slot);
+    if (!mesh.isEmpty()) {
+      final int[] handles = new int[1];
+      mGl.glGenBuffers(1, handles, 0);
+      mBufferHandles[slot] = handles[0];
+      mState.bindArrayBuffer(handles[0]);
+      mGl.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.getVertices().capacity(), mesh.getVertices(), GLES20.GL_STATIC_DRAW);
+    }
+    mMeshes[slot] = mesh;
+    return slot;
+  }
+
+  /**
+   * Frees a chunk's slot, if it has one, for the next chunk put. Must be
+   * called on the GL thread.
+   */
+  public void remove(int chunkX, int chunkZ) {
+    final int slot = find(chunkX, chunkZ);
+    if (slot < 0)
+      return;
+    deleteBuffer(slot);
+    mMeshes[slot] = null;
+  }
+
+  /**
+   * @return slots so far, some of them maybe empty
+   */
+  public int getSlotCount() {
+    return mSlotCount;
+  }
+
+  /**
+   * @return the slot's mesh, or null if it is empty
+   */
+  public ChunkMesh getMesh(int slot) {
+    return mMeshes[slot];
+  }
+
+  /**
+   * Draws one chunk's quads of one texture. The slot must not be empty, and
+   * the program, texture and the chunk's matrices must already be set.
+   *
+   * @param locations from {@link ShaderProgram#getAttributeLocations} for {@link ChunkMesh#LAYOUT}
+   */
+  public void draw(int chunk, int texture, int[] locations) {
+    final ChunkMesh mesh = mMeshes[chunk];
+    final int quads = mesh.getQuadCount(texture);
+    if (quads == 0)
+      return;
+    mState.bindArrayBuffer(mBufferHandles[chunk]);
+    mState.bindElementArrayBuffer(mIndexBufferHandle);
+    final int quadBytes = ChunkMesh.LAYOUT.getStride() * ChunkMesh.VERTICES_PER_QUAD;
+    for (int first = 0; first < quads; first += QUADS_PER_DRAW) {
+      final int count = Math.min(QUADS_PER_DRAW, quads - first);
+      ChunkMesh.LAYOUT.bind(mState, locations, (mesh.getFirstQuad(texture) + first) * quadBytes);
+      mState.drawElements(GLES20.GL_TRIANGLES, count * INDICES_PER_QUAD, GLES20.GL_UNSIGNED_SHORT, 0);
+    }
+  }
+
+  public void release() {
+    mState.bindElementArrayBuffer(0);
+    for (int i = 0; i < mSlotCount; i++) {
+      deleteBuffer(i);
+      mMeshes[i] = null;
+    }
+    mGl.glDeleteBuffers(1, new int[]{mIndexBufferHandle}, 0);
+    mSlotCount = 0;
+  }
+
+  private int find(int chunkX, int chunkZ) {
+    for (int i = 0; i < mSlotCount; i++) {
+      if (mMeshes[i] != null && mMeshes[i].getChunkX() == chunkX && mMeshes[i].getChunkZ() == chunkZ)
+        return i;
+    }
+    return -1;
+  }
+
+  private int findEmpty() {
+    for (int i = 0; i < mSlotCount; i++) {
+      if (mMeshes[i] == null)
+        return i;
+    }
+    return -1;
+  }
+
+  private void deleteBuffer(int slot) {
+    if (mBufferHandles[slot] == 0)
+      return;
+    // deleting a bound buffer unbinds it, which the tracker would not see
+    mState.bindArrayBuffer(0);
+    mGl.glDeleteBuffers(1, mBufferHandles, slot);
+    mBufferHandles[slot] = 0;
+  }
+}
@@ -0,0 +1,495 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the chunks around a centre resident in a {@link VoxelWorld}: every
+ * chunk within the radius, on a square, plus as many that have left it as
+ * the byte budget allows, dropping the least recently needed first. Chunks
+ * are read from {@link RegionFile}s in a directory, or generated and saved
+ * the first time they are needed.
+ * <p/>
+ * Reading and saving run on one background thread from a priority queue:
+ * saves first, so a chunk is never read back older than it was left, then
+ * loads nearest the centre first. Chunks that have never been saved are
+ * generated on that thread too, or handed to an executor of their own, so
+ * several generate at once while the streaming thread goes on reading. A load that has fallen out
+ * of the radius by the time it runs is skipped. A chunk evicted before its
+ * save ran is loaded from memory.
+ * <p/>
+ * {@link #update} moves the centre, takes in finished loads and evicts; it,
+ * the listener it calls and the other methods belong to one thread, the
+ * render thread in the game. A failed read or write is rethrown from update.
+ * Plain Java, no GL.
+ */
+public class ChunkStreamer {
+
+  /**
+   * Fills a chunk that has never been saved. Called on the streaming thread,
+   * or on the generating executor's threads, several at once.
+   */
+  public interface Generator {
+    void generate(VoxelChunk chunk);
+  }
+
+  /**
+   * Called from {@link #update} once a chunk is in the world, or out of it.
+   * Must not call update, markDirty or flush.
+   */
+  public interface Listener {
+    void onChunkLoaded(VoxelChunk chunk);
+
+    void onChunkEvicted(VoxelChunk chunk);
+  }
+
+  private static final int PRIORITY_SAVE = -1;
+  private static final int PRIORITY_CLOSE = Integer.MAX_VALUE;
+  private static final Runnable NOTHING = new Runnable() {
+    @Override
+    public void run() {
+    }
+  };
+
+  private final VoxelWorld mWorld;
+  private final File mDirectory;
+  private final Generator mGenerator;
+  private final Executor mGenerators;
+  private final Listener mListener;
+  private final int mRadius;
+  private final long mBudgetBytes;
+  private final ThreadPoolExecutor mWorker;
+  private final AtomicLong mSequence = new AtomicLong();
+
+  // render thread: resident chunks by index, least recently needed first
+  private final LinkedHashMap<Integer, VoxelChunk> mResident = new LinkedHashMap<Integer, VoxelChunk>(16, 0.75f, true);
+  private final HashSet<Integer> mRequested = new HashSet<Integer>();
+  private final HashSet<Integer> mDirty = new HashSet<Integer>();
+  private final ArrayList<FutureTask<Void>> mWaiters = new ArrayList<FutureTask<Void>>();
+  private boolean mCentered;
+  private int mEvictions;
+  private int mLoads;
+  private long mLoadNanos;
+  private long mMaxLoadNanos;
+
+  // shared with the streaming thread
+  private volatile int mCenterX;
+  private volatile int mCenterZ;
+  private volatile Throwable mFailure;
+  private volatile boolean mClosed;
+  private final ConcurrentLinkedQueue<Load> mLoaded = new ConcurrentLinkedQueue<Load>();
+  // the newest save queued for each chunk, until it is written
+  private final ConcurrentHashMap<Integer, Save> mSaving = new ConcurrentHashMap<Integer, Save>();
+  private final AtomicInteger mReads = new AtomicInteger();
+  private final AtomicInteger mGenerated = new AtomicInteger();
+  private final AtomicInteger mSaves = new AtomicInteger();
+
+  // streaming thread
+  private final HashMap<String, RegionFile> mRegions = new HashMap<String, RegionFile>();
+  private boolean mRegionsClosed;
+
+  /**
+   * @param world starts empty, see {@link VoxelWorld#VoxelWorld(int, int, boolean)}
+   * @param directory holds the region files; made if missing
+   * @param radius in chunks from the centre's chunk
+   * @param budgetBytes for the resident chunks' blocks; chunks within the radius stay even over it
+   */
+  public ChunkStreamer(VoxelWorld world, File directory, Generator generator, Listener listener, int radius,
+                       long budgetBytes) {
+    this(world, directory, generator, null, listener, radius, budgetBytes);
+  }
+
+  /**
+   * @param generators runs generation, null to generate on the streaming thread
+   */
+  public ChunkStreamer(VoxelWorld world, File directory, Generator generator, Executor generators,
+                       Listener listener, int radius, long budgetBytes) {
+    mWorld = world;
+    mDirectory = directory;
+    mGenerator = generator;
+    mGenerators = generators;
+    mListener = listener;
+    mRadius = radius;
+    mBudgetBytes = budgetBytes;
+    directory.mkdirs();
+    mWorker = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+        new WorkerFactory());
+    mWorker.allowCoreThreadTimeOut(true);
+  }
+
+  public VoxelWorld getWorld() {
+    return mWorld;
+  }
+
+  /**
+   * Moves the centre, requesting whatever is missing around it, takes in
+   * finished loads, calling the listener for each, and evicts down to the
+   * budget. Cheap, and free of allocation, when nothing has changed.
+   */
+  public void update(int centerChunkX, int centerChunkZ) {
+    final Throwable failure = mFailure;
+    if (failure != null)
+      throw new RuntimeException("Error streaming chunks.", failure);
+    boolean changed = false;
+    if (!mCentered || centerChunkX != mCenterX || centerChunkZ != mCenterZ) {
+      mCentered = true;
+      mCenterX = centerChunkX;
+      mCenterZ = centerChunkZ;
+      requestRadius();
+      changed = true;
+    }
+    Load load;
+    while ((load = mLoaded.poll()) != null) {
+      mRequested.remove(load.mIndex);
+      final VoxelChunk chunk = load.mChunk;
+      if (chunk == null) {
+        // skipped while out of the radius, which it may be back in
+        if (isNear(load.mChunkX, load.mChunkZ))
+          request(load.mChunkX, load.mChunkZ);
+        continue;
+      }
+      final long latency = System.nanoTime() - load.mRequestedNanos;
+      mLoads++;
+      mLoadNanos += latency;
+      mMaxLoadNanos = Math.max(mMaxLoadNanos, latency);
+      mResident.put(load.mIndex, chunk);
+      mWorld.setChunk(chunk);
+      mListener.onChunkLoaded(chunk);
+      changed = true;
+    }
+    if (changed)
+      evict();
+    if (mRequested.isEmpty() && !mWaiters.isEmpty())
+      runWaiters();
+  }
+
+  /**
+   * @return a Future done once everything within the radius is resident, as of an update
+   */
+  public Future<Void> whenResident() {
+    final FutureTask<Void> waiter = new FutureTask<Void>(NOTHING, null);
+    mWaiters.add(waiter);
+    if (mCentered && mRequested.isEmpty())
+      runWaiters();
+    return waiter;
+  }
+
+  /**
+   * Marks a resident chunk as changed, to be saved when it is evicted or flushed.
+   */
+  public void markDirty(int chunkX, int chunkZ) {
+    final Integer index = mWorld.getIndex(chunkX, chunkZ);
+    if (mResident.containsKey(index))
+      mDirty.add(index);
+  }
+
+  /**
+   * Queues a save of every changed chunk.
+   */
+  public void flush() {
+    // from the world, since looking a chunk up in mResident would count as needing it
+    for (Integer index : mDirty)
+      save(mWorld.getChunk(index));
+    mDirty.clear();
+  }
+
+  /**
+   * Flushes, then waits for the streaming thread to finish every save and
+   * closes the region files. Loads still queued are dropped.
+   */
+  public void close() throws InterruptedException {
+    flush();
+    mClosed = true;
+    mWorker.execute(new Task(PRIORITY_CLOSE) {
+      @Override
+      void work() throws IOException {
+        for (RegionFile region : mRegions.values())
+          region.close();
+        mRegions.clear();
+        mRegionsClosed = true;
+      }
+    });
+    mWorker.shutdown();
+    mWorker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  public int getResidentCount() {
+    return mResident.size();
+  }
+
+  public long getResidentBytes() {
+    return (long) mResident.size() * VoxelChunk.VOLUME;
+  }
+
+  public long getBudgetBytes() {
+    return mBudgetBytes;
+  }
+
+  public int getPendingLoadCount() {
+    return mRequested.size();
+  }
+
+  public int getPendingSaveCount() {
+    return mSaving.size();
+  }
+
+  public boolean isResident(int chunkX, int chunkZ) {
+    return mResident.containsKey(mWorld.getIndex(chunkX, chunkZ));
+  }
+
+  /**
+   * @return whether the chunk is within the radius of the current centre
+   */
+  public boolean isNear(int chunkX, int chunkZ) {
+    return Math.max(Math.abs(chunkX - mCenterX), Math.abs(chunkZ - mCenterZ)) <= mRadius;
+  }
+
+  public int getEvictionCount() {
+    return mEvictions;
+  }
+
+  public int getLoadCount() {
+    return mLoads;
+  }
+
+  /**
+   * @return chunks read from region files so far, as opposed to generated
+   */
+  public int getReadCount() {
+    return mReads.get();
+  }
+
+  public int getGeneratedCount() {
+    return mGenerated.get();
+  }
+
+  public int getSaveCount() {
+    return mSaves.get();
+  }
+
+  /**
+   * @return from asking for a chunk to the update that took it in
+   */
+  public double getAverageLoadMillis() {
+    return mLoads == 0 ? 0.0 : mLoadNanos / 1e6 / mLoads;
+  }
+
+  public double getMaxLoadMillis() {
+    return mMaxLoadNanos / 1e6;
+  }
+
+  private void requestRadius() {
+    for (int dz = -mRadius; dz <= mRadius; dz++) {
+      for (int dx = -mRadius; dx <= mRadius; dx++) {
+        final int chunkX = mCenterX + dx, chunkZ = mCenterZ + dz;
+        if (!mWorld.contains(chunkX, chunkZ))
+          continue;
+        // touching a resident chunk makes it the most recently needed
+        if (mResident.get(mWorld.getIndex(chunkX, chunkZ)) == null)
+          request(chunkX, chunkZ);
+      }
+    }
+  }
+
+  private void request(int chunkX, int chunkZ) {
+    final Integer index = mWorld.getIndex(chunkX, chunkZ);
+    if (mRequested.add(index))
+      mWorker.execute(new Load(chunkX, chunkZ, Math.max(Math.abs(chunkX - mCenterX), Math.abs(chunkZ - mCenterZ))));
+  }
+
+  private void evict() {
+    long resident = getResidentBytes();
+    final Iterator<Map.Entry<Integer, VoxelChunk>> entries = mResident.entrySet().iterator();
+    while (resident > mBudgetBytes && entries.hasNext()) {
+      final Map.Entry<Integer, VoxelChunk> entry = entries.next();
+      final VoxelChunk chunk = entry.getValue();
+      if (isNear(chunk.getChunkX(), chunk.getChunkZ()))
+        continue;
+      entries.remove();
+      resident -= VoxelChunk.VOLUME;
+      mWorld.removeChunk(chunk.getChunkX(), chunk.getChunkZ());
+      if (mDirty.remove(entry.getKey()))
+        save(chunk);
+      mEvictions++;
+      mListener.onChunkEvicted(chunk);
+    }
+  }
+
+  private void save(VoxelChunk chunk) {
+    final Save save = new Save(chunk);
+    mSaving.put(save.mIndex, save);
+    mWorker.execute(save);
+  }
+
+  private void runWaiters() {
+    for (FutureTask<Void> waiter : mWaiters)
+      waiter.run();
+    mWaiters.clear();
+  }
+
+  private RegionFile region(int chunkX, int chunkZ) throws IOException {
+    final String name = RegionFile.getName(chunkX, chunkZ);
+    RegionFile region = mRegions.get(name);
+    if (region == null) {
+      region = new RegionFile(new File(mDirectory, name));
+      mRegions.put(name, region);
+    }
+    return region;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d chunks resident (%d of %d KB), %d loading, %d loaded in %.1f ms avg %.1f ms max, "
+        + "%d read, %d generated, %d evicted, %d saved", mResident.size(), getResidentBytes() / 1024,
+        mBudgetBytes / 1024, mRequested.size(), mLoads, getAverageLoadMillis(), getMaxLoadMillis(), mReads.get(),
+        mGenerated.get(), mEvictions, mSaves.get());
+  }
+
+  /**
+   * Runs on the streaming thread in order of priority, lowest first, then in the order queued.
+   */
+  private abstract class Task implements Runnable, Comparable<Task> {
+    private final int mPriority;
+    private final long mSequence = ChunkStreamer.this.mSequence.getAndIncrement();
+
+    Task(int priority) {
+      mPriority = priority;
+    }
+
+    @Override
+    public int compareTo(Task other) {
+      if (mPriority != other.mPriority)
+        return mPriority < other.mPriority ? -1 : 1;
+      return mSequence < other.mSequence ? -1 : mSequence > other.mSequence ? 1 : 0;
+    }
+
+    @Override
+    public void run() {
+      try {
+        work();
+      } catch (Throwable e) {
+        mFailure = e;
+      }
+    }
+
+    abstract void work() throws IOException;
+  }
+
+  private class Load extends Task {
+    final int mChunkX;
+    final int mChunkZ;
+    final Integer mIndex;
+    final long mRequestedNanos = System.nanoTime();
+    // null when skipped
+    VoxelChunk mChunk;
+
+    Load(int chunkX, int chunkZ, int distance) {
+      super(distance);
+      mChunkX = chunkX;
+      mChunkZ = chunkZ;
+      mIndex = mWorld.getIndex(chunkX, chunkZ);
+    }
+
+    // true once handed to the generators, which take it in when done
+    boolean mGenerating;
+
+    @Override
+    public void run() {
+      super.run();
+      if (!mGenerating)
+        mLoaded.add(this);
+    }
+
+    @Override
+    void work() throws IOException {
+      final Save saving = mSaving.get(mIndex);
+      if (saving != null) {
+        mChunk = saving.mChunk;
+        return;
+      }
+      if (mClosed || !isNear(mChunkX, mChunkZ))
+        return;
+      final VoxelChunk chunk = new VoxelChunk(mChunkX, mChunkZ);
+      if (region(mChunkX, mChunkZ).read(mChunkX % RegionFile.CHUNKS, mChunkZ % RegionFile.CHUNKS, chunk.getBlocks())) {
+        mReads.incrementAndGet();
+        mChunk = chunk;
+      } else if (mGenerators == null) {
+        generate(chunk);
+      } else {
+        mGenerating = true;
+        mGenerators.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              generate(chunk);
+            } catch (Throwable e) {
+              mFailure = e;
+            }
+            mLoaded.add(Load.this);
+          }
+        });
+      }
+    }
+
+    private void generate(VoxelChunk chunk) {
+      mGenerator.generate(chunk);
+      mGenerated.incrementAndGet();
+      mChunk = chunk;
+      try {
+        if (!mClosed)
+          save(chunk);
+      } catch (RejectedExecutionException e) {
+        // closed meanwhile; the chunk generates the same next time
+      }
+    }
+  }
+
+  private class Save extends Task {
+    final VoxelChunk mChunk;
+    final Integer mIndex;
+
+    Save(VoxelChunk chunk) {
+      super(PRIORITY_SAVE);
+      mChunk = chunk;
+      mIndex = mWorld.getIndex(chunk.getChunkX(), chunk.getChunkZ());
+    }
+
+    @Override
+    void work() throws IOException {
+      if (mRegionsClosed)
+        return;
+      region(mChunk.getChunkX(), mChunk.getChunkZ()).write(mChunk.getChunkX() % RegionFile.CHUNKS,
+          mChunk.getChunkZ() % RegionFile.CHUNKS, mChunk.getBlocks());
+      mSaves.incrementAndGet();
+      mSaving.remove(mIndex, this);
+    }
+  }
+
+  private static class WorkerFactory implements ThreadFactory {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, "ChunkStreamer");
+      thread.setDaemon(true);
+      thread.setPriority(Thread.NORM_PRIORITY - 1);
+      return thread;
+    }
+  }
+}
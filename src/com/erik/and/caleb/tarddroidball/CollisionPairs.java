@@ -0,0 +1,42 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * A growable list of body pairs in two int arrays, reused from step to step
+ * so finding pairs does not allocate once it has grown. Plain Java, no GL.
+ */
+public class CollisionPairs {
+
+  private int[] mFirst = new int[64];
+  private int[] mSecond = new int[64];
+  private int mCount;
+
+  public void clear() {
+    mCount = 0;
+  }
+
+  public void add(int first, int second) {
+    if (mCount == mFirst.length) {
+      final int[] grownFirst = new int[mCount * 2];
+      final int[] grownSecond = new int[mCount * 2];
+      System.arraycopy(mFirst, 0, grownFirst, 0, mCount);
+      System.arraycopy(mSecond, 0, grownSecond, 0, mCount);
+      mFirst = grownFirst;
+      mSecond = grownSecond;
+    }
+    mFirst[mCount] = first;
+    mSecond[mCount] = second;
+    mCount++;
+  }
+
+  public int size() {
+    return mCount;
+  }
+
+  public int getFirst(int pair) {
+    return mFirst[pair];
+  }
+
+  public int getSecond(int pair) {
+    return mSecond[pair];
+  }
+}
@@ -0,0 +1,184 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@link Simulation} in fixed steps, either driven from the render loop
+ * via {@link #advanceTo(long)} or on its own thread via {@link #start()}. Which
+ * one is fixed at construction, so no thread ever has to ask which it is while
+ * the other might be stepping.
+ * <p/>
+ * After every batch of steps the last two states are published as a snapshot
+ * through a lock-free triple buffer: the simulation always has a buffer of its
+ * own to write, the renderer always has one of its own to read, and the third
+ * holds the newest published snapshot. The renderer interpolates between the
+ * two states of the newest snapshot, so motion is smooth at any frame rate at
+ * the price of one step of latency. Plain Java, no Android dependencies.
+ */
+public class FixedTimestepSimulation implements Runnable {
+
+  /** Simulated time is dropped rather than caught up beyond this many steps per advance. */
+  private static final int MAX_STEPS_PER_ADVANCE = 10;
+  private static final int FRESH = 4;
+
+  private final Simulation mSimulation;
+  private final long mStepNanos;
+  private final float mStepSeconds;
+
+  private final Snapshot[] mSnapshots = {new Snapshot(), new Snapshot(), new Snapshot()};
+  // index of the published snapshot, plus FRESH if the reader has not picked it up yet
+  private final AtomicInteger mPublished = new AtomicInteger(0);
+  private int mWriteIndex = 1;
+  private int mReadIndex = 2;
+
+  private final SimulationState mPrevious = new SimulationState();
+  private final SimulationState mCurrent = new SimulationState();
+  private long mSimulatedUpToNanos;
+  private boolean mStarted;
+  private long mStepCount;
+
+  private final boolean mThreaded;
+  private volatile boolean mRunning;
+  private Thread mThread;
+
+  public FixedTimestepSimulation(Simulation simulation, long stepNanos) {
+    this(simulation, stepNanos, false);
+  }
+
+  /**
+   * @param threaded true to step on a thread of its own between {@link #start()} and {@link #stop()},
+   *                 false to be stepped by {@link #advanceTo(long)}
+   */
+  public FixedTimestepSimulation(Simulation simulation, long stepNanos, boolean threaded) {
+    mSimulation = simulation;
+    mThreaded = threaded;
+    mStepNanos = stepNanos;
+    mStepSeconds = stepNanos / 1e9f;
+    simulation.reset(mCurrent);
+    mPrevious.set(mCurrent);
+    for (Snapshot snapshot : mSnapshots) {
+      snapshot.previous.set(mCurrent);
+      snapshot.current.set(mCurrent);
+    }
+  }
+
+  /**
+   * Simulates every whole step up to nowNanos and publishes the result. Must only
+   * be called from one thread at a time, and only on a simulation that is not threaded.
+   *
+   * @return the number of steps taken
+   */
+  public int advanceTo(long nowNanos) {
+    if (mThreaded)
+      throw new IllegalStateException("A threaded simulation steps itself.");
+    return advance(nowNanos);
+  }
+
+  private int advance(long nowNanos) {
+    if (!mStarted) {
+      mStarted = true;
+      mSimulatedUpToNanos = nowNanos;
+    }
+    int steps = 0;
+    while (nowNanos - mSimulatedUpToNanos >= mStepNanos) {
+      if (steps == MAX_STEPS_PER_ADVANCE) {
+        mSimulatedUpToNanos = nowNanos;
+        break;
+      }
+      mPrevious.set(mCurrent);
+      mSimulation.step(mCurrent, mStepSeconds);
+      mSimulation.wrapAngles(mPrevious, mCurrent);
+      mSimulatedUpToNanos += mStepNanos;
+      steps++;
+    }
+    if (steps > 0) {
+      mStepCount += steps;
+      publish();
+    }
+    return steps;
+  }
+
+  private void publish() {
+    final Snapshot snapshot = mSnapshots[mWriteIndex];
+    snapshot.previous.set(mPrevious);
+    snapshot.current.set(mCurrent);
+    snapshot.timeNanos = mSimulatedUpToNanos;
+    mWriteIndex = mPublished.getAndSet(mWriteIndex | FRESH) & ~FRESH;
+  }
+
+  /**
+   * Renderer side: fills out with the simulation as it should look at nowNanos,
+   * interpolated between the two states of the newest snapshot.
+   *
+   * @return the interpolation factor used
+   */
+  public float readInterpolated(long nowNanos, SimulationState out) {
+    if ((mPublished.get() & FRESH) != 0)
+      mReadIndex = mPublished.getAndSet(mReadIndex) & ~FRESH;
+    final Snapshot snapshot = mSnapshots[mReadIndex];
+    float alpha = (float) (nowNanos - snapshot.timeNanos) / mStepNanos;
+    if (alpha < 0.0f)
+      alpha = 0.0f;
+    else if (alpha > 1.0f)
+      alpha = 1.0f;
+    out.interpolate(snapshot.previous, snapshot.current, alpha);
+    return alpha;
+  }
+
+  /**
+   * Runs the simulation on its own thread until {@link #stop()}.
+   */
+  public synchronized void start() {
+    if (!mThreaded)
+      throw new IllegalStateException("Stepped by advanceTo, not a thread of its own.");
+    if (mThread != null)
+      return;
+    mRunning = true;
+    mThread = new Thread(this, "Simulation");
+    mThread.start();
+  }
+
+  public synchronized void stop() {
+    if (mThread == null)
+      return;
+    mRunning = false;
+    mThread.interrupt();
+    try {
+      mThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    mThread = null;
+  }
+
+  public boolean isThreaded() {
+    return mThreaded;
+  }
+
+  @Override
+  public void run() {
+    // pick up where the render loop left off, without replaying the time spent paused
+    mStarted = false;
+    while (mRunning) {
+      advance(System.nanoTime());
+      final long sleepNanos = mSimulatedUpToNanos + mStepNanos - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          Thread.sleep(sleepNanos / 1000000L, (int) (sleepNanos % 1000000L));
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+  public long getStepCount() {
+    return mStepCount;
+  }
+
+  private static class Snapshot {
+    final SimulationState previous = new SimulationState();
+    final SimulationState current = new SimulationState();
+    long timeNanos;
+  }
+}
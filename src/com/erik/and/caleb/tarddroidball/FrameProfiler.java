@@ -0,0 +1,175 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Times the phases of each frame with System.nanoTime() and keeps p50, p95,
+ * p99 and max for every phase, for the whole frame and for the interval
+ * between frames, plus per-frame GL counters. Everything is recorded into
+ * preallocated {@link LogLinearHistogram}s, so a profiled frame costs a clock
+ * read per phase and allocates nothing. Callers that are not profiling simply
+ * hold no FrameProfiler.
+ * <p/>
+ * Frames go into a window that is folded into the session totals every
+ * report interval; the listener is told whenever a new window report is ready.
+ * Recording must happen on one thread; reports may be read from any.
+ */
+public class FrameProfiler {
+
+  private static final int COUNTER_GL_CALLS = 0;
+  private static final int COUNTER_DRAW_CALLS = 1;
+  private static final int COUNTER_VERTICES = 2;
+  private static final int COUNTER_TEXTURE_BINDS = 3;
+  private static final String[] COUNTER_NAMES = {"gl calls", "draw calls", "vertices", "texture binds"};
+
+  private static final long REPORT_INTERVAL_NANOS = 1000000000L;
+
+  private final String[] mPhaseNames;
+  private final LogLinearHistogram[] mPhases;
+  private final LogLinearHistogram mFrame = new LogLinearHistogram();
+  private final LogLinearHistogram mInterval = new LogLinearHistogram();
+  private final LogLinearHistogram[] mCounters = new LogLinearHistogram[COUNTER_NAMES.length];
+  private final LogLinearHistogram[] mTotalPhases;
+  private final LogLinearHistogram mTotalFrame = new LogLinearHistogram();
+  private final LogLinearHistogram mTotalInterval = new LogLinearHistogram();
+  private final LogLinearHistogram[] mTotalCounters = new LogLinearHistogram[COUNTER_NAMES.length];
+
+  private long mFrameStartNanos;
+  private long mLastMarkNanos;
+  private long mWindowStartNanos;
+  private Runnable mReportListener;
+  private volatile String mLastReport = "";
+
+  public FrameProfiler(String... phaseNames) {
+    mPhaseNames = phaseNames.clone();
+    mPhases = new LogLinearHistogram[phaseNames.length];
+    mTotalPhases = new LogLinearHistogram[phaseNames.length];
+    for (int i = 0; i < phaseNames.length; i++) {
+      mPhases[i] = new LogLinearHistogram();
+      mTotalPhases[i] = new LogLinearHistogram();
+    }
+    for (int i = 0; i < COUNTER_NAMES.length; i++) {
+      mCounters[i] = new LogLinearHistogram();
+      mTotalCounters[i] = new LogLinearHistogram();
+    }
+  }
+
+  /**
+   * Run on the recording thread, with {@link #getLastReport()} fresh, once per report interval.
+   */
+  public void setReportListener(Runnable reportListener) {
+    mReportListener = reportListener;
+  }
+
+  public void beginFrame() {
+    final long now = System.nanoTime();
+    if (mFrameStartNanos != 0)
+      mInterval.record(now - mFrameStartNanos);
+    else
+      mWindowStartNanos = now;
+    mFrameStartNanos = now;
+    mLastMarkNanos = now;
+  }
+
+  /**
+   * Charges the time since the frame began or the previous phase ended to phase.
+   */
+  public void endPhase(int phase) {
+    final long now = System.nanoTime();
+    mPhases[phase].record(now - mLastMarkNanos);
+    mLastMarkNanos = now;
+  }
+
+  public void endFrame(int glCalls, int drawCalls, int vertices, int textureBinds) {
+    final long now = System.nanoTime();
+    mFrame.record(now - mFrameStartNanos);
+    mCounters[COUNTER_GL_CALLS].record(glCalls);
+    mCounters[COUNTER_DRAW_CALLS].record(drawCalls);
+    mCounters[COUNTER_VERTICES].record(vertices);
+    mCounters[COUNTER_TEXTURE_BINDS].record(textureBinds);
+    final long windowNanos = now - mWindowStartNanos;
+    if (windowNanos >= REPORT_INTERVAL_NANOS) {
+      mWindowStartNanos = now;
+      closeWindow(windowNanos);
+      if (mReportListener != null)
+        mReportListener.run();
+    }
+  }
+
+  /**
+   * @return a short summary of the last report interval, for an overlay or a log line
+   */
+  public String getLastReport() {
+    return mLastReport;
+  }
+
+  /**
+   * Writes percentiles over everything recorded so far. Call while no frames
+   * are being recorded, e.g. after GLSurfaceView.onPause().
+   */
+  public void writeReport(Writer out) throws IOException {
+    final StringBuilder report = new StringBuilder();
+    synchronized (this) {
+      closeWindow(0);
+      report.append(String.format("%d frames%n", mTotalFrame.getCount()));
+      report.append(String.format("%-14s %10s %10s %10s %10s %10s%n", "ms", "mean", "p50", "p95", "p99", "max"));
+      appendMillis(report, "frame", mTotalFrame);
+      appendMillis(report, "interval", mTotalInterval);
+      for (int i = 0; i < mPhaseNames.length; i++)
+        appendMillis(report, mPhaseNames[i], mTotalPhases[i]);
+      report.append(String.format("%-14s %10s %10s %10s %10s %10s%n", "per frame", "mean", "p50", "p95", "p99", "max"));
+      for (int i = 0; i < COUNTER_NAMES.length; i++) {
+        final LogLinearHistogram h = mTotalCounters[i];
+        report.append(String.format("%-14s %10.1f %10d %10d %10d %10d%n", COUNTER_NAMES[i], h.getMean(),
+            h.getValueAtPercentile(50), h.getValueAtPercentile(95), h.getValueAtPercentile(99), h.getMax()));
+      }
+    }
+    out.write(report.toString());
+  }
+
+  /**
+   * Folds the window into the totals, first summarizing it if windowNanos is not 0.
+   */
+  private synchronized void closeWindow(long windowNanos) {
+    if (windowNanos != 0)
+      mLastReport = summarizeWindow(windowNanos);
+    mTotalFrame.add(mFrame);
+    mFrame.reset();
+    mTotalInterval.add(mInterval);
+    mInterval.reset();
+    for (int i = 0; i < mPhases.length; i++) {
+      mTotalPhases[i].add(mPhases[i]);
+      mPhases[i].reset();
+    }
+    for (int i = 0; i < mCounters.length; i++) {
+      mTotalCounters[i].add(mCounters[i]);
+      mCounters[i].reset();
+    }
+  }
+
+  private String summarizeWindow(long windowNanos) {
+    final StringBuilder summary = new StringBuilder();
+    summary.append(String.format("%-9s %5s %5s %5s ms%n",
+        String.format("%.0f fps", mInterval.getCount() * 1e9 / windowNanos), "p50", "p99", "max"));
+    appendShortMillis(summary, "frame", mFrame);
+    appendShortMillis(summary, "interval", mInterval);
+    for (int i = 0; i < mPhaseNames.length; i++)
+      appendShortMillis(summary, mPhaseNames[i], mPhases[i]);
+    summary.append(String.format("max/frame: %d gl calls, %d draws, %d vertices, %d binds",
+        mCounters[COUNTER_GL_CALLS].getMax(), mCounters[COUNTER_DRAW_CALLS].getMax(),
+        mCounters[COUNTER_VERTICES].getMax(), mCounters[COUNTER_TEXTURE_BINDS].getMax()));
+    return summary.toString();
+  }
+
+  private static void appendMillis(StringBuilder out, String name, LogLinearHistogram h) {
+    out.append(String.format("%-14s %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, h.getMean() / 1e6,
+        h.getValueAtPercentile(50) / 1e6, h.getValueAtPercentile(95) / 1e6, h.getValueAtPercentile(99) / 1e6,
+        h.getMax() / 1e6));
+  }
+
+  private static void appendShortMillis(StringBuilder out, String name, LogLinearHistogram h) {
+    out.append(String.format("%-9s %5.1f %5.1f %5.1f%n", name, h.getValueAtPercentile(50) / 1e6,
+        h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6));
+  }
+}
@@ -0,0 +1,62 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * The six clip planes of a view-projection matrix, for rejecting objects that
+ * cannot be on screen before they are drawn. Planes point inwards and are
+ * normalized, so plane distances are in world units.
+ */
+public class Frustum {
+
+  public static final int OUTSIDE = 0;
+  public static final int INTERSECTING = 1;
+  public static final int INSIDE = 2;
+
+  // a, b, c, d per plane: left, right, bottom, top, near, far
+  private final float[] mPlanes = new float[24];
+
+  /**
+   * Extracts the planes from a column-major view-projection matrix (Gribb and Hartmann).
+   */
+  public void set(float[] viewProjection, int offset) {
+    final float[] m = viewProjection;
+    for (int plane = 0; plane < 6; plane++) {
+      final int row = plane / 2;
+      final float sign = (plane & 1) == 0 ? 1.0f : -1.0f;
+      final float a = m[offset + 3] + sign * m[offset + row];
+      final float b = m[offset + 7] + sign * m[offset + 4 + row];
+      final float c = m[offset + 11] + sign * m[offset + 8 + row];
+      final float d = m[offset + 15] + sign * m[offset + 12 + row];
+      final float length = (float) Math.sqrt(a * a + b * b + c * c);
+      mPlanes[plane * 4] = a / length;
+      mPlanes[plane * 4 + 1] = b / length;
+      mPlanes[plane * 4 + 2] = c / length;
+      mPlanes[plane * 4 + 3] = d / length;
+    }
+  }
+
+  public boolean intersectsSphere(float x, float y, float z, float radius) {
+    final float[] p = mPlanes;
+    for (int i = 0; i < 24; i += 4) {
+      if (p[i] * x + p[i + 1] * y + p[i + 2] * z + p[i + 3] < -radius)
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return {@link #OUTSIDE}, {@link #INTERSECTING} or {@link #INSIDE}
+   */
+  public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    final float[] p = mPlanes;
+    int result = INSIDE;
+    for (int i = 0; i < 24; i += 4) {
+      final float a = p[i], b = p[i + 1], c = p[i + 2], d = p[i + 3];
+      // the corner furthest along the plane normal, then the one furthest against it
+      if (a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d < 0)
+        return OUTSIDE;
+      if (a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d < 0)
+        result = INTERSECTING;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,322 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+
+/**
+ * Sits between the renderer and the {@link Gl} and shadows the state the renderer
+ * touches every frame: bound program, active texture unit and the texture
+ * bound on each unit, buffer bindings, enabled vertex attribute arrays and
+ * the current values of disabled ones, blend/depth/cull enables and the viewport. Calls that would not change the
+ * shadowed state are dropped before they reach the driver.
+ * <p/>
+ * Anything that talks to the {@link Gl} directly (texture loading, buffer
+ * uploads) must be followed by {@link #invalidate()}, and so must a lost context.
+ */
+public class GlStateTracker {
+
+  private static final int UNKNOWN = -1;
+  private static final int MAX_TEXTURE_UNITS = 8;
+  private static final int MAX_VERTEX_ATTRIBS = 16;
+
+  private final Gl mGl;
+  private int mProgram;
+  private int mActiveTextureUnit;
+  private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+  private int mArrayBuffer;
+  private int mElementArrayBuffer;
+  // one bit per attribute array, valid only where the matching bit of mKnownAttribArrays is set
+  private int mEnabledAttribArrays;
+  private int mKnownAttribArrays;
+  // four floats per attribute, valid only where the matching bit of mKnownAttribValues is set
+  private final float[] mAttribValues = new float[MAX_VERTEX_ATTRIBS * 4];
+  private int mKnownAttribValues;
+  private int mBlend;
+  private int mDepthTest;
+  private int mCullFace;
+  private int mBlendSrc;
+  private int mBlendDst;
+  private final int[] mViewport = new int[4];
+
+  private int mIssuedCalls;
+  private int mElidedCalls;
+  private int mDrawCalls;
+  private int mVertices;
+  private int mTextureBinds;
+  private int mLastFrameIssuedCalls;
+  private int mLastFrameElidedCalls;
+  private int mLastFrameDrawCalls;
+
+  public GlStateTracker(Gl gl) {
+    mGl = gl;
+    invalidate();
+  }
+
+  /**
+   * @return the GL every call goes to, for the code that shares this tracker
+   */
+  public Gl getGl() {
+    return mGl;
+  }
+
+  /**
+   * Forgets everything, so the next call of every kind goes through to the driver.
+   */
+  public void invalidate() {
+    mProgram = UNKNOWN;
+    mActiveTextureUnit = UNKNOWN;
+    for (int i = 0; i < MAX_TEXTURE_UNITS; i++)
+      mBoundTextures[i] = UNKNOWN;
+    mArrayBuffer = UNKNOWN;
+    mElementArrayBuffer = UNKNOWN;
+    mEnabledAttribArrays = 0;
+    mKnownAttribArrays = 0;
+    mKnownAttribValues = 0;
+    mBlend = UNKNOWN;
+    mDepthTest = UNKNOWN;
+    mCullFace = UNKNOWN;
+    mBlendSrc = UNKNOWN;
+    mBlendDst = UNKNOWN;
+    for (int i = 0; i < 4; i++)
+      mViewport[i] = UNKNOWN;
+  }
+
+  /**
+   * Closes the previous frame's counters and starts counting a new frame.
+   */
+  public void beginFrame() {
+    mLastFrameIssuedCalls = mIssuedCalls;
+    mLastFrameElidedCalls = mElidedCalls;
+    mLastFrameDrawCalls = mDrawCalls;
+    mIssuedCalls = 0;
+    mElidedCalls = 0;
+    mDrawCalls = 0;
+    mVertices = 0;
+    mTextureBinds = 0;
+  }
+
+  public void useProgram(int program) {
+    if (mProgram == program) {
+      mElidedCalls++;
+      return;
+    }
+    mProgram = program;
+    mIssuedCalls++;
+    mGl.glUseProgram(program);
+  }
+
+  /**
+   * Binds a 2D texture on the given unit, switching the active unit only if needed.
+   */
+  public void bindTexture(int unit, int texture) {
+    if (mBoundTextures[unit] == texture) {
+      mElidedCalls++;
+      return;
+    }
+    activeTexture(unit);
+    mBoundTextures[unit] = texture;
+    mIssuedCalls++;
+    mTextureBinds++;
+    mGl.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+  }
+
+  private void activeTexture(int unit) {
+    if (mActiveTextureUnit == unit) {
+      mElidedCalls++;
+      return;
+    }
+    mActiveTextureUnit = unit;
+    mIssuedCalls++;
+    mGl.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+  }
+
+  public void bindArrayBuffer(int buffer) {
+    if (mArrayBuffer == buffer) {
+      mElidedCalls++;
+      return;
+    }
+    mArrayBuffer = buffer;
+    mIssuedCalls++;
+    mGl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffer);
+  }
+
+  public void bindElementArrayBuffer(int buffer) {
+    if (mElementArrayBuffer == buffer) {
+      mElidedCalls++;
+      return;
+    }
+    mElementArrayBuffer = buffer;
+    mIssuedCalls++;
+    mGl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffer);
+  }
+
+  /**
+   * Attribute pointers depend on the bound array buffer, so they are always issued.
+   */
+  public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+    mIssuedCalls++;
+    mGl.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+  }
+
+  public void enableVertexAttribArray(int index) {
+    final int bit = 1 << index;
+    if ((mKnownAttribArrays & bit) != 0 && (mEnabledAttribArrays & bit) != 0) {
+      mElidedCalls++;
+      return;
+    }
+    mKnownAttribArrays |= bit;
+    mEnabledAttribArrays |= bit;
+    mIssuedCalls++;
+    mGl.glEnableVertexAttribArray(index);
+  }
+
+  public void disableVertexAttribArray(int index) {
+    final int bit = 1 << index;
+    if ((mKnownAttribArrays & bit) != 0 && (mEnabledAttribArrays & bit) == 0) {
+      mElidedCalls++;
+      return;
+    }
+    mKnownAttribArrays |= bit;
+    mEnabledAttribArrays &= ~bit;
+    mIssuedCalls++;
+    mGl.glDisableVertexAttribArray(index);
+  }
+
+  /**
+   * Sets the value a disabled attribute array reads for every vertex.
+   */
+  public void vertexAttrib4f(int index, float x, float y, float z, float w) {
+    final int bit = 1 << index;
+    final int at = index * 4;
+    if ((mKnownAttribValues & bit) != 0 && mAttribValues[at] == x && mAttribValues[at + 1] == y
+        && mAttribValues[at + 2] == z && mAttribValues[at + 3] == w) {
+      mElidedCalls++;
+      return;
+    }
+    mKnownAttribValues |= bit;
+    mAttribValues[at] = x;
+    mAttribValues[at + 1] = y;
+    mAttribValues[at + 2] = z;
+    mAttribValues[at + 3] = w;
+    mIssuedCalls++;
+    mGl.glVertexAttrib4f(index, x, y, z, w);
+  }
+
+  public void setBlend(boolean enabled) {
+    mBlend = setCapability(GLES20.GL_BLEND, mBlend, enabled);
+  }
+
+  public void setDepthTest(boolean enabled) {
+    mDepthTest = setCapability(GLES20.GL_DEPTH_TEST, mDepthTest, enabled);
+  }
+
+  public void setCullFace(boolean enabled) {
+    mCullFace = setCapability(GLES20.GL_CULL_FACE, mCullFace, enabled);
+  }
+
+  private int setCapability(int capability, int current, boolean enabled) {
+    final int wanted = enabled ? 1 : 0;
+    if (current == wanted) {
+      mElidedCalls++;
+      return current;
+    }
+    mIssuedCalls++;
+    if (enabled)
+      mGl.glEnable(capability);
+    else
+      mGl.glDisable(capability);
+    return wanted;
+  }
+
+  public void blendFunc(int src, int dst) {
+    if (mBlendSrc == src && mBlendDst == dst) {
+      mElidedCalls++;
+      return;
+    }
+    mBlendSrc = src;
+    mBlendDst = dst;
+    mIssuedCalls++;
+    mGl.glBlendFunc(src, dst);
+  }
+
+  public void viewport(int x, int y, int width, int height) {
+    if (mViewport[0] == x && mViewport[1] == y && mViewport[2] == width && mViewport[3] == height) {
+      mElidedCalls++;
+      return;
+    }
+    mViewport[0] = x;
+    mViewport[1] = y;
+    mViewport[2] = width;
+    mViewport[3] = height;
+    mIssuedCalls++;
+    mGl.glViewport(x, y, width, height);
+  }
+
+  public void drawElements(int mode, int count, int type, int offset) {
+    mIssuedCalls++;
+    mDrawCalls++;
+    mVertices += count;
+    mGl.glDrawElements(mode, count, type, offset);
+  }
+
+  public void drawArrays(int mode, int first, int count) {
+    mIssuedCalls++;
+    mDrawCalls++;
+    mVertices += count;
+    mGl.glDrawArrays(mode, first, count);
+  }
+
+  /**
+   * Lets callers that shadow state of their own (uniform uploads) show up in the counters.
+   */
+  public void countCall(boolean elided) {
+    if (elided)
+      mElidedCalls++;
+    else
+      mIssuedCalls++;
+  }
+
+  public int getIssuedCalls() {
+    return mIssuedCalls;
+  }
+
+  public int getElidedCalls() {
+    return mElidedCalls;
+  }
+
+  public int getDrawCalls() {
+    return mDrawCalls;
+  }
+
+  /**
+   * @return vertices submitted by draw calls this frame, counting each index of an indexed draw
+   */
+  public int getVertices() {
+    return mVertices;
+  }
+
+  /**
+   * @return texture binds that reached the driver this frame
+   */
+  public int getTextureBinds() {
+    return mTextureBinds;
+  }
+
+  public int getLastFrameIssuedCalls() {
+    return mLastFrameIssuedCalls;
+  }
+
+  public int getLastFrameElidedCalls() {
+    return mLastFrameElidedCalls;
+  }
+
+  public int getLastFrameDrawCalls() {
+    return mLastFrameDrawCalls;
+  }
+
+  @Override
+  public String toString() {
+    return "GL calls last frame: " + mLastFrameIssuedCalls + " issued, " + mLastFrameElidedCalls
+        + " elided, " + mLastFrameDrawCalls + " draws";
+  }
+}
@@ -15,17 +15,83 @@ import android.content.Context;
 import android.content.pm.ConfigurationInfo;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
 import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 
 public class GraphicsActivity extends Activity {
+  private static final String TAG = "GraphicsActivity";
+
+  /**
+   * Launch with e.g. {@code adb shell am start -n com.erik.and.caleb.tarddroidball/.GraphicsActivity --ei stress_tardis_count 1000}
+   * to spawn that many extra TARDISes and log frame time and draw calls.
+   */
+  public static final String EXTRA_STRESS_TARDIS_COUNT = "stress_tardis_count";
+  /**
+   * Boolean extra; logs when the frame loop or touch handling allocate after warming up.
+   */
+  public static final String EXTRA_CHECK_ALLOCATIONS = "check_allocations";
+  /**
+   * Boolean extras; log frame/touch latency stats, and extrapolate drags to the expected display time.
+   */
+  public static final String EXTRA_LOG_FRAME_STATS = "log_frame_stats";
+  public static final String EXTRA_TOUCH_PREDICTION = "touch_prediction";
+  /**
+   * Boolean extra; steps the simulation on its own thread rather than from the render loop.
+   */
+  public static final String EXTRA_THREADED_SIMULATION = "threaded_simulation";
+  /**
+   * Boolean extra; decodes the PNG drawables at startup instead of loading the compiled
+   * ETC1 atlas, to compare the "Uploaded" log lines from TextureAtlas.
+   */
+  public static final String EXTRA_PNG_TEXTURES = "png_textures";
+  /**
+   * Boolean extra; waits for every asset in onSurfaceCreated instead of drawing placeholder
+   * frames while they load, to compare the "Time to first frame" log lines.
+   */
+  public static final String EXTRA_BLOCKING_LOAD = "blocking_load";
+  /**
+   * Boolean extra; builds the shader permutation that lights per vertex instead of per fragment.
+   */
+  public static final String EXTRA_VERTEX_LIGHTING = "vertex_lighting";
+  /**
+   * Boolean extra; draws the ground as the old textured box instead of voxel chunks.
+   */
+  public static final String EXTRA_BOX_GROUND = "box_ground";
+  /**
+   * Boolean extras; time every phase of the frame loop, and show the percentiles on screen.
+   * A session report goes to files/frame_profile.txt whenever the activity pauses, readable
+   * with {@code adb shell run-as com.erik.and.caleb.tarddroidball cat files/frame_profile.txt}.
+   */
+  public static final String EXTRA_PROFILE_FRAMES = "profile_frames";
+  public static final String EXTRA_PROFILE_OVERLAY = "profile_overlay";
+  private static final String FRAME_PROFILE_FILE = "frame_profile.txt";
+  /**
+   * Int extra; records every GL call through that many frames into files/gl_trace.bin,
+   * for tools/src/.../trace/GlTraceAnalyzer.
+   */
+  public static final String EXTRA_RECORD_GL_TRACE = "record_gl_trace";
+  private static final String GL_TRACE_FILE = "gl_trace.bin";
+
+
   private GLSurfaceView mGLSurfaceView;
   private GraphicsRenderer mRenderer;
   private Button homeTardisButton;
   private float mPreviousX;
   private float mPreviousY;
+  private final MotionEvent.PointerCoords mPointerCoords = new MotionEvent.PointerCoords();
+  private AllocationMonitor mTouchAllocations;
+  private FrameProfiler mProfiler;
 
 
   @Override
@@ -41,6 +107,25 @@ public class GraphicsActivity extends Activity {
     if (supportsEs2) {
       mGLSurfaceView.setEGLContextClientVersion(2);
       mRenderer = new GraphicsRenderer(this);
+      mRenderer.setStressTardisCount(getIntent().getIntExtra(EXTRA_STRESS_TARDIS_COUNT, 0));
+      if (getIntent().getBooleanExtra(EXTRA_LOG_FRAME_STATS, false))
+        mRenderer.setLogFrameStats(true);
+      mRenderer.setTouchPrediction(getIntent().getBooleanExtra(EXTRA_TOUCH_PREDICTION, false));
+      mRenderer.setThreadedSimulation(getIntent().getBooleanExtra(EXTRA_THREADED_SIMULATION, false));
+      mRenderer.setCompressedTextures(!getIntent().getBooleanExtra(EXTRA_PNG_TEXTURES, false));
+      mRenderer.setBlockingLoad(getIntent().getBooleanExtra(EXTRA_BLOCKING_LOAD, false));
+      mRenderer.setVertexLighting(getIntent().getBooleanExtra(EXTRA_VERTEX_LIGHTING, false));
+      mRenderer.setVoxelTerrain(!getIntent().getBooleanExtra(EXTRA_BOX_GROUND, false));
+      final boolean profileOverlay = getIntent().getBooleanExtra(EXTRA_PROFILE_OVERLAY, false);
+      mRenderer.setProfileFrames(profileOverlay || getIntent().getBooleanExtra(EXTRA_PROFILE_FRAMES, false));
+      mProfiler = mRenderer.getFrameProfiler();
+      final int traceFrames = getIntent().getIntExtra(EXTRA_RECORD_GL_TRACE, 0);
+      if (traceFrames > 0)
+        recordGlTrace(traceFrames);
+      if (getIntent().getBooleanExtra(EXTRA_CHECK_ALLOCATIONS, false)) {
+        mRenderer.setCheckAllocations(true);
+        mTouchAllocations = new AllocationMonitor("onTouchEvent", 10);
+      }
       mGLSurfaceView.setRenderer(mRenderer);
     } else {
       return;
@@ -53,17 +138,35 @@ public class GraphicsActivity extends Activity {
     homeTardisButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View view) {
-        if (mRenderer.mFingers.size() > 0)
-          mRenderer.mFingers.get(0).setHomeTardis(true);
-        else
-          mRenderer.mFingers.add(0, new Finger(true));
+        mRenderer.homeTardis(System.nanoTime());
       }
     });
+
+    if (mProfiler != null && getIntent().getBooleanExtra(EXTRA_PROFILE_OVERLAY, false)) {
+      final TextView overlay = (TextView) findViewById(R.id.txt_frame_profile);
+      overlay.setVisibility(View.VISIBLE);
+      final Runnable showReport = new Runnable() {
+        @Override
+        public void run() {
+          overlay.setText(mProfiler.getLastReport());
+        }
+      };
+      // the profiler reports on the GL thread
+      mProfiler.setReportListener(new Runnable() {
+        @Override
+        public void run() {
+          overlay.post(showReport);
+        }
+      });
+    }
   }
 
   @Override
   protected void onResume() {
     super.onResume();
+    // the simulation is running before the GL thread draws with it
+    if (mRenderer != null)
+      mRenderer.onResume();
     mGLSurfaceView.onResume();
   }
 
@@ -71,54 +174,97 @@ public class GraphicsActivity extends Activity {
   protected void onPause() {
     super.onPause();
     mGLSurfaceView.onPause();
+    if (mRenderer != null)
+      mRenderer.onPause();
+    if (mProfiler != null)
+      writeFrameProfile();
+  }
+
+  private void recordGlTrace(int frames) {
+    final File file = new File(getFilesDir(), GL_TRACE_FILE);
+    try {
+      mRenderer.setRecordGlTrace(new BufferedOutputStream(new FileOutputStream(file), 65536), frames);
+      Log.d(TAG, "Recording " + frames + " frames of GL calls to " + file);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not record to " + file, e);
+    }
+  }
+
+  private void writeFrameProfile() {
+    // the GL thread is paused by now, so the profiler is not recording
+    final File file = new File(getFilesDir(), FRAME_PROFILE_FILE);
+    try {
+      final Writer out = new FileWriter(file);
+      try {
+        mProfiler.writeReport(out);
+      } finally {
+        out.close();
+      }
+      Log.d(TAG, "Frame profile written to " + file);
+    } catch (IOException e) {
+      Log.w(TAG, "Could not write " + file, e);
+    }
   }
 
   @Override
   public boolean onTouchEvent(MotionEvent e) {
+    if (mTouchAllocations != null)
+      mTouchAllocations.begin();
 
+    final MotionEvent.PointerCoords finger = mPointerCoords;
+    // event times are uptime milliseconds, the same clock System.nanoTime() counts in
+    final long eventTimeNanos = e.getEventTime() * 1000000L;
     switch (e.getAction()) {
       case MotionEvent.ACTION_MOVE:
 
-        mRenderer.mFingers.clear();
-        MotionEvent.PointerCoords finger = new MotionEvent.PointerCoords();
+        // Samples the panel delivered since the last event are batched into this one as history
+        final int historySize = e.getHistorySize();
         if (e.getPointerCount() == 1) {
-          for (int i = 0; i < e.getPointerCount(); i++) {
-            e.getPointerCoords(i, finger);
-
-            float fx = finger.x;
-            float fy = finger.y;
-            float dx = fx - mPreviousX;
-            float dy = -(fy - mPreviousY);
-            mPreviousX = fx;
-            mPreviousY = fy;
-            mRenderer.mFingers.add(new Finger(fx, dx * 0.01f, fy, dy * 0.01f));
-          }
+          for (int h = 0; h < historySize; h++)
+            publishMove(e.getHistoricalX(0, h), e.getHistoricalY(0, h), e.getHistoricalEventTime(h) * 1000000L);
+          e.getPointerCoords(0, finger);
+          publishMove(finger.x, finger.y, eventTimeNanos);
         } else if (e.getPointerCount() == 2) {
+          for (int h = 0; h < historySize; h++)
+            publishRotate(e.getHistoricalX(0, h), e.getHistoricalY(0, h), e.getHistoricalEventTime(h) * 1000000L);
           e.getPointerCoords(0, finger);
-
-          float dx = finger.x - mPreviousX;
-          float dy = -(finger.y - mPreviousY);
-          mPreviousX = finger.x;
-          mPreviousY = finger.y;
-
-          mRenderer.mFingers.add(new Finger(dx, dy));
+          publishRotate(finger.x, finger.y, eventTimeNanos);
+        } else {
+          mRenderer.onFingersLifted(eventTimeNanos);
         }
         break;
 
       case MotionEvent.ACTION_DOWN:
-        MotionEvent.PointerCoords finger0 = new MotionEvent.PointerCoords();
         if (e.getPointerCount() > 0) {
-          e.getPointerCoords(0, finger0);
-          mPreviousX = finger0.x;
-          mPreviousY = finger0.y;
+          e.getPointerCoords(0, finger);
+          mPreviousX = finger.x;
+          mPreviousY = finger.y;
         }
         break;
 
       case MotionEvent.ACTION_UP:
-        mRenderer.mFingers.clear();
+        mRenderer.onFingersLifted(eventTimeNanos);
         break;
     }
 
+    if (mTouchAllocations != null)
+      mTouchAllocations.end();
     return true;
   }
-}
\ No newline at end of file
+
+  private void publishMove(float x, float y, long timeNanos) {
+    float dx = x - mPreviousX;
+    float dy = -(y - mPreviousY);
+    mPreviousX = x;
+    mPreviousY = y;
+    mRenderer.onFingerMoved(x, dx * 0.01f, y, dy * 0.01f, timeNanos);
+  }
+
+  private void publishRotate(float x, float y, long timeNanos) {
+    float dx = x - mPreviousX;
+    float dy = -(y - mPreviousY);
+    mPreviousX = x;
+    mPreviousY = y;
+    mRenderer.onFingersRotated(dx, dy, timeNanos);
+  }
+}
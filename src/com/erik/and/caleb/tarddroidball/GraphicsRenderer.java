@@ -1,80 +1,160 @@
 package com.erik.and.caleb.tarddroidball;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.Matrix;
 import android.os.SystemClock;
+import android.util.Log;
+import com.erik.and.caleb.tarddroidball.gl.AndroidGl;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+import com.erik.and.caleb.tarddroidball.gl.RecordingGl;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
 import com.learnopengles.android.RawResourceReader;
-import com.learnopengles.android.ShaderHelper;
 import com.learnopengles.android.TextureHelper;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 public class GraphicsRenderer implements GLSurfaceView.Renderer {
 
-  public volatile CopyOnWriteArrayList<Finger> mFingers;
-  private ArrayList<CoolMatrix> mObjectMatrices;
+  private static final String TAG = "GraphicsRenderer";
+
+  // input, physics, posing and culling; the renderer only draws what it leaves
+  private final TardisScene mTardisScene = new TardisScene();
+  private final SceneGraph mScene = mTardisScene.getScene();
+  private final int mLightNode = mTardisScene.getLightNode();
+  private MeshBounds mGroundBounds;
 
   private final Context mActivityContext;
+  private Gl mGl = new AndroidGl();
+  private GlStateTracker mState = new GlStateTracker(mGl);
+  private RecordingGl mRecorder;
+  private AllocationMonitor mFrameAllocations;
+
+  private static final int PHASE_CLEAR = 0;
+  private static final int PHASE_SIMULATION = 1;
+  private static final int PHASE_INPUT = 2;
+  private static final int PHASE_SCENE = 3;
+  private static final int PHASE_SETUP = 4;
+  private static final int PHASE_GROUND = 5;
+  private static final int PHASE_TARDISES = 6;
+  private static final int PHASE_LIGHT = 7;
+  private FrameProfiler mProfiler;
 
   private float[] mProjectionMatrix = new float[16];
   private float[] mViewMatrix = new float[16];
-  private float[] mMVPMatrix = new float[16];
-  private float[] mLightModelMatrix = new float[16];
-
-  private final FloatBuffer mCubePositions;
-  private final FloatBuffer mCubeColors;
-  private final FloatBuffer mCubeNormals;
-  private final FloatBuffer mCubeTextureCoordinates;
-  private final FloatBuffer mTardisPositions;
-  private final FloatBuffer mTardisTextureCoordinates;
-
-  private int mMVPMatrixHandle;
-  private int mMVMatrixHandle;
-  private int mLightPosHandle;
-  private int mTextureUniformHandle;
-  private int mPositionHandle;
-  private int mColorHandle;
-  private int mNormalHandle;
-  private int mTextureCoordinateHandle;
-
-  private final int mBytesPerFloat = 4;
-  private final int mPositionDataSize = 3;
-  private final int mColorDataSize = 4;
-  private final int mNormalDataSize = 3;
-  private final int mTextureCoordinateDataSize = 2;
+
+  // read and built on the loader's workers; the GL objects made from them are queued in onSurfaceCreated
+  private static final long UPLOAD_BUDGET_NANOS = 4000000L;
+  private final AssetLoader mLoader = new AssetLoader(AssetLoader.defaultThreadCount());
+  private final ShaderPreprocessor mShaderPreprocessor;
+  private ShaderCache mShaderCache;
+  private ShaderPermutation mShaderPermutation = ShaderPermutation.NONE;
+  private final Future<TextureAtlas> mAtlasLoad;
+  private final Future<IndexedMesh> mGroundMeshLoad;
+  private final Future<IndexedMesh> mTardisMeshLoad;
+  private boolean mLoaded;
+  private boolean mBlockingLoad;
+  private final long mCreatedNanos = System.nanoTime();
+  private long mSurfaceCreatedNanos;
+  private long mPlaceholderFrameNanos;
+  private int mLoadingFrames;
+  private boolean mFirstFrameReported;
+
+  private VertexBuffer mGroundBuffer;
+
+  // the ground as chunks of blocks, one block to a unit, streamed in around the green TARDIS, generated and meshed on the loader's workers
+  private static final int TERRAIN_CHUNKS = 64;
+  private static final int TERRAIN_RADIUS = 1;
+  private static final long TERRAIN_BUDGET_BYTES = 2L * 1024 * 1024;
+  private static final long TERRAIN_SEED = 0x7a4d15L;
+  // saved chunks are only good for the generator that made them
+  private static final String TERRAIN_DIRECTORY = "terrain-" + TerrainGenerator.VERSION + "-" + TERRAIN_SEED;
+  // the block at the scene's origin, in the middle of a chunk in the middle of the world
+  private static final int TERRAIN_ORIGIN_X = TERRAIN_CHUNKS / 2 * VoxelChunk.WIDTH + VoxelChunk.WIDTH / 2;
+  private static final int TERRAIN_ORIGIN_Z = TERRAIN_CHUNKS / 2 * VoxelChunk.DEPTH + VoxelChunk.DEPTH / 2;
+  // blocks of ground below where the box ground's top was, which the TARDISes stand on
+  private static final int TERRAIN_SURFACE = 40;
+  private static final float GROUND_CENTER_Z = -7.0f;
+  // in the order of ChunkMesher's textures
+  private static final int[] TERRAIN_DRAWABLES = {R.drawable.grass_side, R.drawable.grass_top, R.drawable.dirt,
+      R.drawable.stone, R.drawable.sand};
+  private boolean mVoxelTerrain = true;
+  private ChunkStreamer mStreamer;
+  // the newest mesh of each resident chunk, by index in the world, kept to upload again for a new context
+  private final HashMap<Integer, Future<ChunkMesh>> mChunkMeshLoads = new HashMap<Integer, Future<ChunkMesh>>();
+  private final ThreadLocal<ChunkMesher> mChunkMeshers = new ThreadLocal<ChunkMesher>() {
+    @Override
+    protected ChunkMesher initialValue() {
+      return new ChunkMesher();
+    }
+  };
+  private Future<ChunkRenderer> mChunkRendererLoad;
+  private ChunkRenderer mChunkRenderer;
+  private int[] mChunkAttributeHandles;
+  private final int[] mChunkTextureHandles = new int[ChunkMesher.TEXTURE_COUNT];
+  // per slot of the chunk renderer
+  private boolean[] mChunkVisible = new boolean[0];
+  private BatchedMeshRenderer mTardisBatch;
+  private ShaderProgram mPaletteProgram;
+
+  private ShaderProgram.Uniform mMVPMatrixUniform;
+  private ShaderProgram.Uniform mMVMatrixUniform;
+  private ShaderProgram.Uniform mLightPosUniform;
+  private ShaderProgram.Uniform mTextureUniform;
+  private ShaderProgram.Uniform mAtlasRectUniform;
+  private ShaderProgram.Uniform mPointMVPMatrixUniform;
+  private int mPointPositionHandle;
+  private int[] mAttributeHandles;
+
+  /**
+   * 20 bytes a vertex against 48 as floats with a color. Positions stay
+   * floats: quantizing them would need a scale folded into the model matrix,
+   * and the shaders transform normals by that same matrix. Every surface is
+   * white, so the color is a constant instead of an array.
+   */
+  private static final VertexLayout SCENE_LAYOUT = new VertexLayout.Builder()
+      .add("a_Position", 3, VertexLayout.TYPE_FLOAT, false)
+      .add("a_Normal", 3, VertexLayout.TYPE_BYTE, true)
+      .add("a_TexCoordinate", 2, VertexLayout.TYPE_UNSIGNED_SHORT, true)
+      .constant("a_Color", 1.0f, 1.0f, 1.0f, 1.0f)
+      .build();
 
   private int red = 0, green = 1, blue = 2;
   private int posInModelSpace = 0, posInWorldSpace = 1, posInEyeSpace = 2;
   private final float[][][] mLightData = new float[3][3][4];
 
-  private int mProgramHandle;
-  private int mPointProgramHandle;
-  private int mGrassSideTextureDataHandle;
-  private int mGrassTopTextureDataHandle;
-  private int mTardisSideTextureHandle;
-
-  private float TARDIS_HEIGHT_MAX = 10;
-  private float TARDIS_HEIGHT_MIN = -0.75f;
-  private float redTardisY = TARDIS_HEIGHT_MIN;
-  private float redTardisDirection = 1;
-  private float redTardisSpeed = 0.1f;
-
-  private float greenTardisY = TARDIS_HEIGHT_MIN;
-  private float greenTardisX = 5.0f;
-  private float greenTardisRotateX;
-  private float greenTardisRotateY;
-
-  float mLastAngle;
+  private ShaderProgram mProgram;
+  private ShaderProgram mPointProgram;
+  private static final int ATLAS_GRASS_SIDE = 0;
+  private static final int ATLAS_GRASS_TOP = 1;
+  private static final int ATLAS_TARDIS = 2;
+  private static final int[] ATLAS_DRAWABLES = {R.drawable.grass_side, R.drawable.grass_top, R.drawable.tard_tex};
+  private static final boolean[] ATLAS_REPEATS = {true, true, false};
+  private boolean mCompressedTextures = true;
+  private final float[] mAtlasRects = new float[3 * 4];
+  private int mAtlasTextureHandle;
+
+  private static final long SIMULATION_STEP_NANOS = 1000000000L / 60;
+  private FixedTimestepSimulation mSimulation = new FixedTimestepSimulation(new Simulation(), SIMULATION_STEP_NANOS);
+  private final SimulationState mFrameState = new SimulationState();
+
+  private boolean mLogFrameStats;
+  private long mLastFrameNanos;
+  private long mFrameIntervalNanos = 16666667L;
+  private long mStatsStartNanos;
+  private long mStatsDrawCalls;
+  private long mStatsDrawnObjects;
+  private long mStatsCulledObjects;
+  private int mStatsFrames;
 
   public GraphicsRenderer(final Context context) {
     mActivityContext = context;
@@ -83,48 +163,205 @@ public class GraphicsRenderer implements GLSurfaceView.Renderer {
     mLightData[green][posInModelSpace][3] = 1.0f;
     mLightData[blue][posInModelSpace][3] = 1.0f;
 
-    float[] groundPositionData = getGroundPositionData();
-    mCubePositions = ByteBuffer.allocateDirect(groundPositionData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mCubePositions.put(groundPositionData).position(0);
+    // shaders and their includes are raw resources named as in #include
+    mShaderPreprocessor = new ShaderPreprocessor(new ShaderPreprocessor.Sources() {
+      @Override
+      public String read(String name) throws IOException {
+        final int resourceId = context.getResources().getIdentifier(name, "raw", context.getPackageName());
+        if (resourceId == 0)
+          throw new IOException("No raw resource " + name);
+        return RawResourceReader.readTextFileFromRawResource(context, resourceId);
+      }
+    });
+
+    mAtlasLoad = mLoader.load(new Callable<TextureAtlas>() {
+      @Override
+      public TextureAtlas call() {
+        final TextureAtlas atlas = new TextureAtlas(context, R.raw.texture_atlas);
+        Log.d(TAG, "Texture atlas: " + atlas);
+        return atlas;
+      }
+    });
+
+    final int[] attributeSizes = {3, 3, 2};
+    // grass tiles across the ground, so the ground is cut into whole tiles and drawn with the grass image's rect
+    mGroundMeshLoad = mLoader.load(new Callable<IndexedMesh>() {
+      @Override
+      public IndexedMesh call() {
+        final IndexedMesh mesh = new IndexedMeshBuilder().build(TextureTiling.split(InterleavedMesh.interleave(new float[][]{
+            SceneGeometry.getGroundPositionData(), SceneGeometry.getSquareNormalData(),
+            SceneGeometry.getSquareTextureCoordinateData()}, attributeSizes), 2));
+        Log.d(TAG, "Ground mesh: " + mesh);
+        return mesh;
+      }
+    });
+    mTardisMeshLoad = mLoader.load(new Callable<IndexedMesh>() {
+      @Override
+      public IndexedMesh call() throws Exception {
+        final float[] tardisTextureCoordinates = SceneGeometry.getTardisTextureCoordinateData();
+        mAtlasLoad.get().remapTextureCoordinates(ATLAS_TARDIS, tardisTextureCoordinates);
+        final IndexedMesh mesh = new IndexedMeshBuilder().build(InterleavedMesh.interleave(new float[][]{
+            SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+            tardisTextureCoordinates}, attributeSizes));
+        Log.d(TAG, "Tardis mesh: " + mesh);
+        return mesh;
+      }
+    });
 
-    float[] groundColorData = getSquareColorData();
-    mCubeColors = ByteBuffer.allocateDirect(groundColorData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mCubeColors.put(groundColorData).position(0);
+  }
 
-    float[] groundNormalData = getSquareNormalData();
-    mCubeNormals = ByteBuffer.allocateDirect(groundNormalData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mCubeNormals.put(groundNormalData).position(0);
 
-    float[] groundTextureCoordinateData = getSquareTextureCoordinateData();
-    mCubeTextureCoordinates = ByteBuffer.allocateDirect(groundTextureCoordinateData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mCubeTextureCoordinates.put(groundTextureCoordinateData).position(0);
+  /**
+   * Logs when onDrawFrame still allocates after the first frames. Call before the surface is created.
+   */
+  public void setCheckAllocations(boolean checkAllocations) {
+    mFrameAllocations = checkAllocations ? new AllocationMonitor("onDrawFrame", 60) : null;
+  }
 
-    float[] tardisPositionData = getTardisPositionData();
-    mTardisPositions = ByteBuffer.allocateDirect(tardisPositionData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mTardisPositions.put(tardisPositionData).position(0);
+  /**
+   * Times each phase of onDrawFrame and counts GL work per frame; see
+   * {@link #getFrameProfiler()}. Call before the surface is created.
+   */
+  public void setProfileFrames(boolean profileFrames) {
+    mProfiler = profileFrames ? new FrameProfiler("clear", "simulation", "input", "scene", "setup", "ground", "tardises", "light") : null;
+  }
 
-    float[] tardisTextureCoordinateData = getTardisTextureCoordinateData();
-    mTardisTextureCoordinates = ByteBuffer.allocateDirect(tardisTextureCoordinateData.length * mBytesPerFloat).order(ByteOrder.nativeOrder()).asFloatBuffer();
-    mTardisTextureCoordinates.put(tardisTextureCoordinateData).position(0);
+  /**
+   * @return the profiler recording onDrawFrame, or null when not profiling
+   */
+  public FrameProfiler getFrameProfiler() {
+    return mProfiler;
   }
 
+  /**
+   * Records every GL call from surface creation through the given number of
+   * frames as a {@link com.erik.and.caleb.tarddroidball.gl.GlTrace}, for
+   * analysis off the device. Call before the surface is created.
+   */
+  public void setRecordGlTrace(OutputStream out, int frames) throws IOException {
+    mRecorder = new RecordingGl(new AndroidGl(), out, frames);
+    mGl = mRecorder;
+    mState = new GlStateTracker(mGl);
+  }
+
+  /**
+   * Logs frame time, draw calls, GL call counts and touch latency once a second.
+   */
+  public void setLogFrameStats(boolean logFrameStats) {
+    mLogFrameStats = logFrameStats;
+  }
+
+  /**
+   * Extrapolates dragging to when the frame is expected on screen, hiding some touch latency.
+   */
+  public void setTouchPrediction(boolean touchPrediction) {
+    mTardisScene.getTouchIntegrator().setPredictionEnabled(touchPrediction);
+  }
+
+  /**
+   * A single finger moved by (dx, dy); called on the UI thread.
+   */
+  public void onFingerMoved(float x, float dx, float y, float dy, long timeNanos) {
+    mTardisScene.getTouchEvents().publish(TouchEventRing.KIND_MOVE, 0, x, y, dx, dy, timeNanos);
+  }
+
+  /**
+   * Two fingers moved, rotating by the given angles; called on the UI thread.
+   */
+  public void onFingersRotated(float rotationAngleX, float rotationAngleY, long timeNanos) {
+    mTardisScene.getTouchEvents().publish(TouchEventRing.KIND_ROTATE, 0, 0, 0, rotationAngleX, rotationAngleY, timeNanos);
+  }
+
+  public void onFingersLifted(long timeNanos) {
+    mTardisScene.getTouchEvents().publish(TouchEventRing.KIND_UP, 0, 0, 0, 0, 0, timeNanos);
+  }
+
+  /**
+   * Sends the green TARDIS back to where it started; called on the UI thread.
+   */
+  public void homeTardis(long timeNanos) {
+    mTardisScene.getTouchEvents().publish(TouchEventRing.KIND_HOME, 0, 0, 0, 0, 0, timeNanos);
+  }
 
-  protected String getVertexShader() {
-    return RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.per_pixel_vertex_shader);
+  /**
+   * Adds count extra spinning TARDISes to the scene, to measure how the batched
+   * draw path holds up. Call once, before the surface is created.
+   */
+  public void setStressTardisCount(int count) {
+    if (count > 0)
+      mLogFrameStats = true;
+    mTardisScene.addStressTardises(count);
   }
 
-  protected String getFragmentShader() {
-    return RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.per_pixel_fragment_shader);
+  /**
+   * Uploads the atlas from the compiled mipmapped container (the default), or
+   * decodes the drawables instead, as before textures were compiled. Call
+   * before the surface is created.
+   */
+  public void setCompressedTextures(boolean compressedTextures) {
+    mCompressedTextures = compressedTextures;
+  }
+
+  /**
+   * Makes onSurfaceCreated wait for every asset, as it did before loading
+   * moved to workers, instead of showing placeholder frames while they
+   * upload. Useful to compare the time to first frame. Call before the
+   * surface is created.
+   */
+  public void setBlockingLoad(boolean blockingLoad) {
+    mBlockingLoad = blockingLoad;
+  }
+
+  /**
+   * Lights per vertex instead of per fragment: cheaper, but the light's
+   * highlight spreads over whole triangles. Call before the surface is created.
+   */
+  public void setVertexLighting(boolean vertexLighting) {
+    mShaderPermutation = vertexLighting ? ShaderPermutation.NONE.with("VERTEX_LIGHTING") : ShaderPermutation.NONE;
+  }
+
+  /**
+   * Builds the ground from voxel chunks (the default), or draws the textured
+   * box it replaced. Call before the surface is created.
+   */
+  public void setVoxelTerrain(boolean voxelTerrain) {
+    mVoxelTerrain = voxelTerrain;
+  }
+
+  /**
+   * Runs the simulation on its own thread instead of stepping it from onDrawFrame.
+   * Call before the surface is created.
+   */
+  public void setThreadedSimulation(boolean threadedSimulation) {
+    mSimulation = new FixedTimestepSimulation(new Simulation(), SIMULATION_STEP_NANOS, threadedSimulation);
+  }
+
+  /**
+   * Forwarded from the activity alongside GLSurfaceView.onResume().
+   */
+  public void onResume() {
+    if (mSimulation.isThreaded())
+      mSimulation.start();
+  }
+
+  /**
+   * Forwarded from the activity alongside GLSurfaceView.onPause().
+   */
+  public void onPause() {
+    mSimulation.stop();
+    // a trace cut short by leaving the app is still worth keeping
+    if (mRecorder != null)
+      mRecorder.close();
   }
 
   @Override
   public void onSurfaceCreated(GL10 glUnused, EGLConfig config) {
-    mFingers = new CopyOnWriteArrayList<Finger>();
-    mObjectMatrices = new ArrayList<CoolMatrix>();
-
-    GLES20.glClearColor(0.5f, 0.5f, 0.5f, 0.0f);
-    GLES20.glEnable(GLES20.GL_CULL_FACE);
-    GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+    mSurfaceCreatedNanos = System.nanoTime();
+    mPlaceholderFrameNanos = 0;
+    mLoadingFrames = 0;
+    mFirstFrameReported = false;
+    mLoaded = false;
+    mGl.glClearColor(0.5f, 0.5f, 0.5f, 0.0f);
 
     final float eyeX = 0.0f;
     final float eyeY = 0.0f;
@@ -138,32 +375,241 @@ public class GraphicsRenderer implements GLSurfaceView.Renderer {
     final float upY = 1.0f;
     final float upZ = 0.0f;
 
-    Matrix.setLookAtM(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
+    Mat4.setLookAt(mViewMatrix, 0, eyeX, eyeY, eyeZ, lookX, lookY, lookZ, upX, upY, upZ);
+
+    queueUploads();
+    if (mBlockingLoad) {
+      // streamed chunks only arrive through the streamer's update, which finishUploads knows nothing of
+      while (mVoxelTerrain && !mLoader.runUploads(Long.MAX_VALUE)) {
+        updateStreamer();
+        SystemClock.sleep(1);
+      }
+      mLoader.finishUploads();
+    }
+  }
+
+  /**
+   * Queues the GL half of loading, which runs a little per frame once the
+   * workers have read what it needs. Objects from the GL die with the
+   * context, so this happens on every surface creation; what the workers
+   * read is kept.
+   */
+  private void queueUploads() {
+    // anything still queued was for a context that is gone
+    mLoader.cancelUploads();
+    if (mShaderCache == null)
+      mShaderCache = new ShaderCache(mState, mShaderPreprocessor, mLoader);
+    else
+      mShaderCache.clear();
+    final Future<ShaderProgram> mainProgram = mShaderCache.request("per_pixel_vertex_shader", "per_pixel_fragment_shader",
+        mShaderPermutation, SCENE_LAYOUT.getAllNames());
+    final Future<ShaderProgram> program = mLoader.upload(new Callable<ShaderProgram>() {
+      @Override
+      public ShaderProgram call() throws Exception {
+        mProgram = mainProgram.get();
+        mMVPMatrixUniform = mProgram.getUniform("u_MVPMatrix");
+        mMVMatrixUniform = mProgram.getUniform("u_MVMatrix");
+        mLightPosUniform = mProgram.getUniform("u_LightPos");
+        mTextureUniform = mProgram.getUniform("u_Texture");
+        mAtlasRectUniform = mProgram.getUniform("u_AtlasRect");
+        mAttributeHandles = mProgram.getAttributeLocations(SCENE_LAYOUT);
+        return mProgram;
+      }
+    }, mainProgram);
+
+    final Future<ShaderProgram> pointProgram = mShaderCache.request("point_vertex_shader", "point_fragment_shader",
+        ShaderPermutation.NONE, new String[]{"a_Position"});
+    mLoader.upload(new Callable<ShaderProgram>() {
+      @Override
+      public ShaderProgram call() throws Exception {
+        mPointProgram = pointProgram.get();
+        mPointMVPMatrixUniform = mPointProgram.getUniform("u_MVPMatrix");
+        mPointPositionHandle = mPointProgram.getAttributeLocation("a_Position");
+        return mPointProgram;
+      }
+    }, pointProgram);
+
+    final Future<ShaderProgram> paletteProgram = mShaderCache.request("palette_vertex_shader", "per_pixel_fragment_shader",
+        mShaderPermutation, new String[]{"a_Position", "a_Normal", "a_TexCoordinate", "a_Color", "a_InstanceIndex"});
+
+    // Load all of our textures as one atlas, which stays bound for the whole frame
+    final Future<Bitmap> drawables = mCompressedTextures ? null : mLoader.load(new Callable<Bitmap>() {
+      @Override
+      public Bitmap call() throws Exception {
+        return mAtlasLoad.get().composeDrawables(ATLAS_DRAWABLES, ATLAS_REPEATS);
+      }
+    });
+    mLoader.upload(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        final TextureAtlas atlas = mAtlasLoad.get();
+        atlas.getTextureRect(ATLAS_GRASS_SIDE, mAtlasRects, ATLAS_GRASS_SIDE * 4);
+        atlas.getTextureRect(ATLAS_GRASS_TOP, mAtlasRects, ATLAS_GRASS_TOP * 4);
+        mAtlasTextureHandle = drawables == null ? atlas.upload(mGl) : atlas.uploadComposed(mGl, drawables.get());
+        return mAtlasTextureHandle;
+      }
+    }, drawables == null ? new Future<?>[]{mAtlasLoad} : new Future<?>[]{mAtlasLoad, drawables});
+
+    if (mVoxelTerrain) {
+      queueTerrainUploads(program);
+    } else {
+      mLoader.upload(new Callable<VertexBuffer>() {
+        @Override
+        public VertexBuffer call() throws Exception {
+          final IndexedMesh mesh = mGroundMeshLoad.get();
+          mGroundBounds = MeshBounds.of(mesh.getVertices(), 0);
+          mGroundBuffer = new VertexBuffer(mGl, mesh, SCENE_LAYOUT);
+          return mGroundBuffer;
+        }
+      }, mGroundMeshLoad);
+    }
+
+    mLoader.upload(new Callable<BatchedMeshRenderer>() {
+      @Override
+      public BatchedMeshRenderer call() throws Exception {
+        final IndexedMesh mesh = mTardisMeshLoad.get();
+        mTardisScene.setTardisBounds(MeshBounds.of(mesh.getVertices(), 0));
+        mPaletteProgram = paletteProgram.get();
+        mTardisBatch = new BatchedMeshRenderer(mState, mesh, SCENE_LAYOUT, mPaletteProgram, program.get());
+        return mTardisBatch;
+      }
+    }, mTardisMeshLoad, program, paletteProgram);
+
+    mLoader.whenLoaded(new Runnable() {
+      @Override
+      public void run() {
+        // The loads bound programs, textures and buffers behind the tracker's back, and a new context starts from scratch anyway
+        mState.invalidate();
+        mState.setCullFace(true);
+        mState.setDepthTest(true);
+        mLoaded = true;
+        Log.d(TAG, "Shaders: " + mShaderCache);
+      }
+    });
+  }
 
-    final String vertexShader = getVertexShader();
-    final String fragmentShader = getFragmentShader();
+  /**
+   * Starts streaming the terrain around the green TARDIS, once, and holds the
+   * first real frame until the chunks around it are uploaded. Meshes kept
+   * from an earlier context are uploaded again.
+   */
+  private void queueTerrainUploads(final Future<ShaderProgram> program) {
+    if (mStreamer == null)
+      startTerrain();
+    mChunkRendererLoad = mLoader.upload(new Callable<ChunkRenderer>() {
+      @Override
+      public ChunkRenderer call() throws Exception {
+        mChunkAttributeHandles = program.get().getAttributeLocations(ChunkMesh.LAYOUT);
+        // the blocks repeat their textures with GL_REPEAT, which the atlas cannot do
+        for (int i = 0; i < TERRAIN_DRAWABLES.length; i++)
+          mChunkTextureHandles[i] = TextureHelper.loadTexture(mGl, mActivityContext, TERRAIN_DRAWABLES[i]);
+        mChunkRenderer = new ChunkRenderer(mState);
+        return mChunkRenderer;
+      }
+    }, program);
+    for (Future<ChunkMesh> meshLoad : mChunkMeshLoads.values())
+      queueChunkUpload(meshLoad);
+    // onDrawFrame updates the streamer while loading, and the chunks' own uploads are queued as they arrive
+    mLoader.upload(new Callable<Object>() {
+      @Override
+      public Object call() {
+        return null;
+      }
+    }, mStreamer.whenResident());
+  }
 
-    final int vertexShaderHandle = ShaderHelper.compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);
-    final int fragmentShaderHandle = ShaderHelper.compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);
+  private void startTerrain() {
+    mTardisScene.addTerrain(TERRAIN_ORIGIN_X, TardisScene.GROUND_TOP - TERRAIN_SURFACE, TERRAIN_ORIGIN_Z);
+    mStreamer = new ChunkStreamer(new VoxelWorld(TERRAIN_CHUNKS, TERRAIN_CHUNKS, false),
+        new File(mActivityContext.getFilesDir(), TERRAIN_DIRECTORY), TERRAIN_GENERATOR, mLoader.getWorkers(),
+        new ChunkStreamer.Listener() {
+          @Override
+          public void onChunkLoaded(VoxelChunk chunk) {
+            meshChunk(chunk);
+            remeshNeighbours(chunk);
+          }
+
+          @Override
+          public void onChunkEvicted(final VoxelChunk chunk) {
+            mChunkMeshLoads.remove(mStreamer.getWorld().getIndex(chunk.getChunkX(), chunk.getChunkZ()));
+            mLoader.upload(new Callable<Object>() {
+              @Override
+              public Object call() throws Exception {
+                mChunkRendererLoad.get().remove(chunk.getChunkX(), chunk.getChunkZ());
+                return null;
+              }
+            }, mChunkRendererLoad);
+            // the faces that looked into it are uncovered now
+            remeshNeighbours(chunk);
+          }
+        }, TERRAIN_RADIUS, TERRAIN_BUDGET_BYTES);
+  }
 
-    mProgramHandle = ShaderHelper.createAndLinkProgram(vertexShaderHandle, fragmentShaderHandle, new String[]{"a_Position", "a_Color", "a_Normal", "a_TexCoordinate"});
+  private void meshChunk(final VoxelChunk chunk) {
+    final Future<ChunkMesh> meshLoad = mLoader.load(new Callable<ChunkMesh>() {
+      @Override
+      public ChunkMesh call() {
+        return mChunkMeshers.get().mesh(mStreamer.getWorld(), chunk, true);
+      }
+    });
+    mChunkMeshLoads.put(mStreamer.getWorld().getIndex(chunk.getChunkX(), chunk.getChunkZ()), meshLoad);
+    queueChunkUpload(meshLoad);
+  }
 
-    final String pointVertexShader = RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.point_vertex_shader);
-    final String pointFragmentShader = RawResourceReader.readTextFileFromRawResource(mActivityContext, R.raw.point_fragment_shader);
+  private void remeshNeighbours(VoxelChunk chunk) {
+    final VoxelWorld world = mStreamer.getWorld();
+    for (int side = 0; side < 4; side++) {
+      final int chunkX = chunk.getChunkX() + (side == 0 ? -1 : side == 1 ? 1 : 0);
+      final int chunkZ = chunk.getChunkZ() + (side == 2 ? -1 : side == 3 ? 1 : 0);
+      final VoxelChunk neighbour = world.getChunk(chunkX, chunkZ);
+      if (neighbour != null && mChunkMeshLoads.containsKey(world.getIndex(chunkX, chunkZ)))
+        meshChunk(neighbour);
+    }
+  }
 
-    final int pointVertexShaderHandle = ShaderHelper.compileShader(GLES20.GL_VERTEX_SHADER, pointVertexShader);
-    final int pointFragmentShaderHandle = ShaderHelper.compileShader(GLES20.GL_FRAGMENT_SHADER, pointFragmentShader);
-    mPointProgramHandle = ShaderHelper.createAndLinkProgram(pointVertexShaderHandle, pointFragmentShaderHandle, new String[]{"a_Position"});
+  private void queueChunkUpload(final Future<ChunkMesh> meshLoad) {
+    mLoader.upload(new Callable<Integer>() {
+      @Override
+      public Integer call() throws Exception {
+        final ChunkMesh mesh = meshLoad.get();
+        // a newer mesh, or the chunk's eviction, came since
+        if (mChunkMeshLoads.get(mStreamer.getWorld().getIndex(mesh.getChunkX(), mesh.getChunkZ())) != meshLoad)
+          return -1;
+        final int slot = mChunkRendererLoad.get().put(mesh);
+        mTardisScene.placeChunk(slot, mesh);
+        if (slot >= mChunkVisible.length)
+          mChunkVisible = new boolean[Math.max(16, slot * 2)];
+        return slot;
+      }
+    }, mChunkRendererLoad, meshLoad);
+  }
 
-    // Load in all of our png textures
-    mGrassSideTextureDataHandle = TextureHelper.loadTexture(mActivityContext, R.drawable.grass_side);
-    mGrassTopTextureDataHandle = TextureHelper.loadTexture(mActivityContext, R.drawable.grass_top);
-    mTardisSideTextureHandle = TextureHelper.loadTexture(mActivityContext, R.drawable.tard_tex);
+  /**
+   * Takes in the chunks the streamer has loaded and uploads their meshes as
+   * they are done, a few milliseconds a frame.
+   */
+  private void streamTerrain() {
+    updateStreamer();
+    if (mLoader.getPendingUploadCount() > 0)
+      mLoader.runUploads(UPLOAD_BUDGET_NANOS);
+  }
+
+  private void updateStreamer() {
+    mTardisScene.updateTerrainCenter();
+    mStreamer.update(mTardisScene.getTerrainCenterX(), mTardisScene.getTerrainCenterZ());
+  }
+
+  private static final TerrainGenerator TERRAIN_GENERATOR = new TerrainGenerator(TERRAIN_SEED);
+
+  static {
+    // level ground where the TARDISes stand and the camera looks: 9 units either side, from 4 behind the box ground's middle on
+    TERRAIN_GENERATOR.setLevelArea(TERRAIN_ORIGIN_X - 9, TERRAIN_ORIGIN_Z + (int) GROUND_CENTER_Z - 4, TERRAIN_ORIGIN_X + 9,
+        TERRAIN_CHUNKS * VoxelChunk.DEPTH, TERRAIN_SURFACE);
   }
 
   @Override
   public void onSurfaceChanged(GL10 glUnused, int width, int height) {
-    GLES20.glViewport(0, 0, width, height);
+    mState.viewport(0, 0, width, height);
     final float ratio = (float) width / height;
     final float left = -ratio;
     final float right = ratio;
@@ -171,529 +617,228 @@ public class GraphicsRenderer implements GLSurfaceView.Renderer {
     final float top = 1.0f;
     final float near = 1.0f;
     final float far = 10.0f;
-    Matrix.frustumM(mProjectionMatrix, 0, left, right, bottom, top, near, far);
+    Mat4.frustum(mProjectionMatrix, 0, left, right, bottom, top, near, far);
   }
 
   @Override
   public void onDrawFrame(GL10 glUnused) {
-    GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-
-    // animate the screen based on the system clock
-    long time = SystemClock.uptimeMillis() % 10000L;
-    float thisAngle = (360.0f / 10000.0f) * ((int) time);
-    float angleInDegrees = thisAngle - mLastAngle;
-    mLastAngle = thisAngle;
-
-    moveRedTardis();
-
-    moveGreenTardis();
+    if (mRecorder != null)
+      mRecorder.markFrame();
+    if (!mLoaded) {
+      if (mVoxelTerrain)
+        updateStreamer();
+      mLoader.runUploads(UPLOAD_BUDGET_NANOS);
+      if (!mLoaded) {
+        // keep draining touches, or a drag while loading fills the ring and its UP or HOME is dropped
+        final long now = System.nanoTime();
+        mTardisScene.moveGreenTardis(now, now + mFrameIntervalNanos);
+        drawPlaceholderFrame();
+        return;
+      }
+    }
+    if (mFrameAllocations != null)
+      mFrameAllocations.begin();
+    final FrameProfiler profiler = mProfiler;
+    if (profiler != null)
+      profiler.beginFrame();
+    mState.beginFrame();
+    final long frameNanos = System.nanoTime();
+    if (mLastFrameNanos != 0)
+      mFrameIntervalNanos += (frameNanos - mLastFrameNanos - mFrameIntervalNanos) / 8;
+    mLastFrameNanos = frameNanos;
+    if (mLogFrameStats)
+      logFrameStats(frameNanos);
+
+    mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    mState.countCall(false);
+    if (profiler != null)
+      profiler.endPhase(PHASE_CLEAR);
+
+    // animate the screen from the fixed-step simulation, interpolated to this frame's time
+    if (!mSimulation.isThreaded())
+      mSimulation.advanceTo(frameNanos);
+    final SimulationState state = mFrameState;
+    mSimulation.readInterpolated(frameNanos, state);
+    if (profiler != null)
+      profiler.endPhase(PHASE_SIMULATION);
+
+    mTardisScene.moveGreenTardis(frameNanos, frameNanos + mFrameIntervalNanos);
+    mTardisScene.collideTardises(state);
+    if (profiler != null)
+      profiler.endPhase(PHASE_INPUT);
+
+    if (mVoxelTerrain)
+      streamTerrain();
+    mTardisScene.update(state, mViewMatrix, mProjectionMatrix);
+    if (profiler != null)
+      profiler.endPhase(PHASE_SCENE);
 
     setupDrawingHandles();
 
     setupLighting();
+    if (profiler != null)
+      profiler.endPhase(PHASE_SETUP);
+
+    drawAllTheGround();
+    if (profiler != null)
+      profiler.endPhase(PHASE_GROUND);
+
+    mTardisBatch.begin();
+    final int visible = mTardisScene.cullTardises();
+    final int[] visibleTardises = mTardisScene.getVisibleTardises();
+    for (int i = 0; i < visible; i++)
+      queueTardis(visibleTardises[i]);
+    mTardisBatch.flush(mViewMatrix, mProjectionMatrix, mLightData[red][posInEyeSpace][0], mLightData[red][posInEyeSpace][1], mLightData[red][posInEyeSpace][2]);
+    if (profiler != null)
+      profiler.endPhase(PHASE_TARDISES);
 
-    drawAllTheGroundWithLightAngle(angleInDegrees);
-
-    drawWhiteTardisWithLightAngle(angleInDegrees);
+    letThereBeLight();
+    if (profiler != null) {
+      profiler.endPhase(PHASE_LIGHT);
+      profiler.endFrame(mState.getIssuedCalls(), mState.getDrawCalls(), mState.getVertices(), mState.getTextureBinds());
+    }
 
-    drawRedTardisWithLightingAngle(angleInDegrees);
+    if (mFrameAllocations != null)
+      mFrameAllocations.end();
+    if (!mFirstFrameReported)
+      reportFirstFrame();
+  }
 
-    drawGreenTardis();
+  /**
+   * Clears to the background while assets load, so the surface shows something right away.
+   */
+  private void drawPlaceholderFrame() {
+    mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    if (mLoadingFrames++ == 0)
+      mPlaceholderFrameNanos = System.nanoTime();
+  }
 
-    letThereBeLight();
+  private void reportFirstFrame() {
+    mFirstFrameReported = true;
+    final long now = System.nanoTime();
+    Log.i(TAG, String.format("Time to first frame: %.1f ms after surface creation, %.1f ms after onCreate; "
+        + "%d placeholder frames, the first at %.1f ms", (now - mSurfaceCreatedNanos) / 1e6, (now - mCreatedNanos) / 1e6,
+        mLoadingFrames, mLoadingFrames == 0 ? 0.0 : (mPlaceholderFrameNanos - mSurfaceCreatedNanos) / 1e6));
   }
 
-  private void moveRedTardis() {
-    if (redTardisY >= TARDIS_HEIGHT_MAX)
-      redTardisDirection = -1;
-    else if (redTardisY <= TARDIS_HEIGHT_MIN)
-      redTardisDirection = 1;
-    redTardisY += redTardisSpeed * redTardisDirection;
-  }
-
-  private void moveGreenTardis() {
-    synchronized (mFingers) {
-      Iterator it = mFingers.iterator();
-      if (it.hasNext() && mObjectMatrices.size() >= 5) {
-        Finger finger = (Finger) it.next();
-        greenTardisRotateX = 0;
-        greenTardisRotateY = 0;
-        greenTardisX = 0;
-        greenTardisY = 0;
-        if (finger.homeTardis) {
-          greenTardisX = 5.0f;
-          greenTardisY = TARDIS_HEIGHT_MIN;
-          Matrix.setIdentityM(mObjectMatrices.get(4).getMatrix(), 0);
-          Matrix.translateM(mObjectMatrices.get(4).getMatrix(), 0, greenTardisX, greenTardisY, -7.0f);
-          Matrix.rotateM(mObjectMatrices.get(4).getMatrix(), 0, -greenTardisRotateY, 1.0f, 0.0f, 0.0f);
-          Matrix.rotateM(mObjectMatrices.get(4).getMatrix(), 0, greenTardisRotateX, 0.0f, 1.0f, 0.0f);
-          mFingers.remove(finger);
-        } else if (finger.translate) {
-          Matrix.translateM(mObjectMatrices.get(4).getMatrix(), 0, finger.dx, finger.dy, 0.0f);
-        } else if (finger.rotate) {
-          Matrix.rotateM(mObjectMatrices.get(4).getMatrix(), 0, finger.rotationAngleX, 0.0f, 1.0f, 0.0f);
-          Matrix.rotateM(mObjectMatrices.get(4).getMatrix(), 0, -finger.rotationAngleY, 1.0f, 0.0f, 0.0f);
-        }
-      }
+  private void drawAllTheGround() {
+    if (mVoxelTerrain) {
+      drawTerrain();
+      return;
     }
-  }
 
-  private void drawAllTheGroundWithLightAngle(float angleInDegrees) {
     // Make side of the grass
-    float[] modelMatrix = new float[16];
-    setupSquareWithTexture(mGrassSideTextureDataHandle);
-    if (mObjectMatrices.size() < 1) {
-      Matrix.setIdentityM(modelMatrix, 0);
-      Matrix.translateM(modelMatrix, 0, 0.0f, -4.0f, -7.0f);
-      try {
-        mObjectMatrices.add(new CoolMatrix(modelMatrix));
-      } catch (CoolMatrix.ThisIsNotAMatrixException tiname) {
-        tiname.printStackTrace();
-      }
+    if (mTardisScene.isVisible(mTardisScene.getGroundSideNode(), mGroundBounds)) {
+      setupSquareWithTexture(ATLAS_GRASS_SIDE);
+      drawGround(mTardisScene.getGroundSideNode());
     }
-    drawGround(mObjectMatrices.get(0).getMatrix());
 
     // Make the top of the grass
-    setupSquareWithTexture(mGrassTopTextureDataHandle);
-    if (mObjectMatrices.size() < 2) {
-      Matrix.setIdentityM(modelMatrix, 0);
-      Matrix.translateM(modelMatrix, 0, 0.0f, -3.99f, -7.0f);
-      Matrix.scaleM(modelMatrix, 0, 1.0f, 1.01f, 1.0f);
-      try {
-        mObjectMatrices.add(new CoolMatrix(modelMatrix));
-      } catch (CoolMatrix.ThisIsNotAMatrixException tiname) {
-        tiname.printStackTrace();
-      }
-    }
-    drawGround(mObjectMatrices.get(1).getMatrix());
-  }
-
-  private void drawWhiteTardisWithLightAngle(float angleInDegrees) {
-    float[] modelMatrix = new float[16];
-    setupSquareWithTexture(mTardisSideTextureHandle);
-    if (mObjectMatrices.size() < 3) {
-      Matrix.setIdentityM(modelMatrix, 0);
-      Matrix.translateM(modelMatrix, 0, 0.0f, 1.0f, -7.0f);
-      Matrix.rotateM(modelMatrix, 0, -angleInDegrees, 0.0f, 1.0f, 0.0f);
-      try {
-        mObjectMatrices.add(new CoolMatrix(modelMatrix));
-      } catch (CoolMatrix.ThisIsNotAMatrixException tiname) {
-        tiname.printStackTrace();
-      }
+    if (mTardisScene.isVisible(mTardisScene.getGroundTopNode(), mGroundBounds)) {
+      setupSquareWithTexture(ATLAS_GRASS_TOP);
+      drawGround(mTardisScene.getGroundTopNode());
     }
-    Matrix.rotateM(mObjectMatrices.get(2).getMatrix(), 0, -angleInDegrees, 0.0f, 1.0f, 0.0f);
-    drawTardis(mObjectMatrices.get(2).getMatrix());
-  }
-
-  private void drawRedTardisWithLightingAngle(float angleInDegrees) {
-    float[] modelMatrix = new float[16];
-    if (mObjectMatrices.size() < 4) {
-      Matrix.setIdentityM(modelMatrix, 0);
-      Matrix.translateM(modelMatrix, 0, -5.0f, redTardisY, -7.0f);
-      Matrix.rotateM(modelMatrix, 0, angleInDegrees * 2, 0.0f, 1.0f, 0.0f);
-      try {
-        mObjectMatrices.add(new CoolMatrix(modelMatrix));
-      } catch (CoolMatrix.ThisIsNotAMatrixException tiname) {
-        tiname.printStackTrace();
-      }
+  }
+
+  private void logFrameStats(long now) {
+    if (mStatsFrames == 0) {
+      mStatsStartNanos = now;
+    } else {
+      mStatsDrawCalls += mState.getLastFrameDrawCalls();
+      mStatsDrawnObjects += mTardisScene.getDrawnObjects();
+      mStatsCulledObjects += mTardisScene.getCulledObjects();
     }
-    Matrix.translateM(mObjectMatrices.get(3).getMatrix(), 0, 0.0f, redTardisSpeed * redTardisDirection, 0.0f);
-    Matrix.rotateM(mObjectMatrices.get(3).getMatrix(), 0, -angleInDegrees, 0.0f, 1.0f, 0.0f);
-    drawTardis(mObjectMatrices.get(3).getMatrix());
-  }
-
-  private void drawGreenTardis() {
-    float[] modelMatrix = new float[16];
-    if (mObjectMatrices.size() < 5) {
-      Matrix.setIdentityM(modelMatrix, 0);
-      Matrix.translateM(modelMatrix, 0, greenTardisX, greenTardisY, -7.0f);
-      Matrix.rotateM(modelMatrix, 0, -greenTardisRotateY, 1.0f, 0.0f, 0.0f);
-      Matrix.rotateM(modelMatrix, 0, greenTardisRotateX, 0.0f, 1.0f, 0.0f);
-      try {
-        mObjectMatrices.add(new CoolMatrix(modelMatrix));
-      } catch (CoolMatrix.ThisIsNotAMatrixException tiname) {
-        tiname.printStackTrace();
+    mStatsFrames++;
+    if (now - mStatsStartNanos >= 1000000000L && mStatsFrames > 1) {
+      final int frames = mStatsFrames - 1;
+      final BoundingVolumeHierarchy bvh = mTardisScene.getStressBvh();
+      final TouchIntegrator input = mTardisScene.getTouchIntegrator();
+      Log.d(TAG, String.format("%d stress tardises: %.2f ms/frame, %.1f draws/frame, batch path %s; %s; scene %s",
+          mTardisScene.getStressTardisCount(), (now - mStatsStartNanos) / 1e6 / frames, (double) mStatsDrawCalls / frames,
+          mTardisBatch.isPaletteSupported() && mTardisBatch.getInstanceCount() <= BatchedMeshRenderer.PALETTE_SIZE ? "palette" : "pre-transformed",
+          mState, mScene));
+      if (mVoxelTerrain)
+        Log.d(TAG, "terrain: " + mStreamer);
+      Log.d(TAG, String.format("culling: %.1f drawn, %.1f culled per frame%s",
+          (double) mStatsDrawnObjects / frames, (double) mStatsCulledObjects / frames,
+          bvh == null ? "" : String.format(", BVH %d nodes, %d visited, %d refit",
+              bvh.getNodeCount(), bvh.getLastNodesVisited(), bvh.getLastRefitNodes())));
+      if (input.getLatencySamples() > 0) {
+        Log.d(TAG, String.format("touch to frame: %.1f ms avg, %.1f ms max over %d samples, display ~%.1f ms later",
+            input.getAverageLatencyMillis(), input.getMaxLatencyMillis(),
+            input.getLatencySamples(), mFrameIntervalNanos / 1e6));
+        input.resetLatencyStats();
       }
+      mStatsFrames = 0;
+      mStatsDrawCalls = 0;
+      mStatsDrawnObjects = 0;
+      mStatsCulledObjects = 0;
     }
-    drawTardis(mObjectMatrices.get(4).getMatrix());
   }
 
   private void setupDrawingHandles() {
-    GLES20.glUseProgram(mProgramHandle);
-    mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVPMatrix");
-    mMVMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVMatrix");
-    mLightPosHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_LightPos");
-    mTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Texture");
-    mPositionHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Position");
-    mColorHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Color");
-    mNormalHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Normal");
-    mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_TexCoordinate");
-    GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+    mProgram.use();
+    mState.bindTexture(0, mAtlasTextureHandle);
+    mTextureUniform.set1i(0);
   }
 
-  private void setupSquareWithTexture(int textureId) {
-    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-    GLES20.glUniform1i(mTextureUniformHandle, 0);
+  private void setupSquareWithTexture(int atlasImage) {
+    final int rect = atlasImage * 4;
+    mAtlasRectUniform.set4f(mAtlasRects[rect], mAtlasRects[rect + 1], mAtlasRects[rect + 2], mAtlasRects[rect + 3]);
   }
 
   private void setupLighting() {
-    Matrix.setIdentityM(mLightModelMatrix, 0);
-    Matrix.translateM(mLightModelMatrix, 0, 0.0f, 0.0f, -5.0f);
-    Matrix.rotateM(mLightModelMatrix, 0, mLastAngle, 0.0f, 1.0f, 0.0f);
-    Matrix.translateM(mLightModelMatrix, 0, 0.0f, 0.0f, 3.0f);
-
-    Matrix.multiplyMV(mLightData[red][posInWorldSpace], 0, mLightModelMatrix, 0, mLightData[red][posInModelSpace], 0);
-    Matrix.multiplyMV(mLightData[red][posInEyeSpace], 0, mViewMatrix, 0, mLightData[red][posInWorldSpace], 0);
+    final float[] light = mLightData[red][posInModelSpace];
+    Mat4.multiplyVector(mLightData[red][posInWorldSpace], 0, mScene.getWorldMatrices(), mLightNode * 16, light[0], light[1], light[2], light[3]);
+    Mat4.multiplyVector(mLightData[red][posInEyeSpace], 0, mScene.getModelViewMatrices(), mLightNode * 16, light[0], light[1], light[2], light[3]);
   }
 
-  private void drawGround(float[] modelMatrix) {
-    mCubePositions.position(0);
-    GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, 0, mCubePositions);
-    GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-    mCubeColors.position(0);
-    GLES20.glVertexAttribPointer(mColorHandle, mColorDataSize, GLES20.GL_FLOAT, false, 0, mCubeColors);
-
-    GLES20.glEnableVertexAttribArray(mColorHandle);
-
-    mCubeNormals.position(0);
-    GLES20.glVertexAttribPointer(mNormalHandle, mNormalDataSize, GLES20.GL_FLOAT, false, 0, mCubeNormals);
-    GLES20.glEnableVertexAttribArray(mNormalHandle);
-
-    mCubeTextureCoordinates.position(0);
-    GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize, GLES20.GL_FLOAT, false, 0, mCubeTextureCoordinates);
-    GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-
-    Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, modelMatrix, 0);
-    GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVPMatrix, 0);
-    Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-    GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-    GLES20.glUniform3f(mLightPosHandle, mLightData[red][posInEyeSpace][0], mLightData[red][posInEyeSpace][1], mLightData[red][posInEyeSpace][2]);
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 6 * 6);
+  private void drawGround(int node) {
+    mGroundBuffer.bind(mState, mAttributeHandles);
+    drawMesh(node, mGroundBuffer);
   }
 
-  private void drawTardis(float[] modelMatrix) {
-    mTardisPositions.position(0);
-    GLES20.glVertexAttribPointer(mPositionHandle, mPositionDataSize, GLES20.GL_FLOAT, false, 0, mTardisPositions);
-    GLES20.glEnableVertexAttribArray(mPositionHandle);
-
-    mCubeColors.position(0);
-    GLES20.glVertexAttribPointer(mColorHandle, mColorDataSize, GLES20.GL_FLOAT, false, 0, mCubeColors);
-    GLES20.glEnableVertexAttribArray(mColorHandle);
+  /**
+   * Draws the chunks one texture at a time, so each texture is bound once a frame, then puts the atlas back.
+   */
+  private void drawTerrain() {
+    final int chunks = mChunkRenderer.getSlotCount();
+    for (int slot = 0; slot < chunks; slot++)
+      mChunkVisible[slot] = mTardisScene.isChunkVisible(slot, mChunkRenderer.getMesh(slot));
+    mAtlasRectUniform.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+    for (int texture = 0; texture < ChunkMesher.TEXTURE_COUNT; texture++) {
+      mState.bindTexture(0, mChunkTextureHandles[texture]);
+      for (int slot = 0; slot < chunks; slot++) {
+        if (!mChunkVisible[slot])
+          continue;
+        setupMatrices(mTardisScene.getChunkNode(slot));
+        mChunkRenderer.draw(slot, texture, mChunkAttributeHandles);
+      }
+    }
+    mState.bindTexture(0, mAtlasTextureHandle);
+  }
 
-    mCubeNormals.position(0);
-    GLES20.glVertexAttribPointer(mNormalHandle, mNormalDataSize, GLES20.GL_FLOAT, false, 0, mCubeNormals);
-    GLES20.glEnableVertexAttribArray(mNormalHandle);
+  private void queueTardis(int node) {
+    mTardisBatch.add(mScene.getWorldMatrices(), node * 16, mScene.getModelViewMatrices(), node * 16);
+  }
 
-    mTardisTextureCoordinates.position(0);
-    GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize, GLES20.GL_FLOAT, false, 0, mTardisTextureCoordinates);
-    GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
+  private void drawMesh(int node, VertexBuffer mesh) {
+    setupMatrices(node);
+    mesh.draw(mState);
+  }
 
-    Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, modelMatrix, 0);
-    GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mMVPMatrix, 0);
-    Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-    GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-    GLES20.glUniform3f(mLightPosHandle, mLightData[red][posInEyeSpace][0], mLightData[red][posInEyeSpace][1], mLightData[red][posInEyeSpace][2]);
-    GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, 36);
+  private void setupMatrices(int node) {
+    mMVMatrixUniform.setMatrix4(mScene.getModelViewMatrices(), node * 16);
+    mMVPMatrixUniform.setMatrix4(mScene.getModelViewProjectionMatrices(), node * 16);
+    mLightPosUniform.set3f(mLightData[red][posInEyeSpace][0], mLightData[red][posInEyeSpace][1], mLightData[red][posInEyeSpace][2]);
   }
 
   private void letThereBeLight() {
-    GLES20.glUseProgram(mPointProgramHandle);
-    final int pointMVPMatrixHandle = GLES20.glGetUniformLocation(mPointProgramHandle, "u_MVPMatrix");
-    final int pointPositionHandle = GLES20.glGetAttribLocation(mPointProgramHandle, "a_Position");
-    GLES20.glVertexAttrib3f(pointPositionHandle, mLightData[red][posInModelSpace][0], mLightData[red][posInModelSpace][1], mLightData[red][posInModelSpace][2]);
-    GLES20.glDisableVertexAttribArray(pointPositionHandle);
-    Matrix.multiplyMM(mMVPMatrix, 0, mViewMatrix, 0, mLightModelMatrix, 0);
-    Matrix.multiplyMM(mMVPMatrix, 0, mProjectionMatrix, 0, mMVPMatrix, 0);
-    GLES20.glUniformMatrix4fv(pointMVPMatrixHandle, 1, false, mMVPMatrix, 0);
-    GLES20.glDrawArrays(GLES20.GL_POINTS, 0, 1);
-  }
-
-  private float[] getGroundPositionData() {
-    float cx = 10.0f; // cube X length
-    float cy = 1.25f; // cube Y length
-    float cz = 2.0f; // cube Z length
-
-    return new float[]{
-        // Front face
-        -cx, cy, cz,
-        -cx, -cy, cz,
-        cx, cy, cz,
-        -cx, -cy, cz,
-        cx, -cy, cz,
-        cx, cy, cz,
-
-        // Right face
-        cx, cy, cz,
-        cx, -cy, cz,
-        cx, cy, -cz,
-        cx, -cy, cz,
-        cx, -cy, -cz,
-        cx, cy, -cz,
-
-        // Back face
-        cx, cy, -cz,
-        cx, -cy, -cz,
-        -cx, cy, -cz,
-        cx, -cy, -cz,
-        -cx, -cy, -cz,
-        -cx, cy, -cz,
-
-        // Left face
-        -cx, cy, -cz,
-        -cx, -cy, -cz,
-        -cx, cy, cz,
-        -cx, -cy, -cz,
-        -cx, -cy, cz,
-        -cx, cy, cz,
-
-        // Top face
-        -cx, cy, -cz,
-        -cx, cy, cz,
-        cx, cy, -cz,
-        -cx, cy, cz,
-        cx, cy, cz,
-        cx, cy, -cz,
-
-        // Bottom face
-        cx, -cy, -cz,
-        cx, -cy, cz,
-        -cx, -cy, -cz,
-        cx, -cy, cz,
-        -cx, -cy, cz,
-        -cx, -cy, -cz,
-    };
-  }
-
-  private float[] getSquareColorData() {
-
-    // make all the sides white
-    final float[] colorData = new float[6 * 6 * 4];
-    Arrays.fill(colorData, 1.0f);
-
-    return colorData;
-  }
-
-  private float[] getSquareNormalData() {
-
-    return new float[]{
-        // Front face
-        0.0f, 0.0f, 1.0f,
-        0.0f, 0.0f, 1.0f,
-        0.0f, 0.0f, 1.0f,
-        0.0f, 0.0f, 1.0f,
-        0.0f, 0.0f, 1.0f,
-        0.0f, 0.0f, 1.0f,
-
-        // Right face
-        1.0f, 0.0f, 0.0f,
-        1.0f, 0.0f, 0.0f,
-        1.0f, 0.0f, 0.0f,
-        1.0f, 0.0f, 0.0f,
-        1.0f, 0.0f, 0.0f,
-        1.0f, 0.0f, 0.0f,
-
-        // Back face
-        0.0f, 0.0f, -1.0f,
-        0.0f, 0.0f, -1.0f,
-        0.0f, 0.0f, -1.0f,
-        0.0f, 0.0f, -1.0f,
-        0.0f, 0.0f, -1.0f,
-        0.0f, 0.0f, -1.0f,
-
-        // Left face
-        -1.0f, 0.0f, 0.0f,
-        -1.0f, 0.0f, 0.0f,
-        -1.0f, 0.0f, 0.0f,
-        -1.0f, 0.0f, 0.0f,
-        -1.0f, 0.0f, 0.0f,
-        -1.0f, 0.0f, 0.0f,
-
-        // Top face
-        0.0f, 1.0f, 0.0f,
-        0.0f, 1.0f, 0.0f,
-        0.0f, 1.0f, 0.0f,
-        0.0f, 1.0f, 0.0f,
-        0.0f, 1.0f, 0.0f,
-        0.0f, 1.0f, 0.0f,
-
-        // Bottom face
-        0.0f, -1.0f, 0.0f,
-        0.0f, -1.0f, 0.0f,
-        0.0f, -1.0f, 0.0f,
-        0.0f, -1.0f, 0.0f,
-        0.0f, -1.0f, 0.0f,
-        0.0f, -1.0f, 0.0f
-    };
-  }
-
-  private float[] getSquareTextureCoordinateData() {
-
-    float tx = 6.0f; //texture density
-    float ty = 1.0f;
-    float tz = 0.0f; //zero texture thing, because it looks nicer that 0.0f
-
-    return new float[]{
-        // Front face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz,
-
-        // Right face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz,
-
-        // Back face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz,
-
-        // Left face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz,
-
-        // Top face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz,
-
-        // Bottom face
-        tz, tz,
-        tz, ty,
-        tx, tz,
-        tz, ty,
-        tx, ty,
-        tx, tz
-    };
-  }
-
-  private float[] getTardisPositionData() {
-    float cx = 1.0f;
-    float cy = 2.0f;
-    float cz = 1.0f;
-
-    return new float[]{
-        // Front face
-        -cx, cy, cz,
-        -cx, -cy, cz,
-        cx, cy, cz,
-        -cx, -cy, cz,
-        cx, -cy, cz,
-        cx, cy, cz,
-
-        // Right face
-        cx, cy, cz,
-        cx, -cy, cz,
-        cx, cy, -cz,
-        cx, -cy, cz,
-        cx, -cy, -cz,
-        cx, cy, -cz,
-
-        // Back face
-        cx, cy, -cz,
-        cx, -cy, -cz,
-        -cx, cy, -cz,
-        cx, -cy, -cz,
-        -cx, -cy, -cz,
-        -cx, cy, -cz,
-
-        // Left face
-        -cx, cy, -cz,
-        -cx, -cy, -cz,
-        -cx, cy, cz,
-        -cx, -cy, -cz,
-        -cx, -cy, cz,
-        -cx, cy, cz,
-
-        // Top face
-        -cx, cy, -cz,
-        -cx, cy, cz,
-        cx, cy, -cz,
-        -cx, cy, cz,
-        cx, cy, cz,
-        cx, cy, -cz,
-
-        // Bottom face
-        cx, -cy, -cz,
-        cx, -cy, cz,
-        -cx, -cy, -cz,
-        cx, -cy, cz,
-        -cx, -cy, cz,
-        -cx, -cy, -cz,
-    };
-  }
-
-  private float[] getTardisTextureCoordinateData() {
-
-    float tx = 0.5f; //texture density
-    float ty = 0.5f;
-    float tz = 0.0f; //zero texture thing, because it looks nice
-
-    return new float[]{
-        // Front face
-        0.0f, 0.5f,
-        0.0f, 1.0f,
-        0.5f, 0.5f,
-        0.0f, 1.0f,
-        0.5f, 1.0f,
-        0.5f, 0.5f,
-
-        // Right face
-        0.5f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 1.0f,
-        1.0f, 0.5f,
-
-        // Back face
-        0.5f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 1.0f,
-        1.0f, 0.5f,
-
-        // Left face
-        0.5f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 0.5f,
-        0.5f, 1.0f,
-        1.0f, 1.0f,
-        1.0f, 0.5f,
-
-        // Top face
-        0.5f, 0.0f,
-        0.5f, 0.5f,
-        1.0f, 0.0f,
-        0.5f, 0.5f,
-        1.0f, 0.5f,
-        1.0f, 0.0f,
-
-        // Bottom face
-        0.0f, 0.0f,
-        0.0f, 0.5f,
-        0.5f, 0.0f,
-        0.0f, 0.5f,
-        0.5f, 0.5f,
-        0.5f, 0.0f
-    };
-  }
-}
\ No newline at end of file
+    mPointProgram.use();
+    final float[] light = mLightData[red][posInModelSpace];
+    mState.disableVertexAttribArray(mPointPositionHandle);
+    mState.vertexAttrib4f(mPointPositionHandle, light[0], light[1], light[2], light[3]);
+    mPointMVPMatrixUniform.setMatrix4(mScene.getModelViewProjectionMatrices(), mLightNode * 16);
+    mState.drawArrays(GLES20.GL_POINTS, 0, 1);
+  }
+}
@@ -0,0 +1,68 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * A welded vertex array plus the 16 bit triangle list that draws it with glDrawElements.
+ * Built by {@link IndexedMeshBuilder}, which also fills in the before/after statistics.
+ */
+public class IndexedMesh {
+
+  private final InterleavedMesh mVertices;
+  private final short[] mIndices;
+  private final int mSourceVertexCount;
+  private final float mSourceAcmr;
+  private final float mAcmr;
+
+  IndexedMesh(InterleavedMesh vertices, short[] indices, int sourceVertexCount, float sourceAcmr, float acmr) {
+    mVertices = vertices;
+    mIndices = indices;
+    mSourceVertexCount = sourceVertexCount;
+    mSourceAcmr = sourceAcmr;
+    mAcmr = acmr;
+  }
+
+  public InterleavedMesh getVertices() {
+    return mVertices;
+  }
+
+  public short[] getIndices() {
+    return mIndices;
+  }
+
+  public int getIndexCount() {
+    return mIndices.length;
+  }
+
+  /**
+   * @return how many vertices the unindexed input had
+   */
+  public int getSourceVertexCount() {
+    return mSourceVertexCount;
+  }
+
+  /**
+   * @return how many unique vertices are left after welding
+   */
+  public int getVertexCount() {
+    return mVertices.getVertexCount();
+  }
+
+  /**
+   * @return average cache miss ratio (transformed vertices per triangle) of the unindexed input
+   */
+  public float getSourceAcmr() {
+    return mSourceAcmr;
+  }
+
+  /**
+   * @return average cache miss ratio after welding and triangle reordering
+   */
+  public float getAcmr() {
+    return mAcmr;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d -> %d vertices, %d triangles, ACMR %.3f -> %.3f",
+        mSourceVertexCount, getVertexCount(), mIndices.length / 3, mSourceAcmr, mAcmr);
+  }
+}
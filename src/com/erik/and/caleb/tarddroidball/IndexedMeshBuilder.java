@@ -0,0 +1,263 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Arrays;
+
+/**
+ * Turns an unindexed triangle list into an {@link IndexedMesh}: vertices that are
+ * identical across every attribute are welded together, triangles are reordered for
+ * the post-transform vertex cache (Tom Forsyth's "Linear-Speed Vertex Cache
+ * Optimisation") and vertices are then renumbered in first-use order so fetches stay
+ * sequential. Plain Java, no GL.
+ */
+public class IndexedMeshBuilder {
+
+  /** Post-transform cache size the ACMR figures are simulated with (FIFO, typical of mobile GPUs). */
+  public static final int DEFAULT_SIMULATED_CACHE_SIZE = 16;
+
+  private static final int MAX_VERTICES = 65536;
+
+  // Forsyth scoring parameters, as given in the paper
+  private static final int CACHE_SIZE = 32;
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2.0f;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+
+  private int mSimulatedCacheSize = DEFAULT_SIMULATED_CACHE_SIZE;
+
+  public IndexedMeshBuilder setSimulatedCacheSize(int simulatedCacheSize) {
+    mSimulatedCacheSize = simulatedCacheSize;
+    return this;
+  }
+
+  /**
+   * @param triangles an unindexed triangle list, three vertices per triangle
+   */
+  public IndexedMesh build(InterleavedMesh triangles) {
+    final int sourceVertexCount = triangles.getVertexCount();
+    if (sourceVertexCount % 3 != 0)
+      throw new IllegalArgumentException("Not a triangle list: " + sourceVertexCount + " vertices");
+
+    final int[] sequential = new int[sourceVertexCount];
+    for (int i = 0; i < sourceVertexCount; i++)
+      sequential[i] = i;
+    final float sourceAcmr = acmr(sequential, mSimulatedCacheSize);
+
+    final int stride = triangles.getFloatsPerVertex();
+    final float[] source = triangles.getData();
+    final int[] remap = new int[sourceVertexCount];
+    final int uniqueCount = weld(source, stride, sourceVertexCount, remap);
+    if (uniqueCount > MAX_VERTICES)
+      throw new IllegalArgumentException("Mesh has " + uniqueCount + " unique vertices, too many for 16 bit indices");
+
+    final int[] indices = optimizeTriangleOrder(remap, uniqueCount);
+
+    // Renumber vertices in the order the reordered triangles first touch them
+    final int[] newIndexOf = new int[uniqueCount];
+    Arrays.fill(newIndexOf, -1);
+    final int[] firstSourceVertex = new int[uniqueCount];
+    for (int i = sourceVertexCount - 1; i >= 0; i--)
+      firstSourceVertex[remap[i]] = i;
+    final float[] welded = new float[uniqueCount * stride];
+    final short[] shortIndices = new short[indices.length];
+    int next = 0;
+    for (int i = 0; i < indices.length; i++) {
+      final int vertex = indices[i];
+      if (newIndexOf[vertex] < 0) {
+        newIndexOf[vertex] = next;
+        System.arraycopy(source, firstSourceVertex[vertex] * stride, welded, next * stride, stride);
+        next++;
+      }
+      indices[i] = newIndexOf[vertex];
+      shortIndices[i] = (short) newIndexOf[vertex];
+    }
+
+    return new IndexedMesh(triangles.withData(welded), shortIndices, sourceVertexCount, sourceAcmr, acmr(indices, mSimulatedCacheSize));
+  }
+
+  /**
+   * Simulates a FIFO post-transform cache over an index list.
+   *
+   * @return vertices transformed per triangle; 3.0 is the worst case, 0.5 the limit for large regular grids
+   */
+  public static float acmr(int[] indices, int cacheSize) {
+    if (indices.length == 0)
+      return 0.0f;
+    final int[] fifo = new int[cacheSize];
+    Arrays.fill(fifo, -1);
+    int head = 0;
+    int misses = 0;
+    for (int i = 0; i < indices.length; i++) {
+      boolean hit = false;
+      for (int c = 0; c < cacheSize; c++) {
+        if (fifo[c] == indices[i]) {
+          hit = true;
+          break;
+        }
+      }
+      if (!hit) {
+        misses++;
+        fifo[head] = indices[i];
+        head = (head + 1) % cacheSize;
+      }
+    }
+    return misses / (indices.length / 3.0f);
+  }
+
+  /**
+   * Welds bit-identical vertices with an open addressing hash table.
+   *
+   * @param remap receives, for every source vertex, the index of its unique vertex
+   * @return the number of unique vertices
+   */
+  private static int weld(float[] data, int stride, int vertexCount, int[] remap) {
+    int tableSize = 1;
+    while (tableSize < vertexCount * 2)
+      tableSize <<= 1;
+    final int[] table = new int[tableSize];
+    Arrays.fill(table, -1);
+    final int[] uniqueSource = new int[vertexCount];
+    int uniqueCount = 0;
+
+    for (int v = 0; v < vertexCount; v++) {
+      int hash = 17;
+      for (int f = 0; f < stride; f++)
+        hash = hash * 31 + Float.floatToIntBits(data[v * stride + f]);
+      hash ^= hash >>> 16;
+
+      int slot = hash & (tableSize - 1);
+      while (true) {
+        final int candidate = table[slot];
+        if (candidate < 0) {
+          table[slot] = uniqueCount;
+          uniqueSource[uniqueCount] = v;
+          remap[v] = uniqueCount++;
+          break;
+        }
+        if (sameVertex(data, stride, uniqueSource[candidate], v)) {
+          remap[v] = candidate;
+          break;
+        }
+        slot = (slot + 1) & (tableSize - 1);
+      }
+    }
+    return uniqueCount;
+  }
+
+  private static boolean sameVertex(float[] data, int stride, int a, int b) {
+    for (int f = 0; f < stride; f++) {
+      if (Float.floatToIntBits(data[a * stride + f]) != Float.floatToIntBits(data[b * stride + f]))
+        return false;
+    }
+    return true;
+  }
+
+  private static float vertexScore(int cachePosition, int remainingTriangles) {
+    if (remainingTriangles == 0)
+      return -1.0f;
+    float score = 0.0f;
+    if (cachePosition >= 0) {
+      if (cachePosition < 3) {
+        score = LAST_TRIANGLE_SCORE;
+      } else {
+        final float scaler = 1.0f / (CACHE_SIZE - 3);
+        score = (float) Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+      }
+    }
+    return score + VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+  }
+
+  /**
+   * @return the triangles of indices, reordered for vertex cache reuse
+   */
+  private static int[] optimizeTriangleOrder(int[] indices, int vertexCount) {
+    final int triangleCount = indices.length / 3;
+
+    // vertex -> triangle adjacency, in CSR form
+    final int[] remaining = new int[vertexCount];
+    for (int i = 0; i < indices.length; i++)
+      remaining[indices[i]]++;
+    final int[] adjacencyStart = new int[vertexCount + 1];
+    for (int v = 0; v < vertexCount; v++)
+      adjacencyStart[v + 1] = adjacencyStart[v] + remaining[v];
+    final int[] adjacency = new int[indices.length];
+    final int[] fill = Arrays.copyOf(adjacencyStart, vertexCount);
+    for (int i = 0; i < indices.length; i++)
+      adjacency[fill[indices[i]]++] = i / 3;
+
+    final int[] cachePosition = new int[vertexCount];
+    Arrays.fill(cachePosition, -1);
+    final float[] vertexScores = new float[vertexCount];
+    for (int v = 0; v < vertexCount; v++)
+      vertexScores[v] = vertexScore(-1, remaining[v]);
+    final float[] triangleScores = new float[triangleCount];
+    for (int t = 0; t < triangleCount; t++)
+      triangleScores[t] = vertexScores[indices[t * 3]] + vertexScores[indices[t * 3 + 1]] + vertexScores[indices[t * 3 + 2]];
+    final boolean[] emitted = new boolean[triangleCount];
+
+    final int[] cache = new int[CACHE_SIZE + 3];
+    final int[] newCache = new int[CACHE_SIZE + 3];
+    int cacheCount = 0;
+    final int[] output = new int[indices.length];
+    int scanStart = 0;
+
+    for (int out = 0; out < triangleCount; out++) {
+      // best triangle touching a cached vertex, else the best triangle overall
+      int best = -1;
+      float bestScore = -1.0f;
+      for (int c = 0; c < cacheCount; c++) {
+        final int v = cache[c];
+        for (int a = adjacencyStart[v]; a < adjacencyStart[v + 1]; a++) {
+          final int t = adjacency[a];
+          if (!emitted[t] && triangleScores[t] > bestScore) {
+            bestScore = triangleScores[t];
+            best = t;
+          }
+        }
+      }
+      if (best < 0) {
+        while (emitted[scanStart])
+          scanStart++;
+        for (int t = scanStart; t < triangleCount; t++) {
+          if (!emitted[t] && triangleScores[t] > bestScore) {
+            bestScore = triangleScores[t];
+            best = t;
+          }
+        }
+      }
+
+      emitted[best] = true;
+      int newCount = 0;
+      for (int k = 0; k < 3; k++) {
+        final int v = indices[best * 3 + k];
+        output[out * 3 + k] = v;
+        newCache[newCount++] = v;
+        remaining[v]--;
+      }
+      for (int c = 0; c < cacheCount; c++) {
+        final int v = cache[c];
+        if (v != newCache[0] && v != newCache[1] && v != newCache[2])
+          newCache[newCount++] = v;
+      }
+
+      // vertices pushed out of the cache lose their cache score
+      for (int c = CACHE_SIZE; c < newCount; c++)
+        cachePosition[newCache[c]] = -1;
+      cacheCount = Math.min(newCount, CACHE_SIZE);
+      System.arraycopy(newCache, 0, cache, 0, cacheCount);
+
+      for (int c = 0; c < cacheCount; c++)
+        cachePosition[cache[c]] = c;
+      for (int c = 0; c < newCount; c++) {
+        final int v = newCache[c];
+        final float score = vertexScore(cachePosition[v], remaining[v]);
+        final float delta = score - vertexScores[v];
+        vertexScores[v] = score;
+        for (int a = adjacencyStart[v]; a < adjacencyStart[v + 1]; a++)
+          triangleScores[adjacency[a]] += delta;
+      }
+    }
+
+    return output;
+  }
+}
@@ -0,0 +1,102 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Geometry helpers for drawing many copies of one mesh in few draw calls on
+ * ES 2.0, which has no hardware instancing. Plain Java, no GL.
+ */
+public class InstanceBatcher {
+
+  /**
+   * Repeats a mesh and tags each copy's vertices with its copy number in an extra
+   * one-float attribute, so a vertex shader can pick that copy's matrix from a palette.
+   *
+   * @return copies of the mesh, laid out as the source attributes followed by the instance index
+   */
+  public static IndexedMesh replicate(IndexedMesh mesh, int copies) {
+    final InterleavedMesh source = mesh.getVertices();
+    final int vertexCount = source.getVertexCount();
+    if (vertexCount * copies > 65536)
+      throw new IllegalArgumentException(copies + " copies do not fit 16 bit indices");
+
+    final int sourceStride = source.getFloatsPerVertex();
+    final int stride = sourceStride + 1;
+    final float[] sourceData = source.getData();
+    final float[] data = new float[vertexCount * copies * stride];
+    for (int copy = 0; copy < copies; copy++) {
+      for (int v = 0; v < vertexCount; v++) {
+        final int out = (copy * vertexCount + v) * stride;
+        System.arraycopy(sourceData, v * sourceStride, data, out, sourceStride);
+        data[out + sourceStride] = copy;
+      }
+    }
+
+    final short[] indices = replicateIndices(mesh.getIndices(), vertexCount, copies);
+
+    final int[] sizes = new int[source.getAttributeCount() + 1];
+    for (int a = 0; a < source.getAttributeCount(); a++)
+      sizes[a] = source.getAttributeSize(a);
+    sizes[sizes.length - 1] = 1;
+
+    return new IndexedMesh(InterleavedMesh.fromInterleaved(data, sizes), indices,
+        mesh.getSourceVertexCount() * copies, mesh.getSourceAcmr(), mesh.getAcmr());
+  }
+
+  /**
+   * @return index list drawing count consecutive copies of a mesh whose copies are vertexCount apart
+   */
+  public static short[] replicateIndices(short[] indices, int vertexCount, int copies) {
+    if (vertexCount * copies > 65536)
+      throw new IllegalArgumentException(copies + " copies do not fit 16 bit indices");
+    final short[] out = new short[indices.length * copies];
+    for (int copy = 0; copy < copies; copy++) {
+      for (int i = 0; i < indices.length; i++)
+        out[copy * indices.length + i] = (short) ((indices[i] & 0xffff) + copy * vertexCount);
+    }
+    return out;
+  }
+
+  /**
+   * Writes count copies of the mesh into out, each transformed into world space by its
+   * model matrix. Positions get the full affine transform, normals only the rotation
+   * part (model matrices are assumed to scale uniformly); other attributes are copied.
+   *
+   * @param models        column-major 4x4 matrices, 16 floats apart
+   * @param firstInstance index of the first matrix to use
+   */
+  public static void transformInstances(InterleavedMesh mesh, int positionAttribute, int normalAttribute,
+                                        float[] models, int firstInstance, int count, float[] out) {
+    final float[] data = mesh.getData();
+    final int stride = mesh.getFloatsPerVertex();
+    final int vertexCount = mesh.getVertexCount();
+    final int position = mesh.getOffset(positionAttribute);
+    final int normal = mesh.getOffset(normalAttribute);
+
+    int o = 0;
+    for (int instance = 0; instance < count; instance++) {
+      final int m = (firstInstance + instance) * 16;
+      final float m0 = models[m], m1 = models[m + 1], m2 = models[m + 2];
+      final float m4 = models[m + 4], m5 = models[m + 5], m6 = models[m + 6];
+      final float m8 = models[m + 8], m9 = models[m + 9], m10 = models[m + 10];
+      final float m12 = models[m + 12], m13 = models[m + 13], m14 = models[m + 14];
+
+      for (int v = 0; v < vertexCount; v++) {
+        final int in = v * stride;
+        System.arraycopy(data, in, out, o, stride);
+
+        float x = data[in + position], y = data[in + position + 1], z = data[in + position + 2];
+        out[o + position] = m0 * x + m4 * y + m8 * z + m12;
+        out[o + position + 1] = m1 * x + m5 * y + m9 * z + m13;
+        out[o + position + 2] = m2 * x + m6 * y + m10 * z + m14;
+
+        x = data[in + normal];
+        y = data[in + normal + 1];
+        z = data[in + normal + 2];
+        out[o + normal] = m0 * x + m4 * y + m8 * z;
+        out[o + normal + 1] = m1 * x + m5 * y + m9 * z;
+        out[o + normal + 2] = m2 * x + m6 * y + m10 * z;
+
+        o += stride;
+      }
+    }
+  }
+}
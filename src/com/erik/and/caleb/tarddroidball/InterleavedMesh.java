@@ -0,0 +1,125 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Packs separate per-attribute float arrays into one interleaved array so the
+ * whole mesh can live in a single vertex buffer object. Plain Java, no GL.
+ */
+public class InterleavedMesh {
+
+  public static final int BYTES_PER_FLOAT = 4;
+
+  private final float[] mData;
+  private final int[] mSizes;
+  private final int[] mOffsets;
+  private final int mFloatsPerVertex;
+  private final int mVertexCount;
+
+  private InterleavedMesh(float[] data, int[] sizes, int[] offsets, int floatsPerVertex, int vertexCount) {
+    mData = data;
+    mSizes = sizes;
+    mOffsets = offsets;
+    mFloatsPerVertex = floatsPerVertex;
+    mVertexCount = vertexCount;
+  }
+
+  /**
+   * @param attributes one array per attribute, each holding vertexCount * sizes[i] floats
+   * @param sizes      number of floats per vertex for each attribute
+   * @return the attributes interleaved vertex by vertex, in the order given
+   */
+  public static InterleavedMesh interleave(float[][] attributes, int[] sizes) {
+    if (attributes.length == 0 || attributes.length != sizes.length)
+      throw new IllegalArgumentException("Need one size per attribute");
+    checkSizes(sizes);
+
+    final int vertexCount = attributes[0].length / sizes[0];
+    final int[] offsets = new int[sizes.length];
+    int floatsPerVertex = 0;
+    for (int a = 0; a < sizes.length; a++) {
+      if (attributes[a].length != vertexCount * sizes[a])
+        throw new IllegalArgumentException("Attribute " + a + " has " + attributes[a].length
+            + " floats, expected " + vertexCount * sizes[a]);
+      offsets[a] = floatsPerVertex;
+      floatsPerVertex += sizes[a];
+    }
+
+    final float[] data = new float[vertexCount * floatsPerVertex];
+    for (int v = 0; v < vertexCount; v++) {
+      final int base = v * floatsPerVertex;
+      for (int a = 0; a < sizes.length; a++)
+        System.arraycopy(attributes[a], v * sizes[a], data, base + offsets[a], sizes[a]);
+    }
+
+    return new InterleavedMesh(data, sizes.clone(), offsets, floatsPerVertex, vertexCount);
+  }
+
+  /**
+   * @param data  vertices that are already interleaved
+   * @param sizes number of floats per vertex for each attribute, in interleaved order
+   */
+  public static InterleavedMesh fromInterleaved(float[] data, int[] sizes) {
+    checkSizes(sizes);
+    final int[] offsets = new int[sizes.length];
+    int floatsPerVertex = 0;
+    for (int a = 0; a < sizes.length; a++) {
+      offsets[a] = floatsPerVertex;
+      floatsPerVertex += sizes[a];
+    }
+    if (data.length % floatsPerVertex != 0)
+      throw new IllegalArgumentException("Data is not a whole number of vertices");
+    return new InterleavedMesh(data, sizes.clone(), offsets, floatsPerVertex, data.length / floatsPerVertex);
+  }
+
+  private static void checkSizes(int[] sizes) {
+    if (sizes.length == 0)
+      throw new IllegalArgumentException("Need at least one attribute");
+    for (int a = 0; a < sizes.length; a++) {
+      if (sizes[a] <= 0)
+        throw new IllegalArgumentException("Attribute " + a + " has size " + sizes[a]);
+    }
+  }
+
+  /**
+   * @return a mesh with this mesh's attribute layout holding different vertex data
+   */
+  public InterleavedMesh withData(float[] data) {
+    if (data.length % mFloatsPerVertex != 0)
+      throw new IllegalArgumentException("Data is not a whole number of vertices");
+    return new InterleavedMesh(data, mSizes, mOffsets, mFloatsPerVertex, data.length / mFloatsPerVertex);
+  }
+
+  public float[] getData() {
+    return mData;
+  }
+
+  public int getVertexCount() {
+    return mVertexCount;
+  }
+
+  public int getAttributeCount() {
+    return mSizes.length;
+  }
+
+  public int getAttributeSize(int attribute) {
+    return mSizes[attribute];
+  }
+
+  /**
+   * @return offset of the attribute within one vertex, in floats
+   */
+  public int getOffset(int attribute) {
+    return mOffsets[attribute];
+  }
+
+  public int getFloatsPerVertex() {
+    return mFloatsPerVertex;
+  }
+
+  public int getStrideInBytes() {
+    return mFloatsPerVertex * BYTES_PER_FLOAT;
+  }
+
+  public int getOffsetInBytes(int attribute) {
+    return mOffsets[attribute] * BYTES_PER_FLOAT;
+  }
+}
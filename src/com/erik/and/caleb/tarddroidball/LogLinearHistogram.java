@@ -0,0 +1,118 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Counts non-negative values in buckets that are linear within each power of
+ * two: 32 buckets per doubling, so any percentile is accurate to about 3% of
+ * the value whatever its magnitude. All storage is allocated up front and
+ * recording is a few shifts and an array increment, cheap enough to call many
+ * times a frame.
+ * <p/>
+ * Not thread-safe.
+ */
+public class LogLinearHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // values at or above 2^40 (18 minutes in nanoseconds) land in the last bucket
+  private static final int MAX_VALUE_BITS = 40;
+  private static final long MAX_TRACKED_VALUE = (1L << MAX_VALUE_BITS) - 1;
+  private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final int[] mCounts = new int[BUCKET_COUNT];
+  private long mTotalCount;
+  private long mSum;
+  private long mMin = Long.MAX_VALUE;
+  private long mMax;
+
+  public void record(long value) {
+    if (value < 0)
+      value = 0;
+    mCounts[bucketOf(Math.min(value, MAX_TRACKED_VALUE))]++;
+    mTotalCount++;
+    mSum += value;
+    if (value < mMin)
+      mMin = value;
+    if (value > mMax)
+      mMax = value;
+  }
+
+  /**
+   * Adds everything recorded into other to this histogram.
+   */
+  public void add(LogLinearHistogram other) {
+    if (other.mTotalCount == 0)
+      return;
+    for (int i = 0; i < BUCKET_COUNT; i++)
+      mCounts[i] += other.mCounts[i];
+    mTotalCount += other.mTotalCount;
+    mSum += other.mSum;
+    mMin = Math.min(mMin, other.mMin);
+    mMax = Math.max(mMax, other.mMax);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++)
+      mCounts[i] = 0;
+    mTotalCount = 0;
+    mSum = 0;
+    mMin = Long.MAX_VALUE;
+    mMax = 0;
+  }
+
+  public long getCount() {
+    return mTotalCount;
+  }
+
+  public long getMin() {
+    return mTotalCount == 0 ? 0 : mMin;
+  }
+
+  public long getMax() {
+    return mMax;
+  }
+
+  public double getMean() {
+    return mTotalCount == 0 ? 0 : (double) mSum / mTotalCount;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the largest value that falls in the same bucket as the value at
+   *     the percentile, but never more than the largest value recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (mTotalCount == 0)
+      return 0;
+    final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * mTotalCount));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += mCounts[i];
+      if (seen >= rank)
+        return Math.min(highestValueIn(i), mMax);
+    }
+    return mMax;
+  }
+
+  /**
+   * @return the bucket a value from 0 to 2^40 - 1 is counted in
+   */
+  public static int bucketOf(long value) {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    // the top SUB_BUCKET_BITS + 1 bits of the value, of which the highest is always set
+    final int top = (int) (value >>> shift);
+    return (shift + 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+  }
+
+  /**
+   * @return the largest value counted in the bucket
+   */
+  public static long highestValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS)
+      return bucket;
+    final int shift = bucket / SUB_BUCKETS - 1;
+    final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
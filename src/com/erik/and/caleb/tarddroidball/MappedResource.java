@@ -0,0 +1,64 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps compiled raw resources, like the texture atlas and converted meshes,
+ * so they can be handed to GL without a copy on the Java heap. Only files
+ * stored uncompressed in the APK can be mapped; anything else is read into a
+ * direct buffer instead, once.
+ */
+public class MappedResource {
+
+  private static final String TAG = "MappedResource";
+
+  /**
+   * @return the resource's bytes, mapped if it is stored uncompressed in the APK, otherwise read into a direct buffer
+   */
+  public static ByteBuffer map(Context context, int id) throws IOException {
+    AssetFileDescriptor descriptor = null;
+    try {
+      descriptor = context.getResources().openRawResourceFd(id);
+    } catch (Resources.NotFoundException e) {
+      // compressed in the APK, so there is no file range to map
+    }
+    if (descriptor != null) {
+      final FileInputStream in = new FileInputStream(descriptor.getFileDescriptor());
+      try {
+        return in.getChannel().map(FileChannel.MapMode.READ_ONLY, descriptor.getStartOffset(), descriptor.getLength());
+      } finally {
+        in.close();
+        descriptor.close();
+      }
+    }
+    Log.w(TAG, context.getResources().getResourceEntryName(id) + " is compressed in the APK, reading it instead of mapping");
+    final InputStream in = context.getResources().openRawResource(id);
+    try {
+      ByteBuffer data = ByteBuffer.allocateDirect(Math.max(in.available(), 4096));
+      final byte[] chunk = new byte[16384];
+      int n;
+      while ((n = in.read(chunk)) > 0) {
+        if (data.remaining() < n) {
+          final ByteBuffer grown = ByteBuffer.allocateDirect(data.capacity() * 2 + n);
+          data.flip();
+          grown.put(data);
+          data = grown;
+        }
+        data.put(chunk, 0, n);
+      }
+      data.flip();
+      return data;
+    } finally {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * The axis-aligned box and bounding sphere of a mesh, in the mesh's own space.
+ * The sphere is centred on the box, which is close enough for the boxy meshes
+ * drawn here and cheap to compute.
+ */
+public class MeshBounds {
+
+  private final float mMinX, mMinY, mMinZ;
+  private final float mMaxX, mMaxY, mMaxZ;
+  private final float mCenterX, mCenterY, mCenterZ;
+  private final float mRadius;
+
+  public MeshBounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float radius) {
+    mMinX = minX;
+    mMinY = minY;
+    mMinZ = minZ;
+    mMaxX = maxX;
+    mMaxY = maxY;
+    mMaxZ = maxZ;
+    mCenterX = (minX + maxX) * 0.5f;
+    mCenterY = (minY + maxY) * 0.5f;
+    mCenterZ = (minZ + maxZ) * 0.5f;
+    mRadius = radius;
+  }
+
+  /**
+   * Bounds of one three component attribute of the mesh, normally its positions.
+   */
+  public static MeshBounds of(InterleavedMesh mesh, int positionAttribute) {
+    final float[] data = mesh.getData();
+    final int stride = mesh.getFloatsPerVertex();
+    final int offset = mesh.getOffset(positionAttribute);
+    final int count = mesh.getVertexCount();
+    float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+    float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+    for (int v = 0; v < count; v++) {
+      final int i = v * stride + offset;
+      minX = Math.min(minX, data[i]);
+      minY = Math.min(minY, data[i + 1]);
+      minZ = Math.min(minZ, data[i + 2]);
+      maxX = Math.max(maxX, data[i]);
+      maxY = Math.max(maxY, data[i + 1]);
+      maxZ = Math.max(maxZ, data[i + 2]);
+    }
+    final float centerX = (minX + maxX) * 0.5f, centerY = (minY + maxY) * 0.5f, centerZ = (minZ + maxZ) * 0.5f;
+    float radiusSquared = 0;
+    for (int v = 0; v < count; v++) {
+      final int i = v * stride + offset;
+      final float dx = data[i] - centerX, dy = data[i + 1] - centerY, dz = data[i + 2] - centerZ;
+      radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+    }
+    return new MeshBounds(minX, minY, minZ, maxX, maxY, maxZ, (float) Math.sqrt(radiusSquared));
+  }
+
+  /**
+   * Writes the world space sphere (x, y, z, radius) for the given model matrix.
+   * Non-uniform scale grows the radius by the largest axis scale.
+   */
+  public void transformSphere(float[] modelMatrix, int offset, float[] sphere) {
+    final float[] m = modelMatrix;
+    final int o = offset;
+    sphere[0] = m[o] * mCenterX + m[o + 4] * mCenterY + m[o + 8] * mCenterZ + m[o + 12];
+    sphere[1] = m[o + 1] * mCenterX + m[o + 5] * mCenterY + m[o + 9] * mCenterZ + m[o + 13];
+    sphere[2] = m[o + 2] * mCenterX + m[o + 6] * mCenterY + m[o + 10] * mCenterZ + m[o + 14];
+    final float scaleX = m[o] * m[o] + m[o + 1] * m[o + 1] + m[o + 2] * m[o + 2];
+    final float scaleY = m[o + 4] * m[o + 4] + m[o + 5] * m[o + 5] + m[o + 6] * m[o + 6];
+    final float scaleZ = m[o + 8] * m[o + 8] + m[o + 9] * m[o + 9] + m[o + 10] * m[o + 10];
+    sphere[3] = mRadius * (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+  }
+
+  /**
+   * @return the radius of the sphere about the model's origin that holds the mesh however it is rotated
+   */
+  public float getRadiusAboutOrigin() {
+    return (float) Math.sqrt(mCenterX * mCenterX + mCenterY * mCenterY + mCenterZ * mCenterZ) + mRadius;
+  }
+
+  public float getMinX() {
+    return mMinX;
+  }
+
+  public float getMinY() {
+    return mMinY;
+  }
+
+  public float getMinZ() {
+    return mMinZ;
+  }
+
+  public float getMaxX() {
+    return mMaxX;
+  }
+
+  public float getMaxY() {
+    return mMaxY;
+  }
+
+  public float getMaxZ() {
+    return mMaxZ;
+  }
+
+  public float getRadius() {
+    return mRadius;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("(%.2f, %.2f, %.2f)-(%.2f, %.2f, %.2f), radius %.2f",
+        mMinX, mMinY, mMinZ, mMaxX, mMaxY, mMaxZ, mRadius);
+  }
+}
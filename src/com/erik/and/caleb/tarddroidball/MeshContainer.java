@@ -0,0 +1,254 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A mesh converted ahead of time by the mesh converter in tools, read
+ * straight out of a mapped or direct buffer: the vertex and index blocks
+ * handed to GL are slices of that buffer, never copies.
+ * <p/>
+ * Everything is little-endian:
+ * <pre>
+ * magic, version, vertex count, index count, stride, attribute count (ints)
+ * per attribute: semantic, components, type, normalized, offset (ints),
+ *                then scale and bias, 4 floats each
+ * bounds: min x, y, z, max x, y, z (floats)
+ * vertex block offset, index block offset (ints)
+ * vertex block: count * stride bytes, interleaved
+ * index block: count unsigned shorts, a triangle list
+ * </pre>
+ * Types are the GL enums of {@link VertexLayout}, so they go to
+ * glVertexAttribPointer as they are.
+ * Quantized attributes are stored normalized; component i of the value meant
+ * is bias[i] + scale[i] * what GL reads. The converter stores positions and
+ * texture coordinates as normalized unsigned shorts over the mesh's range and
+ * normals as normalized bytes, with the scale and bias left for whoever
+ * draws the mesh, e.g. folded into the model matrix or the atlas rect.
+ * Attributes and both blocks start at multiples of 4 bytes, and GL reads
+ * them in native order, which is little-endian on Android. Plain Java, no GL.
+ */
+public class MeshContainer {
+
+  public static final int MAGIC = 0x4853454d; // "MESH"
+  public static final int VERSION = 1;
+
+  public static final int SEMANTIC_POSITION = 0;
+  public static final int SEMANTIC_NORMAL = 1;
+  public static final int SEMANTIC_TEXCOORD = 2;
+  public static final int SEMANTIC_COLOR = 3;
+
+  /** The shader attribute each semantic is bound to. */
+  private static final String[] SEMANTIC_NAMES = {"a_Position", "a_Normal", "a_TexCoordinate", "a_Color"};
+
+  private static final int HEADER_INTS = 6;
+  private static final int ATTRIBUTE_INTS = 5 + 8;
+
+  private final ByteBuffer mData;
+  private final int mVertexCount;
+  private final int mIndexCount;
+  private final int mStride;
+  // per attribute: semantic, components, type, normalized, offset
+  private final int[] mAttributes;
+  // per attribute: scale x, y, z, w, bias x, y, z, w
+  private final float[] mScaleBias;
+  private final MeshBounds mBounds;
+  private final int mVertexOffset;
+  private final int mIndexOffset;
+
+  /**
+   * Parses the header; the data stays where it is.
+   */
+  public MeshContainer(ByteBuffer data) throws IOException {
+    mData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    mData.position(0);
+    try {
+      if (mData.getInt() != MAGIC)
+        throw new IOException("Not a converted mesh");
+      final int version = mData.getInt();
+      if (version != VERSION)
+        throw new IOException("Unsupported mesh version " + version);
+      mVertexCount = mData.getInt();
+      mIndexCount = mData.getInt();
+      mStride = mData.getInt();
+      final int attributes = mData.getInt();
+      mAttributes = new int[attributes * 5];
+      mScaleBias = new float[attributes * 8];
+      for (int a = 0; a < attributes; a++) {
+        for (int i = 0; i < 5; i++)
+          mAttributes[a * 5 + i] = mData.getInt();
+        for (int i = 0; i < 8; i++)
+          mScaleBias[a * 8 + i] = mData.getFloat();
+        final int end = getOffset(a) + getComponents(a) * VertexLayout.bytesPerComponent(getType(a));
+        if (end > mStride || getComponents(a) < 1 || getComponents(a) > 4)
+          throw new IOException("Attribute " + a + " does not fit a " + mStride + " byte vertex");
+      }
+      final float minX = mData.getFloat(), minY = mData.getFloat(), minZ = mData.getFloat();
+      final float maxX = mData.getFloat(), maxY = mData.getFloat(), maxZ = mData.getFloat();
+      final float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+      mBounds = new MeshBounds(minX, minY, minZ, maxX, maxY, maxZ, 0.5f * (float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+      mVertexOffset = mData.getInt();
+      mIndexOffset = mData.getInt();
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated mesh");
+    }
+    if (mVertexOffset + (long) mVertexCount * mStride > mData.limit() || mIndexOffset + mIndexCount * 2L > mData.limit())
+      throw new IOException("Truncated mesh");
+  }
+
+  /**
+   * @return bytes in a header with the given number of attributes, which is where the converter starts the vertex block
+   */
+  public static int getHeaderSize(int attributes) {
+    return (HEADER_INTS + attributes * ATTRIBUTE_INTS + 6 + 2) * 4;
+  }
+
+  public int getVertexCount() {
+    return mVertexCount;
+  }
+
+  public int getIndexCount() {
+    return mIndexCount;
+  }
+
+  public int getStride() {
+    return mStride;
+  }
+
+  public int getAttributeCount() {
+    return mAttributes.length / 5;
+  }
+
+  /**
+   * @return the attribute with the given semantic, or -1
+   */
+  public int findAttribute(int semantic) {
+    for (int a = 0; a < getAttributeCount(); a++) {
+      if (getSemantic(a) == semantic)
+        return a;
+    }
+    return -1;
+  }
+
+  public int getSemantic(int attribute) {
+    return mAttributes[attribute * 5];
+  }
+
+  public int getComponents(int attribute) {
+    return mAttributes[attribute * 5 + 1];
+  }
+
+  public int getType(int attribute) {
+    return mAttributes[attribute * 5 + 2];
+  }
+
+  public boolean isNormalized(int attribute) {
+    return mAttributes[attribute * 5 + 3] != 0;
+  }
+
+  public int getOffset(int attribute) {
+    return mAttributes[attribute * 5 + 4];
+  }
+
+  public float getScale(int attribute, int component) {
+    return mScaleBias[attribute * 8 + component];
+  }
+
+  public float getBias(int attribute, int component) {
+    return mScaleBias[attribute * 8 + 4 + component];
+  }
+
+  /**
+   * @return the vertex layout, with each semantic bound to the scene shaders' attribute of that kind
+   */
+  public VertexLayout getLayout() {
+    final VertexLayout.Builder layout = new VertexLayout.Builder().setStride(mStride);
+    for (int a = 0; a < getAttributeCount(); a++) {
+      final int semantic = getSemantic(a);
+      final String name = semantic >= 0 && semantic < SEMANTIC_NAMES.length ? SEMANTIC_NAMES[semantic] : "a_Unknown" + semantic;
+      layout.add(name, getComponents(a), getType(a), isNormalized(a), getOffset(a));
+    }
+    return layout.build();
+  }
+
+  /**
+   * @return the bounds of the positions before quantizing
+   */
+  public MeshBounds getBounds() {
+    return mBounds;
+  }
+
+  /**
+   * @return the vertex block, as a slice of the container's buffer
+   */
+  public ByteBuffer getVertexData() {
+    return slice(mVertexOffset, mVertexCount * mStride);
+  }
+
+  /**
+   * @return the index block, as a slice of the container's buffer
+   */
+  public ByteBuffer getIndexData() {
+    return slice(mIndexOffset, mIndexCount * 2);
+  }
+
+  private ByteBuffer slice(int offset, int length) {
+    final ByteBuffer data = mData.duplicate();
+    data.limit(offset + length);
+    data.position(offset);
+    return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Reads one component of a vertex's attribute as GL would, normalized but
+   * before scale and bias.
+   */
+  public float getRaw(int vertex, int attribute, int component) {
+    final int at = mVertexOffset + vertex * mStride + getOffset(attribute) + component * VertexLayout.bytesPerComponent(getType(attribute));
+    return VertexLayout.get(mData, at, getType(attribute), isNormalized(attribute));
+  }
+
+  /**
+   * @return one component of a vertex's attribute, with scale and bias applied
+   */
+  public float get(int vertex, int attribute, int component) {
+    return getBias(attribute, component) + getScale(attribute, component) * getRaw(vertex, attribute, component);
+  }
+
+  /**
+   * Expands the vertices back to floats for code that works on the CPU
+   * copy, in the attribute order of the file. This copies every vertex, so
+   * meshes only drawn from a {@link VertexBuffer} should not need it.
+   */
+  public InterleavedMesh decode() {
+    final int[] sizes = new int[getAttributeCount()];
+    int floatsPerVertex = 0;
+    for (int a = 0; a < sizes.length; a++) {
+      sizes[a] = getComponents(a);
+      floatsPerVertex += sizes[a];
+    }
+    final float[] data = new float[mVertexCount * floatsPerVertex];
+    int i = 0;
+    for (int v = 0; v < mVertexCount; v++) {
+      for (int a = 0; a < sizes.length; a++) {
+        for (int c = 0; c < sizes[a]; c++)
+          data[i++] = get(v, a, c);
+      }
+    }
+    return InterleavedMesh.fromInterleaved(data, sizes);
+  }
+
+  public short[] getIndices() {
+    final short[] indices = new short[mIndexCount];
+    getIndexData().asShortBuffer().get(indices);
+    return indices;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d vertices of %d bytes, %d triangles, %d bytes", mVertexCount, mStride, mIndexCount / 3,
+        mIndexOffset + mIndexCount * 2);
+  }
+}
@@ -0,0 +1,465 @@
+package com.erik.and.caleb.tarddroidball;
+
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+import java.util.Arrays;
+
+/**
+ * Boxes that fall, collide and bounce. Each body is a box with a centre,
+ * half extents and an orientation, a velocity and an inverse mass; an
+ * inverse mass of 0 makes it kinematic, moved only by its velocity or by
+ * being placed, and pushing dynamic bodies without being pushed back.
+ * <p/>
+ * A step integrates velocities and positions, recomputes each body's
+ * axis-aligned box, asks the {@link BroadPhase} for the pairs whose boxes
+ * overlap, and tests those exactly: boxes that are both axis-aligned on
+ * their boxes alone, others as oriented boxes by separating axes. Each
+ * contact gets an impulse along its normal and a push out of the overlap.
+ * Rotation is not simulated: contacts change velocities, not orientations.
+ * The bounds, when set, are walls the dynamic bodies stay inside.
+ * <p/>
+ * Bodies are kept as structures of arrays, a float array per component, so
+ * the loops over every body read only what they need; the orientation, which
+ * only the oriented test reads, is the three axes packed nine floats a body,
+ * as the scene graph packs its matrices. Plain Java, no GL; not thread-safe.
+ */
+public class PhysicsWorld {
+
+  // overlap left alone, so resting contacts do not jitter
+  private static final float SLOP = 0.005f;
+  // share of the rest pushed out each step
+  private static final float CORRECTION = 0.8f;
+  private static final float PARALLEL_EPSILON = 1e-6f;
+
+  private final BroadPhase mBroadPhase;
+  private final CollisionPairs mPairs = new CollisionPairs();
+  private int mCount;
+  private int mCapacity;
+
+  private float[] mPositionX = new float[0], mPositionY = new float[0], mPositionZ = new float[0];
+  private float[] mVelocityX = new float[0], mVelocityY = new float[0], mVelocityZ = new float[0];
+  private float[] mHalfX = new float[0], mHalfY = new float[0], mHalfZ = new float[0];
+  private float[] mInverseMass = new float[0];
+  private boolean[] mAxisAligned = new boolean[0];
+  private float[] mAxes = new float[0];
+  private float[] mMinX = new float[0], mMinY = new float[0], mMinZ = new float[0];
+  private float[] mMaxX = new float[0], mMaxY = new float[0], mMaxZ = new float[0];
+
+  private float mGravity;
+  private float mRestitution = 0.5f;
+  private boolean mBounded;
+  private float mBoundsMinX, mBoundsMinY, mBoundsMinZ, mBoundsMaxX, mBoundsMaxY, mBoundsMaxZ;
+
+  // the last contact found, from a to b
+  private float mNormalX, mNormalY, mNormalZ, mDepth;
+  private final float[] mScratch = new float[3];
+  private int mLastContacts;
+
+  public PhysicsWorld(BroadPhase broadPhase) {
+    mBroadPhase = broadPhase;
+  }
+
+  /**
+   * Adds an axis-aligned box at rest.
+   *
+   * @param inverseMass 0 for a kinematic body
+   * @return the body's index
+   */
+  public int addBody(float x, float y, float z, float halfX, float halfY, float halfZ, float inverseMass) {
+    if (mCount == mCapacity)
+      grow(Math.max(16, mCapacity * 2));
+    final int body = mCount++;
+    mPositionX[body] = x;
+    mPositionY[body] = y;
+    mPositionZ[body] = z;
+    mVelocityX[body] = mVelocityY[body] = mVelocityZ[body] = 0;
+    mHalfX[body] = halfX;
+    mHalfY[body] = halfY;
+    mHalfZ[body] = halfZ;
+    mInverseMass[body] = inverseMass;
+    setAxisAligned(body);
+    return body;
+  }
+
+  public int getBodyCount() {
+    return mCount;
+  }
+
+  /**
+   * Drops every body; the arrays are kept for the next ones.
+   */
+  public void clear() {
+    mCount = 0;
+  }
+
+  /**
+   * @param gravity acceleration along y, negative for down
+   */
+  public void setGravity(float gravity) {
+    mGravity = gravity;
+  }
+
+  /**
+   * @param restitution 0 for contacts that stop bodies dead, 1 for ones that bounce back fully
+   */
+  public void setRestitution(float restitution) {
+    mRestitution = restitution;
+  }
+
+  /**
+   * Walls the dynamic bodies' boxes stay inside; the bottom is the floor.
+   */
+  public void setBounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    mBounded = true;
+    mBoundsMinX = minX;
+    mBoundsMinY = minY;
+    mBoundsMinZ = minZ;
+    mBoundsMaxX = maxX;
+    mBoundsMaxY = maxY;
+    mBoundsMaxZ = maxZ;
+  }
+
+  public void setPosition(int body, float x, float y, float z) {
+    mPositionX[body] = x;
+    mPositionY[body] = y;
+    mPositionZ[body] = z;
+  }
+
+  public void setVelocity(int body, float x, float y, float z) {
+    mVelocityX[body] = x;
+    mVelocityY[body] = y;
+    mVelocityZ[body] = z;
+  }
+
+  /**
+   * @param offset of the unit quaternion x, y, z, w in q
+   */
+  public void setOrientation(int body, float[] q, int offset) {
+    if (q[offset] == 0 && q[offset + 1] == 0 && q[offset + 2] == 0) {
+      setAxisAligned(body);
+      return;
+    }
+    mAxisAligned[body] = false;
+    final float[] axis = mScratch;
+    for (int k = 0; k < 3; k++) {
+      Quat.rotateVector(axis, 0, q, offset, k == 0 ? 1 : 0, k == 1 ? 1 : 0, k == 2 ? 1 : 0);
+      mAxes[body * 9 + k * 3] = axis[0];
+      mAxes[body * 9 + k * 3 + 1] = axis[1];
+      mAxes[body * 9 + k * 3 + 2] = axis[2];
+    }
+  }
+
+  public float getPositionX(int body) {
+    return mPositionX[body];
+  }
+
+  public float getPositionY(int body) {
+    return mPositionY[body];
+  }
+
+  public float getPositionZ(int body) {
+    return mPositionZ[body];
+  }
+
+  public float getVelocityX(int body) {
+    return mVelocityX[body];
+  }
+
+  public float getVelocityY(int body) {
+    return mVelocityY[body];
+  }
+
+  public float getVelocityZ(int body) {
+    return mVelocityZ[body];
+  }
+
+  public float getInverseMass(int body) {
+    return mInverseMass[body];
+  }
+
+  /**
+   * The body's axis-aligned box as of the last step or collide, minX first.
+   */
+  public void getBounds(int body, float[] bounds, int offset) {
+    bounds[offset] = mMinX[body];
+    bounds[offset + 1] = mMinY[body];
+    bounds[offset + 2] = mMinZ[body];
+    bounds[offset + 3] = mMaxX[body];
+    bounds[offset + 4] = mMaxY[body];
+    bounds[offset + 5] = mMaxZ[body];
+  }
+
+  public BroadPhase getBroadPhase() {
+    return mBroadPhase;
+  }
+
+  /**
+   * @return the pairs the broad phase found in the last step or collide
+   */
+  public CollisionPairs getPairs() {
+    return mPairs;
+  }
+
+  /**
+   * @return the pairs that were really touching in the last step or collide
+   */
+  public int getLastContactCount() {
+    return mLastContacts;
+  }
+
+  /**
+   * Moves every body on by dt seconds, then resolves contacts.
+   */
+  public void step(float dt) {
+    final float gravity = mGravity * dt;
+    for (int body = 0; body < mCount; body++) {
+      if (mInverseMass[body] != 0)
+        mVelocityY[body] += gravity;
+      mPositionX[body] += mVelocityX[body] * dt;
+      mPositionY[body] += mVelocityY[body] * dt;
+      mPositionZ[body] += mVelocityZ[body] * dt;
+    }
+    collide();
+  }
+
+  /**
+   * Finds contacts and pushes bodies apart without moving them on, for
+   * bodies that are placed rather than moved by their velocities, like one
+   * dragged by a finger.
+   */
+  public void collide() {
+    updateBounds();
+    mBroadPhase.update(mMinX, mMinY, mMinZ, mMaxX, mMaxY, mMaxZ, mCount);
+    mPairs.clear();
+    mBroadPhase.findPairs(mPairs);
+    int contacts = 0;
+    for (int i = 0; i < mPairs.size(); i++) {
+      final int a = mPairs.getFirst(i), b = mPairs.getSecond(i);
+      if (mInverseMass[a] == 0 && mInverseMass[b] == 0)
+        continue;
+      if (mAxisAligned[a] && mAxisAligned[b] ? contactAligned(a, b) : contactOriented(a, b)) {
+        resolve(a, b);
+        contacts++;
+      }
+    }
+    mLastContacts = contacts;
+    if (mBounded)
+      keepInBounds();
+  }
+
+  private void updateBounds() {
+    for (int body = 0; body < mCount; body++) {
+      float extentX = mHalfX[body], extentY = mHalfY[body], extentZ = mHalfZ[body];
+      if (!mAxisAligned[body]) {
+        final int a = body * 9;
+        final float hx = extentX, hy = extentY, hz = extentZ;
+        extentX = Math.abs(mAxes[a]) * hx + Math.abs(mAxes[a + 3]) * hy + Math.abs(mAxes[a + 6]) * hz;
+        extentY = Math.abs(mAxes[a + 1]) * hx + Math.abs(mAxes[a + 4]) * hy + Math.abs(mAxes[a + 7]) * hz;
+        extentZ = Math.abs(mAxes[a + 2]) * hx + Math.abs(mAxes[a + 5]) * hy + Math.abs(mAxes[a + 8]) * hz;
+      }
+      mMinX[body] = mPositionX[body] - extentX;
+      mMaxX[body] = mPositionX[body] + extentX;
+      mMinY[body] = mPositionY[body] - extentY;
+      mMaxY[body] = mPositionY[body] + extentY;
+      mMinZ[body] = mPositionZ[body] - extentZ;
+      mMaxZ[body] = mPositionZ[body] + extentZ;
+    }
+  }
+
+  /**
+   * Two axis-aligned boxes touch where their boxes overlap, and part along the axis they overlap least on.
+   */
+  private boolean contactAligned(int a, int b) {
+    final float overlapX = Math.min(mMaxX[a], mMaxX[b]) - Math.max(mMinX[a], mMinX[b]);
+    final float overlapY = Math.min(mMaxY[a], mMaxY[b]) - Math.max(mMinY[a], mMinY[b]);
+    final float overlapZ = Math.min(mMaxZ[a], mMaxZ[b]) - Math.max(mMinZ[a], mMinZ[b]);
+    if (overlapX < 0 || overlapY < 0 || overlapZ < 0)
+      return false;
+    mNormalX = mNormalY = mNormalZ = 0;
+    if (overlapX <= overlapY && overlapX <= overlapZ) {
+      mDepth = overlapX;
+      mNormalX = mPositionX[b] >= mPositionX[a] ? 1 : -1;
+    } else if (overlapY <= overlapZ) {
+      mDepth = overlapY;
+      mNormalY = mPositionY[b] >= mPositionY[a] ? 1 : -1;
+    } else {
+      mDepth = overlapZ;
+      mNormalZ = mPositionZ[b] >= mPositionZ[a] ? 1 : -1;
+    }
+    return true;
+  }
+
+  /**
+   * Separating axes for two oriented boxes: their six face normals and the
+   * nine crossings of their edges. The boxes touch if no axis separates
+   * them, and part along the axis they overlap least on.
+   */
+  private boolean contactOriented(int a, int b) {
+    final float dx = mPositionX[b] - mPositionX[a];
+    final float dy = mPositionY[b] - mPositionY[a];
+    final float dz = mPositionZ[b] - mPositionZ[a];
+    mDepth = Float.MAX_VALUE;
+    for (int k = 0; k < 3; k++) {
+      if (!testAxis(a, b, axis(a, k, 0), axis(a, k, 1), axis(a, k, 2), dx, dy, dz))
+        return false;
+      if (!testAxis(a, b, axis(b, k, 0), axis(b, k, 1), axis(b, k, 2), dx, dy, dz))
+        return false;
+    }
+    for (int i = 0; i < 3; i++) {
+      final float ax = axis(a, i, 0), ay = axis(a, i, 1), az = axis(a, i, 2);
+      for (int j = 0; j < 3; j++) {
+        final float bx = axis(b, j, 0), by = axis(b, j, 1), bz = axis(b, j, 2);
+        float lx = ay * bz - az * by, ly = az * bx - ax * bz, lz = ax * by - ay * bx;
+        final float length = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+        // parallel edges give no axis the face normals have not covered
+        if (length < PARALLEL_EPSILON)
+          continue;
+        lx /= length;
+        ly /= length;
+        lz /= length;
+        if (!testAxis(a, b, lx, ly, lz, dx, dy, dz))
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Projects both boxes onto the unit axis l, keeping the shallowest overlap so far.
+   *
+   * @return false if the axis separates them
+   */
+  private boolean testAxis(int a, int b, float lx, float ly, float lz, float dx, float dy, float dz) {
+    final float distance = lx * dx + ly * dy + lz * dz;
+    final float overlap = radius(a, lx, ly, lz) + radius(b, lx, ly, lz) - Math.abs(distance);
+    if (overlap < 0)
+      return false;
+    if (overlap < mDepth) {
+      final float sign = distance >= 0 ? 1 : -1;
+      mDepth = overlap;
+      mNormalX = lx * sign;
+      mNormalY = ly * sign;
+      mNormalZ = lz * sign;
+    }
+    return true;
+  }
+
+  /**
+   * @return half the length of the body's projection onto the unit axis l
+   */
+  private float radius(int body, float lx, float ly, float lz) {
+    return mHalfX[body] * Math.abs(lx * axis(body, 0, 0) + ly * axis(body, 0, 1) + lz * axis(body, 0, 2))
+        + mHalfY[body] * Math.abs(lx * axis(body, 1, 0) + ly * axis(body, 1, 1) + lz * axis(body, 1, 2))
+        + mHalfZ[body] * Math.abs(lx * axis(body, 2, 0) + ly * axis(body, 2, 1) + lz * axis(body, 2, 2));
+  }
+
+  private float axis(int body, int axis, int component) {
+    return mAxes[body * 9 + axis * 3 + component];
+  }
+
+  /**
+   * Cancels the velocity the bodies close at along the normal, plus the
+   * restitution's share of it, and pushes them out of each other in
+   * proportion to their inverse masses.
+   */
+  private void resolve(int a, int b) {
+    final float inverseA = mInverseMass[a], inverseB = mInverseMass[b];
+    final float inverseSum = inverseA + inverseB;
+    final float nx = mNormalX, ny = mNormalY, nz = mNormalZ;
+    final float closing = (mVelocityX[b] - mVelocityX[a]) * nx + (mVelocityY[b] - mVelocityY[a]) * ny
+        + (mVelocityZ[b] - mVelocityZ[a]) * nz;
+    if (closing < 0) {
+      final float impulse = -(1 + mRestitution) * closing / inverseSum;
+      mVelocityX[a] -= impulse * inverseA * nx;
+      mVelocityY[a] -= impulse * inverseA * ny;
+      mVelocityZ[a] -= impulse * inverseA * nz;
+      mVelocityX[b] += impulse * inverseB * nx;
+      mVelocityY[b] += impulse * inverseB * ny;
+      mVelocityZ[b] += impulse * inverseB * nz;
+    }
+    final float push = Math.max(mDepth - SLOP, 0) * CORRECTION / inverseSum;
+    mPositionX[a] -= push * inverseA * nx;
+    mPositionY[a] -= push * inverseA * ny;
+    mPositionZ[a] -= push * inverseA * nz;
+    mPositionX[b] += push * inverseB * nx;
+    mPositionY[b] += push * inverseB * ny;
+    mPositionZ[b] += push * inverseB * nz;
+  }
+
+  /**
+   * Puts dynamic bodies whose boxes cross a wall back inside, bouncing them off it.
+   */
+  private void keepInBounds() {
+    final float restitution = mRestitution;
+    for (int body = 0; body < mCount; body++) {
+      if (mInverseMass[body] == 0)
+        continue;
+      // the box is from before the contacts moved the body, so measure from its position
+      final float extentX = (mMaxX[body] - mMinX[body]) * 0.5f;
+      final float extentY = (mMaxY[body] - mMinY[body]) * 0.5f;
+      final float extentZ = (mMaxZ[body] - mMinZ[body]) * 0.5f;
+      if (mPositionY[body] - extentY < mBoundsMinY) {
+        mPositionY[body] = mBoundsMinY + extentY;
+        if (mVelocityY[body] < 0)
+          mVelocityY[body] *= -restitution;
+      } else if (mPositionY[body] + extentY > mBoundsMaxY) {
+        mPositionY[body] = mBoundsMaxY - extentY;
+        if (mVelocityY[body] > 0)
+          mVelocityY[body] *= -restitution;
+      }
+      if (mPositionX[body] - extentX < mBoundsMinX) {
+        mPositionX[body] = mBoundsMinX + extentX;
+        if (mVelocityX[body] < 0)
+          mVelocityX[body] *= -restitution;
+      } else if (mPositionX[body] + extentX > mBoundsMaxX) {
+        mPositionX[body] = mBoundsMaxX - extentX;
+        if (mVelocityX[body] > 0)
+          mVelocityX[body] *= -restitution;
+      }
+      if (mPositionZ[body] - extentZ < mBoundsMinZ) {
+        mPositionZ[body] = mBoundsMinZ + extentZ;
+        if (mVelocityZ[body] < 0)
+          mVelocityZ[body] *= -restitution;
+      } else if (mPositionZ[body] + extentZ > mBoundsMaxZ) {
+        mPositionZ[body] = mBoundsMaxZ - extentZ;
+        if (mVelocityZ[body] > 0)
+          mVelocityZ[body] *= -restitution;
+      }
+    }
+  }
+
+  private void setAxisAligned(int body) {
+    mAxisAligned[body] = true;
+    final int a = body * 9;
+    Arrays.fill(mAxes, a, a + 9, 0);
+    mAxes[a] = mAxes[a + 4] = mAxes[a + 8] = 1;
+  }
+
+  private void grow(int capacity) {
+    mPositionX = Arrays.copyOf(mPositionX, capacity);
+    mPositionY = Arrays.copyOf(mPositionY, capacity);
+    mPositionZ = Arrays.copyOf(mPositionZ, capacity);
+    mVelocityX = Arrays.copyOf(mVelocityX, capacity);
+    mVelocityY = Arrays.copyOf(mVelocityY, capacity);
+    mVelocityZ = Arrays.copyOf(mVelocityZ, capacity);
+    mHalfX = Arrays.copyOf(mHalfX, capacity);
+    mHalfY = Arrays.copyOf(mHalfY, capacity);
+    mHalfZ = Arrays.copyOf(mHalfZ, capacity);
+    mInverseMass = Arrays.copyOf(mInverseMass, capacity);
+    mAxisAligned = Arrays.copyOf(mAxisAligned, capacity);
+    mAxes = Arrays.copyOf(mAxes, capacity * 9);
+    mMinX = Arrays.copyOf(mMinX, capacity);
+    mMinY = Arrays.copyOf(mMinY, capacity);
+    mMinZ = Arrays.copyOf(mMinZ, capacity);
+    mMaxX = Arrays.copyOf(mMaxX, capacity);
+    mMaxY = Arrays.copyOf(mMaxY, capacity);
+    mMaxZ = Arrays.copyOf(mMaxZ, capacity);
+    mCapacity = capacity;
+  }
+
+  @Override
+  public String toString() {
+    return mCount + " bodies, " + mPairs.size() + " pairs from " + mBroadPhase.getLastTests() + " box tests, "
+        + mLastContacts + " contacts";
+  }
+}
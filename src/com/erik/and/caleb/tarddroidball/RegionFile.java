@@ -0,0 +1,199 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * {@link #CHUNKS} x {@link #CHUNKS} chunks saved in one file, each
+ * {@link ChunkCodec run-length coded}, read and written through a mapping of
+ * the whole file, so neither reads nor writes copy through a stream.
+ * <p/>
+ * The file is in sectors of {@link #SECTOR_SIZE} bytes, little-endian:
+ * <pre>
+ * header: magic, version (ints),
+ *         per chunk, x fastest: first sector, 0 if never saved; length in bytes (ints)
+ * then each chunk's coded blocks, starting on a sector after the header's
+ * </pre>
+ * A chunk that still fits its sectors is rewritten in place; otherwise it
+ * moves to the first free run that fits, at the end if none does, and the
+ * mapping grows with the file. A file of another version reads as empty and
+ * is started over. Plain Java, no GL; not thread-safe.
+ */
+public class RegionFile {
+
+  public static final int MAGIC = 0x47524454; // "TDRG"
+  public static final int VERSION = 1;
+  public static final int CHUNKS = 16;
+  // small, since most chunks code to well under a page
+  public static final int SECTOR_SIZE = 512;
+
+  private static final int HEADER_SIZE = 8;
+  private static final int HEADER_SECTORS = (HEADER_SIZE + CHUNKS * CHUNKS * 8 + SECTOR_SIZE - 1) / SECTOR_SIZE;
+  // the mapping grows by this many sectors at least, so appending chunks does not remap every time
+  private static final int GROWTH_SECTORS = 128;
+
+  private final File mFile;
+  private final RandomAccessFile mAccess;
+  private final FileChannel mChannel;
+  private MappedByteBuffer mMap;
+  private final int[] mFirstSectors = new int[CHUNKS * CHUNKS];
+  private final int[] mLengths = new int[CHUNKS * CHUNKS];
+  private final BitSet mUsedSectors = new BitSet();
+  private final byte[] mScratch = new byte[ChunkCodec.MAX_ENCODED_SIZE];
+
+  public RegionFile(File file) throws IOException {
+    mFile = file;
+    mAccess = new RandomAccessFile(file, "rw");
+    mChannel = mAccess.getChannel();
+    final long length = mChannel.size();
+    map(Math.max(HEADER_SECTORS, (int) ((length + SECTOR_SIZE - 1) / SECTOR_SIZE)));
+    mUsedSectors.set(0, HEADER_SECTORS);
+    if (length < HEADER_SECTORS * SECTOR_SIZE || !readHeader()) {
+      mMap.putInt(0, MAGIC);
+      mMap.putInt(4, VERSION);
+      for (int i = 0; i < mFirstSectors.length; i++) {
+        mFirstSectors[i] = 0;
+        mLengths[i] = 0;
+        writeEntry(i);
+      }
+      mUsedSectors.clear();
+      mUsedSectors.set(0, HEADER_SECTORS);
+    }
+  }
+
+  /**
+   * @return the name of the file holding chunk (chunkX, chunkZ), whose coordinates must not be negative
+   */
+  public static String getName(int chunkX, int chunkZ) {
+    return "r." + chunkX / CHUNKS + "." + chunkZ / CHUNKS + ".region";
+  }
+
+  private boolean readHeader() {
+    if (mMap.getInt(0) != MAGIC || mMap.getInt(4) != VERSION)
+      return false;
+    final int sectors = mMap.capacity() / SECTOR_SIZE;
+    for (int i = 0; i < mFirstSectors.length; i++) {
+      final int first = mMap.getInt(HEADER_SIZE + i * 8);
+      final int length = mMap.getInt(HEADER_SIZE + i * 8 + 4);
+      if (first == 0)
+        continue;
+      final int count = sectorCount(length);
+      // an entry past the end was cut off by a crash; the chunk is lost, not the region
+      if (first < HEADER_SECTORS || length <= 0 || first + count > sectors)
+        continue;
+      mFirstSectors[i] = first;
+      mLengths[i] = length;
+      mUsedSectors.set(first, first + count);
+    }
+    return true;
+  }
+
+  /**
+   * Reads a chunk into blocks.
+   *
+   * @param localX the chunk's position in the region, chunkX % CHUNKS
+   * @return false if the chunk was never saved, leaving blocks as they were
+   * @throws IOException if the saved chunk is damaged
+   */
+  public boolean read(int localX, int localZ, byte[] blocks) throws IOException {
+    final int entry = localZ * CHUNKS + localX;
+    if (mFirstSectors[entry] == 0)
+      return false;
+    final MappedByteBuffer map = mMap;
+    map.position(mFirstSectors[entry] * SECTOR_SIZE);
+    try {
+      ChunkCodec.decode(map, mLengths[entry], blocks);
+    } catch (BufferUnderflowException e) {
+      throw new IOException(mFile + ": chunk " + localX + "," + localZ + " runs past the end");
+    }
+    return true;
+  }
+
+  public void write(int localX, int localZ, byte[] blocks) throws IOException {
+    final int entry = localZ * CHUNKS + localX;
+    final int length = ChunkCodec.encode(blocks, mScratch);
+    final int count = sectorCount(length);
+    int first = mFirstSectors[entry];
+    if (first == 0 || count > sectorCount(mLengths[entry])) {
+      if (first != 0)
+        mUsedSectors.clear(first, first + sectorCount(mLengths[entry]));
+      first = findFree(count);
+      if ((first + count) * SECTOR_SIZE > mMap.capacity())
+        map(first + count + GROWTH_SECTORS);
+    } else {
+      mUsedSectors.clear(first + count, first + sectorCount(mLengths[entry]));
+    }
+    mUsedSectors.set(first, first + count);
+    mMap.position(first * SECTOR_SIZE);
+    mMap.put(mScratch, 0, length);
+    // the entry goes last, so a chunk cut short while moving is still found whole where it was
+    mFirstSectors[entry] = first;
+    mLengths[entry] = length;
+    writeEntry(entry);
+  }
+
+  public boolean contains(int localX, int localZ) {
+    return mFirstSectors[localZ * CHUNKS + localX] != 0;
+  }
+
+  /**
+   * @return sectors holding chunks, the header included
+   */
+  public int getUsedSectorCount() {
+    return mUsedSectors.cardinality();
+  }
+
+  public long getFileSize() throws IOException {
+    return mChannel.size();
+  }
+
+  /**
+   * Writes the mapped pages out to the file, for when the data must survive the device losing power too.
+   */
+  public void force() {
+    mMap.force();
+  }
+
+  /**
+   * The mapping itself stays valid until collected; this closes the file.
+   */
+  public void close() throws IOException {
+    mAccess.close();
+  }
+
+  private int findFree(int count) {
+    int first = mUsedSectors.nextClearBit(HEADER_SECTORS);
+    while (true) {
+      final int used = mUsedSectors.nextSetBit(first);
+      if (used < 0 || used - first >= count)
+        return first;
+      first = mUsedSectors.nextClearBit(used);
+    }
+  }
+
+  private void map(int sectors) throws IOException {
+    // mapping past the end of a writable file grows it
+    mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) sectors * SECTOR_SIZE);
+    mMap.order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private void writeEntry(int entry) {
+    mMap.putInt(HEADER_SIZE + entry * 8, mFirstSectors[entry]);
+    mMap.putInt(HEADER_SIZE + entry * 8 + 4, mLengths[entry]);
+  }
+
+  private static int sectorCount(int length) {
+    return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+  }
+
+  @Override
+  public String toString() {
+    return mFile.getName() + ": " + mUsedSectors.cardinality() + " sectors used";
+  }
+}
@@ -0,0 +1,302 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Arrays;
+
+/**
+ * The vertex attribute arrays for the ground and TARDIS boxes, six faces of
+ * two triangles each. Kept apart from the renderer so the mesh pipeline can be
+ * exercised without a GL context.
+ */
+public final class SceneGeometry {
+
+  private SceneGeometry() {
+  }
+
+  public static float[] getGroundPositionData() {
+    float cx = 10.0f; // cube X length
+    float cy = 1.25f; // cube Y length
+    float cz = 2.0f; // cube Z length
+
+    return new float[]{
+        // Front face
+        -cx, cy, cz,
+        -cx, -cy, cz,
+        cx, cy, cz,
+        -cx, -cy, cz,
+        cx, -cy, cz,
+        cx, cy, cz,
+
+        // Right face
+        cx, cy, cz,
+        cx, -cy, cz,
+        cx, cy, -cz,
+        cx, -cy, cz,
+        cx, -cy, -cz,
+        cx, cy, -cz,
+
+        // Back face
+        cx, cy, -cz,
+        cx, -cy, -cz,
+        -cx, cy, -cz,
+        cx, -cy, -cz,
+        -cx, -cy, -cz,
+        -cx, cy, -cz,
+
+        // Left face
+        -cx, cy, -cz,
+        -cx, -cy, -cz,
+        -cx, cy, cz,
+        -cx, -cy, -cz,
+        -cx, -cy, cz,
+        -cx, cy, cz,
+
+        // Top face
+        -cx, cy, -cz,
+        -cx, cy, cz,
+        cx, cy, -cz,
+        -cx, cy, cz,
+        cx, cy, cz,
+        cx, cy, -cz,
+
+        // Bottom face
+        cx, -cy, -cz,
+        cx, -cy, cz,
+        -cx, -cy, -cz,
+        cx, -cy, cz,
+        -cx, -cy, cz,
+        -cx, -cy, -cz,
+    };
+  }
+
+  public static float[] getSquareColorData() {
+
+    // make all the sides white
+    final float[] colorData = new float[6 * 6 * 4];
+    Arrays.fill(colorData, 1.0f);
+
+    return colorData;
+  }
+
+  public static float[] getSquareNormalData() {
+
+    return new float[]{
+        // Front face
+        0.0f, 0.0f, 1.0f,
+        0.0f, 0.0f, 1.0f,
+        0.0f, 0.0f, 1.0f,
+        0.0f, 0.0f, 1.0f,
+        0.0f, 0.0f, 1.0f,
+        0.0f, 0.0f, 1.0f,
+
+        // Right face
+        1.0f, 0.0f, 0.0f,
+        1.0f, 0.0f, 0.0f,
+        1.0f, 0.0f, 0.0f,
+        1.0f, 0.0f, 0.0f,
+        1.0f, 0.0f, 0.0f,
+        1.0f, 0.0f, 0.0f,
+
+        // Back face
+        0.0f, 0.0f, -1.0f,
+        0.0f, 0.0f, -1.0f,
+        0.0f, 0.0f, -1.0f,
+        0.0f, 0.0f, -1.0f,
+        0.0f, 0.0f, -1.0f,
+        0.0f, 0.0f, -1.0f,
+
+        // Left face
+        -1.0f, 0.0f, 0.0f,
+        -1.0f, 0.0f, 0.0f,
+        -1.0f, 0.0f, 0.0f,
+        -1.0f, 0.0f, 0.0f,
+        -1.0f, 0.0f, 0.0f,
+        -1.0f, 0.0f, 0.0f,
+
+        // Top face
+        0.0f, 1.0f, 0.0f,
+        0.0f, 1.0f, 0.0f,
+        0.0f, 1.0f, 0.0f,
+        0.0f, 1.0f, 0.0f,
+        0.0f, 1.0f, 0.0f,
+        0.0f, 1.0f, 0.0f,
+
+        // Bottom face
+        0.0f, -1.0f, 0.0f,
+        0.0f, -1.0f, 0.0f,
+        0.0f, -1.0f, 0.0f,
+        0.0f, -1.0f, 0.0f,
+        0.0f, -1.0f, 0.0f,
+        0.0f, -1.0f, 0.0f
+    };
+  }
+
+  public static float[] getSquareTextureCoordinateData() {
+
+    float tx = 6.0f; //texture density
+    float ty = 1.0f;
+    float tz = 0.0f; //zero texture thing, because it looks nicer that 0.0f
+
+    return new float[]{
+        // Front face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz,
+
+        // Right face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz,
+
+        // Back face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz,
+
+        // Left face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz,
+
+        // Top face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz,
+
+        // Bottom face
+        tz, tz,
+        tz, ty,
+        tx, tz,
+        tz, ty,
+        tx, ty,
+        tx, tz
+    };
+  }
+
+  public static float[] getTardisPositionData() {
+    float cx = 1.0f;
+    float cy = 2.0f;
+    float cz = 1.0f;
+
+    return new float[]{
+        // Front face
+        -cx, cy, cz,
+        -cx, -cy, cz,
+        cx, cy, cz,
+        -cx, -cy, cz,
+        cx, -cy, cz,
+        cx, cy, cz,
+
+        // Right face
+        cx, cy, cz,
+        cx, -cy, cz,
+        cx, cy, -cz,
+        cx, -cy, cz,
+        cx, -cy, -cz,
+        cx, cy, -cz,
+
+        // Back face
+        cx, cy, -cz,
+        cx, -cy, -cz,
+        -cx, cy, -cz,
+        cx, -cy, -cz,
+        -cx, -cy, -cz,
+        -cx, cy, -cz,
+
+        // Left face
+        -cx, cy, -cz,
+        -cx, -cy, -cz,
+        -cx, cy, cz,
+        -cx, -cy, -cz,
+        -cx, -cy, cz,
+        -cx, cy, cz,
+
+        // Top face
+        -cx, cy, -cz,
+        -cx, cy, cz,
+        cx, cy, -cz,
+        -cx, cy, cz,
+        cx, cy, cz,
+        cx, cy, -cz,
+
+        // Bottom face
+        cx, -cy, -cz,
+        cx, -cy, cz,
+        -cx, -cy, -cz,
+        cx, -cy, cz,
+        -cx, -cy, cz,
+        -cx, -cy, -cz,
+    };
+  }
+
+  public static float[] getTardisTextureCoordinateData() {
+
+    float tx = 0.5f; //texture density
+    float ty = 0.5f;
+    float tz = 0.0f; //zero texture thing, because it looks nice
+
+    return new float[]{
+        // Front face
+        0.0f, 0.5f,
+        0.0f, 1.0f,
+        0.5f, 0.5f,
+        0.0f, 1.0f,
+        0.5f, 1.0f,
+        0.5f, 0.5f,
+
+        // Right face
+        0.5f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 1.0f,
+        1.0f, 0.5f,
+
+        // Back face
+        0.5f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 1.0f,
+        1.0f, 0.5f,
+
+        // Left face
+        0.5f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 0.5f,
+        0.5f, 1.0f,
+        1.0f, 1.0f,
+        1.0f, 0.5f,
+
+        // Top face
+        0.5f, 0.0f,
+        0.5f, 0.5f,
+        1.0f, 0.0f,
+        0.5f, 0.5f,
+        1.0f, 0.5f,
+        1.0f, 0.0f,
+
+        // Bottom face
+        0.0f, 0.0f,
+        0.0f, 0.5f,
+        0.5f, 0.0f,
+        0.0f, 0.5f,
+        0.5f, 0.5f,
+        0.5f, 0.0f
+    };
+  }
+}
@@ -0,0 +1,311 @@
+package com.erik.and.caleb.tarddroidball;
+
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+/**
+ * A transform hierarchy kept in flat arrays, one slot per node.
+ * <p/>
+ * Each node has a position, a rotation quaternion and a scale relative to its
+ * parent. update() walks the nodes once in index order and only rebuilds what
+ * changed: a node's local matrix when one of its components was set, its world
+ * matrix when that or its parent's world matrix changed, and its model-view and
+ * model-view-projection matrices when the world matrix or the camera changed.
+ * Parents always have lower indices than their children, so a single forward
+ * pass is enough and the arrays are read front to back.
+ * <p/>
+ * Matrices are column-major like android.opengl.Matrix and live at node * 16 in
+ * the arrays returned by the getters.
+ */
+public class SceneGraph {
+
+  public static final int NO_PARENT = -1;
+
+  private int mNodeCount;
+  private int[] mParents;
+  private float[] mPositions;
+  private float[] mRotations;
+  private float[] mScales;
+  private float[] mLocalMatrices;
+  private float[] mWorldMatrices;
+  private float[] mModelViewMatrices;
+  private float[] mModelViewProjectionMatrices;
+  private boolean[] mLocalDirty;
+  private boolean[] mWorldChanged;
+
+  private final float[] mViewMatrix = new float[16];
+  private final float[] mProjectionMatrix = new float[16];
+  private boolean mCameraDirty = true;
+  private final float[] mScratch = new float[4];
+
+  private int mLastLocalUpdates;
+  private int mLastWorldUpdates;
+  private int mLastMultiplies;
+  private int mLastMultipliesAvoided;
+
+  public SceneGraph(int initialCapacity) {
+    allocate(Math.max(1, initialCapacity));
+  }
+
+  /**
+   * Adds a node at the origin with no rotation and unit scale.
+   *
+   * @param parent an existing node, or {@link #NO_PARENT}
+   * @return the new node's index
+   */
+  public int addNode(int parent) {
+    if (parent < NO_PARENT || parent >= mNodeCount)
+      throw new IllegalArgumentException("No such parent node: " + parent);
+    if (mNodeCount == mParents.length)
+      allocate(mParents.length * 2);
+    final int node = mNodeCount++;
+    mParents[node] = parent;
+    mPositions[node * 3] = mPositions[node * 3 + 1] = mPositions[node * 3 + 2] = 0;
+    mRotations[node * 4] = mRotations[node * 4 + 1] = mRotations[node * 4 + 2] = 0;
+    mRotations[node * 4 + 3] = 1;
+    mScales[node * 3] = mScales[node * 3 + 1] = mScales[node * 3 + 2] = 1;
+    mLocalDirty[node] = true;
+    return node;
+  }
+
+  public int getNodeCount() {
+    return mNodeCount;
+  }
+
+  public int getParent(int node) {
+    return mParents[node];
+  }
+
+  public void setPosition(int node, float x, float y, float z) {
+    final int i = node * 3;
+    if (mPositions[i] == x && mPositions[i + 1] == y && mPositions[i + 2] == z)
+      return;
+    mPositions[i] = x;
+    mPositions[i + 1] = y;
+    mPositions[i + 2] = z;
+    mLocalDirty[node] = true;
+  }
+
+  /**
+   * Copies the node's position relative to its parent to out at offset.
+   */
+  public void getPosition(int node, float[] out, int offset) {
+    out[offset] = mPositions[node * 3];
+    out[offset + 1] = mPositions[node * 3 + 1];
+    out[offset + 2] = mPositions[node * 3 + 2];
+  }
+
+  /**
+   * Copies the node's rotation relative to its parent to out at offset, as x, y, z, w.
+   */
+  public void getRotationQuaternion(int node, float[] out, int offset) {
+    System.arraycopy(mRotations, node * 4, out, offset, 4);
+  }
+
+  /**
+   * Sets the rotation to angleInDegrees about the given axis, like Matrix.setRotateM.
+   */
+  public void setRotation(int node, float angleInDegrees, float axisX, float axisY, float axisZ) {
+    final float[] q = mScratch;
+    Quat.setAxisAngle(q, 0, angleInDegrees, axisX, axisY, axisZ);
+    setRotationQuaternion(node, q[0], q[1], q[2], q[3]);
+  }
+
+  public void setRotationQuaternion(int node, float x, float y, float z, float w) {
+    final int i = node * 4;
+    if (mRotations[i] == x && mRotations[i + 1] == y && mRotations[i + 2] == z && mRotations[i + 3] == w)
+      return;
+    mRotations[i] = x;
+    mRotations[i + 1] = y;
+    mRotations[i + 2] = z;
+    mRotations[i + 3] = w;
+    mLocalDirty[node] = true;
+  }
+
+  public void setScale(int node, float x, float y, float z) {
+    final int i = node * 3;
+    if (mScales[i] == x && mScales[i + 1] == y && mScales[i + 2] == z)
+      return;
+    mScales[i] = x;
+    mScales[i + 1] = y;
+    mScales[i + 2] = z;
+    mLocalDirty[node] = true;
+  }
+
+  /**
+   * Moves the node along its own rotated and scaled axes, like Matrix.translateM on its local matrix.
+   */
+  public void translateLocal(int node, float dx, float dy, float dz) {
+    final int p = node * 3;
+    final float[] d = mScratch;
+    Quat.rotateVector(d, 0, mRotations, node * 4, dx * mScales[p], dy * mScales[p + 1], dz * mScales[p + 2]);
+    mPositions[p] += d[0];
+    mPositions[p + 1] += d[1];
+    mPositions[p + 2] += d[2];
+    mLocalDirty[node] = true;
+  }
+
+  /**
+   * Rotates the node about one of its own axes, like Matrix.rotateM on its local matrix.
+   */
+  public void rotateLocal(int node, float angleInDegrees, float axisX, float axisY, float axisZ) {
+    Quat.setAxisAngle(mScratch, 0, angleInDegrees, axisX, axisY, axisZ);
+    Quat.multiply(mRotations, node * 4, mRotations, node * 4, mScratch, 0);
+    // renormalize so that many small drags do not drift into a scale
+    Quat.normalize(mRotations, node * 4);
+    mLocalDirty[node] = true;
+  }
+
+  /**
+   * Copies the camera matrices. Every node's model-view matrices are rebuilt on
+   * the next update only if either of them actually differs from last time.
+   * The view matrix must be affine, as any look-at matrix is.
+   */
+  public void setCamera(float[] viewMatrix, float[] projectionMatrix) {
+    for (int i = 0; i < 16; i++) {
+      if (mViewMatrix[i] != viewMatrix[i] || mProjectionMatrix[i] != projectionMatrix[i]) {
+        System.arraycopy(viewMatrix, 0, mViewMatrix, 0, 16);
+        System.arraycopy(projectionMatrix, 0, mProjectionMatrix, 0, 16);
+        mCameraDirty = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Brings every dirty matrix up to date.
+   */
+  public void update() {
+    final boolean cameraDirty = mCameraDirty;
+    int localUpdates = 0;
+    int worldUpdates = 0;
+    int multiplies = 0;
+    int children = 0;
+    for (int node = 0; node < mNodeCount; node++) {
+      final int parent = mParents[node];
+      if (parent != NO_PARENT)
+        children++;
+      boolean worldChanged = false;
+      if (mLocalDirty[node]) {
+        composeLocal(node);
+        mLocalDirty[node] = false;
+        localUpdates++;
+        worldChanged = true;
+      }
+      if (parent != NO_PARENT && mWorldChanged[parent])
+        worldChanged = true;
+      if (worldChanged) {
+        if (parent == NO_PARENT) {
+          System.arraycopy(mLocalMatrices, node * 16, mWorldMatrices, node * 16, 16);
+        } else {
+          Mat4.multiplyAffine(mWorldMatrices, node * 16, mWorldMatrices, parent * 16, mLocalMatrices, node * 16);
+          multiplies++;
+        }
+        worldUpdates++;
+      }
+      mWorldChanged[node] = worldChanged;
+      if (worldChanged || cameraDirty) {
+        Mat4.multiplyAffine(mModelViewMatrices, node * 16, mViewMatrix, 0, mWorldMatrices, node * 16);
+        Mat4.multiplyByAffine(mModelViewProjectionMatrices, node * 16, mProjectionMatrix, 0, mModelViewMatrices, node * 16);
+        multiplies += 2;
+      }
+    }
+    mCameraDirty = false;
+    mLastLocalUpdates = localUpdates;
+    mLastWorldUpdates = worldUpdates;
+    mLastMultiplies = multiplies;
+    // recomputing everything costs a world multiply per child plus model-view and model-view-projection per node
+    mLastMultipliesAvoided = children + mNodeCount * 2 - multiplies;
+  }
+
+  /**
+   * Whether the last update() changed the node's world matrix, for keeping anything derived from it in step.
+   */
+  public boolean isWorldChanged(int node) {
+    return mWorldChanged[node];
+  }
+
+  /** Valid after update(); node n's matrix starts at n * 16. */
+  public float[] getWorldMatrices() {
+    return mWorldMatrices;
+  }
+
+  /** Valid after update(); node n's matrix starts at n * 16. */
+  public float[] getModelViewMatrices() {
+    return mModelViewMatrices;
+  }
+
+  /** Valid after update(); node n's matrix starts at n * 16. */
+  public float[] getModelViewProjectionMatrices() {
+    return mModelViewProjectionMatrices;
+  }
+
+  public int getLastLocalUpdates() {
+    return mLastLocalUpdates;
+  }
+
+  public int getLastWorldUpdates() {
+    return mLastWorldUpdates;
+  }
+
+  public int getLastMultiplies() {
+    return mLastMultiplies;
+  }
+
+  /**
+   * How many 4x4 multiplies the last update skipped compared with recomputing
+   * every world, model-view and model-view-projection matrix.
+   */
+  public int getLastMultipliesAvoided() {
+    return mLastMultipliesAvoided;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d nodes, %d local/%d world updates, %d multiplies (%d avoided)",
+        mNodeCount, mLastLocalUpdates, mLastWorldUpdates, mLastMultiplies, mLastMultipliesAvoided);
+  }
+
+  private void composeLocal(int node) {
+    final int p = node * 3;
+    final int r = node * 4;
+    Mat4.setTranslationRotationScale(mLocalMatrices, node * 16,
+        mPositions[p], mPositions[p + 1], mPositions[p + 2],
+        mRotations[r], mRotations[r + 1], mRotations[r + 2], mRotations[r + 3],
+        mScales[p], mScales[p + 1], mScales[p + 2]);
+  }
+
+  private void allocate(int capacity) {
+    mParents = grow(mParents, capacity);
+    mPositions = grow(mPositions, capacity * 3);
+    mRotations = grow(mRotations, capacity * 4);
+    mScales = grow(mScales, capacity * 3);
+    mLocalMatrices = grow(mLocalMatrices, capacity * 16);
+    mWorldMatrices = grow(mWorldMatrices, capacity * 16);
+    mModelViewMatrices = grow(mModelViewMatrices, capacity * 16);
+    mModelViewProjectionMatrices = grow(mModelViewProjectionMatrices, capacity * 16);
+    mLocalDirty = grow(mLocalDirty, capacity);
+    mWorldChanged = grow(mWorldChanged, capacity);
+  }
+
+  private static int[] grow(int[] array, int length) {
+    final int[] grown = new int[length];
+    if (array != null)
+      System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static float[] grow(float[] array, int length) {
+    final float[] grown = new float[length];
+    if (array != null)
+      System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+
+  private static boolean[] grow(boolean[] array, int length) {
+    final boolean[] grown = new boolean[length];
+    if (array != null)
+      System.arraycopy(array, 0, grown, 0, array.length);
+    return grown;
+  }
+}
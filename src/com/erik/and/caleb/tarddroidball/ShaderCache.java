@@ -0,0 +1,140 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.learnopengles.android.ShaderHelper;
+
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Builds shader permutations on demand. A requested variant is preprocessed
+ * on the {@link AssetLoader}'s workers and compiled and linked in a GL step
+ * under the loader's frame budget, so nothing is built that was not asked
+ * for and asking never stalls a frame.
+ * <p/>
+ * Compiled shaders are cached by a hash of their preprocessed source and
+ * programs by the hashes of both shaders and the attribute bindings, so
+ * permutations that come out as the same text share one shader object, and a
+ * fragment shader used by several programs is compiled once. Preprocessed
+ * sources outlive the GL context; compiled objects do not, see {@link #clear}.
+ */
+public class ShaderCache {
+
+  private final GlStateTracker mState;
+  private final ShaderPreprocessor mPreprocessor;
+  private final AssetLoader mLoader;
+
+  // preprocessed on workers, keyed by name and permutation
+  private final ConcurrentHashMap<String, Future<Source>> mSources = new ConcurrentHashMap<String, Future<Source>>();
+  // GL thread only
+  private final HashMap<Long, Integer> mShaders = new HashMap<Long, Integer>();
+  private final HashMap<String, ShaderProgram> mPrograms = new HashMap<String, ShaderProgram>();
+  private final HashMap<String, Future<ShaderProgram>> mRequests = new HashMap<String, Future<ShaderProgram>>();
+  private int mShaderHits;
+  private int mProgramHits;
+
+  public ShaderCache(GlStateTracker state, ShaderPreprocessor preprocessor, AssetLoader loader) {
+    mState = state;
+    mPreprocessor = preprocessor;
+    mLoader = loader;
+  }
+
+  /**
+   * Starts building a program if no identical request is under way or done.
+   * Call on the GL thread; the program is ready once the loader's uploads
+   * have run past it.
+   *
+   * @param attributes attributes bound to locations 0..n-1, as for {@link ShaderProgram}
+   */
+  public Future<ShaderProgram> request(String vertexShader, String fragmentShader, ShaderPermutation permutation, final String[] attributes) {
+    final StringBuilder requestKey = new StringBuilder(vertexShader).append('+').append(fragmentShader).append('|').append(permutation);
+    for (String attribute : attributes)
+      requestKey.append(',').append(attribute);
+    final Future<ShaderProgram> pending = mRequests.get(requestKey.toString());
+    if (pending != null)
+      return pending;
+
+    final Future<Source> vertex = preprocess(vertexShader, permutation);
+    final Future<Source> fragment = preprocess(fragmentShader, permutation);
+    final Future<ShaderProgram> program = mLoader.upload(new Callable<ShaderProgram>() {
+      @Override
+      public ShaderProgram call() throws Exception {
+        return link(vertex.get(), fragment.get(), attributes);
+      }
+    }, vertex, fragment);
+    mRequests.put(requestKey.toString(), program);
+    return program;
+  }
+
+  private Future<Source> preprocess(final String name, final ShaderPermutation permutation) {
+    final String key = name + '|' + permutation;
+    Future<Source> source = mSources.get(key);
+    if (source == null) {
+      source = mLoader.load(new Callable<Source>() {
+        @Override
+        public Source call() throws Exception {
+          return new Source(mPreprocessor.preprocess(name, permutation));
+        }
+      });
+      final Future<Source> raced = mSources.putIfAbsent(key, source);
+      if (raced != null)
+        source = raced;
+    }
+    return source;
+  }
+
+  private ShaderProgram link(Source vertex, Source fragment, String[] attributes) {
+    final StringBuilder key = new StringBuilder();
+    key.append(Long.toHexString(vertex.mHash)).append('+').append(Long.toHexString(fragment.mHash));
+    for (String attribute : attributes)
+      key.append(',').append(attribute);
+    ShaderProgram program = mPrograms.get(key.toString());
+    if (program != null) {
+      mProgramHits++;
+      return program;
+    }
+    program = new ShaderProgram(mState, compile(GLES20.GL_VERTEX_SHADER, vertex), compile(GLES20.GL_FRAGMENT_SHADER, fragment), attributes);
+    mPrograms.put(key.toString(), program);
+    return program;
+  }
+
+  private int compile(int type, Source source) {
+    // the same text as the other stage would not compile anyway, but keep the keys apart
+    final Long key = source.mHash ^ type;
+    final Integer cached = mShaders.get(key);
+    if (cached != null) {
+      mShaderHits++;
+      return cached;
+    }
+    final int handle = ShaderHelper.compileShader(mState.getGl(), type, source.mText);
+    mShaders.put(key, handle);
+    return handle;
+  }
+
+  /**
+   * Forgets every compiled shader and program, for when the context that
+   * owned them is gone. Preprocessed sources are kept. Call on the GL thread.
+   */
+  public void clear() {
+    mShaders.clear();
+    mPrograms.clear();
+    mRequests.clear();
+  }
+
+  @Override
+  public String toString() {
+    return mShaders.size() + " shaders (" + mShaderHits + " reused), " + mPrograms.size() + " programs (" + mProgramHits + " reused)";
+  }
+
+  private static class Source {
+    final String mText;
+    final long mHash;
+
+    Source(String text) {
+      mText = text;
+      mHash = ShaderPreprocessor.hash(text);
+    }
+  }
+}
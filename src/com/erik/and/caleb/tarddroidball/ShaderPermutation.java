@@ -0,0 +1,101 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The feature defines one variant of a shader is built with, e.g. a lighting
+ * model, a light count or texturing on or off. Immutable; {@link #with}
+ * returns a new permutation. Two permutations with the same defines are equal
+ * whatever order they were added in, so they can key a cache.
+ */
+public final class ShaderPermutation {
+
+  public static final ShaderPermutation NONE = new ShaderPermutation(new TreeMap<String, String>());
+
+  private final TreeMap<String, String> mDefines;
+  private final String mKey;
+
+  private ShaderPermutation(TreeMap<String, String> defines) {
+    mDefines = defines;
+    final StringBuilder key = new StringBuilder();
+    for (Map.Entry<String, String> define : defines.entrySet()) {
+      if (key.length() > 0)
+        key.append(',');
+      key.append(define.getKey()).append('=').append(define.getValue());
+    }
+    mKey = key.toString();
+  }
+
+  /**
+   * @return this permutation with name defined as 1
+   */
+  public ShaderPermutation with(String name) {
+    return with(name, "1");
+  }
+
+  public ShaderPermutation with(String name, int value) {
+    return with(name, Integer.toString(value));
+  }
+
+  /**
+   * @param value pasted into the shader as is, so it must be a valid GLSL expression
+   */
+  public ShaderPermutation with(String name, String value) {
+    if (!isIdentifier(name))
+      throw new IllegalArgumentException("Not a GLSL identifier: " + name);
+    if (value.indexOf('\n') >= 0)
+      throw new IllegalArgumentException("Define " + name + " spans lines");
+    final TreeMap<String, String> defines = new TreeMap<String, String>(mDefines);
+    defines.put(name, value);
+    return new ShaderPermutation(defines);
+  }
+
+  /**
+   * @return the value name is defined as, or null
+   */
+  public String get(String name) {
+    return mDefines.get(name);
+  }
+
+  public Map<String, String> getDefines() {
+    return Collections.unmodifiableMap(mDefines);
+  }
+
+  static boolean isIdentifier(String name) {
+    if (name.length() == 0 || isDigit(name.charAt(0)))
+      return false;
+    for (int i = 0; i < name.length(); i++) {
+      if (!isIdentifierChar(name.charAt(i)))
+        return false;
+    }
+    return true;
+  }
+
+  static boolean isIdentifierChar(char c) {
+    return c == '_' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c);
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof ShaderPermutation && mKey.equals(((ShaderPermutation) other).mKey);
+  }
+
+  @Override
+  public int hashCode() {
+    return mKey.hashCode();
+  }
+
+  /**
+   * @return the defines as NAME=value pairs, sorted by name
+   */
+  @Override
+  public String toString() {
+    return mKey;
+  }
+}
@@ -0,0 +1,151 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Expands {@code #include "name"} lines and puts a permutation's defines at
+ * the top of a shader, ahead of the GLSL compiler's own preprocessor, which
+ * still handles every other directive.
+ * <p/>
+ * Each file is included at most once per shader, and includes are expanded
+ * whatever #if block they sit in; the compiler then drops what is inside a
+ * false block. Only defines the expanded source mentions are written, so
+ * permutations that differ in features a shader does not use produce the
+ * same text, and {@link #hash} of it can key compiled shaders. Plain Java,
+ * no GL.
+ */
+public class ShaderPreprocessor {
+
+  /**
+   * Reads a shader or include by name. Called from whichever thread preprocesses.
+   */
+  public interface Sources {
+    String read(String name) throws IOException;
+  }
+
+  private static final String INCLUDE = "#include";
+  private static final String VERSION = "#version";
+
+  private final Sources mSources;
+
+  public ShaderPreprocessor(Sources sources) {
+    mSources = sources;
+  }
+
+  /**
+   * @param name the shader to read through {@link Sources}
+   * @return the shader with includes expanded and the permutation's defines after any #version line
+   * @throws IOException if a file cannot be read, an include is malformed or includes form a cycle
+   */
+  public String preprocess(String name, ShaderPermutation permutation) throws IOException {
+    final StringBuilder body = new StringBuilder();
+    final ArrayList<String> stack = new ArrayList<String>();
+    expand(name, body, stack, new HashSet<String>());
+
+    String version = null;
+    int bodyStart = 0;
+    final int firstLineEnd = lineEnd(body, 0);
+    if (body.substring(0, firstLineEnd).trim().startsWith(VERSION)) {
+      version = body.substring(0, firstLineEnd).trim();
+      bodyStart = Math.min(body.length(), firstLineEnd + 1);
+    }
+
+    final HashSet<String> identifiers = identifiers(body);
+    final StringBuilder out = new StringBuilder(body.length() + 256);
+    if (version != null)
+      out.append(version).append('\n');
+    for (Map.Entry<String, String> define : permutation.getDefines().entrySet()) {
+      if (identifiers.contains(define.getKey()))
+        out.append("#define ").append(define.getKey()).append(' ').append(define.getValue()).append('\n');
+    }
+    out.append(body, bodyStart, body.length());
+    return out.toString();
+  }
+
+  private void expand(String name, StringBuilder out, ArrayList<String> stack, HashSet<String> included) throws IOException {
+    if (stack.contains(name))
+      throw new IOException("Include cycle: " + join(stack) + " -> " + name);
+    if (!included.add(name))
+      return;
+    final String source = mSources.read(name);
+    if (source == null)
+      throw new IOException("Cannot read shader " + name);
+    stack.add(name);
+    int lineNumber = 0;
+    for (int start = 0; start < source.length(); ) {
+      final int end = lineEnd(source, start);
+      final String line = source.substring(start, end);
+      lineNumber++;
+      final String trimmed = line.trim();
+      if (trimmed.startsWith(INCLUDE)) {
+        expand(includeName(trimmed, name, lineNumber), out, stack, included);
+      } else {
+        if (trimmed.startsWith(VERSION) && (stack.size() > 1 || out.length() > 0))
+          throw new IOException(name + ":" + lineNumber + ": #version must be the first line of the shader");
+        out.append(line).append('\n');
+      }
+      start = end + 1;
+    }
+    stack.remove(stack.size() - 1);
+  }
+
+  private static String includeName(String directive, String file, int lineNumber) throws IOException {
+    final String argument = directive.substring(INCLUDE.length()).trim();
+    if (argument.length() >= 2) {
+      final char open = argument.charAt(0);
+      final int close = argument.indexOf(open == '<' ? '>' : '"', 1);
+      if ((open == '"' || open == '<') && close > 1 && argument.substring(close + 1).trim().length() == 0)
+        return argument.substring(1, close);
+    }
+    throw new IOException(file + ":" + lineNumber + ": expected #include \"name\", got " + directive);
+  }
+
+  private static int lineEnd(CharSequence text, int start) {
+    int end = start;
+    while (end < text.length() && text.charAt(end) != '\n')
+      end++;
+    return end;
+  }
+
+  private static HashSet<String> identifiers(CharSequence text) {
+    final HashSet<String> identifiers = new HashSet<String>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      final boolean inWord = i < text.length() && ShaderPermutation.isIdentifierChar(text.charAt(i));
+      if (inWord && start < 0)
+        start = i;
+      else if (!inWord && start >= 0) {
+        identifiers.add(text.subSequence(start, i).toString());
+        start = -1;
+      }
+    }
+    return identifiers;
+  }
+
+  private static String join(ArrayList<String> names) {
+    final StringBuilder joined = new StringBuilder();
+    for (String name : names) {
+      if (joined.length() > 0)
+        joined.append(" -> ");
+      joined.append(name);
+    }
+    return joined.toString();
+  }
+
+  /**
+   * 64-bit FNV-1a of the source's characters, to key compiled shaders by what
+   * was actually compiled.
+   */
+  public static long hash(String source) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < source.length(); i++) {
+      final char c = source.charAt(i);
+      hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+      hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+}
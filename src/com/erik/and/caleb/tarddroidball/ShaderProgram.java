@@ -0,0 +1,260 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+import com.learnopengles.android.ShaderHelper;
+
+import java.util.HashMap;
+
+/**
+ * A linked program whose active uniforms and attributes are enumerated once,
+ * right after linking. Lookups by name only happen at setup time; the draw path
+ * holds on to the returned {@link Uniform}s and attribute locations.
+ */
+public class ShaderProgram {
+
+  private final GlStateTracker mState;
+  private final Gl mGl;
+  private final int mProgramHandle;
+  private final HashMap<String, Uniform> mUniforms = new HashMap<String, Uniform>();
+  private final HashMap<String, Integer> mAttributes = new HashMap<String, Integer>();
+
+  /**
+   * Compiles and links the program. Must be called on the GL thread with a current context.
+   *
+   * @param attributes attributes bound to locations 0..n-1, as in {@link ShaderHelper#createAndLinkProgram}
+   */
+  public ShaderProgram(GlStateTracker state, String vertexSource, String fragmentSource, String[] attributes) {
+    this(state, ShaderHelper.compileShader(state.getGl(), GLES20.GL_VERTEX_SHADER, vertexSource),
+        ShaderHelper.compileShader(state.getGl(), GLES20.GL_FRAGMENT_SHADER, fragmentSource), attributes);
+  }
+
+  /**
+   * Links shaders that are already compiled, which may be shared with other
+   * programs. Must be called on the GL thread with a current context.
+   */
+  public ShaderProgram(GlStateTracker state, int vertexShaderHandle, int fragmentShaderHandle, String[] attributes) {
+    mState = state;
+    mGl = state.getGl();
+    mProgramHandle = ShaderHelper.createAndLinkProgram(mGl, vertexShaderHandle, fragmentShaderHandle, attributes);
+    enumerateActiveVariables();
+  }
+
+  private void enumerateActiveVariables() {
+    final int[] value = new int[1];
+    final int[] length = new int[1];
+    final int[] size = new int[1];
+    final int[] type = new int[1];
+
+    mGl.glGetProgramiv(mProgramHandle, GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH, value, 0);
+    byte[] name = new byte[Math.max(value[0], 1)];
+    mGl.glGetProgramiv(mProgramHandle, GLES20.GL_ACTIVE_UNIFORMS, value, 0);
+    final int uniformCount = value[0];
+    for (int i = 0; i < uniformCount; i++) {
+      mGl.glGetActiveUniform(mProgramHandle, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      final String uniformName = baseName(new String(name, 0, length[0]));
+      final int location = mGl.glGetUniformLocation(mProgramHandle, uniformName);
+      mUniforms.put(uniformName, new Uniform(mState, location, type[0], size[0]));
+    }
+
+    mGl.glGetProgramiv(mProgramHandle, GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH, value, 0);
+    name = new byte[Math.max(value[0], 1)];
+    mGl.glGetProgramiv(mProgramHandle, GLES20.GL_ACTIVE_ATTRIBUTES, value, 0);
+    final int attributeCount = value[0];
+    for (int i = 0; i < attributeCount; i++) {
+      mGl.glGetActiveAttrib(mProgramHandle, i, name.length, length, 0, size, 0, type, 0, name, 0);
+      final String attributeName = new String(name, 0, length[0]);
+      mAttributes.put(attributeName, mGl.glGetAttribLocation(mProgramHandle, attributeName));
+    }
+  }
+
+  // array uniforms are reported as "name[0]"
+  private static String baseName(String name) {
+    final int bracket = name.indexOf('[');
+    return bracket < 0 ? name : name.substring(0, bracket);
+  }
+
+  public int getHandle() {
+    return mProgramHandle;
+  }
+
+  public void use() {
+    mState.useProgram(mProgramHandle);
+  }
+
+  /**
+   * @return the uniform, or an inactive one (location -1, uploads are ignored) if the
+   * linker optimized it out or it does not exist
+   */
+  public Uniform getUniform(String name) {
+    Uniform uniform = mUniforms.get(name);
+    if (uniform == null) {
+      uniform = new Uniform(mState, -1, 0, 0);
+      mUniforms.put(name, uniform);
+    }
+    return uniform;
+  }
+
+  /**
+   * @return the attribute location, or -1 if the attribute is not active
+   */
+  public int getAttributeLocation(String name) {
+    final Integer location = mAttributes.get(name);
+    return location == null ? -1 : location;
+  }
+
+  /**
+   * @return the location of each of the layout's attributes, in the order {@link VertexLayout#bind} takes them
+   */
+  public int[] getAttributeLocations(VertexLayout layout) {
+    final String[] names = layout.getAllNames();
+    final int[] locations = new int[names.length];
+    for (int i = 0; i < names.length; i++)
+      locations[i] = getAttributeLocation(names[i]);
+    return locations;
+  }
+
+  public void release() {
+    mGl.glDeleteProgram(mProgramHandle);
+  }
+
+  /**
+   * A resolved uniform location that remembers the last value uploaded to it and
+   * skips uploads that would not change anything. Uniform values belong to the
+   * program, so the shadow stays valid across glUseProgram switches.
+   */
+  public static class Uniform {
+    private final GlStateTracker mState;
+    private final Gl mGl;
+    private final int mLocation;
+    private final int mType;
+    private final int mSize;
+    private final float[] mShadow = new float[16];
+    private boolean mShadowValid;
+    private int mUploads;
+    private int mSkippedUploads;
+
+    Uniform(GlStateTracker state, int location, int type, int size) {
+      mState = state;
+      mGl = state.getGl();
+      mLocation = location;
+      mType = type;
+      mSize = size;
+    }
+
+    public int getLocation() {
+      return mLocation;
+    }
+
+    public int getType() {
+      return mType;
+    }
+
+    public int getSize() {
+      return mSize;
+    }
+
+    public boolean isActive() {
+      return mLocation >= 0;
+    }
+
+    public void set1i(int value) {
+      if (unchanged(value, 0, 0, 0, 1))
+        return;
+      mGl.glUniform1i(mLocation, value);
+    }
+
+    public void set1f(float value) {
+      if (unchanged(value, 0, 0, 0, 1))
+        return;
+      mGl.glUniform1f(mLocation, value);
+    }
+
+    public void set2f(float x, float y) {
+      if (unchanged(x, y, 0, 0, 2))
+        return;
+      mGl.glUniform2f(mLocation, x, y);
+    }
+
+    public void set3f(float x, float y, float z) {
+      if (unchanged(x, y, z, 0, 3))
+        return;
+      mGl.glUniform3f(mLocation, x, y, z);
+    }
+
+    public void set4f(float x, float y, float z, float w) {
+      if (unchanged(x, y, z, w, 4))
+        return;
+      mGl.glUniform4f(mLocation, x, y, z, w);
+    }
+
+    public void setMatrix4(float[] matrix, int offset) {
+      if (mLocation < 0)
+        return;
+      if (mShadowValid) {
+        boolean same = true;
+        for (int i = 0; i < 16; i++) {
+          if (mShadow[i] != matrix[offset + i]) {
+            same = false;
+            break;
+          }
+        }
+        if (same) {
+          mSkippedUploads++;
+          mState.countCall(true);
+          return;
+        }
+      }
+      System.arraycopy(matrix, offset, mShadow, 0, 16);
+      mShadowValid = true;
+      mUploads++;
+      mState.countCall(false);
+      mGl.glUniformMatrix4fv(mLocation, 1, false, matrix, offset);
+    }
+
+    /**
+     * Uploads count consecutive matrices to a mat4 array uniform. Arrays are not shadowed.
+     */
+    public void setMatrix4Array(float[] matrices, int offset, int count) {
+      if (mLocation < 0)
+        return;
+      mShadowValid = false;
+      mUploads++;
+      mState.countCall(false);
+      mGl.glUniformMatrix4fv(mLocation, count, false, matrices, offset);
+    }
+
+    /**
+     * Forgets the shadowed value so the next set call always uploads.
+     */
+    public void invalidate() {
+      mShadowValid = false;
+    }
+
+    public int getUploadCount() {
+      return mUploads;
+    }
+
+    public int getSkippedUploadCount() {
+      return mSkippedUploads;
+    }
+
+    private boolean unchanged(float x, float y, float z, float w, int components) {
+      if (mLocation < 0)
+        return true;
+      if (mShadowValid && mShadow[0] == x && mShadow[1] == y && mShadow[2] == z && mShadow[3] == w) {
+        mSkippedUploads++;
+        mState.countCall(true);
+        return true;
+      }
+      mShadow[0] = x;
+      mShadow[1] = y;
+      mShadow[2] = z;
+      mShadow[3] = w;
+      mShadowValid = true;
+      mUploads++;
+      mState.countCall(false);
+      return false;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Seeded 2D simplex noise. Gradients are picked by hashing the seed with the
+ * lattice point instead of through a shuffled table, so there is no state
+ * past the seed: any thread may sample any point, in any order, and get the
+ * same value. Plain Java, no GL.
+ */
+public class SimplexNoise {
+
+  private static final double SKEW = 0.5 * (Math.sqrt(3.0) - 1.0);
+  private static final double UNSKEW = (3.0 - Math.sqrt(3.0)) / 6.0;
+  // scales the sum of the three corners to about [-1, 1]
+  private static final double SCALE = 70.0;
+  private static final int GRADIENTS = 12;
+  private static final double[] GRADIENT_X = {1, -1, 1, -1, 1, -1, 1, -1, 0, 0, 0, 0};
+  private static final double[] GRADIENT_Y = {1, 1, -1, -1, 0, 0, 0, 0, 1, -1, 1, -1};
+
+  private final long mSeed;
+
+  public SimplexNoise(long seed) {
+    mSeed = seed;
+  }
+
+  public long getSeed() {
+    return mSeed;
+  }
+
+  /**
+   * @return noise in about [-1, 1], varying over about one unit
+   */
+  public double noise(double x, double y) {
+    final double skew = (x + y) * SKEW;
+    final int i = (int) Math.floor(x + skew);
+    final int j = (int) Math.floor(y + skew);
+    final double unskew = (i + j) * UNSKEW;
+    final double x0 = x - (i - unskew);
+    final double y0 = y - (j - unskew);
+    // which of the cell's two triangles the point is in
+    final int i1 = x0 > y0 ? 1 : 0;
+    final int j1 = 1 - i1;
+    final double x1 = x0 - i1 + UNSKEW;
+    final double y1 = y0 - j1 + UNSKEW;
+    final double x2 = x0 - 1.0 + 2.0 * UNSKEW;
+    final double y2 = y0 - 1.0 + 2.0 * UNSKEW;
+    return SCALE * (corner(i, j, x0, y0) + corner(i + i1, j + j1, x1, y1) + corner(i + 1, j + 1, x2, y2));
+  }
+
+  /**
+   * Octaves of {@link #noise} summed, each at twice the frequency and half the
+   * amplitude of the last, and shifted so their lattices do not line up.
+   *
+   * @return noise in about [-1, 1]
+   */
+  public double fractal(double x, double y, int octaves) {
+    double sum = 0;
+    double amplitude = 1;
+    double total = 0;
+    for (int octave = 0; octave < octaves; octave++) {
+      sum += amplitude * noise(x + octave * 19.1, y - octave * 31.7);
+      total += amplitude;
+      x *= 2;
+      y *= 2;
+      amplitude *= 0.5;
+    }
+    return sum / total;
+  }
+
+  /**
+   * Like {@link #fractal} but folded at zero, giving sharp crests where the
+   * noise crosses it.
+   *
+   * @return noise in about [0, 1], highest along the crests
+   */
+  public double ridged(double x, double y, int octaves) {
+    double sum = 0;
+    double amplitude = 1;
+    double total = 0;
+    for (int octave = 0; octave < octaves; octave++) {
+      final double ridge = 1.0 - Math.abs(noise(x + octave * 19.1, y - octave * 31.7));
+      sum += amplitude * ridge * ridge;
+      total += amplitude;
+      x *= 2;
+      y *= 2;
+      amplitude *= 0.5;
+    }
+    return sum / total;
+  }
+
+  private double corner(int i, int j, double x, double y) {
+    double t = 0.5 - x * x - y * y;
+    if (t < 0)
+      return 0;
+    final int gradient = gradient(i, j);
+    t *= t;
+    return t * t * (GRADIENT_X[gradient] * x + GRADIENT_Y[gradient] * y);
+  }
+
+  private int gradient(int i, int j) {
+    long h = mSeed ^ i * 0x9e3779b97f4a7c15L ^ j * 0xc2b2ae3d27d4eb4fL;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) ((h & 0x7fffffffL) % GRADIENTS);
+  }
+}
@@ -0,0 +1,54 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * The scene's animation rules, advanced in fixed steps of simulated time so the
+ * result no longer depends on the frame rate.
+ */
+public class Simulation {
+
+  public static final float TARDIS_HEIGHT_MAX = 10;
+  public static final float TARDIS_HEIGHT_MIN = -0.75f;
+  /** Was 0.1 per frame at the 60 Hz the animation was tuned for. */
+  public static final float RED_TARDIS_SPEED = 6.0f;
+  /** One revolution every ten seconds, as the clock-based animation did. */
+  public static final float DEGREES_PER_SECOND = 36.0f;
+
+  public void reset(SimulationState state) {
+    state.whiteTardisAngle = 0;
+    state.redTardisAngle = 0;
+    state.lightAngle = 0;
+    state.redTardisY = TARDIS_HEIGHT_MIN;
+    state.redTardisDirection = 1;
+  }
+
+  public void step(SimulationState state, float dt) {
+    if (state.redTardisY >= TARDIS_HEIGHT_MAX)
+      state.redTardisDirection = -1;
+    else if (state.redTardisY <= TARDIS_HEIGHT_MIN)
+      state.redTardisDirection = 1;
+    state.redTardisY += RED_TARDIS_SPEED * state.redTardisDirection * dt;
+
+    state.whiteTardisAngle -= DEGREES_PER_SECOND * dt;
+    state.redTardisAngle -= DEGREES_PER_SECOND * dt;
+    state.lightAngle += DEGREES_PER_SECOND * dt;
+  }
+
+  /**
+   * Pulls the angles of both states back by whole turns together, keeping
+   * floats precise without upsetting interpolation between them.
+   */
+  public void wrapAngles(SimulationState previous, SimulationState current) {
+    if (current.whiteTardisAngle < -360.0f) {
+      current.whiteTardisAngle += 360.0f;
+      previous.whiteTardisAngle += 360.0f;
+    }
+    if (current.redTardisAngle < -360.0f) {
+      current.redTardisAngle += 360.0f;
+      previous.redTardisAngle += 360.0f;
+    }
+    if (current.lightAngle > 360.0f) {
+      current.lightAngle -= 360.0f;
+      previous.lightAngle -= 360.0f;
+    }
+  }
+}
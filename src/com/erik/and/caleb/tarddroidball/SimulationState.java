@@ -0,0 +1,33 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Everything the fixed-timestep simulation owns, as plain fields so that
+ * snapshots can be copied and interpolated without allocating.
+ */
+public class SimulationState {
+  /** Rotation about Y in degrees; unbounded so interpolation never wraps the long way round. */
+  public float whiteTardisAngle;
+  public float redTardisAngle;
+  public float lightAngle;
+  public float redTardisY;
+  public float redTardisDirection = 1;
+
+  public void set(SimulationState other) {
+    whiteTardisAngle = other.whiteTardisAngle;
+    redTardisAngle = other.redTardisAngle;
+    lightAngle = other.lightAngle;
+    redTardisY = other.redTardisY;
+    redTardisDirection = other.redTardisDirection;
+  }
+
+  /**
+   * Sets this state to lie between from (alpha 0) and to (alpha 1).
+   */
+  public void interpolate(SimulationState from, SimulationState to, float alpha) {
+    whiteTardisAngle = from.whiteTardisAngle + (to.whiteTardisAngle - from.whiteTardisAngle) * alpha;
+    redTardisAngle = from.redTardisAngle + (to.redTardisAngle - from.redTardisAngle) * alpha;
+    lightAngle = from.lightAngle + (to.lightAngle - from.lightAngle) * alpha;
+    redTardisY = from.redTardisY + (to.redTardisY - from.redTardisY) * alpha;
+    redTardisDirection = to.redTardisDirection;
+  }
+}
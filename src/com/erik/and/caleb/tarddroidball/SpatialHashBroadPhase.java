@@ -0,0 +1,239 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Arrays;
+
+/**
+ * Files each body under the cells of a uniform grid its box overlaps, in a
+ * hash table of cells, and tests only bodies that share a cell. A body is
+ * filed again only when the range of cells it covers changes, so most
+ * updates touch few entries. Bodies covering more than {@link #MAX_CELLS}
+ * cells are kept apart and tested against everything, so the cell size
+ * should be about the size of the bigger common body.
+ * <p/>
+ * Entries live in int and long arrays, {@link #MAX_CELLS} slots per body, in
+ * doubly linked chains per bucket, so filing and unfiling a body never
+ * allocates. A pair sharing several cells is reported only from the first
+ * cell, in x, y and z, of the two ranges' overlap. Plain Java, no GL.
+ */
+public class SpatialHashBroadPhase implements BroadPhase {
+
+  public static final int MAX_CELLS = 8;
+
+  private static final int NONE = -1;
+  private static final int COORDINATE_BITS = 21;
+  private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+  private final float mInverseCellSize;
+  private int mCount;
+  private int mCapacity;
+  // each body's cell range, inclusive; mOversized bodies are not filed
+  private int[] mCellMinX = new int[0], mCellMinY = new int[0], mCellMinZ = new int[0];
+  private int[] mCellMaxX = new int[0], mCellMaxY = new int[0], mCellMaxZ = new int[0];
+  private boolean[] mFiled = new boolean[0];
+  private boolean[] mOversized = new boolean[0];
+  private int[] mOversizedBodies = new int[0];
+  private int mOversizedCount;
+
+  // entry body * MAX_CELLS + k is body's kth cell
+  private long[] mEntryKeys = new long[0];
+  private int[] mEntryNext = new int[0];
+  private int[] mEntryPrevious = new int[0];
+  private int[] mBuckets = new int[0];
+  private int mBucketMask;
+
+  private float[] mMinX, mMinY, mMinZ, mMaxX, mMaxY, mMaxZ;
+  private int mLastTests;
+  private int mLastRefiled;
+
+  /**
+   * @param cellSize the edge of a cell, about the size of the bigger common body
+   */
+  public SpatialHashBroadPhase(float cellSize) {
+    mInverseCellSize = 1.0f / cellSize;
+  }
+
+  @Override
+  public void update(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count) {
+    mMinX = minX;
+    mMinY = minY;
+    mMinZ = minZ;
+    mMaxX = maxX;
+    mMaxY = maxY;
+    mMaxZ = maxZ;
+    for (int body = count; body < mCount; body++)
+      unfile(body);
+    if (count > mCapacity)
+      grow(count);
+    mCount = count;
+    final float inverse = mInverseCellSize;
+    int refiled = 0;
+    for (int body = 0; body < count; body++) {
+      final int x0 = (int) Math.floor(minX[body] * inverse), x1 = (int) Math.floor(maxX[body] * inverse);
+      final int y0 = (int) Math.floor(minY[body] * inverse), y1 = (int) Math.floor(maxY[body] * inverse);
+      final int z0 = (int) Math.floor(minZ[body] * inverse), z1 = (int) Math.floor(maxZ[body] * inverse);
+      if (mFiled[body] && x0 == mCellMinX[body] && x1 == mCellMaxX[body] && y0 == mCellMinY[body]
+          && y1 == mCellMaxY[body] && z0 == mCellMinZ[body] && z1 == mCellMaxZ[body])
+        continue;
+      unfile(body);
+      mCellMinX[body] = x0;
+      mCellMaxX[body] = x1;
+      mCellMinY[body] = y0;
+      mCellMaxY[body] = y1;
+      mCellMinZ[body] = z0;
+      mCellMaxZ[body] = z1;
+      file(body);
+      refiled++;
+    }
+    mLastRefiled = refiled;
+    mOversizedCount = 0;
+    for (int body = 0; body < count; body++) {
+      if (mOversized[body]) {
+        if (mOversizedCount == mOversizedBodies.length)
+          mOversizedBodies = Arrays.copyOf(mOversizedBodies, Math.max(8, mOversizedCount * 2));
+        mOversizedBodies[mOversizedCount++] = body;
+      }
+    }
+  }
+
+  @Override
+  public void findPairs(CollisionPairs pairs) {
+    int tests = 0;
+    for (int a = 0; a < mCount; a++) {
+      if (mOversized[a])
+        continue;
+      int entry = a * MAX_CELLS;
+      for (int cy = mCellMinY[a]; cy <= mCellMaxY[a]; cy++) {
+        for (int cz = mCellMinZ[a]; cz <= mCellMaxZ[a]; cz++) {
+          for (int cx = mCellMinX[a]; cx <= mCellMaxX[a]; cx++, entry++) {
+            final long key = mEntryKeys[entry];
+            for (int other = mBuckets[bucket(key)]; other != NONE; other = mEntryNext[other]) {
+              final int b = other / MAX_CELLS;
+              if (b <= a || mEntryKeys[other] != key)
+                continue;
+              // only from the first cell the two share
+              if (cx != Math.max(mCellMinX[a], mCellMinX[b]) || cy != Math.max(mCellMinY[a], mCellMinY[b])
+                  || cz != Math.max(mCellMinZ[a], mCellMinZ[b]))
+                continue;
+              tests++;
+              if (overlaps(a, b))
+                pairs.add(a, b);
+            }
+          }
+        }
+      }
+    }
+    for (int i = 0; i < mOversizedCount; i++) {
+      final int a = mOversizedBodies[i];
+      for (int b = 0; b < mCount; b++) {
+        // pairs of two oversized bodies are tested from the lower one only
+        if (b == a || mOversized[b] && b < a)
+          continue;
+        tests++;
+        if (overlaps(a, b))
+          pairs.add(Math.min(a, b), Math.max(a, b));
+      }
+    }
+    mLastTests = tests;
+  }
+
+  @Override
+  public int getLastTests() {
+    return mLastTests;
+  }
+
+  /**
+   * @return the bodies filed again during the last update because their cells changed
+   */
+  public int getLastRefiled() {
+    return mLastRefiled;
+  }
+
+  private boolean overlaps(int a, int b) {
+    return mMinX[a] <= mMaxX[b] && mMinX[b] <= mMaxX[a] && mMinY[a] <= mMaxY[b] && mMinY[b] <= mMaxY[a]
+        && mMinZ[a] <= mMaxZ[b] && mMinZ[b] <= mMaxZ[a];
+  }
+
+  private void file(int body) {
+    final long cells = (long) (mCellMaxX[body] - mCellMinX[body] + 1) * (mCellMaxY[body] - mCellMinY[body] + 1)
+        * (mCellMaxZ[body] - mCellMinZ[body] + 1);
+    mFiled[body] = true;
+    mOversized[body] = cells > MAX_CELLS;
+    if (mOversized[body])
+      return;
+    int entry = body * MAX_CELLS;
+    for (int cy = mCellMinY[body]; cy <= mCellMaxY[body]; cy++) {
+      for (int cz = mCellMinZ[body]; cz <= mCellMaxZ[body]; cz++) {
+        for (int cx = mCellMinX[body]; cx <= mCellMaxX[body]; cx++, entry++) {
+          final long key = key(cx, cy, cz);
+          final int bucket = bucket(key);
+          final int head = mBuckets[bucket];
+          mEntryKeys[entry] = key;
+          mEntryPrevious[entry] = NONE;
+          mEntryNext[entry] = head;
+          if (head != NONE)
+            mEntryPrevious[head] = entry;
+          mBuckets[bucket] = entry;
+        }
+      }
+    }
+  }
+
+  private void unfile(int body) {
+    if (!mFiled[body])
+      return;
+    mFiled[body] = false;
+    if (mOversized[body])
+      return;
+    final int cells = (mCellMaxX[body] - mCellMinX[body] + 1) * (mCellMaxY[body] - mCellMinY[body] + 1)
+        * (mCellMaxZ[body] - mCellMinZ[body] + 1);
+    for (int entry = body * MAX_CELLS; entry < body * MAX_CELLS + cells; entry++) {
+      final int previous = mEntryPrevious[entry];
+      final int next = mEntryNext[entry];
+      if (previous == NONE)
+        mBuckets[bucket(mEntryKeys[entry])] = next;
+      else
+        mEntryNext[previous] = next;
+      if (next != NONE)
+        mEntryPrevious[next] = previous;
+    }
+  }
+
+  /**
+   * Makes room for capacity bodies, with a bucket per filed cell or so, and files every body again.
+   */
+  private void grow(int capacity) {
+    capacity = Math.max(capacity, mCapacity * 2);
+    mCellMinX = Arrays.copyOf(mCellMinX, capacity);
+    mCellMinY = Arrays.copyOf(mCellMinY, capacity);
+    mCellMinZ = Arrays.copyOf(mCellMinZ, capacity);
+    mCellMaxX = Arrays.copyOf(mCellMaxX, capacity);
+    mCellMaxY = Arrays.copyOf(mCellMaxY, capacity);
+    mCellMaxZ = Arrays.copyOf(mCellMaxZ, capacity);
+    mFiled = new boolean[capacity];
+    mOversized = new boolean[capacity];
+    mEntryKeys = new long[capacity * MAX_CELLS];
+    mEntryNext = new int[capacity * MAX_CELLS];
+    mEntryPrevious = new int[capacity * MAX_CELLS];
+    mBuckets = new int[Integer.highestOneBit(capacity * 4 - 1) * 2];
+    Arrays.fill(mBuckets, NONE);
+    mBucketMask = mBuckets.length - 1;
+    mCapacity = capacity;
+    // update() files the bodies again, since none is filed now
+  }
+
+  private static long key(int cx, int cy, int cz) {
+    return (cx & COORDINATE_MASK) << 2 * COORDINATE_BITS | (cy & COORDINATE_MASK) << COORDINATE_BITS | cz & COORDINATE_MASK;
+  }
+
+  private int bucket(long key) {
+    // the product's low bits depend only on the key's low bits, so fold the high half in
+    final long h = key * 0x9e3779b97f4a7c15L;
+    return (int) (h ^ h >>> 32) & mBucketMask;
+  }
+
+  @Override
+  public String toString() {
+    return "SpatialHashBroadPhase(" + mCount + " bodies, " + mOversizedCount + " oversized, " + mBuckets.length
+        + " buckets, " + mLastRefiled + " refiled last update)";
+  }
+}
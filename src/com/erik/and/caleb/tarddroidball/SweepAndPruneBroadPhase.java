@@ -0,0 +1,95 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Keeps the bodies sorted by the low x of their boxes and sweeps along x:
+ * each body is tested only against the ones that start before it ends, on y
+ * and z. The order is kept from step to step and re-sorted by insertion, so
+ * when bodies move a little between steps sorting costs about one pass.
+ * Best when bodies are spread along x; when many share an x range, as in a
+ * tall pile, the sweep tests them all against each other and
+ * {@link SpatialHashBroadPhase} does better. Plain Java, no GL.
+ */
+public class SweepAndPruneBroadPhase implements BroadPhase {
+
+  private int[] mOrder = new int[0];
+  private int mCount;
+  private float[] mMinX, mMinY, mMinZ, mMaxX, mMaxY, mMaxZ;
+  private int mLastTests;
+  private int mLastSwaps;
+
+  @Override
+  public void update(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count) {
+    mMinX = minX;
+    mMinY = minY;
+    mMinZ = minZ;
+    mMaxX = maxX;
+    mMaxY = maxY;
+    mMaxZ = maxZ;
+    if (count < mCount) {
+      int kept = 0;
+      for (int i = 0; i < mCount; i++) {
+        if (mOrder[i] < count)
+          mOrder[kept++] = mOrder[i];
+      }
+    } else if (count > mCount) {
+      if (mOrder.length < count) {
+        final int[] order = new int[Math.max(count, mOrder.length * 2)];
+        System.arraycopy(mOrder, 0, order, 0, mCount);
+        mOrder = order;
+      }
+      for (int body = mCount; body < count; body++)
+        mOrder[body] = body;
+    }
+    mCount = count;
+    final int[] order = mOrder;
+    int swaps = 0;
+    for (int i = 1; i < count; i++) {
+      final int body = order[i];
+      final float key = minX[body];
+      int j = i - 1;
+      while (j >= 0 && minX[order[j]] > key) {
+        order[j + 1] = order[j];
+        j--;
+        swaps++;
+      }
+      order[j + 1] = body;
+    }
+    mLastSwaps = swaps;
+  }
+
+  @Override
+  public void findPairs(CollisionPairs pairs) {
+    final int[] order = mOrder;
+    final float[] minX = mMinX, minY = mMinY, minZ = mMinZ, maxX = mMaxX, maxY = mMaxY, maxZ = mMaxZ;
+    int tests = 0;
+    for (int i = 0; i < mCount; i++) {
+      final int a = order[i];
+      final float endX = maxX[a];
+      for (int j = i + 1; j < mCount; j++) {
+        final int b = order[j];
+        if (minX[b] > endX)
+          break;
+        tests++;
+        if (minY[a] <= maxY[b] && minY[b] <= maxY[a] && minZ[a] <= maxZ[b] && minZ[b] <= maxZ[a]) {
+          if (a < b)
+            pairs.add(a, b);
+          else
+            pairs.add(b, a);
+        }
+      }
+    }
+    mLastTests = tests;
+  }
+
+  @Override
+  public int getLastTests() {
+    return mLastTests;
+  }
+
+  /**
+   * @return the places bodies moved in the order during the last update
+   */
+  public int getLastSwaps() {
+    return mLastSwaps;
+  }
+}
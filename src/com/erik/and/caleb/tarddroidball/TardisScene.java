@@ -0,0 +1,386 @@
+package com.erik.and.caleb.tarddroidball;
+
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+/**
+ * What onDrawFrame works out before it draws anything: the green TARDIS moved
+ * by the frame's touches and pushed out of whatever it was dragged into, the
+ * chunk to stream terrain around, the scene posed from the simulation, and
+ * which objects the camera sees, the stress TARDISes through a BVH once there
+ * are many. GraphicsRenderer draws what it leaves, and FrameAllocationCheck in
+ * tools drives the same object off the device. Plain Java, no GL.
+ */
+public class TardisScene {
+
+  // past this many stress TARDISes, culling goes through a BVH instead of testing each one
+  public static final int BVH_MIN_OBJECTS = 64;
+  public static final float GROUND_TOP = -2.75f;
+
+  // published by the UI thread, drained by the GL thread
+  private final TouchEventRing mTouchEvents = new TouchEventRing(256);
+  private final TouchEventRing.Event mTouchEvent = new TouchEventRing.Event();
+  private final TouchIntegrator mTouchIntegrator = new TouchIntegrator();
+
+  private final SceneGraph mScene = new SceneGraph(16);
+  private final int mGroundSideNode;
+  private final int mGroundTopNode;
+  private final int mWhiteTardisNode;
+  private final int mRedTardisNode;
+  private final int mGreenTardisNode;
+  private final int mLightPivotNode;
+  private final int mLightNode;
+  private int mFirstStressTardisNode;
+  private int mStressTardisCount;
+
+  // keeps the dragged green TARDIS out of the other two and the ground; those two are kinematic, placed from the simulation
+  private final PhysicsWorld mTardisPhysics = new PhysicsWorld(new SweepAndPruneBroadPhase());
+  private MeshBounds mTardisBounds;
+  private int mWhiteTardisBody;
+  private int mRedTardisBody;
+  private int mGreenTardisBody;
+  // a node's position, rotation as x, y, z, w, then its box's centre rotated with it
+  private final float[] mTardisPose = new float[10];
+
+  private int mTerrainNode = -1;
+  private int mTerrainOriginX;
+  private int mTerrainOriginZ;
+  private int mTerrainCenterX;
+  private int mTerrainCenterZ;
+  private final float[] mTerrainFocus = new float[3];
+  // per slot of the chunk renderer
+  private int[] mChunkNodes = new int[0];
+  private MeshBounds[] mChunkBounds = new MeshBounds[0];
+
+  private final Frustum mFrustum = new Frustum();
+  private final float[] mViewProjectionMatrix = new float[16];
+  private final float[] mSphere = new float[4];
+  private BoundingVolumeHierarchy mStressBvh;
+  private float[] mStressBounds;
+  private int[] mVisibleStressTardises;
+  private int[] mVisibleTardises = new int[3];
+  private int mDrawnObjects;
+  private int mCulledObjects;
+
+  public TardisScene() {
+    mGroundSideNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mScene.setPosition(mGroundSideNode, 0.0f, -4.0f, -7.0f);
+    mGroundTopNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mScene.setPosition(mGroundTopNode, 0.0f, -3.99f, -7.0f);
+    mScene.setScale(mGroundTopNode, 1.0f, 1.01f, 1.0f);
+    mWhiteTardisNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mScene.setPosition(mWhiteTardisNode, 0.0f, 1.0f, -7.0f);
+    mRedTardisNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mGreenTardisNode = mScene.addNode(SceneGraph.NO_PARENT);
+    homeGreenTardis();
+    // the light circles a pivot in front of the camera
+    mLightPivotNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mScene.setPosition(mLightPivotNode, 0.0f, 0.0f, -5.0f);
+    mLightNode = mScene.addNode(mLightPivotNode);
+    mScene.setPosition(mLightNode, 0.0f, 0.0f, 3.0f);
+    mFirstStressTardisNode = mScene.getNodeCount();
+  }
+
+  /**
+   * Adds count extra TARDISes spinning with the white one, in a grid in front of the camera. Call once.
+   */
+  public void addStressTardises(int count) {
+    mStressTardisCount = count;
+    mFirstStressTardisNode = mScene.getNodeCount();
+    final int columns = Math.max(1, (int) Math.ceil(Math.sqrt(count)));
+    final float spacing = 12.0f / columns;
+    for (int i = 0; i < count; i++) {
+      final int node = mScene.addNode(SceneGraph.NO_PARENT);
+      mScene.setPosition(node, -6.0f + spacing * (i % columns), Simulation.TARDIS_HEIGHT_MIN, -3.0f - spacing * 0.5f * (i / columns));
+    }
+    mVisibleTardises = new int[3 + count];
+  }
+
+  /**
+   * Sizes the TARDISes' collision boxes; until then the green one is not collided.
+   */
+  public void setTardisBounds(MeshBounds bounds) {
+    mTardisBounds = bounds;
+    final float halfX = (bounds.getMaxX() - bounds.getMinX()) * 0.5f;
+    final float halfY = (bounds.getMaxY() - bounds.getMinY()) * 0.5f;
+    final float halfZ = (bounds.getMaxZ() - bounds.getMinZ()) * 0.5f;
+    mTardisPhysics.clear();
+    mWhiteTardisBody = mTardisPhysics.addBody(0, 0, 0, halfX, halfY, halfZ, 0);
+    mRedTardisBody = mTardisPhysics.addBody(0, 0, 0, halfX, halfY, halfZ, 0);
+    mGreenTardisBody = mTardisPhysics.addBody(0, 0, 0, halfX, halfY, halfZ, 1);
+    mTardisPhysics.setBounds(-Float.MAX_VALUE, GROUND_TOP, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+  }
+
+  /**
+   * Adds the node the terrain's chunks hang from, with the block at (originX, originZ) under the scene's origin.
+   */
+  public void addTerrain(int originX, float y, int originZ) {
+    mTerrainNode = mScene.addNode(SceneGraph.NO_PARENT);
+    mScene.setPosition(mTerrainNode, -originX, y, -originZ);
+    mTerrainOriginX = originX;
+    mTerrainOriginZ = originZ;
+  }
+
+  /**
+   * Moves the chunk in a slot of the chunk renderer to where its mesh belongs.
+   */
+  public void placeChunk(int slot, ChunkMesh mesh) {
+    if (slot >= mChunkNodes.length) {
+      final int slots = Math.max(16, slot * 2);
+      final int[] nodes = new int[slots];
+      System.arraycopy(mChunkNodes, 0, nodes, 0, mChunkNodes.length);
+      for (int i = mChunkNodes.length; i < slots; i++)
+        nodes[i] = mScene.addNode(mTerrainNode);
+      mChunkNodes = nodes;
+      final MeshBounds[] bounds = new MeshBounds[slots];
+      System.arraycopy(mChunkBounds, 0, bounds, 0, mChunkBounds.length);
+      mChunkBounds = bounds;
+    }
+    mScene.setPosition(mChunkNodes[slot], mesh.getChunkX() * VoxelChunk.WIDTH, 0.0f, mesh.getChunkZ() * VoxelChunk.DEPTH);
+    mChunkBounds[slot] = mesh.getBounds();
+  }
+
+  /**
+   * Drains the frame's touches into the green TARDIS.
+   *
+   * @param displayNanos when the frame is expected on screen, for touch prediction
+   */
+  public void moveGreenTardis(long frameNanos, long displayNanos) {
+    final TouchIntegrator input = mTouchIntegrator;
+    input.integrate(mTouchEvents, mTouchEvent, frameNanos, displayNanos);
+
+    if (input.isHomeRequested())
+      homeGreenTardis();
+    if (input.getTranslateX() != 0 || input.getTranslateY() != 0)
+      mScene.translateLocal(mGreenTardisNode, input.getTranslateX(), input.getTranslateY(), 0.0f);
+    if (input.getRotateX() != 0 || input.getRotateY() != 0) {
+      mScene.rotateLocal(mGreenTardisNode, input.getRotateX(), 0.0f, 1.0f, 0.0f);
+      mScene.rotateLocal(mGreenTardisNode, -input.getRotateY(), 1.0f, 0.0f, 0.0f);
+    }
+  }
+
+  /**
+   * Places the white and red TARDISes where the simulation has them and the
+   * green one where the finger left it, then pushes the green one out of
+   * whatever it was dragged into, the ground included.
+   */
+  public void collideTardises(SimulationState state) {
+    if (mTardisBounds == null)
+      return;
+    final float[] pose = mTardisPose;
+    pose[0] = 0.0f;
+    pose[1] = 1.0f;
+    pose[2] = -7.0f;
+    Quat.setAxisAngle(pose, 3, state.whiteTardisAngle, 0.0f, 1.0f, 0.0f);
+    placeTardisBody(mWhiteTardisBody, pose);
+    pose[0] = -5.0f;
+    pose[1] = state.redTardisY;
+    Quat.setAxisAngle(pose, 3, state.redTardisAngle, 0.0f, 1.0f, 0.0f);
+    placeTardisBody(mRedTardisBody, pose);
+    mScene.getPosition(mGreenTardisNode, pose, 0);
+    mScene.getRotationQuaternion(mGreenTardisNode, pose, 3);
+    placeTardisBody(mGreenTardisBody, pose);
+    mTardisPhysics.collide();
+    // back from the box's centre to the node's origin
+    mScene.setPosition(mGreenTardisNode, mTardisPhysics.getPositionX(mGreenTardisBody) - pose[7],
+        mTardisPhysics.getPositionY(mGreenTardisBody) - pose[8], mTardisPhysics.getPositionZ(mGreenTardisBody) - pose[9]);
+  }
+
+  /**
+   * @param pose the node's position, then its rotation as x, y, z, w; the box's centre is left after them
+   */
+  private void placeTardisBody(int body, float[] pose) {
+    final MeshBounds bounds = mTardisBounds;
+    Quat.rotateVector(pose, 7, pose, 3, (bounds.getMinX() + bounds.getMaxX()) * 0.5f,
+        (bounds.getMinY() + bounds.getMaxY()) * 0.5f, (bounds.getMinZ() + bounds.getMaxZ()) * 0.5f);
+    mTardisPhysics.setPosition(body, pose[0] + pose[7], pose[1] + pose[8], pose[2] + pose[9]);
+    mTardisPhysics.setOrientation(body, pose, 3);
+  }
+
+  private void homeGreenTardis() {
+    mScene.setPosition(mGreenTardisNode, 5.0f, Simulation.TARDIS_HEIGHT_MIN, -7.0f);
+    mScene.setRotationQuaternion(mGreenTardisNode, 0.0f, 0.0f, 0.0f, 1.0f);
+  }
+
+  /**
+   * Centres the streamed chunks on the chunk under the green TARDIS, the one
+   * thing in the scene that travels; see {@link #getTerrainCenterX()}.
+   */
+  public void updateTerrainCenter() {
+    final float[] focus = mTerrainFocus;
+    mScene.getPosition(mGreenTardisNode, focus, 0);
+    // floored, as truncating would put the chunks either side of the world's edge in the same place
+    mTerrainCenterX = (int) Math.floor((focus[0] + mTerrainOriginX) / VoxelChunk.WIDTH);
+    mTerrainCenterZ = (int) Math.floor((focus[2] + mTerrainOriginZ) / VoxelChunk.DEPTH);
+  }
+
+  public int getTerrainCenterX() {
+    return mTerrainCenterX;
+  }
+
+  public int getTerrainCenterZ() {
+    return mTerrainCenterZ;
+  }
+
+  /**
+   * Poses the scene from the simulation and brings every matrix up to date for the camera.
+   */
+  public void update(SimulationState state, float[] viewMatrix, float[] projectionMatrix) {
+    mScene.setRotation(mWhiteTardisNode, state.whiteTardisAngle, 0.0f, 1.0f, 0.0f);
+    mScene.setPosition(mRedTardisNode, -5.0f, state.redTardisY, -7.0f);
+    mScene.setRotation(mRedTardisNode, state.redTardisAngle, 0.0f, 1.0f, 0.0f);
+    mScene.setRotation(mLightPivotNode, state.lightAngle, 0.0f, 1.0f, 0.0f);
+    // the stress TARDISes spin with the white one, so they all share its rotation
+    final double half = Math.toRadians(state.whiteTardisAngle) * 0.5;
+    final float sin = (float) Math.sin(half);
+    final float cos = (float) Math.cos(half);
+    for (int i = 0; i < mStressTardisCount; i++)
+      mScene.setRotationQuaternion(mFirstStressTardisNode + i, 0.0f, sin, 0.0f, cos);
+    mScene.setCamera(viewMatrix, projectionMatrix);
+    mScene.update();
+
+    Mat4.multiplyByAffine(mViewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+    mFrustum.set(mViewProjectionMatrix, 0);
+    mDrawnObjects = 0;
+    mCulledObjects = 0;
+  }
+
+  /**
+   * Tests a node's bounding sphere against the camera, counting it as drawn or culled.
+   */
+  public boolean isVisible(int node, MeshBounds bounds) {
+    bounds.transformSphere(mScene.getWorldMatrices(), node * 16, mSphere);
+    final boolean visible = mFrustum.intersectsSphere(mSphere[0], mSphere[1], mSphere[2], mSphere[3]);
+    if (visible)
+      mDrawnObjects++;
+    else
+      mCulledObjects++;
+    return visible;
+  }
+
+  /**
+   * @param mesh what the chunk renderer holds in the slot, or null
+   */
+  public boolean isChunkVisible(int slot, ChunkMesh mesh) {
+    return mesh != null && !mesh.isEmpty() && isVisible(mChunkNodes[slot], mChunkBounds[slot]);
+  }
+
+  /**
+   * Finds the TARDISes the camera sees, for {@link #getVisibleTardises()}. Call after {@link #update}.
+   *
+   * @return how many there are
+   */
+  public int cullTardises() {
+    int visible = 0;
+    if (isVisible(mWhiteTardisNode, mTardisBounds))
+      mVisibleTardises[visible++] = mWhiteTardisNode;
+    if (isVisible(mRedTardisNode, mTardisBounds))
+      mVisibleTardises[visible++] = mRedTardisNode;
+    if (isVisible(mGreenTardisNode, mTardisBounds))
+      mVisibleTardises[visible++] = mGreenTardisNode;
+
+    if (mStressTardisCount < BVH_MIN_OBJECTS) {
+      for (int i = 0; i < mStressTardisCount; i++) {
+        if (isVisible(mFirstStressTardisNode + i, mTardisBounds))
+          mVisibleTardises[visible++] = mFirstStressTardisNode + i;
+      }
+      return visible;
+    }
+
+    // a box around the sphere about a TARDIS's origin holds it at any angle, so spinning leaves the box bit for bit
+    // the same and setItemBounds finds nothing to refit; the stress TARDISes are unscaled roots
+    final boolean build = mStressBvh == null;
+    if (build) {
+      mStressBvh = new BoundingVolumeHierarchy();
+      mStressBounds = new float[mStressTardisCount * 6];
+      mVisibleStressTardises = new int[mStressTardisCount];
+    }
+    final float[] world = mScene.getWorldMatrices();
+    final float r = mTardisBounds.getRadiusAboutOrigin();
+    for (int i = 0; i < mStressTardisCount; i++) {
+      final int node = mFirstStressTardisNode + i;
+      if (!build && !mScene.isWorldChanged(node))
+        continue;
+      final float x = world[node * 16 + 12], y = world[node * 16 + 13], z = world[node * 16 + 14];
+      if (build) {
+        mStressBounds[i * 6] = x - r;
+        mStressBounds[i * 6 + 1] = y - r;
+        mStressBounds[i * 6 + 2] = z - r;
+        mStressBounds[i * 6 + 3] = x + r;
+        mStressBounds[i * 6 + 4] = y + r;
+        mStressBounds[i * 6 + 5] = z + r;
+      } else {
+        mStressBvh.setItemBounds(i, x - r, y - r, z - r, x + r, y + r, z + r);
+      }
+    }
+    if (build)
+      mStressBvh.build(mStressBounds, mStressTardisCount);
+    else
+      mStressBvh.refit();
+
+    final int stressVisible = mStressBvh.cull(mFrustum, mVisibleStressTardises);
+    for (int i = 0; i < stressVisible; i++)
+      mVisibleTardises[visible++] = mFirstStressTardisNode + mVisibleStressTardises[i];
+    mDrawnObjects += stressVisible;
+    mCulledObjects += mStressTardisCount - stressVisible;
+    return visible;
+  }
+
+  /**
+   * @return the nodes {@link #cullTardises()} found visible, at its front
+   */
+  public int[] getVisibleTardises() {
+    return mVisibleTardises;
+  }
+
+  public SceneGraph getScene() {
+    return mScene;
+  }
+
+  public TouchEventRing getTouchEvents() {
+    return mTouchEvents;
+  }
+
+  public TouchIntegrator getTouchIntegrator() {
+    return mTouchIntegrator;
+  }
+
+  public int getGroundSideNode() {
+    return mGroundSideNode;
+  }
+
+  public int getGroundTopNode() {
+    return mGroundTopNode;
+  }
+
+  public int getGreenTardisNode() {
+    return mGreenTardisNode;
+  }
+
+  public int getLightNode() {
+    return mLightNode;
+  }
+
+  public int getChunkNode(int slot) {
+    return mChunkNodes[slot];
+  }
+
+  public int getStressTardisCount() {
+    return mStressTardisCount;
+  }
+
+  /**
+   * @return the BVH over the stress TARDISes, or null while they are tested one by one
+   */
+  public BoundingVolumeHierarchy getStressBvh() {
+    return mStressBvh;
+  }
+
+  public int getDrawnObjects() {
+    return mDrawnObjects;
+  }
+
+  public int getCulledObjects() {
+    return mCulledObjects;
+  }
+}
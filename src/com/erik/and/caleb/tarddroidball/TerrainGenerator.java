@@ -0,0 +1,162 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Fills chunks with seeded terrain: layered {@link SimplexNoise} heightmaps
+ * for plains, desert and mountains, blended by two broad noises that also
+ * pick each column's biome, so grass gives way to sand or bare stone.
+ * <p/>
+ * A chunk is a pure function of the seed and its position: no state is
+ * shared between chunks past the noise, each thread fills its own scratch
+ * columns, and every block of the chunk is written, so chunks come out the
+ * same whichever thread generates them, in whatever order, and whatever the
+ * chunk held before. Plain Java, no GL; thread-safe once
+ * {@link #setLevelArea} has been called.
+ */
+public class TerrainGenerator implements ChunkStreamer.Generator {
+
+  /**
+   * Changes whenever the same seed would give other terrain, so saved chunks can be kept apart.
+   */
+  public static final int VERSION = 1;
+
+  public static final int BIOME_PLAINS = 0;
+  public static final int BIOME_DESERT = 1;
+  public static final int BIOME_MOUNTAINS = 2;
+  public static final int BIOME_COUNT = 3;
+
+  private static final int COLUMNS = VoxelChunk.WIDTH * VoxelChunk.DEPTH;
+  private static final int DIRT_DEPTH = 3;
+  private static final int SAND_DEPTH = 4;
+  // blocks over which the level area eases into the terrain around it
+  private static final int LEVEL_BLEND = 8;
+
+  private final long mSeed;
+  private final SimplexNoise mHeightNoise;
+  private final SimplexNoise mDuneNoise;
+  private final SimplexNoise mRidgeNoise;
+  private final SimplexNoise mMountainNoise;
+  private final SimplexNoise mClimateNoise;
+  private int mLevelMinX;
+  private int mLevelMinZ;
+  private int mLevelMaxX;
+  private int mLevelMaxZ;
+  private int mLevelHeight = -1;
+
+  private final ThreadLocal<int[]> mHeights = new ThreadLocal<int[]>() {
+    @Override
+    protected int[] initialValue() {
+      return new int[COLUMNS];
+    }
+  };
+  private final ThreadLocal<byte[]> mBiomes = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[COLUMNS];
+    }
+  };
+
+  public TerrainGenerator(long seed) {
+    mSeed = seed;
+    mHeightNoise = new SimplexNoise(seed);
+    mDuneNoise = new SimplexNoise(seed + 1);
+    mRidgeNoise = new SimplexNoise(seed + 2);
+    mMountainNoise = new SimplexNoise(seed + 3);
+    mClimateNoise = new SimplexNoise(seed + 4);
+  }
+
+  public long getSeed() {
+    return mSeed;
+  }
+
+  /**
+   * Flattens blocks [minX, maxX) x [minZ, maxZ) to plains of the given
+   * height, easing into the terrain around them, for ground things have to
+   * stand on. Call before generating.
+   */
+  public void setLevelArea(int minX, int minZ, int maxX, int maxZ, int height) {
+    mLevelMinX = minX;
+    mLevelMinZ = minZ;
+    mLevelMaxX = maxX;
+    mLevelMaxZ = maxZ;
+    mLevelHeight = height;
+  }
+
+  @Override
+  public void generate(VoxelChunk chunk) {
+    final int[] heights = mHeights.get();
+    final byte[] biomes = mBiomes.get();
+    generateColumns(chunk.getChunkX(), chunk.getChunkZ(), heights, biomes);
+    for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+      for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+        final int column = z * VoxelChunk.WIDTH + x;
+        final int height = heights[column];
+        switch (biomes[column]) {
+          case BIOME_DESERT:
+            chunk.fillColumn(x, z, 0, height - SAND_DEPTH, VoxelChunk.STONE);
+            chunk.fillColumn(x, z, height - SAND_DEPTH, height, VoxelChunk.SAND);
+            break;
+          case BIOME_MOUNTAINS:
+            chunk.fillColumn(x, z, 0, height, VoxelChunk.STONE);
+            break;
+          default:
+            chunk.fillColumn(x, z, 0, height - 1 - DIRT_DEPTH, VoxelChunk.STONE);
+            chunk.fillColumn(x, z, height - 1 - DIRT_DEPTH, height - 1, VoxelChunk.DIRT);
+            chunk.set(x, height - 1, z, VoxelChunk.GRASS);
+            break;
+        }
+        chunk.fillColumn(x, z, height, VoxelChunk.HEIGHT, VoxelChunk.AIR);
+      }
+    }
+  }
+
+  /**
+   * Works out a chunk's surface without filling it.
+   *
+   * @param heights per column, x fastest: blocks [0, height) are solid
+   * @param biomes  per column, x fastest
+   */
+  public void generateColumns(int chunkX, int chunkZ, int[] heights, byte[] biomes) {
+    final int baseX = chunkX * VoxelChunk.WIDTH;
+    final int baseZ = chunkZ * VoxelChunk.DEPTH;
+    for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+      for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+        final int column = z * VoxelChunk.WIDTH + x;
+        final double wx = baseX + x, wz = baseZ + z;
+        final double mountains = smoothstep(0.15, 0.45, mMountainNoise.fractal(wx / 384, wz / 384, 3));
+        final double desert = smoothstep(0.1, 0.35, mClimateNoise.fractal(wx / 320, wz / 320, 2)) * (1 - mountains);
+        final double plains = 1 - mountains - desert;
+        double height = plains * (40 + 6 * mHeightNoise.fractal(wx / 64, wz / 64, 4))
+            + desert * (38 + 3 * mDuneNoise.fractal(wx / 24, wz / 24, 2))
+            + mountains * (42 + 56 * mRidgeNoise.ridged(wx / 96, wz / 96, 4));
+        int biome = plains >= desert && plains >= mountains ? BIOME_PLAINS
+            : desert >= mountains ? BIOME_DESERT : BIOME_MOUNTAINS;
+        if (mLevelHeight >= 0) {
+          final int outside = Math.max(Math.max(mLevelMinX - (baseX + x), baseX + x - (mLevelMaxX - 1)),
+              Math.max(mLevelMinZ - (baseZ + z), baseZ + z - (mLevelMaxZ - 1)));
+          if (outside < LEVEL_BLEND) {
+            final double blend = smoothstep(0, LEVEL_BLEND, outside);
+            height = mLevelHeight + (height - mLevelHeight) * blend;
+            if (blend < 0.5)
+              biome = BIOME_PLAINS;
+          }
+        }
+        heights[column] = Math.max(DIRT_DEPTH + 2, Math.min(VoxelChunk.HEIGHT - 1, (int) Math.floor(height)));
+        biomes[column] = (byte) biome;
+      }
+    }
+  }
+
+  private static double smoothstep(double from, double to, double value) {
+    if (value <= from)
+      return 0;
+    if (value >= to)
+      return 1;
+    final double t = (value - from) / (to - from);
+    return t * t * (3 - 2 * t);
+  }
+
+  @Override
+  public String toString() {
+    return "TerrainGenerator(seed " + mSeed + ", version " + VERSION + ")";
+  }
+}
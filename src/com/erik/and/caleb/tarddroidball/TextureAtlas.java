@@ -0,0 +1,201 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.ETC1;
+import android.opengl.GLES20;
+import android.util.Log;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Textures packed into one GL texture, so switching between them is a uniform
+ * change rather than a texture bind.
+ * <p/>
+ * The atlas is compiled ahead of time into a {@link TextureContainer} (see the
+ * texture compiler in tools): ETC1 with a full mip chain, plus RGB565 for
+ * devices without ETC1. Its layout is read when the atlas is constructed, so
+ * texture coordinates can be remapped while meshes are built, before any GL
+ * context exists. {@link #upload} hands the mapped levels to GL without
+ * copying them; {@link #composeDrawables} is the old path, decoding the PNGs
+ * into the same layout, kept for comparison.
+ */
+public class TextureAtlas {
+
+  private static final String TAG = "TextureAtlas";
+
+  /** Gutter the PNG path fills around each image; the compiled layout leaves room for more. */
+  public static final int PNG_PADDING = 2;
+
+  private static final String ETC1_EXTENSION = "GL_OES_compressed_ETC1_RGB8_texture";
+
+  private final Context mContext;
+  private final ByteBuffer mData;
+  private final TextureContainer mContainer;
+
+  /**
+   * Maps the compiled atlas and reads its layout. The resource should be
+   * stored uncompressed in the APK to be mapped; otherwise it is read into a
+   * direct buffer once.
+   */
+  public TextureAtlas(Context context, int containerId) {
+    mContext = context;
+    try {
+      mData = MappedResource.map(context, containerId);
+      mContainer = new TextureContainer(mData);
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading compiled textures.", e);
+    }
+  }
+
+  /**
+   * Uploads every mip level to a new texture, which is left bound to the
+   * active unit: ETC1 where the device has it, otherwise the RGB565 chain, or
+   * ETC1 decoded to RGB565 if the container has none. Must be called on the
+   * GL thread with a current context.
+   *
+   * @return the texture handle
+   */
+  public int upload(Gl gl) {
+    final long start = System.nanoTime();
+    final String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    final boolean etc1 = extensions != null && extensions.contains(ETC1_EXTENSION);
+    final int format = etc1 || !mContainer.hasFormat(TextureContainer.FORMAT_RGB565)
+        ? TextureContainer.FORMAT_ETC1 : TextureContainer.FORMAT_RGB565;
+    final int levels = mContainer.getLevelCount(format);
+
+    final int handle = createTexture(gl, levels > 1);
+    long bytes = 0;
+    for (int level = 0; level < levels; level++) {
+      final int width = mContainer.getLevelWidth(format, level);
+      final int height = mContainer.getLevelHeight(format, level);
+      final ByteBuffer data = mContainer.getLevelData(format, level);
+      bytes += data.remaining();
+      if (format == TextureContainer.FORMAT_RGB565) {
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGB, width, height, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5, data);
+      } else if (etc1) {
+        gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level, ETC1.ETC1_RGB8_OES, width, height, 0, data.remaining(), data);
+      } else {
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, level, GLES20.GL_RGB, width, height, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_SHORT_5_6_5,
+            decodeEtc1(data, width, height));
+      }
+    }
+    Log.d(TAG, String.format("Uploaded %dx%d atlas, %d %s levels, %d bytes, in %.1f ms", mContainer.getWidth(), mContainer.getHeight(),
+        levels, format == TextureContainer.FORMAT_RGB565 ? "RGB565" : etc1 ? "ETC1" : "decoded ETC1", bytes, (System.nanoTime() - start) / 1e6));
+    return handle;
+  }
+
+  private static ByteBuffer decodeEtc1(ByteBuffer data, int width, int height) {
+    // 565 rows padded to the default unpack alignment of 4
+    final int stride = (width * 2 + 3) / 4 * 4;
+    final ByteBuffer decoded = ByteBuffer.allocateDirect(stride * height).order(ByteOrder.nativeOrder());
+    ETC1.decodeImage(data, decoded, width, height, 2, stride);
+    return decoded;
+  }
+
+  /**
+   * Decodes the drawables into one bitmap in the compiled atlas's layout, as
+   * the app did before textures were compiled; upload it with
+   * {@link #uploadComposed}. Needs no GL context, so any thread may call this.
+   *
+   * @param resourceIds the drawables the atlas was compiled from, in the same order
+   * @param repeats     which of them tile, so their gutters wrap around
+   */
+  public Bitmap composeDrawables(int[] resourceIds, boolean[] repeats) {
+    final long start = System.nanoTime();
+    final int width = mContainer.getWidth();
+    final int height = mContainer.getHeight();
+    final int[] pixels = new int[width * height];
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inScaled = false;
+    options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    for (int i = 0; i < resourceIds.length; i++) {
+      final Bitmap image = BitmapFactory.decodeResource(mContext.getResources(), resourceIds[i], options);
+      final int imageWidth = mContainer.getImageWidth(i);
+      final int imageHeight = mContainer.getImageHeight(i);
+      if (image.getWidth() != imageWidth || image.getHeight() != imageHeight)
+        throw new IllegalStateException("Drawable " + i + " is not the size it was compiled at; recompile the textures");
+      final int[] imagePixels = new int[imageWidth * imageHeight];
+      image.getPixels(imagePixels, 0, imageWidth, 0, 0, imageWidth, imageHeight);
+      image.recycle();
+      AtlasPacker.blit(pixels, width, height, imagePixels, imageWidth, imageHeight, mContainer.getImageX(i), mContainer.getImageY(i),
+          PNG_PADDING, repeats[i]);
+    }
+    final Bitmap atlas = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    atlas.setPixels(pixels, 0, width, 0, 0, width, height);
+    Log.d(TAG, String.format("Composed %dx%d atlas from %d drawables in %.1f ms", width, height, resourceIds.length,
+        (System.nanoTime() - start) / 1e6));
+    return atlas;
+  }
+
+  /**
+   * Uploads a bitmap from {@link #composeDrawables} at level 0 only, and
+   * recycles it. Must be called on the GL thread with a current context.
+   *
+   * @return the texture handle
+   */
+  public int uploadComposed(Gl gl, Bitmap atlas) {
+    final long start = System.nanoTime();
+    final int handle = createTexture(gl, false);
+    gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, atlas, 0);
+    atlas.recycle();
+    Log.d(TAG, String.format("Uploaded %dx%d atlas from drawables in %.1f ms", mContainer.getWidth(), mContainer.getHeight(),
+        (System.nanoTime() - start) / 1e6));
+    return handle;
+  }
+
+  private static int createTexture(Gl gl, boolean mipmapped) {
+    final int[] textureHandle = new int[1];
+    gl.glGenTextures(1, textureHandle, 0);
+    if (textureHandle[0] == 0)
+      throw new RuntimeException("Error creating atlas texture.");
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+    // nearest up close keeps the blocky look; mipmaps stop the distant grass from shimmering
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, mipmapped ? GLES20.GL_LINEAR_MIPMAP_NEAREST : GLES20.GL_NEAREST);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+    // images tile by their own texture coordinates, never by wrapping the atlas
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    return textureHandle[0];
+  }
+
+  /**
+   * Writes the u, v, width and height of an image in the atlas, for u_AtlasRect.
+   */
+  public void getTextureRect(int image, float[] rect, int offset) {
+    AtlasPacker.textureRect(mContainer.getImageX(image), mContainer.getImageY(image), mContainer.getImageWidth(image),
+        mContainer.getImageHeight(image), mContainer.getWidth(), mContainer.getHeight(), rect, offset);
+  }
+
+  /**
+   * Rewrites (u, v) pairs in an image's own 0..1 space as atlas coordinates, so
+   * the mesh can be drawn with the identity rect.
+   */
+  public void remapTextureCoordinates(int image, float[] uvs) {
+    final float[] rect = new float[4];
+    getTextureRect(image, rect, 0);
+    for (int i = 0; i < uvs.length; i += 2) {
+      uvs[i] = rect[0] + uvs[i] * rect[2];
+      uvs[i + 1] = rect[1] + uvs[i + 1] * rect[3];
+    }
+  }
+
+  public int getWidth() {
+    return mContainer.getWidth();
+  }
+
+  public int getHeight() {
+    return mContainer.getHeight();
+  }
+
+  @Override
+  public String toString() {
+    return mContainer.getImageCount() + " images in " + mContainer.getWidth() + "x" + mContainer.getHeight()
+        + (mContainer.hasFormat(TextureContainer.FORMAT_ETC1) ? ", ETC1 " + mContainer.getLevelCount(TextureContainer.FORMAT_ETC1) + " levels" : "")
+        + (mContainer.hasFormat(TextureContainer.FORMAT_RGB565) ? ", RGB565" : "");
+  }
+}
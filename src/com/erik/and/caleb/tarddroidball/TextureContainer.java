@@ -0,0 +1,138 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A texture atlas compiled ahead of time by the texture compiler in tools,
+ * read straight out of a mapped or direct buffer: the level data handed to GL
+ * are slices of that buffer, never copies.
+ * <p/>
+ * Everything is little-endian ints:
+ * <pre>
+ * magic, version, atlas width, atlas height, image count, chain count
+ * per image: x, y, width, height of its level 0 texels in the atlas
+ * per chain: format, level count, then per level: width, height, offset, length
+ * level data, each level starting at a multiple of 4 bytes
+ * </pre>
+ * Chains hold the same mip levels in different formats, down to 1x1.
+ * {@link #FORMAT_ETC1} levels are ETC1 blocks, rows of 4x4 texel blocks of 8
+ * bytes each; {@link #FORMAT_RGB565} levels are GL_UNSIGNED_SHORT_5_6_5 texels
+ * with rows padded to 4 bytes, as glTexImage2D unpacks them by default.
+ */
+public class TextureContainer {
+
+  public static final int MAGIC = 0x54415854; // "TXAT"
+  public static final int VERSION = 1;
+
+  public static final int FORMAT_ETC1 = 1;
+  public static final int FORMAT_RGB565 = 2;
+
+  private final ByteBuffer mData;
+  private final int mWidth;
+  private final int mHeight;
+  private final int[] mImages;
+  private final int[] mFormats;
+  // per chain, 4 ints per level: width, height, offset, length
+  private final int[][] mLevels;
+
+  /**
+   * Parses the header; the data stays where it is.
+   */
+  public TextureContainer(ByteBuffer data) throws IOException {
+    mData = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    mData.position(0);
+    try {
+      if (mData.getInt() != MAGIC)
+        throw new IOException("Not a compiled texture");
+      final int version = mData.getInt();
+      if (version != VERSION)
+        throw new IOException("Unsupported compiled texture version " + version);
+      mWidth = mData.getInt();
+      mHeight = mData.getInt();
+      mImages = new int[mData.getInt() * 4];
+      for (int i = 0; i < mImages.length; i++)
+        mImages[i] = mData.getInt();
+      final int chains = mData.getInt();
+      mFormats = new int[chains];
+      mLevels = new int[chains][];
+      for (int c = 0; c < chains; c++) {
+        mFormats[c] = mData.getInt();
+        mLevels[c] = new int[mData.getInt() * 4];
+        for (int i = 0; i < mLevels[c].length; i++)
+          mLevels[c][i] = mData.getInt();
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Truncated compiled texture");
+    }
+  }
+
+  public int getWidth() {
+    return mWidth;
+  }
+
+  public int getHeight() {
+    return mHeight;
+  }
+
+  public int getImageCount() {
+    return mImages.length / 4;
+  }
+
+  public int getImageX(int image) {
+    return mImages[image * 4];
+  }
+
+  public int getImageY(int image) {
+    return mImages[image * 4 + 1];
+  }
+
+  public int getImageWidth(int image) {
+    return mImages[image * 4 + 2];
+  }
+
+  public int getImageHeight(int image) {
+    return mImages[image * 4 + 3];
+  }
+
+  public boolean hasFormat(int format) {
+    return chain(format) >= 0;
+  }
+
+  /**
+   * @return how many mip levels the chain in this format has, or 0 if there is none
+   */
+  public int getLevelCount(int format) {
+    final int chain = chain(format);
+    return chain < 0 ? 0 : mLevels[chain].length / 4;
+  }
+
+  public int getLevelWidth(int format, int level) {
+    return mLevels[chain(format)][level * 4];
+  }
+
+  public int getLevelHeight(int format, int level) {
+    return mLevels[chain(format)][level * 4 + 1];
+  }
+
+  /**
+   * @return the level's bytes, as a slice of the container's buffer
+   */
+  public ByteBuffer getLevelData(int format, int level) {
+    final int[] levels = mLevels[chain(format)];
+    final ByteBuffer data = mData.duplicate();
+    data.limit(levels[level * 4 + 2] + levels[level * 4 + 3]);
+    data.position(levels[level * 4 + 2]);
+    return data.slice();
+  }
+
+  private int chain(int format) {
+    for (int c = 0; c < mFormats.length; c++) {
+      if (mFormats[c] == format)
+        return c;
+    }
+    return -1;
+  }
+}
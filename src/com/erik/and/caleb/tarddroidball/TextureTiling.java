@@ -0,0 +1,120 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.Arrays;
+
+/**
+ * Cuts triangles along whole texture coordinates so that every triangle's
+ * coordinates fall within one 0..1 tile, then shifts them there. A tiling
+ * image in an atlas can then be sampled at rect.xy + uv * rect.zw with no
+ * wrapping in the shader; wrapping with fract() makes the derivatives jump at
+ * every tile edge, so the GPU picks the smallest mip level along those lines
+ * and they show up as seams. Plain Java, no GL.
+ */
+public class TextureTiling {
+
+  private static final float EPSILON = 1e-6f;
+
+  private TextureTiling() {
+  }
+
+  /**
+   * @param triangles         an unindexed triangle list
+   * @param texCoordAttribute the attribute holding (u, v), which every other attribute is interpolated along with
+   * @return the same surface as a triangle list whose texture coordinates each lie in one 0..1 tile
+   */
+  public static InterleavedMesh split(InterleavedMesh triangles, int texCoordAttribute) {
+    final int stride = triangles.getFloatsPerVertex();
+    final int uv = triangles.getOffset(texCoordAttribute);
+    final float[] data = triangles.getData();
+
+    float[] out = new float[data.length * 2];
+    int outLength = 0;
+    // a triangle clipped by four lines has at most seven corners
+    float[] polygon = new float[7 * stride];
+    float[] clipped = new float[7 * stride];
+    for (int t = 0; t + 3 * stride <= data.length; t += 3 * stride) {
+      float minU = Float.MAX_VALUE, maxU = -Float.MAX_VALUE, minV = Float.MAX_VALUE, maxV = -Float.MAX_VALUE;
+      for (int c = 0; c < 3; c++) {
+        final float u = data[t + c * stride + uv];
+        final float v = data[t + c * stride + uv + 1];
+        minU = Math.min(minU, u);
+        maxU = Math.max(maxU, u);
+        minV = Math.min(minV, v);
+        maxV = Math.max(maxV, v);
+      }
+      final int firstU = (int) Math.floor(minU + EPSILON);
+      final int lastU = Math.max(firstU, (int) Math.ceil(maxU - EPSILON) - 1);
+      final int firstV = (int) Math.floor(minV + EPSILON);
+      final int lastV = Math.max(firstV, (int) Math.ceil(maxV - EPSILON) - 1);
+
+      for (int tileV = firstV; tileV <= lastV; tileV++) {
+        for (int tileU = firstU; tileU <= lastU; tileU++) {
+          System.arraycopy(data, t, polygon, 0, 3 * stride);
+          int corners = 3;
+          if (firstU != lastU) {
+            corners = clip(polygon, corners, clipped, stride, uv, tileU, 1);
+            corners = clip(clipped, corners, polygon, stride, uv, tileU + 1, -1);
+          }
+          if (firstV != lastV) {
+            corners = clip(polygon, corners, clipped, stride, uv + 1, tileV, 1);
+            corners = clip(clipped, corners, polygon, stride, uv + 1, tileV + 1, -1);
+          }
+          if (corners < 3 || (corners != 3 || firstU != lastU || firstV != lastV) && area(polygon, corners, stride, uv) < EPSILON)
+            continue;
+
+          final int needed = outLength + (corners - 2) * 3 * stride;
+          if (needed > out.length)
+            out = Arrays.copyOf(out, Math.max(needed, out.length * 2));
+          for (int c = 0; c < corners; c++) {
+            polygon[c * stride + uv] -= tileU;
+            polygon[c * stride + uv + 1] -= tileV;
+          }
+          for (int c = 1; c + 1 < corners; c++) {
+            System.arraycopy(polygon, 0, out, outLength, stride);
+            System.arraycopy(polygon, c * stride, out, outLength + stride, 2 * stride);
+            outLength += 3 * stride;
+          }
+        }
+      }
+    }
+    return triangles.withData(Arrays.copyOf(out, outLength));
+  }
+
+  /**
+   * Keeps the part of a polygon where side * (coordinate - line) >= 0,
+   * interpolating every attribute at the cut.
+   */
+  private static int clip(float[] in, int corners, float[] out, int stride, int coordinate, float line, int side) {
+    int outCorners = 0;
+    for (int c = 0; c < corners; c++) {
+      final int from = c * stride;
+      final int to = (c + 1) % corners * stride;
+      final float fromDistance = side * (in[from + coordinate] - line);
+      final float toDistance = side * (in[to + coordinate] - line);
+      if (fromDistance >= 0) {
+        System.arraycopy(in, from, out, outCorners * stride, stride);
+        outCorners++;
+      }
+      if (fromDistance >= 0 != toDistance >= 0) {
+        final float s = fromDistance / (fromDistance - toDistance);
+        final int base = outCorners * stride;
+        for (int f = 0; f < stride; f++)
+          out[base + f] = in[from + f] + (in[to + f] - in[from + f]) * s;
+        // land exactly on the line, so the shifted coordinate is exactly 0 or 1
+        out[base + coordinate] = line;
+        outCorners++;
+      }
+    }
+    return outCorners;
+  }
+
+  private static float area(float[] polygon, int corners, int stride, int uv) {
+    float twiceArea = 0;
+    for (int c = 0; c < corners; c++) {
+      final int a = c * stride + uv;
+      final int b = (c + 1) % corners * stride + uv;
+      twiceArea += polygon[a] * polygon[b + 1] - polygon[b] * polygon[a + 1];
+    }
+    return Math.abs(twiceArea) / 2;
+  }
+}
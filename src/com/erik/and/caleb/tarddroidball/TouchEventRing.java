@@ -0,0 +1,129 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer queue of touch records, handing
+ * touch input from the UI thread to the GL thread. Records live in parallel
+ * primitive arrays allocated up front, so publishing and consuming never
+ * allocate or block. Exactly one thread may publish and one thread may poll.
+ */
+public class TouchEventRing {
+
+  public static final int KIND_MOVE = 0;
+  public static final int KIND_ROTATE = 1;
+  public static final int KIND_UP = 2;
+  public static final int KIND_HOME = 3;
+
+  private final int mMask;
+  private final int[] mKind;
+  private final int[] mPointerId;
+  private final float[] mX;
+  private final float[] mY;
+  private final float[] mDx;
+  private final float[] mDy;
+  private final long[] mTimeNanos;
+
+  // next slot the producer writes; published with an ordered store after the slot is filled
+  private final AtomicLong mTail = new AtomicLong();
+  // next slot the consumer reads; published after the slot has been copied out
+  private final AtomicLong mHead = new AtomicLong();
+  // producer-local copy of mHead, refreshed only when the ring looks full
+  private long mCachedHead;
+  // consumer-local copy of mTail, refreshed only when the ring looks empty
+  private long mCachedTail;
+  private volatile int mDropped;
+
+  /**
+   * @param capacity rounded up to a power of two
+   */
+  public TouchEventRing(int capacity) {
+    int size = 1;
+    while (size < capacity)
+      size <<= 1;
+    mMask = size - 1;
+    mKind = new int[size];
+    mPointerId = new int[size];
+    mX = new float[size];
+    mY = new float[size];
+    mDx = new float[size];
+    mDy = new float[size];
+    mTimeNanos = new long[size];
+  }
+
+  /**
+   * Producer side. Drops the record and returns false if the consumer has fallen a whole ring behind.
+   */
+  public boolean publish(int kind, int pointerId, float x, float y, float dx, float dy, long timeNanos) {
+    final long tail = mTail.get();
+    if (tail - mCachedHead > mMask) {
+      mCachedHead = mHead.get();
+      if (tail - mCachedHead > mMask) {
+        mDropped++;
+        return false;
+      }
+    }
+    final int slot = (int) tail & mMask;
+    mKind[slot] = kind;
+    mPointerId[slot] = pointerId;
+    mX[slot] = x;
+    mY[slot] = y;
+    mDx[slot] = dx;
+    mDy[slot] = dy;
+    mTimeNanos[slot] = timeNanos;
+    mTail.lazySet(tail + 1);
+    return true;
+  }
+
+  /**
+   * Consumer side. Copies the oldest record into out and removes it from the ring.
+   *
+   * @return false if there was nothing to read
+   */
+  public boolean poll(Event out) {
+    final long head = mHead.get();
+    if (head >= mCachedTail) {
+      mCachedTail = mTail.get();
+      if (head >= mCachedTail)
+        return false;
+    }
+    final int slot = (int) head & mMask;
+    out.kind = mKind[slot];
+    out.pointerId = mPointerId[slot];
+    out.x = mX[slot];
+    out.y = mY[slot];
+    out.dx = mDx[slot];
+    out.dy = mDy[slot];
+    out.timeNanos = mTimeNanos[slot];
+    mHead.lazySet(head + 1);
+    return true;
+  }
+
+  public int getCapacity() {
+    return mMask + 1;
+  }
+
+  /**
+   * @return an estimate of how many records are waiting; exact only when both sides are idle
+   */
+  public int size() {
+    return (int) (mTail.get() - mHead.get());
+  }
+
+  public int getDroppedCount() {
+    return mDropped;
+  }
+
+  /**
+   * A consumer-owned record that {@link #poll} copies into, so reading allocates nothing.
+   */
+  public static class Event {
+    public int kind;
+    public int pointerId;
+    public float x;
+    public float y;
+    public float dx;
+    public float dy;
+    public long timeNanos;
+  }
+}
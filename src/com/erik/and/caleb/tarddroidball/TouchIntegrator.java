@@ -0,0 +1,187 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * Folds every touch record that arrived since the last frame into one
+ * translate delta and one rotate delta, which the renderer applies once per
+ * frame. Nothing delivered between two frames is lost, however many samples
+ * the touch panel produced.
+ * <p/>
+ * Optionally the drag is extrapolated to the time the frame is expected to
+ * reach the screen, from a smoothed pointer velocity. The prediction made for
+ * one frame is taken back out of the next frame's delta, so it never
+ * accumulates into drift. Plain Java, no Android dependencies.
+ */
+public class TouchIntegrator {
+
+  /** Samples older than this at frame time are not extrapolated from; the finger has stopped. */
+  private static final long MAX_SAMPLE_AGE_NANOS = 50000000L;
+  /** Never predict further ahead than this, whatever the frame interval estimate says. */
+  private static final long MAX_PREDICTION_NANOS = 33000000L;
+  private static final float VELOCITY_SMOOTHING = 0.5f;
+
+  private boolean mPredictionEnabled;
+
+  private float mTranslateX;
+  private float mTranslateY;
+  private float mRotateX;
+  private float mRotateY;
+  private boolean mHomeRequested;
+  private boolean mFingerDown;
+
+  private long mLastMoveNanos;
+  private float mVelocityX;
+  private float mVelocityY;
+  private boolean mHasVelocity;
+  private float mPredictedX;
+  private float mPredictedY;
+
+  private int mEventsThisFrame;
+  private long mLatencySumNanos;
+  private long mMaxLatencyNanos;
+  private int mLatencySamples;
+
+  public void setPredictionEnabled(boolean predictionEnabled) {
+    mPredictionEnabled = predictionEnabled;
+  }
+
+  /**
+   * Drains the ring and computes this frame's deltas.
+   *
+   * @param scratch          reusable record the ring copies into
+   * @param frameTimeNanos   when this frame's input is sampled, on the System.nanoTime() clock
+   * @param displayTimeNanos when this frame is expected to be on screen; used for prediction
+   */
+  public void integrate(TouchEventRing ring, TouchEventRing.Event scratch, long frameTimeNanos, long displayTimeNanos) {
+    mTranslateX = 0;
+    mTranslateY = 0;
+    mRotateX = 0;
+    mRotateY = 0;
+    mHomeRequested = false;
+    mEventsThisFrame = 0;
+
+    while (ring.poll(scratch)) {
+      mEventsThisFrame++;
+      final long latency = frameTimeNanos - scratch.timeNanos;
+      mLatencySumNanos += latency;
+      mLatencySamples++;
+      if (latency > mMaxLatencyNanos)
+        mMaxLatencyNanos = latency;
+
+      switch (scratch.kind) {
+        case TouchEventRing.KIND_MOVE:
+          mTranslateX += scratch.dx;
+          mTranslateY += scratch.dy;
+          trackVelocity(scratch.dx, scratch.dy, scratch.timeNanos);
+          mFingerDown = true;
+          break;
+        case TouchEventRing.KIND_ROTATE:
+          mRotateX += scratch.dx;
+          mRotateY += scratch.dy;
+          // a rotation gesture breaks up any drag that was going on
+          mHasVelocity = false;
+          mFingerDown = true;
+          break;
+        case TouchEventRing.KIND_UP:
+          mHasVelocity = false;
+          mFingerDown = false;
+          break;
+        case TouchEventRing.KIND_HOME:
+          // the TARDIS goes home first, so only what came after moves it from there
+          mTranslateX = 0;
+          mTranslateY = 0;
+          mRotateX = 0;
+          mRotateY = 0;
+          mHomeRequested = true;
+          mHasVelocity = false;
+          break;
+      }
+    }
+
+    // Swap last frame's prediction for this frame's, so only real movement accumulates
+    float predictedX = 0;
+    float predictedY = 0;
+    if (mPredictionEnabled && mFingerDown && mHasVelocity && !mHomeRequested
+        && frameTimeNanos - mLastMoveNanos < MAX_SAMPLE_AGE_NANOS) {
+      final long ahead = Math.min(Math.max(displayTimeNanos - mLastMoveNanos, 0), MAX_PREDICTION_NANOS);
+      predictedX = mVelocityX * ahead;
+      predictedY = mVelocityY * ahead;
+    }
+    if (mHomeRequested) {
+      // the TARDIS is reset, so there is no earlier prediction left to take back
+      mPredictedX = 0;
+      mPredictedY = 0;
+    }
+    mTranslateX += predictedX - mPredictedX;
+    mTranslateY += predictedY - mPredictedY;
+    mPredictedX = predictedX;
+    mPredictedY = predictedY;
+  }
+
+  private void trackVelocity(float dx, float dy, long timeNanos) {
+    final long dt = timeNanos - mLastMoveNanos;
+    if (mFingerDown && dt > 0 && dt < MAX_SAMPLE_AGE_NANOS) {
+      final float vx = dx / dt;
+      final float vy = dy / dt;
+      if (mHasVelocity) {
+        mVelocityX += (vx - mVelocityX) * VELOCITY_SMOOTHING;
+        mVelocityY += (vy - mVelocityY) * VELOCITY_SMOOTHING;
+      } else {
+        mVelocityX = vx;
+        mVelocityY = vy;
+        mHasVelocity = true;
+      }
+    } else {
+      mHasVelocity = false;
+    }
+    mLastMoveNanos = timeNanos;
+  }
+
+  public float getTranslateX() {
+    return mTranslateX;
+  }
+
+  public float getTranslateY() {
+    return mTranslateY;
+  }
+
+  public float getRotateX() {
+    return mRotateX;
+  }
+
+  public float getRotateY() {
+    return mRotateY;
+  }
+
+  public boolean isHomeRequested() {
+    return mHomeRequested;
+  }
+
+  public boolean hasMovement() {
+    return mTranslateX != 0 || mTranslateY != 0 || mRotateX != 0 || mRotateY != 0;
+  }
+
+  public int getEventsThisFrame() {
+    return mEventsThisFrame;
+  }
+
+  /**
+   * @return average time from a touch sample to the frame that applied it, since the last reset
+   */
+  public float getAverageLatencyMillis() {
+    return mLatencySamples == 0 ? 0 : mLatencySumNanos / 1e6f / mLatencySamples;
+  }
+
+  public float getMaxLatencyMillis() {
+    return mMaxLatencyNanos / 1e6f;
+  }
+
+  public int getLatencySamples() {
+    return mLatencySamples;
+  }
+
+  public void resetLatencyStats() {
+    mLatencySumNanos = 0;
+    mMaxLatencyNanos = 0;
+    mLatencySamples = 0;
+  }
+}
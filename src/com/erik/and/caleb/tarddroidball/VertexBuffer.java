@@ -0,0 +1,141 @@
+package com.erik.and.caleb.tarddroidball;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * An interleaved mesh uploaded once into a GL buffer object, optionally with a
+ * 16 bit index buffer. Drawing only binds the buffers by handle, so no vertex
+ * data crosses the bus per frame. Meshes built in code are packed into a
+ * {@link VertexLayout} on upload; a {@link MeshContainer} keeps its own.
+ */
+public class VertexBuffer {
+
+  private static final int BYTES_PER_SHORT = 2;
+
+  private final Gl mGl;
+  private final int mVertexCount;
+  private final int mIndexCount;
+  private final VertexLayout mLayout;
+  private int mBufferHandle;
+  private int mIndexBufferHandle;
+
+  /**
+   * Packs and uploads an unindexed mesh. Must be called on the GL thread with a current context.
+   */
+  public VertexBuffer(Gl gl, InterleavedMesh mesh, VertexLayout layout) {
+    mGl = gl;
+    mVertexCount = mesh.getVertexCount();
+    mIndexCount = 0;
+    mLayout = layout;
+    mBufferHandle = upload(gl, GLES20.GL_ARRAY_BUFFER, layout.pack(mesh));
+  }
+
+  /**
+   * Packs and uploads an indexed mesh. Must be called on the GL thread with a current context.
+   */
+  public VertexBuffer(Gl gl, IndexedMesh mesh, VertexLayout layout) {
+    mGl = gl;
+    mVertexCount = mesh.getVertexCount();
+    mIndexCount = mesh.getIndexCount();
+    mLayout = layout;
+    mBufferHandle = upload(gl, GLES20.GL_ARRAY_BUFFER, layout.pack(mesh.getVertices()));
+    mIndexBufferHandle = uploadIndices(gl, mesh.getIndices());
+  }
+
+  /**
+   * Uploads a converted mesh straight from its buffer, without unpacking it.
+   * Quantized attributes reach the shader normalized; applying their scale
+   * and bias is up to the caller. Must be called on the GL thread with a
+   * current context.
+   */
+  public VertexBuffer(Gl gl, MeshContainer mesh) {
+    mGl = gl;
+    mVertexCount = mesh.getVertexCount();
+    mIndexCount = mesh.getIndexCount();
+    mLayout = mesh.getLayout();
+    mBufferHandle = upload(gl, GLES20.GL_ARRAY_BUFFER, mesh.getVertexData());
+    mIndexBufferHandle = upload(gl, GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexData());
+  }
+
+  private static int generateBuffer(Gl gl) {
+    final int[] buffers = new int[1];
+    gl.glGenBuffers(1, buffers, 0);
+    if (buffers[0] == 0)
+      throw new RuntimeException("Error creating vertex buffer.");
+    return buffers[0];
+  }
+
+  private static int upload(Gl gl, int target, ByteBuffer data) {
+    final int handle = generateBuffer(gl);
+    gl.glBindBuffer(target, handle);
+    gl.glBufferData(target, data.remaining(), data, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(target, 0);
+    return handle;
+  }
+
+  private static int uploadIndices(Gl gl, short[] indices) {
+    final int handle = generateBuffer(gl);
+    final ShortBuffer clientData = ByteBuffer.allocateDirect(indices.length * BYTES_PER_SHORT)
+        .order(ByteOrder.nativeOrder()).asShortBuffer();
+    clientData.put(indices).position(0);
+
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, handle);
+    gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * BYTES_PER_SHORT, clientData, GLES20.GL_STATIC_DRAW);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    return handle;
+  }
+
+  /**
+   * Binds the buffers and points each attribute at its slot in the interleaved data.
+   *
+   * @param locations from {@link ShaderProgram#getAttributeLocations} for this buffer's layout
+   */
+  public void bind(GlStateTracker state, int[] locations) {
+    state.bindArrayBuffer(mBufferHandle);
+    if (mIndexBufferHandle != 0)
+      state.bindElementArrayBuffer(mIndexBufferHandle);
+    mLayout.bind(state, locations);
+  }
+
+  /**
+   * Draws the whole mesh as triangles; {@link #bind} must have been called first.
+   */
+  public void draw(GlStateTracker state) {
+    if (mIndexBufferHandle != 0)
+      state.drawElements(GLES20.GL_TRIANGLES, mIndexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+    else
+      state.drawArrays(GLES20.GL_TRIANGLES, 0, mVertexCount);
+  }
+
+  public int getVertexCount() {
+    return mVertexCount;
+  }
+
+  public int getIndexCount() {
+    return mIndexCount;
+  }
+
+  public VertexLayout getLayout() {
+    return mLayout;
+  }
+
+  public int getHandle() {
+    return mBufferHandle;
+  }
+
+  public void release() {
+    if (mBufferHandle != 0) {
+      mGl.glDeleteBuffers(1, new int[]{mBufferHandle}, 0);
+      mBufferHandle = 0;
+    }
+    if (mIndexBufferHandle != 0) {
+      mGl.glDeleteBuffers(1, new int[]{mIndexBufferHandle}, 0);
+      mIndexBufferHandle = 0;
+    }
+  }
+}
@@ -0,0 +1,321 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * How a vertex is laid out in a buffer: for each shader attribute its
+ * component count, GL type, whether GL normalizes it and its byte offset;
+ * plus constant attributes, which read the same value for every vertex from
+ * glVertexAttrib4f instead of taking up room in the buffer. Binding walks
+ * the table, and {@link #pack} converts float meshes to it.
+ * <p/>
+ * Attributes added without an offset start at the next multiple of 4 bytes,
+ * which GLES2 drivers want. Packed types store the value as GLES2 reads it:
+ * normalized unsigned types as c / (2^b - 1), normalized signed ones as
+ * (2c + 1) / (2^b - 1), so a normalized byte cannot hold exactly 0.
+ */
+public class VertexLayout {
+
+  public static final int TYPE_BYTE = 0x1400;
+  public static final int TYPE_UNSIGNED_BYTE = 0x1401;
+  public static final int TYPE_SHORT = 0x1402;
+  public static final int TYPE_UNSIGNED_SHORT = 0x1403;
+  public static final int TYPE_FLOAT = 0x1406;
+
+  private final String[] mNames;
+  // per attribute: components, type, normalized (0 or 1), offset
+  private final int[] mAttributes;
+  private final int mStride;
+  private final String[] mConstantNames;
+  private final float[] mConstants;
+
+  private VertexLayout(Builder builder) {
+    mNames = builder.mNames.toArray(new String[builder.mNames.size()]);
+    mAttributes = new int[mNames.length * 4];
+    int end = 0;
+    for (int a = 0; a < mNames.length; a++) {
+      System.arraycopy(builder.mAttributes.get(a), 0, mAttributes, a * 4, 4);
+      end = Math.max(end, getOffset(a) + getComponents(a) * bytesPerComponent(getType(a)));
+    }
+    mStride = builder.mStride > 0 ? builder.mStride : (end + 3) / 4 * 4;
+    if (end > mStride)
+      throw new IllegalArgumentException("Attributes take " + end + " bytes of a " + mStride + " byte vertex");
+    mConstantNames = builder.mConstantNames.toArray(new String[builder.mConstantNames.size()]);
+    mConstants = new float[mConstantNames.length * 4];
+    for (int c = 0; c < mConstantNames.length; c++)
+      System.arraycopy(builder.mConstants.get(c), 0, mConstants, c * 4, 4);
+  }
+
+  public static int bytesPerComponent(int type) {
+    switch (type) {
+      case TYPE_BYTE:
+      case TYPE_UNSIGNED_BYTE:
+        return 1;
+      case TYPE_SHORT:
+      case TYPE_UNSIGNED_SHORT:
+        return 2;
+      case TYPE_FLOAT:
+        return 4;
+      default:
+        throw new IllegalArgumentException("Unknown attribute type 0x" + Integer.toHexString(type));
+    }
+  }
+
+  public int getStride() {
+    return mStride;
+  }
+
+  /**
+   * @return attributes read from the buffer
+   */
+  public int getAttributeCount() {
+    return mNames.length;
+  }
+
+  public String getName(int attribute) {
+    return mNames[attribute];
+  }
+
+  public int getComponents(int attribute) {
+    return mAttributes[attribute * 4];
+  }
+
+  public int getType(int attribute) {
+    return mAttributes[attribute * 4 + 1];
+  }
+
+  public boolean isNormalized(int attribute) {
+    return mAttributes[attribute * 4 + 2] != 0;
+  }
+
+  public int getOffset(int attribute) {
+    return mAttributes[attribute * 4 + 3];
+  }
+
+  public int getConstantCount() {
+    return mConstantNames.length;
+  }
+
+  public String getConstantName(int constant) {
+    return mConstantNames[constant];
+  }
+
+  public float getConstant(int constant, int component) {
+    return mConstants[constant * 4 + component];
+  }
+
+  /**
+   * @return every name in the order {@link #bind} takes locations: the buffer's attributes, then the constants
+   */
+  public String[] getAllNames() {
+    final String[] names = new String[mNames.length + mConstantNames.length];
+    System.arraycopy(mNames, 0, names, 0, mNames.length);
+    System.arraycopy(mConstantNames, 0, names, mNames.length, mConstantNames.length);
+    return names;
+  }
+
+  /**
+   * @return the same attributes and constants, with every attribute a float
+   */
+  public VertexLayout asFloats() {
+    final Builder builder = new Builder();
+    for (int a = 0; a < mNames.length; a++)
+      builder.add(mNames[a], getComponents(a), TYPE_FLOAT, false);
+    copyConstants(builder);
+    return builder.build();
+  }
+
+  /**
+   * @return a builder holding this layout, to add to
+   */
+  public Builder toBuilder() {
+    final Builder builder = new Builder();
+    for (int a = 0; a < mNames.length; a++)
+      builder.add(mNames[a], getComponents(a), getType(a), isNormalized(a), getOffset(a));
+    copyConstants(builder);
+    return builder;
+  }
+
+  private void copyConstants(Builder builder) {
+    for (int c = 0; c < mConstantNames.length; c++)
+      builder.constant(mConstantNames[c], mConstants[c * 4], mConstants[c * 4 + 1], mConstants[c * 4 + 2], mConstants[c * 4 + 3]);
+  }
+
+  /**
+   * Points every attribute at the bound array buffer and sets the constants.
+   * Locations of -1, attributes the program does not use, are skipped.
+   *
+   * @param locations from {@link ShaderProgram#getAttributeLocations}, in {@link #getAllNames} order
+   */
+  public void bind(GlStateTracker state, int[] locations) {
+    bind(state, locations, 0);
+  }
+
+  /**
+   * @param baseOffset where the first vertex starts in the buffer, in bytes
+   */
+  public void bind(GlStateTracker state, int[] locations, int baseOffset) {
+    for (int a = 0; a < mNames.length; a++) {
+      final int location = locations[a];
+      if (location < 0)
+        continue;
+      state.vertexAttribPointer(location, getComponents(a), getType(a), isNormalized(a), mStride, baseOffset + getOffset(a));
+      state.enableVertexAttribArray(location);
+    }
+    for (int c = 0; c < mConstantNames.length; c++) {
+      final int location = locations[mNames.length + c];
+      if (location < 0)
+        continue;
+      // a disabled array reads the current value instead
+      state.disableVertexAttribArray(location);
+      state.vertexAttrib4f(location, mConstants[c * 4], mConstants[c * 4 + 1], mConstants[c * 4 + 2], mConstants[c * 4 + 3]);
+    }
+  }
+
+  /**
+   * Converts a float mesh whose attributes match this layout's, in order
+   * and in size, into a direct buffer in native order, ready for glBufferData.
+   */
+  public ByteBuffer pack(InterleavedMesh mesh) {
+    if (mesh.getAttributeCount() != mNames.length)
+      throw new IllegalArgumentException("Mesh has " + mesh.getAttributeCount() + " attributes, layout " + mNames.length);
+    for (int a = 0; a < mNames.length; a++) {
+      if (mesh.getAttributeSize(a) != getComponents(a))
+        throw new IllegalArgumentException(mNames[a] + " has " + mesh.getAttributeSize(a) + " components, layout " + getComponents(a));
+    }
+    final float[] data = mesh.getData();
+    final int floats = mesh.getFloatsPerVertex();
+    final ByteBuffer out = ByteBuffer.allocateDirect(mesh.getVertexCount() * mStride).order(ByteOrder.nativeOrder());
+    for (int v = 0; v < mesh.getVertexCount(); v++) {
+      for (int a = 0; a < mNames.length; a++) {
+        final int type = getType(a);
+        final int at = v * mStride + getOffset(a);
+        final int in = v * floats + mesh.getOffset(a);
+        for (int c = 0; c < getComponents(a); c++)
+          put(out, at + c * bytesPerComponent(type), type, isNormalized(a), data[in + c]);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Stores value at an absolute position as one component of the given type, rounded and clamped to its range.
+   */
+  public static void put(ByteBuffer out, int at, int type, boolean normalized, float value) {
+    switch (type) {
+      case TYPE_BYTE:
+        out.put(at, (byte) clamp(normalized ? (value * 255.0f - 1.0f) * 0.5f : value, -128, 127));
+        break;
+      case TYPE_UNSIGNED_BYTE:
+        out.put(at, (byte) clamp(normalized ? value * 255.0f : value, 0, 255));
+        break;
+      case TYPE_SHORT:
+        out.putShort(at, (short) clamp(normalized ? (value * 65535.0f - 1.0f) * 0.5f : value, -32768, 32767));
+        break;
+      case TYPE_UNSIGNED_SHORT:
+        out.putShort(at, (short) clamp(normalized ? value * 65535.0f : value, 0, 65535));
+        break;
+      default:
+        out.putFloat(at, value);
+    }
+  }
+
+  /**
+   * @return the component at an absolute position as GL reads it
+   */
+  public static float get(ByteBuffer in, int at, int type, boolean normalized) {
+    switch (type) {
+      case TYPE_BYTE:
+        return normalized ? (2 * in.get(at) + 1) / 255.0f : in.get(at);
+      case TYPE_UNSIGNED_BYTE:
+        return normalized ? (in.get(at) & 0xff) / 255.0f : in.get(at) & 0xff;
+      case TYPE_SHORT:
+        return normalized ? (2 * in.getShort(at) + 1) / 65535.0f : in.getShort(at);
+      case TYPE_UNSIGNED_SHORT:
+        return normalized ? (in.getShort(at) & 0xffff) / 65535.0f : in.getShort(at) & 0xffff;
+      default:
+        return in.getFloat(at);
+    }
+  }
+
+  private static int clamp(float value, int min, int max) {
+    return Math.max(min, Math.min(max, Math.round(value)));
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder out = new StringBuilder().append(mStride).append(" bytes:");
+    for (int a = 0; a < mNames.length; a++) {
+      out.append(' ').append(mNames[a]).append('@').append(getOffset(a)).append(' ').append(getComponents(a)).append('x')
+          .append(typeName(getType(a)));
+      if (isNormalized(a))
+        out.append(" normalized");
+    }
+    for (int c = 0; c < mConstantNames.length; c++)
+      out.append(' ').append(mConstantNames[c]).append(" constant");
+    return out.toString();
+  }
+
+  private static String typeName(int type) {
+    switch (type) {
+      case TYPE_BYTE:
+        return "byte";
+      case TYPE_UNSIGNED_BYTE:
+        return "ubyte";
+      case TYPE_SHORT:
+        return "short";
+      case TYPE_UNSIGNED_SHORT:
+        return "ushort";
+      default:
+        return "float";
+    }
+  }
+
+  public static class Builder {
+    private final ArrayList<String> mNames = new ArrayList<String>();
+    private final ArrayList<int[]> mAttributes = new ArrayList<int[]>();
+    private final ArrayList<String> mConstantNames = new ArrayList<String>();
+    private final ArrayList<float[]> mConstants = new ArrayList<float[]>();
+    private int mEnd;
+    private int mStride;
+
+    /**
+     * Adds an attribute after the last one, at the next multiple of 4 bytes.
+     */
+    public Builder add(String name, int components, int type, boolean normalized) {
+      return add(name, components, type, normalized, (mEnd + 3) / 4 * 4);
+    }
+
+    public Builder add(String name, int components, int type, boolean normalized, int offset) {
+      if (components < 1 || components > 4)
+        throw new IllegalArgumentException(name + " has " + components + " components");
+      mNames.add(name);
+      mAttributes.add(new int[]{components, type, normalized ? 1 : 0, offset});
+      mEnd = Math.max(mEnd, offset + components * bytesPerComponent(type));
+      return this;
+    }
+
+    /**
+     * Adds an attribute every vertex reads as (x, y, z, w).
+     */
+    public Builder constant(String name, float x, float y, float z, float w) {
+      mConstantNames.add(name);
+      mConstants.add(new float[]{x, y, z, w});
+      return this;
+    }
+
+    /**
+     * @param stride bytes per vertex, when it must differ from the attributes' end rounded up to 4
+     */
+    public Builder setStride(int stride) {
+      mStride = stride;
+      return this;
+    }
+
+    public VertexLayout build() {
+      return new VertexLayout(this);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.erik.and.caleb.tarddroidball;
+
+/**
+ * A column of {@link #WIDTH} x {@link #HEIGHT} x {@link #DEPTH} blocks, one
+ * byte each, stored x fastest, then z, then y, so a horizontal layer is one
+ * contiguous run. Block 0 is air. Plain Java, no GL; a chunk may be filled on
+ * one thread and read on others once it is handed over.
+ */
+public class VoxelChunk {
+
+  public static final int WIDTH = 16;
+  public static final int DEPTH = 16;
+  public static final int HEIGHT = 128;
+  public static final int VOLUME = WIDTH * DEPTH * HEIGHT;
+
+  public static final byte AIR = 0;
+  public static final byte GRASS = 1;
+  public static final byte DIRT = 2;
+  public static final byte STONE = 3;
+  public static final byte SAND = 4;
+  public static final int BLOCK_TYPES = 5;
+
+  private final int mChunkX;
+  private final int mChunkZ;
+  private final byte[] mBlocks = new byte[VOLUME];
+
+  /**
+   * @param chunkX position in chunks; the chunk covers blocks chunkX * WIDTH up to the next chunk
+   */
+  public VoxelChunk(int chunkX, int chunkZ) {
+    mChunkX = chunkX;
+    mChunkZ = chunkZ;
+  }
+
+  public static int index(int x, int y, int z) {
+    return (y * DEPTH + z) * WIDTH + x;
+  }
+
+  public int getChunkX() {
+    return mChunkX;
+  }
+
+  public int getChunkZ() {
+    return mChunkZ;
+  }
+
+  /**
+   * @return the block at chunk-local coordinates, which must be inside the chunk
+   */
+  public byte get(int x, int y, int z) {
+    return mBlocks[index(x, y, z)];
+  }
+
+  public void set(int x, int y, int z, byte block) {
+    mBlocks[index(x, y, z)] = block;
+  }
+
+  /**
+   * Sets blocks [fromY, toY) of one column.
+   */
+  public void fillColumn(int x, int z, int fromY, int toY, byte block) {
+    for (int y = fromY; y < toY; y++)
+      mBlocks[index(x, y, z)] = block;
+  }
+
+  /**
+   * @return the blocks, for code that walks them in {@link #index} order
+   */
+  public byte[] getBlocks() {
+    return mBlocks;
+  }
+
+  /**
+   * @return the number of blocks that are not air
+   */
+  public int countSolid() {
+    int solid = 0;
+    for (byte block : mBlocks) {
+      if (block != AIR)
+        solid++;
+    }
+    return solid;
+  }
+
+  @Override
+  public String toString() {
+    return "chunk " + mChunkX + "," + mChunkZ;
+  }
+}
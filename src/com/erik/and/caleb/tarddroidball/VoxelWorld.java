@@ -0,0 +1,121 @@
+package com.erik.and.caleb.tarddroidball;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed rectangle of {@link VoxelChunk}s, addressed by chunk or by block.
+ * Blocks outside the rectangle read as air, and so do blocks of chunks that
+ * are not resident, when a {@link ChunkStreamer} holds only some of them.
+ * Chunks may be swapped in and out on one thread while others read. Plain
+ * Java, no GL.
+ */
+public class VoxelWorld {
+
+  private final int mChunksX;
+  private final int mChunksZ;
+  private final AtomicReferenceArray<VoxelChunk> mChunks;
+
+  /**
+   * A world with every chunk resident, all air.
+   */
+  public VoxelWorld(int chunksX, int chunksZ) {
+    this(chunksX, chunksZ, true);
+  }
+
+  /**
+   * @param resident false to start with no chunks, for {@link #setChunk} to fill in
+   */
+  public VoxelWorld(int chunksX, int chunksZ, boolean resident) {
+    mChunksX = chunksX;
+    mChunksZ = chunksZ;
+    mChunks = new AtomicReferenceArray<VoxelChunk>(chunksX * chunksZ);
+    if (!resident)
+      return;
+    for (int cz = 0; cz < chunksZ; cz++) {
+      for (int cx = 0; cx < chunksX; cx++)
+        mChunks.set(cz * chunksX + cx, new VoxelChunk(cx, cz));
+    }
+  }
+
+  public int getChunksX() {
+    return mChunksX;
+  }
+
+  public int getChunksZ() {
+    return mChunksZ;
+  }
+
+  public int getChunkCount() {
+    return mChunks.length();
+  }
+
+  public boolean contains(int chunkX, int chunkZ) {
+    return chunkX >= 0 && chunkX < mChunksX && chunkZ >= 0 && chunkZ < mChunksZ;
+  }
+
+  /**
+   * @return the chunk's index in row order, x fastest
+   */
+  public int getIndex(int chunkX, int chunkZ) {
+    return chunkZ * mChunksX + chunkX;
+  }
+
+  /**
+   * @return the chunk, or null outside the world or when it is not resident
+   */
+  public VoxelChunk getChunk(int chunkX, int chunkZ) {
+    if (!contains(chunkX, chunkZ))
+      return null;
+    return mChunks.get(chunkZ * mChunksX + chunkX);
+  }
+
+  /**
+   * @param index in row order, x fastest
+   */
+  public VoxelChunk getChunk(int index) {
+    return mChunks.get(index);
+  }
+
+  /**
+   * Makes a chunk resident, replacing whatever was at its position.
+   */
+  public void setChunk(VoxelChunk chunk) {
+    mChunks.set(getIndex(chunk.getChunkX(), chunk.getChunkZ()), chunk);
+  }
+
+  public void removeChunk(int chunkX, int chunkZ) {
+    mChunks.set(getIndex(chunkX, chunkZ), null);
+  }
+
+  public int getWidthInBlocks() {
+    return mChunksX * VoxelChunk.WIDTH;
+  }
+
+  public int getDepthInBlocks() {
+    return mChunksZ * VoxelChunk.DEPTH;
+  }
+
+  public byte getBlock(int x, int y, int z) {
+    if (x < 0 || z < 0 || y < 0 || y >= VoxelChunk.HEIGHT)
+      return VoxelChunk.AIR;
+    final VoxelChunk chunk = getChunk(x / VoxelChunk.WIDTH, z / VoxelChunk.DEPTH);
+    return chunk == null ? VoxelChunk.AIR : chunk.get(x % VoxelChunk.WIDTH, y, z % VoxelChunk.DEPTH);
+  }
+
+  /**
+   * Fills every column with block up to its height, leaving air above. Every
+   * chunk must be resident.
+   *
+   * @param heights one height per block column, x fastest, {@link #getWidthInBlocks} per row
+   */
+  public void fillHeightmap(int[] heights, byte block) {
+    final int width = getWidthInBlocks();
+    for (int z = 0; z < getDepthInBlocks(); z++) {
+      for (int x = 0; x < width; x++) {
+        final VoxelChunk chunk = getChunk(x / VoxelChunk.WIDTH, z / VoxelChunk.DEPTH);
+        final int height = Math.max(0, Math.min(VoxelChunk.HEIGHT, heights[z * width + x]));
+        chunk.fillColumn(x % VoxelChunk.WIDTH, z % VoxelChunk.DEPTH, 0, height, block);
+      }
+    }
+  }
+}
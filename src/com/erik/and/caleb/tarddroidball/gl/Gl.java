@@ -0,0 +1,125 @@
+package com.erik.and.caleb.tarddroidball.gl;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES 2.0 calls the app makes, so rendering code can run against
+ * something other than the static GLES20 class. Methods mirror GLES20 one to
+ * one, plus GLUtils.texImage2D for bitmaps; constants still come from GLES20.
+ *
+ * @see AndroidGl
+ * @see RecordingGl
+ */
+public interface Gl {
+
+  void glActiveTexture(int texture);
+
+  void glAttachShader(int program, int shader);
+
+  void glBindAttribLocation(int program, int index, String name);
+
+  void glBindBuffer(int target, int buffer);
+
+  void glBindTexture(int target, int texture);
+
+  void glBlendFunc(int sfactor, int dfactor);
+
+  void glBufferData(int target, int size, Buffer data, int usage);
+
+  void glBufferSubData(int target, int offset, int size, Buffer data);
+
+  void glClear(int mask);
+
+  void glClearColor(float red, float green, float blue, float alpha);
+
+  void glCompileShader(int shader);
+
+  void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize,
+                              Buffer data);
+
+  int glCreateProgram();
+
+  int glCreateShader(int type);
+
+  void glDeleteBuffers(int n, int[] buffers, int offset);
+
+  void glDeleteProgram(int program);
+
+  void glDeleteShader(int shader);
+
+  void glDisable(int cap);
+
+  void glDisableVertexAttribArray(int index);
+
+  void glDrawArrays(int mode, int first, int count);
+
+  void glDrawElements(int mode, int count, int type, int offset);
+
+  void glEnable(int cap);
+
+  void glEnableVertexAttribArray(int index);
+
+  void glGenBuffers(int n, int[] buffers, int offset);
+
+  void glGenTextures(int n, int[] textures, int offset);
+
+  void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset,
+                         int[] type, int typeOffset, byte[] name, int nameOffset);
+
+  void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset,
+                          int[] type, int typeOffset, byte[] name, int nameOffset);
+
+  int glGetAttribLocation(int program, String name);
+
+  void glGetIntegerv(int pname, int[] params, int offset);
+
+  String glGetProgramInfoLog(int program);
+
+  void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+  String glGetShaderInfoLog(int shader);
+
+  void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+  String glGetString(int name);
+
+  int glGetUniformLocation(int program, String name);
+
+  void glLinkProgram(int program);
+
+  void glShaderSource(int shader, String string);
+
+  void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type,
+                    Buffer pixels);
+
+  /**
+   * Like GLUtils.texImage2D: uploads the bitmap to the bound texture in a matching format.
+   */
+  void texImage2D(int target, int level, Bitmap bitmap, int border);
+
+  void glTexParameteri(int target, int pname, int param);
+
+  void glUniform1f(int location, float x);
+
+  void glUniform1i(int location, int x);
+
+  void glUniform2f(int location, float x, float y);
+
+  void glUniform3f(int location, float x, float y, float z);
+
+  void glUniform4f(int location, float x, float y, float z, float w);
+
+  void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+  void glUseProgram(int program);
+
+  void glVertexAttrib3f(int index, float x, float y, float z);
+
+  void glVertexAttrib4f(int index, float x, float y, float z, float w);
+
+  void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+  void glViewport(int x, int y, int width, int height);
+}
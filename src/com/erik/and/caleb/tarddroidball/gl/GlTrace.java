@@ -0,0 +1,180 @@
+package com.erik.and.caleb.tarddroidball.gl;
+
+/**
+ * The binary GL command trace written by {@link RecordingGl}.
+ * <p/>
+ * A trace starts with {@link #MAGIC} and {@link #VERSION} as little-endian
+ * ints, followed by records. Each record is an opcode byte and the arguments
+ * listed in its signature, one character per argument:
+ * <ul>
+ * <li>{@code i} an int, zigzag varint encoded</li>
+ * <li>{@code f} a float, 4 bytes little-endian</li>
+ * <li>{@code z} a boolean, one byte</li>
+ * <li>{@code s} a string, varint byte length then UTF-8</li>
+ * <li>{@code b} a blob id, varint; 0 means no data</li>
+ * <li>{@code I} an int array, varint length then that many varints</li>
+ * </ul>
+ * Buffer, texture, shader source and matrix data is stored once per distinct
+ * content in a {@link #BLOB} record (varint id, varint length, raw bytes)
+ * that precedes its first use, so uploading the same bytes again costs a
+ * couple of bytes in the trace. Values a call returns (generated names,
+ * locations, queried parameters) are recorded as trailing arguments.
+ * {@link #FRAME} starts each frame; everything before the first is setup.
+ * <p/>
+ * Opcodes are only ever appended, so a reader understands every older version.
+ */
+public final class GlTrace {
+
+  public static final int MAGIC = 0x52544c47; // "GLTR"
+  public static final int VERSION = 3;
+
+  public static final int FRAME = 0;
+  public static final int BLOB = 1;
+  public static final int ACTIVE_TEXTURE = 2;
+  public static final int ATTACH_SHADER = 3;
+  public static final int BIND_ATTRIB_LOCATION = 4;
+  public static final int BIND_BUFFER = 5;
+  public static final int BIND_TEXTURE = 6;
+  public static final int BLEND_FUNC = 7;
+  public static final int BUFFER_DATA = 8;
+  public static final int BUFFER_SUB_DATA = 9;
+  public static final int CLEAR = 10;
+  public static final int CLEAR_COLOR = 11;
+  public static final int COMPILE_SHADER = 12;
+  public static final int CREATE_PROGRAM = 13;
+  public static final int CREATE_SHADER = 14;
+  public static final int DELETE_BUFFERS = 15;
+  public static final int DELETE_PROGRAM = 16;
+  public static final int DELETE_SHADER = 17;
+  public static final int DISABLE = 18;
+  public static final int DISABLE_VERTEX_ATTRIB_ARRAY = 19;
+  public static final int DRAW_ARRAYS = 20;
+  public static final int DRAW_ELEMENTS = 21;
+  public static final int ENABLE = 22;
+  public static final int ENABLE_VERTEX_ATTRIB_ARRAY = 23;
+  public static final int GEN_BUFFERS = 24;
+  public static final int GEN_TEXTURES = 25;
+  public static final int GET_ACTIVE_ATTRIB = 26;
+  public static final int GET_ACTIVE_UNIFORM = 27;
+  public static final int GET_ATTRIB_LOCATION = 28;
+  public static final int GET_INTEGERV = 29;
+  public static final int GET_PROGRAM_INFO_LOG = 30;
+  public static final int GET_PROGRAMIV = 31;
+  public static final int GET_SHADER_INFO_LOG = 32;
+  public static final int GET_SHADERIV = 33;
+  public static final int GET_UNIFORM_LOCATION = 34;
+  public static final int LINK_PROGRAM = 35;
+  public static final int SHADER_SOURCE = 36;
+  public static final int TEX_IMAGE_2D = 37;
+  public static final int TEX_PARAMETERI = 38;
+  public static final int UNIFORM1F = 39;
+  public static final int UNIFORM1I = 40;
+  public static final int UNIFORM2F = 41;
+  public static final int UNIFORM3F = 42;
+  public static final int UNIFORM4F = 43;
+  public static final int UNIFORM_MATRIX4FV = 44;
+  public static final int USE_PROGRAM = 45;
+  public static final int VERTEX_ATTRIB3F = 46;
+  public static final int VERTEX_ATTRIB_POINTER = 47;
+  public static final int VIEWPORT = 48;
+  // added in version 2
+  public static final int COMPRESSED_TEX_IMAGE_2D = 49;
+  public static final int GET_STRING = 50;
+  public static final int TEX_IMAGE_2D_BUFFER = 51;
+  // added in version 3
+  public static final int VERTEX_ATTRIB4F = 52;
+  public static final int OPCODE_COUNT = 53;
+
+  private static final String[] NAMES = new String[OPCODE_COUNT];
+  private static final String[] SIGNATURES = new String[OPCODE_COUNT];
+
+  static {
+    define(FRAME, "frame", "");
+    define(BLOB, "blob", "");
+    define(ACTIVE_TEXTURE, "glActiveTexture", "i");
+    define(ATTACH_SHADER, "glAttachShader", "ii");
+    define(BIND_ATTRIB_LOCATION, "glBindAttribLocation", "iis");
+    define(BIND_BUFFER, "glBindBuffer", "ii");
+    define(BIND_TEXTURE, "glBindTexture", "ii");
+    define(BLEND_FUNC, "glBlendFunc", "ii");
+    // target, size, data, usage
+    define(BUFFER_DATA, "glBufferData", "iibi");
+    // target, offset, size, data
+    define(BUFFER_SUB_DATA, "glBufferSubData", "iiib");
+    define(CLEAR, "glClear", "i");
+    define(CLEAR_COLOR, "glClearColor", "ffff");
+    define(COMPILE_SHADER, "glCompileShader", "i");
+    // returned program
+    define(CREATE_PROGRAM, "glCreateProgram", "i");
+    // type, returned shader
+    define(CREATE_SHADER, "glCreateShader", "ii");
+    define(DELETE_BUFFERS, "glDeleteBuffers", "I");
+    define(DELETE_PROGRAM, "glDeleteProgram", "i");
+    define(DELETE_SHADER, "glDeleteShader", "i");
+    define(DISABLE, "glDisable", "i");
+    define(DISABLE_VERTEX_ATTRIB_ARRAY, "glDisableVertexAttribArray", "i");
+    define(DRAW_ARRAYS, "glDrawArrays", "iii");
+    define(DRAW_ELEMENTS, "glDrawElements", "iiii");
+    define(ENABLE, "glEnable", "i");
+    define(ENABLE_VERTEX_ATTRIB_ARRAY, "glEnableVertexAttribArray", "i");
+    // returned names
+    define(GEN_BUFFERS, "glGenBuffers", "I");
+    define(GEN_TEXTURES, "glGenTextures", "I");
+    // program, index, returned size, type and name
+    define(GET_ACTIVE_ATTRIB, "glGetActiveAttrib", "iiiis");
+    define(GET_ACTIVE_UNIFORM, "glGetActiveUniform", "iiiis");
+    // program, name, returned location
+    define(GET_ATTRIB_LOCATION, "glGetAttribLocation", "isi");
+    // pname, first returned value
+    define(GET_INTEGERV, "glGetIntegerv", "ii");
+    define(GET_PROGRAM_INFO_LOG, "glGetProgramInfoLog", "i");
+    // object, pname, returned value
+    define(GET_PROGRAMIV, "glGetProgramiv", "iii");
+    define(GET_SHADER_INFO_LOG, "glGetShaderInfoLog", "i");
+    define(GET_SHADERIV, "glGetShaderiv", "iii");
+    define(GET_UNIFORM_LOCATION, "glGetUniformLocation", "isi");
+    define(LINK_PROGRAM, "glLinkProgram", "i");
+    define(SHADER_SOURCE, "glShaderSource", "ib");
+    // target, level, width, height, pixels
+    define(TEX_IMAGE_2D, "texImage2D", "iiiib");
+    define(TEX_PARAMETERI, "glTexParameteri", "iii");
+    define(UNIFORM1F, "glUniform1f", "if");
+    define(UNIFORM1I, "glUniform1i", "ii");
+    define(UNIFORM2F, "glUniform2f", "iff");
+    define(UNIFORM3F, "glUniform3f", "ifff");
+    define(UNIFORM4F, "glUniform4f", "iffff");
+    // location, count, transpose, matrices
+    define(UNIFORM_MATRIX4FV, "glUniformMatrix4fv", "iizb");
+    define(USE_PROGRAM, "glUseProgram", "i");
+    define(VERTEX_ATTRIB3F, "glVertexAttrib3f", "ifff");
+    // index, size, type, normalized, stride, offset
+    define(VERTEX_ATTRIB_POINTER, "glVertexAttribPointer", "iiizii");
+    define(VIEWPORT, "glViewport", "iiii");
+    // target, level, internal format, width, height, border, data
+    define(COMPRESSED_TEX_IMAGE_2D, "glCompressedTexImage2D", "iiiiiib");
+    // name, returned string
+    define(GET_STRING, "glGetString", "is");
+    // target, level, internal format, width, height, border, format, type, pixels
+    define(TEX_IMAGE_2D_BUFFER, "glTexImage2D", "iiiiiiiib");
+    define(VERTEX_ATTRIB4F, "glVertexAttrib4f", "iffff");
+  }
+
+  private GlTrace() {
+  }
+
+  private static void define(int opcode, String name, String signature) {
+    NAMES[opcode] = name;
+    SIGNATURES[opcode] = signature;
+  }
+
+  public static String getName(int opcode) {
+    return NAMES[opcode];
+  }
+
+  /**
+   * @return the argument types of opcode, in the notation described above
+   */
+  public static String getSignature(int opcode) {
+    return SIGNATURES[opcode];
+  }
+}
@@ -0,0 +1,125 @@
+package com.erik.and.caleb.tarddroidball.gl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Encodes records in the {@link GlTrace} format. The caller writes the opcode
+ * and then exactly the arguments its signature lists; blobs are deduplicated
+ * here. Not thread-safe.
+ */
+public class GlTraceWriter {
+
+  private final OutputStream mOut;
+  private final byte[] mScratch = new byte[10];
+  // content hash and length to blob id; a 64 bit hash makes a false match vanishingly unlikely
+  private final HashMap<Long, Integer> mBlobIds = new HashMap<Long, Integer>();
+  private int mNextBlobId = 1;
+  private long mBlobBytes;
+  private long mDuplicateBlobBytes;
+
+  /**
+   * @param out should be buffered; it is written a few bytes at a time
+   */
+  public GlTraceWriter(OutputStream out) throws IOException {
+    mOut = out;
+    writeIntLittleEndian(GlTrace.MAGIC);
+    writeIntLittleEndian(GlTrace.VERSION);
+  }
+
+  public void writeOpcode(int opcode) throws IOException {
+    mOut.write(opcode);
+  }
+
+  public void writeInt(int value) throws IOException {
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  public void writeFloat(float value) throws IOException {
+    writeIntLittleEndian(Float.floatToRawIntBits(value));
+  }
+
+  public void writeBoolean(boolean value) throws IOException {
+    mOut.write(value ? 1 : 0);
+  }
+
+  public void writeString(String value) throws IOException {
+    final byte[] bytes = value.getBytes("UTF-8");
+    writeVarint(bytes.length);
+    mOut.write(bytes);
+  }
+
+  public void writeIntArray(int[] values, int offset, int count) throws IOException {
+    writeVarint(count);
+    for (int i = 0; i < count; i++)
+      writeInt(values[offset + i]);
+  }
+
+  /**
+   * Writes a reference to length bytes of data, emitting a BLOB record first
+   * if this content has not been seen before. The record is written before
+   * the caller's opcode, so call this before {@link #writeOpcode}.
+   *
+   * @param data null for a call that passed no data
+   * @return the id to pass to {@link #writeBlobReference}
+   */
+  public int defineBlob(byte[] data, int length) throws IOException {
+    if (data == null)
+      return 0;
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < length; i++)
+      hash = (hash ^ (data[i] & 0xff)) * 0x100000001b3L;
+    final Long key = hash ^ ((long) length << 40);
+    final Integer existing = mBlobIds.get(key);
+    if (existing != null) {
+      mDuplicateBlobBytes += length;
+      return existing;
+    }
+    final int id = mNextBlobId++;
+    mBlobIds.put(key, id);
+    mBlobBytes += length;
+    writeOpcode(GlTrace.BLOB);
+    writeVarint(id);
+    writeVarint(length);
+    mOut.write(data, 0, length);
+    return id;
+  }
+
+  public void writeBlobReference(int id) throws IOException {
+    writeVarint(id);
+  }
+
+  /**
+   * @return bytes of data stored in the trace, and bytes that were not stored again because they had been before
+   */
+  public long getBlobBytes() {
+    return mBlobBytes;
+  }
+
+  public long getDuplicateBlobBytes() {
+    return mDuplicateBlobBytes;
+  }
+
+  public void close() throws IOException {
+    mOut.close();
+  }
+
+  private void writeVarint(int value) throws IOException {
+    int n = 0;
+    while ((value & ~0x7f) != 0) {
+      mScratch[n++] = (byte) ((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    mScratch[n++] = (byte) value;
+    mOut.write(mScratch, 0, n);
+  }
+
+  private void writeIntLittleEndian(int value) throws IOException {
+    mScratch[0] = (byte) value;
+    mScratch[1] = (byte) (value >>> 8);
+    mScratch[2] = (byte) (value >>> 16);
+    mScratch[3] = (byte) (value >>> 24);
+    mOut.write(mScratch, 0, 4);
+  }
+}
@@ -0,0 +1,929 @@
+package com.erik.and.caleb.tarddroidball.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Forwards every call to another {@link Gl} and writes it to a {@link GlTrace}
+ * as well, covering everything from creation through the given number of
+ * frames; after that, or after {@link #close()}, it only forwards. Call
+ * {@link #markFrame()} at the start of every frame.
+ * <p/>
+ * Recording copies every uploaded buffer and hashes it, which costs real time
+ * on big uploads; frame timings taken while recording mean little.
+ */
+public class RecordingGl implements Gl {
+
+  private static final String TAG = "RecordingGl";
+
+  private final Gl mDelegate;
+  private GlTraceWriter mWriter;
+  private int mFramesLeft;
+  private int mFrames;
+  private byte[] mBlob = new byte[4096];
+
+  /**
+   * @param out    where the trace goes; buffer it
+   * @param frames how many frames to record after setup
+   */
+  public RecordingGl(Gl delegate, OutputStream out, int frames) throws IOException {
+    mDelegate = delegate;
+    mWriter = new GlTraceWriter(out);
+    mFramesLeft = frames;
+  }
+
+  /**
+   * Starts the next frame, or finishes the trace once enough frames are in it.
+   */
+  public void markFrame() {
+    if (mWriter == null)
+      return;
+    if (mFramesLeft-- == 0) {
+      close();
+      return;
+    }
+    try {
+      mWriter.writeOpcode(GlTrace.FRAME);
+      mFrames++;
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  public boolean isRecording() {
+    return mWriter != null;
+  }
+
+  /**
+   * Finishes the trace early; later calls are only forwarded. Must not race with the GL thread.
+   */
+  public void close() {
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.close();
+      Log.d(TAG, String.format("Recorded %d frames, %d bytes of data, %d duplicate bytes not stored",
+          mFrames, mWriter.getBlobBytes(), mWriter.getDuplicateBlobBytes()));
+    } catch (IOException e) {
+      Log.w(TAG, "Could not finish the GL trace", e);
+    }
+    mWriter = null;
+  }
+
+  private void fail(IOException e) {
+    Log.w(TAG, "GL trace write failed, recording stopped", e);
+    try {
+      mWriter.close();
+    } catch (IOException ignored) {
+    }
+    mWriter = null;
+  }
+
+  private byte[] blobScratch(int length) {
+    if (mBlob.length < length)
+      mBlob = new byte[Math.max(length, mBlob.length * 2)];
+    return mBlob;
+  }
+
+  /**
+   * Copies size bytes from the buffer's position, without moving it, into a blob.
+   */
+  private int defineBlob(Buffer data, int size) throws IOException {
+    if (data == null)
+      return 0;
+    final byte[] blob = blobScratch(size);
+    final ByteBuffer bytes = ByteBuffer.wrap(blob, 0, size).order(ByteOrder.nativeOrder());
+    if (data instanceof ByteBuffer) {
+      ((ByteBuffer) data).duplicate().get(blob, 0, size);
+    } else if (data instanceof FloatBuffer) {
+      final FloatBuffer source = ((FloatBuffer) data).duplicate();
+      for (int i = 0; i < size / 4; i++)
+        bytes.putFloat(source.get());
+    } else if (data instanceof ShortBuffer) {
+      final ShortBuffer source = ((ShortBuffer) data).duplicate();
+      for (int i = 0; i < size / 2; i++)
+        bytes.putShort(source.get());
+    } else if (data instanceof IntBuffer) {
+      final IntBuffer source = ((IntBuffer) data).duplicate();
+      for (int i = 0; i < size / 4; i++)
+        bytes.putInt(source.get());
+    } else {
+      throw new IllegalArgumentException("Cannot record a " + data.getClass().getName());
+    }
+    return mWriter.defineBlob(blob, size);
+  }
+
+  private int defineBlob(float[] values, int offset, int count) throws IOException {
+    final byte[] blob = blobScratch(count * 4);
+    final ByteBuffer bytes = ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < count; i++)
+      bytes.putFloat(values[offset + i]);
+    return mWriter.defineBlob(blob, count * 4);
+  }
+
+  /**
+   * The bytes glTexImage2D reads for an image, with rows padded to the default unpack alignment of 4.
+   */
+  private static int imageSize(int width, int height, int format, int type) {
+    final int bytesPerPixel;
+    if (type != GLES20.GL_UNSIGNED_BYTE)
+      bytesPerPixel = 2;
+    else if (format == GLES20.GL_RGBA)
+      bytesPerPixel = 4;
+    else if (format == GLES20.GL_RGB)
+      bytesPerPixel = 3;
+    else if (format == GLES20.GL_LUMINANCE_ALPHA)
+      bytesPerPixel = 2;
+    else
+      bytesPerPixel = 1;
+    return (width * bytesPerPixel + 3) / 4 * 4 * height;
+  }
+
+  private int defineBlob(Bitmap bitmap) throws IOException {
+    final int size = bitmap.getRowBytes() * bitmap.getHeight();
+    final byte[] blob = blobScratch(size);
+    bitmap.copyPixelsToBuffer(ByteBuffer.wrap(blob, 0, size));
+    return mWriter.defineBlob(blob, size);
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+    mDelegate.glActiveTexture(texture);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.ACTIVE_TEXTURE);
+      mWriter.writeInt(texture);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+    mDelegate.glAttachShader(program, shader);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.ATTACH_SHADER);
+      mWriter.writeInt(program);
+      mWriter.writeInt(shader);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBindAttribLocation(int program, int index, String name) {
+    mDelegate.glBindAttribLocation(program, index, name);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.BIND_ATTRIB_LOCATION);
+      mWriter.writeInt(program);
+      mWriter.writeInt(index);
+      mWriter.writeString(name);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+    mDelegate.glBindBuffer(target, buffer);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.BIND_BUFFER);
+      mWriter.writeInt(target);
+      mWriter.writeInt(buffer);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+    mDelegate.glBindTexture(target, texture);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.BIND_TEXTURE);
+      mWriter.writeInt(target);
+      mWriter.writeInt(texture);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+    mDelegate.glBlendFunc(sfactor, dfactor);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.BLEND_FUNC);
+      mWriter.writeInt(sfactor);
+      mWriter.writeInt(dfactor);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+    mDelegate.glBufferData(target, size, data, usage);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(data, size);
+      mWriter.writeOpcode(GlTrace.BUFFER_DATA);
+      mWriter.writeInt(target);
+      mWriter.writeInt(size);
+      mWriter.writeBlobReference(blob);
+      mWriter.writeInt(usage);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+    mDelegate.glBufferSubData(target, offset, size, data);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(data, size);
+      mWriter.writeOpcode(GlTrace.BUFFER_SUB_DATA);
+      mWriter.writeInt(target);
+      mWriter.writeInt(offset);
+      mWriter.writeInt(size);
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glClear(int mask) {
+    mDelegate.glClear(mask);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.CLEAR);
+      mWriter.writeInt(mask);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+    mDelegate.glClearColor(red, green, blue, alpha);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.CLEAR_COLOR);
+      mWriter.writeFloat(red);
+      mWriter.writeFloat(green);
+      mWriter.writeFloat(blue);
+      mWriter.writeFloat(alpha);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+    mDelegate.glCompileShader(shader);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.COMPILE_SHADER);
+      mWriter.writeInt(shader);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize,
+                                     Buffer data) {
+    mDelegate.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(data, imageSize);
+      mWriter.writeOpcode(GlTrace.COMPRESSED_TEX_IMAGE_2D);
+      mWriter.writeInt(target);
+      mWriter.writeInt(level);
+      mWriter.writeInt(internalformat);
+      mWriter.writeInt(width);
+      mWriter.writeInt(height);
+      mWriter.writeInt(border);
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public int glCreateProgram() {
+    final int program = mDelegate.glCreateProgram();
+    if (mWriter == null)
+      return program;
+    try {
+      mWriter.writeOpcode(GlTrace.CREATE_PROGRAM);
+      mWriter.writeInt(program);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return program;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    final int shader = mDelegate.glCreateShader(type);
+    if (mWriter == null)
+      return shader;
+    try {
+      mWriter.writeOpcode(GlTrace.CREATE_SHADER);
+      mWriter.writeInt(type);
+      mWriter.writeInt(shader);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return shader;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+    mDelegate.glDeleteBuffers(n, buffers, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DELETE_BUFFERS);
+      mWriter.writeIntArray(buffers, offset, n);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+    mDelegate.glDeleteProgram(program);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DELETE_PROGRAM);
+      mWriter.writeInt(program);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+    mDelegate.glDeleteShader(shader);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DELETE_SHADER);
+      mWriter.writeInt(shader);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDisable(int cap) {
+    mDelegate.glDisable(cap);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DISABLE);
+      mWriter.writeInt(cap);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+    mDelegate.glDisableVertexAttribArray(index);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DISABLE_VERTEX_ATTRIB_ARRAY);
+      mWriter.writeInt(index);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+    mDelegate.glDrawArrays(mode, first, count);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DRAW_ARRAYS);
+      mWriter.writeInt(mode);
+      mWriter.writeInt(first);
+      mWriter.writeInt(count);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+    mDelegate.glDrawElements(mode, count, type, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.DRAW_ELEMENTS);
+      mWriter.writeInt(mode);
+      mWriter.writeInt(count);
+      mWriter.writeInt(type);
+      mWriter.writeInt(offset);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glEnable(int cap) {
+    mDelegate.glEnable(cap);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.ENABLE);
+      mWriter.writeInt(cap);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+    mDelegate.glEnableVertexAttribArray(index);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY);
+      mWriter.writeInt(index);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    mDelegate.glGenBuffers(n, buffers, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GEN_BUFFERS);
+      mWriter.writeIntArray(buffers, offset, n);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    mDelegate.glGenTextures(n, textures, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GEN_TEXTURES);
+      mWriter.writeIntArray(textures, offset, n);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset,
+                                int[] type, int typeOffset, byte[] name, int nameOffset) {
+    mDelegate.glGetActiveAttrib(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_ACTIVE_ATTRIB);
+      mWriter.writeInt(program);
+      mWriter.writeInt(index);
+      mWriter.writeInt(size[sizeOffset]);
+      mWriter.writeInt(type[typeOffset]);
+      mWriter.writeString(new String(name, nameOffset, length[lengthOffset]));
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size, int sizeOffset,
+                                 int[] type, int typeOffset, byte[] name, int nameOffset) {
+    mDelegate.glGetActiveUniform(program, index, bufsize, length, lengthOffset, size, sizeOffset, type, typeOffset, name, nameOffset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_ACTIVE_UNIFORM);
+      mWriter.writeInt(program);
+      mWriter.writeInt(index);
+      mWriter.writeInt(size[sizeOffset]);
+      mWriter.writeInt(type[typeOffset]);
+      mWriter.writeString(new String(name, nameOffset, length[lengthOffset]));
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    final int location = mDelegate.glGetAttribLocation(program, name);
+    if (mWriter == null)
+      return location;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_ATTRIB_LOCATION);
+      mWriter.writeInt(program);
+      mWriter.writeString(name);
+      mWriter.writeInt(location);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return location;
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    mDelegate.glGetIntegerv(pname, params, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_INTEGERV);
+      mWriter.writeInt(pname);
+      mWriter.writeInt(params[offset]);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    final String log = mDelegate.glGetProgramInfoLog(program);
+    if (mWriter == null)
+      return log;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_PROGRAM_INFO_LOG);
+      mWriter.writeInt(program);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return log;
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    mDelegate.glGetProgramiv(program, pname, params, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_PROGRAMIV);
+      mWriter.writeInt(program);
+      mWriter.writeInt(pname);
+      mWriter.writeInt(params[offset]);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    final String log = mDelegate.glGetShaderInfoLog(shader);
+    if (mWriter == null)
+      return log;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_SHADER_INFO_LOG);
+      mWriter.writeInt(shader);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return log;
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    mDelegate.glGetShaderiv(shader, pname, params, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_SHADERIV);
+      mWriter.writeInt(shader);
+      mWriter.writeInt(pname);
+      mWriter.writeInt(params[offset]);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public String glGetString(int name) {
+    final String value = mDelegate.glGetString(name);
+    if (mWriter == null)
+      return value;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_STRING);
+      mWriter.writeInt(name);
+      mWriter.writeString(value == null ? "" : value);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return value;
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    final int location = mDelegate.glGetUniformLocation(program, name);
+    if (mWriter == null)
+      return location;
+    try {
+      mWriter.writeOpcode(GlTrace.GET_UNIFORM_LOCATION);
+      mWriter.writeInt(program);
+      mWriter.writeString(name);
+      mWriter.writeInt(location);
+    } catch (IOException e) {
+      fail(e);
+    }
+    return location;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+    mDelegate.glLinkProgram(program);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.LINK_PROGRAM);
+      mWriter.writeInt(program);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+    mDelegate.glShaderSource(shader, string);
+    if (mWriter == null)
+      return;
+    try {
+      final byte[] source = string.getBytes("UTF-8");
+      final int blob = mWriter.defineBlob(source, source.length);
+      mWriter.writeOpcode(GlTrace.SHADER_SOURCE);
+      mWriter.writeInt(shader);
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type,
+                           Buffer pixels) {
+    mDelegate.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(pixels, imageSize(width, height, format, type));
+      mWriter.writeOpcode(GlTrace.TEX_IMAGE_2D_BUFFER);
+      mWriter.writeInt(target);
+      mWriter.writeInt(level);
+      mWriter.writeInt(internalformat);
+      mWriter.writeInt(width);
+      mWriter.writeInt(height);
+      mWriter.writeInt(border);
+      mWriter.writeInt(format);
+      mWriter.writeInt(type);
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+    mDelegate.texImage2D(target, level, bitmap, border);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(bitmap);
+      mWriter.writeOpcode(GlTrace.TEX_IMAGE_2D);
+      mWriter.writeInt(target);
+      mWriter.writeInt(level);
+      mWriter.writeInt(bitmap.getWidth());
+      mWriter.writeInt(bitmap.getHeight());
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+    mDelegate.glTexParameteri(target, pname, param);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.TEX_PARAMETERI);
+      mWriter.writeInt(target);
+      mWriter.writeInt(pname);
+      mWriter.writeInt(param);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+    mDelegate.glUniform1f(location, x);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.UNIFORM1F);
+      mWriter.writeInt(location);
+      mWriter.writeFloat(x);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+    mDelegate.glUniform1i(location, x);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.UNIFORM1I);
+      mWriter.writeInt(location);
+      mWriter.writeInt(x);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniform2f(int location, float x, float y) {
+    mDelegate.glUniform2f(location, x, y);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.UNIFORM2F);
+      mWriter.writeInt(location);
+      mWriter.writeFloat(x);
+      mWriter.writeFloat(y);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+    mDelegate.glUniform3f(location, x, y, z);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.UNIFORM3F);
+      mWriter.writeInt(location);
+      mWriter.writeFloat(x);
+      mWriter.writeFloat(y);
+      mWriter.writeFloat(z);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+    mDelegate.glUniform4f(location, x, y, z, w);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.UNIFORM4F);
+      mWriter.writeInt(location);
+      mWriter.writeFloat(x);
+      mWriter.writeFloat(y);
+      mWriter.writeFloat(z);
+      mWriter.writeFloat(w);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+    mDelegate.glUniformMatrix4fv(location, count, transpose, value, offset);
+    if (mWriter == null)
+      return;
+    try {
+      final int blob = defineBlob(value, offset, count * 16);
+      mWriter.writeOpcode(GlTrace.UNIFORM_MATRIX4FV);
+      mWriter.writeInt(location);
+      mWriter.writeInt(count);
+      mWriter.writeBoolean(transpose);
+      mWriter.writeBlobReference(blob);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+    mDelegate.glUseProgram(program);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.USE_PROGRAM);
+      mWriter.writeInt(program);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glVertexAttrib3f(int index, float x, float y, float z) {
+    mDelegate.glVertexAttrib3f(index, x, y, z);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.VERTEX_ATTRIB3F);
+      mWriter.writeInt(index);
+      mWriter.writeFloat(x);
+      mWriter.writeFloat(y);
+      mWriter.writeFloat(z);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glVertexAttrib4f(int index, float x, float y, float z, float w) {
+    mDelegate.glVertexAttrib4f(index, x, y, z, w);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.VERTEX_ATTRIB4F);
+      mWriter.writeInt(index);
+      mWriter.writeFloat(x);
+      mWriter.writeFloat(y);
+      mWriter.writeFloat(z);
+      mWriter.writeFloat(w);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+    mDelegate.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.VERTEX_ATTRIB_POINTER);
+      mWriter.writeInt(index);
+      mWriter.writeInt(size);
+      mWriter.writeInt(type);
+      mWriter.writeBoolean(normalized);
+      mWriter.writeInt(stride);
+      mWriter.writeInt(offset);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+    mDelegate.glViewport(x, y, width, height);
+    if (mWriter == null)
+      return;
+    try {
+      mWriter.writeOpcode(GlTrace.VIEWPORT);
+      mWriter.writeInt(x);
+      mWriter.writeInt(y);
+      mWriter.writeInt(width);
+      mWriter.writeInt(height);
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+}
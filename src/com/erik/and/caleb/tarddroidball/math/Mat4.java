@@ -0,0 +1,246 @@
+package com.erik.and.caleb.tarddroidball.math;
+
+/**
+ * 4x4 matrix operations on column-major float arrays, laid out and behaving
+ * like android.opengl.Matrix but without Android, without temporaries, and
+ * with fast paths for affine matrices (bottom row 0, 0, 0, 1), which is what
+ * every model and view matrix in the app is.
+ * <p/>
+ * Unless noted, results may not overlap the inputs.
+ */
+public final class Mat4 {
+
+  private Mat4() {
+  }
+
+  public static void setIdentity(float[] m, int offset) {
+    for (int i = 0; i < 16; i++)
+      m[offset + i] = 0;
+    m[offset] = m[offset + 5] = m[offset + 10] = m[offset + 15] = 1;
+  }
+
+  /**
+   * result = lhs * rhs for any two matrices.
+   */
+  public static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1], l2 = lhs[lhsOffset + 2], l3 = lhs[lhsOffset + 3];
+    final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5], l6 = lhs[lhsOffset + 6], l7 = lhs[lhsOffset + 7];
+    final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9], l10 = lhs[lhsOffset + 10], l11 = lhs[lhsOffset + 11];
+    final float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13], l14 = lhs[lhsOffset + 14], l15 = lhs[lhsOffset + 15];
+    for (int column = 0; column < 16; column += 4) {
+      final float r0 = rhs[rhsOffset + column];
+      final float r1 = rhs[rhsOffset + column + 1];
+      final float r2 = rhs[rhsOffset + column + 2];
+      final float r3 = rhs[rhsOffset + column + 3];
+      result[resultOffset + column] = l0 * r0 + l4 * r1 + l8 * r2 + l12 * r3;
+      result[resultOffset + column + 1] = l1 * r0 + l5 * r1 + l9 * r2 + l13 * r3;
+      result[resultOffset + column + 2] = l2 * r0 + l6 * r1 + l10 * r2 + l14 * r3;
+      result[resultOffset + column + 3] = l3 * r0 + l7 * r1 + l11 * r2 + l15 * r3;
+    }
+  }
+
+  /**
+   * result = lhs * rhs where both are affine: 36 multiplies instead of 64.
+   */
+  public static void multiplyAffine(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1], l2 = lhs[lhsOffset + 2];
+    final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5], l6 = lhs[lhsOffset + 6];
+    final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9], l10 = lhs[lhsOffset + 10];
+    for (int column = 0; column < 12; column += 4) {
+      final float r0 = rhs[rhsOffset + column];
+      final float r1 = rhs[rhsOffset + column + 1];
+      final float r2 = rhs[rhsOffset + column + 2];
+      result[resultOffset + column] = l0 * r0 + l4 * r1 + l8 * r2;
+      result[resultOffset + column + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+      result[resultOffset + column + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+      result[resultOffset + column + 3] = 0;
+    }
+    final float r12 = rhs[rhsOffset + 12], r13 = rhs[rhsOffset + 13], r14 = rhs[rhsOffset + 14];
+    result[resultOffset + 12] = l0 * r12 + l4 * r13 + l8 * r14 + lhs[lhsOffset + 12];
+    result[resultOffset + 13] = l1 * r12 + l5 * r13 + l9 * r14 + lhs[lhsOffset + 13];
+    result[resultOffset + 14] = l2 * r12 + l6 * r13 + l10 * r14 + lhs[lhsOffset + 14];
+    result[resultOffset + 15] = 1;
+  }
+
+  /**
+   * result = lhs * rhs where only rhs is affine, such as a projection times a model-view.
+   */
+  public static void multiplyByAffine(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float l0 = lhs[lhsOffset], l1 = lhs[lhsOffset + 1], l2 = lhs[lhsOffset + 2], l3 = lhs[lhsOffset + 3];
+    final float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5], l6 = lhs[lhsOffset + 6], l7 = lhs[lhsOffset + 7];
+    final float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9], l10 = lhs[lhsOffset + 10], l11 = lhs[lhsOffset + 11];
+    for (int column = 0; column < 12; column += 4) {
+      final float r0 = rhs[rhsOffset + column];
+      final float r1 = rhs[rhsOffset + column + 1];
+      final float r2 = rhs[rhsOffset + column + 2];
+      result[resultOffset + column] = l0 * r0 + l4 * r1 + l8 * r2;
+      result[resultOffset + column + 1] = l1 * r0 + l5 * r1 + l9 * r2;
+      result[resultOffset + column + 2] = l2 * r0 + l6 * r1 + l10 * r2;
+      result[resultOffset + column + 3] = l3 * r0 + l7 * r1 + l11 * r2;
+    }
+    final float r12 = rhs[rhsOffset + 12], r13 = rhs[rhsOffset + 13], r14 = rhs[rhsOffset + 14];
+    result[resultOffset + 12] = l0 * r12 + l4 * r13 + l8 * r14 + lhs[lhsOffset + 12];
+    result[resultOffset + 13] = l1 * r12 + l5 * r13 + l9 * r14 + lhs[lhsOffset + 13];
+    result[resultOffset + 14] = l2 * r12 + l6 * r13 + l10 * r14 + lhs[lhsOffset + 14];
+    result[resultOffset + 15] = l3 * r12 + l7 * r13 + l11 * r14 + lhs[lhsOffset + 15];
+  }
+
+  /**
+   * Multiplies one matrix by count consecutive affine matrices: result[i] = lhs * rhs[i].
+   * Used to take a batch of model matrices into view or clip space in one call.
+   */
+  public static void multiplyByAffine(float[] result, int resultOffset, float[] lhs, int lhsOffset,
+                                      float[] rhs, int rhsOffset, int count) {
+    for (int i = 0; i < count * 16; i += 16)
+      multiplyByAffine(result, resultOffset + i, lhs, lhsOffset, rhs, rhsOffset + i);
+  }
+
+  /**
+   * result = m * (x, y, z, w), like Matrix.multiplyMV; result may not overlap m.
+   */
+  public static void multiplyVector(float[] result, int resultOffset, float[] m, int offset, float x, float y, float z, float w) {
+    result[resultOffset] = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12] * w;
+    result[resultOffset + 1] = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13] * w;
+    result[resultOffset + 2] = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14] * w;
+    result[resultOffset + 3] = m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z + m[offset + 15] * w;
+  }
+
+  /**
+   * Transforms count points stored as consecutive x, y, z triples by an affine matrix.
+   * in and out may be the same array at the same offset.
+   */
+  public static void transformPoints(float[] m, int offset, float[] in, int inOffset, float[] out, int outOffset, int count) {
+    final float m0 = m[offset], m1 = m[offset + 1], m2 = m[offset + 2];
+    final float m4 = m[offset + 4], m5 = m[offset + 5], m6 = m[offset + 6];
+    final float m8 = m[offset + 8], m9 = m[offset + 9], m10 = m[offset + 10];
+    final float m12 = m[offset + 12], m13 = m[offset + 13], m14 = m[offset + 14];
+    for (int i = 0; i < count * 3; i += 3) {
+      final float x = in[inOffset + i], y = in[inOffset + i + 1], z = in[inOffset + i + 2];
+      out[outOffset + i] = m0 * x + m4 * y + m8 * z + m12;
+      out[outOffset + i + 1] = m1 * x + m5 * y + m9 * z + m13;
+      out[outOffset + i + 2] = m2 * x + m6 * y + m10 * z + m14;
+    }
+  }
+
+  /**
+   * m = m * translation, in place, like Matrix.translateM.
+   */
+  public static void translate(float[] m, int offset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++)
+      m[offset + 12 + i] += m[offset + i] * x + m[offset + 4 + i] * y + m[offset + 8 + i] * z;
+  }
+
+  /**
+   * m = m * scale, in place, like Matrix.scaleM.
+   */
+  public static void scale(float[] m, int offset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++) {
+      m[offset + i] *= x;
+      m[offset + 4 + i] *= y;
+      m[offset + 8 + i] *= z;
+    }
+  }
+
+  /**
+   * m = m * rotation by angleInDegrees about (x, y, z), in place, like Matrix.rotateM but without its temporary array.
+   */
+  public static void rotate(float[] m, int offset, float angleInDegrees, float x, float y, float z) {
+    final double radians = Math.toRadians(angleInDegrees);
+    final float s = (float) Math.sin(radians);
+    final float c = (float) Math.cos(radians);
+    final float length = (float) Math.sqrt(x * x + y * y + z * z);
+    if (length != 1.0f) {
+      x /= length;
+      y /= length;
+      z /= length;
+    }
+    final float nc = 1.0f - c;
+    final float r0 = x * x * nc + c, r1 = x * y * nc + z * s, r2 = z * x * nc - y * s;
+    final float r4 = x * y * nc - z * s, r5 = y * y * nc + c, r6 = y * z * nc + x * s;
+    final float r8 = z * x * nc + y * s, r9 = y * z * nc - x * s, r10 = z * z * nc + c;
+    for (int i = 0; i < 4; i++) {
+      final float a = m[offset + i], b = m[offset + 4 + i], d = m[offset + 8 + i];
+      m[offset + i] = a * r0 + b * r1 + d * r2;
+      m[offset + 4 + i] = a * r4 + b * r5 + d * r6;
+      m[offset + 8 + i] = a * r8 + b * r9 + d * r10;
+    }
+  }
+
+  /**
+   * m = translation * rotation(quaternion) * scale, the usual model matrix of a scene node.
+   */
+  public static void setTranslationRotationScale(float[] m, int offset, float tx, float ty, float tz,
+                                                 float qx, float qy, float qz, float qw, float sx, float sy, float sz) {
+    m[offset] = (1 - 2 * (qy * qy + qz * qz)) * sx;
+    m[offset + 1] = 2 * (qx * qy + qz * qw) * sx;
+    m[offset + 2] = 2 * (qx * qz - qy * qw) * sx;
+    m[offset + 3] = 0;
+    m[offset + 4] = 2 * (qx * qy - qz * qw) * sy;
+    m[offset + 5] = (1 - 2 * (qx * qx + qz * qz)) * sy;
+    m[offset + 6] = 2 * (qy * qz + qx * qw) * sy;
+    m[offset + 7] = 0;
+    m[offset + 8] = 2 * (qx * qz + qy * qw) * sz;
+    m[offset + 9] = 2 * (qy * qz - qx * qw) * sz;
+    m[offset + 10] = (1 - 2 * (qx * qx + qy * qy)) * sz;
+    m[offset + 11] = 0;
+    m[offset + 12] = tx;
+    m[offset + 13] = ty;
+    m[offset + 14] = tz;
+    m[offset + 15] = 1;
+  }
+
+  /**
+   * Same as Matrix.frustumM.
+   */
+  public static void frustum(float[] m, int offset, float left, float right, float bottom, float top, float near, float far) {
+    final float width = 1.0f / (right - left);
+    final float height = 1.0f / (top - bottom);
+    final float depth = 1.0f / (near - far);
+    for (int i = 0; i < 16; i++)
+      m[offset + i] = 0;
+    m[offset] = 2.0f * (near * width);
+    m[offset + 5] = 2.0f * (near * height);
+    m[offset + 8] = (right + left) * width;
+    m[offset + 9] = (top + bottom) * height;
+    m[offset + 10] = (far + near) * depth;
+    m[offset + 11] = -1.0f;
+    m[offset + 14] = 2.0f * (far * near * depth);
+  }
+
+  /**
+   * Same as Matrix.setLookAtM.
+   */
+  public static void setLookAt(float[] m, int offset, float eyeX, float eyeY, float eyeZ,
+                               float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+    float fx = centerX - eyeX, fy = centerY - eyeY, fz = centerZ - eyeZ;
+    final float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+    fx *= rlf;
+    fy *= rlf;
+    fz *= rlf;
+    // s = f x up
+    float sx = fy * upZ - fz * upY, sy = fz * upX - fx * upZ, sz = fx * upY - fy * upX;
+    final float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    sx *= rls;
+    sy *= rls;
+    sz *= rls;
+    // u = s x f
+    final float ux = sy * fz - sz * fy, uy = sz * fx - sx * fz, uz = sx * fy - sy * fx;
+    m[offset] = sx;
+    m[offset + 1] = ux;
+    m[offset + 2] = -fx;
+    m[offset + 3] = 0;
+    m[offset + 4] = sy;
+    m[offset + 5] = uy;
+    m[offset + 6] = -fy;
+    m[offset + 7] = 0;
+    m[offset + 8] = sz;
+    m[offset + 9] = uz;
+    m[offset + 10] = -fz;
+    m[offset + 11] = 0;
+    m[offset + 12] = 0;
+    m[offset + 13] = 0;
+    m[offset + 14] = 0;
+    m[offset + 15] = 1;
+    translate(m, offset, -eyeX, -eyeY, -eyeZ);
+  }
+}
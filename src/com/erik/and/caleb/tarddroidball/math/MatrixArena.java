@@ -0,0 +1,178 @@
+package com.erik.and.caleb.tarddroidball.math;
+
+/**
+ * A pool of 4x4 matrices stored structure-of-arrays: element e of matrix i is
+ * getElements(e)[i]. Batch operations then run one tight loop per element over
+ * consecutive floats, which is what the JIT turns into its fastest code and
+ * what keeps thousands of transforms in cache.
+ * <p/>
+ * Matrices are addressed by the int handles allocate() hands out; freed
+ * handles are reused before the arena grows. Element order matches the
+ * column-major arrays used everywhere else, so get() and set() are plain copies.
+ */
+public class MatrixArena {
+
+  private final float[][] mElements = new float[16][];
+  private int mCapacity;
+  private int mHighWater;
+  private int[] mFree;
+  private int mFreeCount;
+
+  public MatrixArena(int initialCapacity) {
+    mCapacity = Math.max(1, initialCapacity);
+    for (int e = 0; e < 16; e++)
+      mElements[e] = new float[mCapacity];
+    mFree = new int[mCapacity];
+  }
+
+  /**
+   * @return the handle of an identity matrix, growing the arena if no freed one is left
+   */
+  public int allocate() {
+    final int index;
+    if (mFreeCount > 0) {
+      index = mFree[--mFreeCount];
+    } else {
+      if (mHighWater == mCapacity)
+        grow(mCapacity * 2);
+      index = mHighWater++;
+    }
+    setIdentity(index);
+    return index;
+  }
+
+  public void free(int index) {
+    mFree[mFreeCount++] = index;
+  }
+
+  /**
+   * @return one past the highest handle ever allocated; batch ranges must stay below it
+   */
+  public int size() {
+    return mHighWater;
+  }
+
+  public int getAllocatedCount() {
+    return mHighWater - mFreeCount;
+  }
+
+  public int getCapacity() {
+    return mCapacity;
+  }
+
+  /**
+   * The raw column of one element across every matrix, for batch code of your own.
+   */
+  public float[] getElements(int element) {
+    return mElements[element];
+  }
+
+  public void setIdentity(int index) {
+    for (int e = 0; e < 16; e++)
+      mElements[e][index] = e % 5 == 0 ? 1.0f : 0.0f;
+  }
+
+  public void set(int index, float[] m, int offset) {
+    for (int e = 0; e < 16; e++)
+      mElements[e][index] = m[offset + e];
+  }
+
+  public void get(int index, float[] m, int offset) {
+    for (int e = 0; e < 16; e++)
+      m[offset + e] = mElements[e][index];
+  }
+
+  /**
+   * Gathers count matrices into consecutive column-major arrays, ready for glUniformMatrix4fv.
+   */
+  public void get(int first, int count, float[] out, int offset) {
+    for (int e = 0; e < 16; e++) {
+      final float[] element = mElements[e];
+      for (int i = 0; i < count; i++)
+        out[offset + i * 16 + e] = element[first + i];
+    }
+  }
+
+  /**
+   * result[i] = lhs * source[i] for i in [first, first + count). source and
+   * result must be different arenas; lhs is an ordinary column-major matrix,
+   * typically the view or view-projection matrix.
+   */
+  public static void multiply(float[] lhs, int lhsOffset, MatrixArena source, MatrixArena result, int first, int count) {
+    multiply(lhs, lhsOffset, source, result, first, count, false);
+  }
+
+  /**
+   * Like {@link #multiply} for sources that are all affine, skipping their constant bottom row.
+   */
+  public static void multiplyAffine(float[] lhs, int lhsOffset, MatrixArena source, MatrixArena result, int first, int count) {
+    multiply(lhs, lhsOffset, source, result, first, count, true);
+  }
+
+  private static void multiply(float[] lhs, int lhsOffset, MatrixArena source, MatrixArena result,
+                               int first, int count, boolean affine) {
+    if (source == result)
+      throw new IllegalArgumentException("source and result must be different arenas");
+    result.ensureSize(first + count);
+    final int end = first + count;
+    for (int column = 0; column < 4; column++) {
+      final float[] s0 = source.mElements[column * 4];
+      final float[] s1 = source.mElements[column * 4 + 1];
+      final float[] s2 = source.mElements[column * 4 + 2];
+      final float[] s3 = source.mElements[column * 4 + 3];
+      for (int row = 0; row < 4; row++) {
+        final float a0 = lhs[lhsOffset + row];
+        final float a1 = lhs[lhsOffset + 4 + row];
+        final float a2 = lhs[lhsOffset + 8 + row];
+        final float a3 = lhs[lhsOffset + 12 + row];
+        final float[] d = result.mElements[column * 4 + row];
+        if (!affine) {
+          for (int i = first; i < end; i++)
+            d[i] = a0 * s0[i] + a1 * s1[i] + a2 * s2[i] + a3 * s3[i];
+        } else if (column < 3) {
+          for (int i = first; i < end; i++)
+            d[i] = a0 * s0[i] + a1 * s1[i] + a2 * s2[i];
+        } else {
+          for (int i = first; i < end; i++)
+            d[i] = a0 * s0[i] + a1 * s1[i] + a2 * s2[i] + a3;
+        }
+      }
+    }
+  }
+
+  /**
+   * Transforms count points in place by one affine matrix of the arena; the
+   * coordinates are kept in separate x, y and z arrays.
+   */
+  public void transformPoints(int index, float[] xs, float[] ys, float[] zs, int offset, int count) {
+    final float m0 = mElements[0][index], m1 = mElements[1][index], m2 = mElements[2][index];
+    final float m4 = mElements[4][index], m5 = mElements[5][index], m6 = mElements[6][index];
+    final float m8 = mElements[8][index], m9 = mElements[9][index], m10 = mElements[10][index];
+    final float m12 = mElements[12][index], m13 = mElements[13][index], m14 = mElements[14][index];
+    for (int i = offset; i < offset + count; i++) {
+      final float x = xs[i], y = ys[i], z = zs[i];
+      xs[i] = m0 * x + m4 * y + m8 * z + m12;
+      ys[i] = m1 * x + m5 * y + m9 * z + m13;
+      zs[i] = m2 * x + m6 * y + m10 * z + m14;
+    }
+  }
+
+  private void ensureSize(int size) {
+    if (size > mCapacity)
+      grow(Math.max(size, mCapacity * 2));
+    if (size > mHighWater)
+      mHighWater = size;
+  }
+
+  private void grow(int capacity) {
+    for (int e = 0; e < 16; e++) {
+      final float[] grown = new float[capacity];
+      System.arraycopy(mElements[e], 0, grown, 0, mHighWater);
+      mElements[e] = grown;
+    }
+    final int[] free = new int[capacity];
+    System.arraycopy(mFree, 0, free, 0, mFreeCount);
+    mFree = free;
+    mCapacity = capacity;
+  }
+}
@@ -0,0 +1,70 @@
+package com.erik.and.caleb.tarddroidball.math;
+
+/**
+ * Unit quaternions stored as x, y, z, w in float arrays. Rotations follow the
+ * same right-handed convention as Matrix.setRotateM.
+ */
+public final class Quat {
+
+  private Quat() {
+  }
+
+  public static void setIdentity(float[] q, int offset) {
+    q[offset] = q[offset + 1] = q[offset + 2] = 0;
+    q[offset + 3] = 1;
+  }
+
+  /**
+   * Rotation of angleInDegrees about (x, y, z), which need not be normalized.
+   */
+  public static void setAxisAngle(float[] q, int offset, float angleInDegrees, float x, float y, float z) {
+    final double half = Math.toRadians(angleInDegrees) * 0.5;
+    final float s = (float) Math.sin(half) / (float) Math.sqrt(x * x + y * y + z * z);
+    q[offset] = x * s;
+    q[offset + 1] = y * s;
+    q[offset + 2] = z * s;
+    q[offset + 3] = (float) Math.cos(half);
+  }
+
+  /**
+   * result = a * b, i.e. rotate by b first and then by a. result may be either input.
+   */
+  public static void multiply(float[] result, int resultOffset, float[] a, int aOffset, float[] b, int bOffset) {
+    final float ax = a[aOffset], ay = a[aOffset + 1], az = a[aOffset + 2], aw = a[aOffset + 3];
+    final float bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2], bw = b[bOffset + 3];
+    result[resultOffset] = aw * bx + ax * bw + ay * bz - az * by;
+    result[resultOffset + 1] = aw * by - ax * bz + ay * bw + az * bx;
+    result[resultOffset + 2] = aw * bz + ax * by - ay * bx + az * bw;
+    result[resultOffset + 3] = aw * bw - ax * bx - ay * by - az * bz;
+  }
+
+  public static void normalize(float[] q, int offset) {
+    final float x = q[offset], y = q[offset + 1], z = q[offset + 2], w = q[offset + 3];
+    final float n = 1.0f / (float) Math.sqrt(x * x + y * y + z * z + w * w);
+    q[offset] = x * n;
+    q[offset + 1] = y * n;
+    q[offset + 2] = z * n;
+    q[offset + 3] = w * n;
+  }
+
+  /**
+   * Rotates (vx, vy, vz) by q into result[resultOffset..+2].
+   */
+  public static void rotateVector(float[] result, int resultOffset, float[] q, int offset, float vx, float vy, float vz) {
+    final float x = q[offset], y = q[offset + 1], z = q[offset + 2], w = q[offset + 3];
+    // v + 2w(q x v) + 2q x (q x v)
+    final float tx = 2 * (y * vz - z * vy);
+    final float ty = 2 * (z * vx - x * vz);
+    final float tz = 2 * (x * vy - y * vx);
+    result[resultOffset] = vx + w * tx + (y * tz - z * ty);
+    result[resultOffset + 1] = vy + w * ty + (z * tx - x * tz);
+    result[resultOffset + 2] = vz + w * tz + (x * ty - y * tx);
+  }
+
+  /**
+   * Writes the rotation matrix for q, with no translation.
+   */
+  public static void toMatrix(float[] m, int offset, float[] q, int qOffset) {
+    Mat4.setTranslationRotationScale(m, offset, 0, 0, 0, q[qOffset], q[qOffset + 1], q[qOffset + 2], q[qOffset + 3], 1, 1, 1);
+  }
+}
@@ -1,6 +1,5 @@
 package com.learnopengles.android;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -12,28 +11,41 @@ public class RawResourceReader
 	public static String readTextFileFromRawResource(final Context context,
 			final int resourceId)
 	{
-		final InputStream inputStream = context.getResources().openRawResource(
-				resourceId);
+		return readTextFile(context.getResources().openRawResource(resourceId));
+	}
+
+	public static String readTextFile(final InputStream inputStream)
+	{
 		final InputStreamReader inputStreamReader = new InputStreamReader(
 				inputStream);
-		final BufferedReader bufferedReader = new BufferedReader(
-				inputStreamReader);
 
-		String nextLine;
+		// Read in blocks rather than lines; the compiler does not care how lines end.
+		final char[] buffer = new char[4096];
 		final StringBuilder body = new StringBuilder();
 
 		try
 		{
-			while ((nextLine = bufferedReader.readLine()) != null)
+			int read;
+			while ((read = inputStreamReader.read(buffer)) > 0)
 			{
-				body.append(nextLine);
-				body.append('\n');
+				body.append(buffer, 0, read);
 			}
 		}
 		catch (IOException e)
 		{
 			return null;
 		}
+		finally
+		{
+			try
+			{
+				inputStreamReader.close();
+			}
+			catch (IOException e)
+			{
+				// nothing left to read anyway
+			}
+		}
 
 		return body.toString();
 	}
@@ -4,15 +4,15 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
 
 public class TextureHelper
 {
-	public static int loadTexture(final Context context, final int resourceId)
+	public static int loadTexture(final Gl gl, final Context context, final int resourceId)
 	{
 		final int[] textureHandle = new int[1];
 		
-		GLES20.glGenTextures(1, textureHandle, 0);
+		gl.glGenTextures(1, textureHandle, 0);
 		
 		if (textureHandle[0] != 0)
 		{
@@ -23,14 +23,14 @@ public class TextureHelper
 			final Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
 						
 			// Bind to the texture in OpenGL
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+			gl.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 			
 			// Set filtering
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+			gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+			gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
 			
 			// Load the bitmap into the bound texture.
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+			gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 			
 			// Recycle the bitmap, since its data has been loaded into OpenGL.
 			bitmap.recycle();						
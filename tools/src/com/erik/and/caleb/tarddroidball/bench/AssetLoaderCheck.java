@@ -0,0 +1,196 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.AssetLoader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+ * Drives an {@link AssetLoader} the way the renderer does, with the main
+ * thread standing in for the render thread, and checks that GL steps run only
+ * on it, only after their inputs and in the order queued, that a frame's
+ * budget is kept while a slow step still makes progress, that a failed load
+ * surfaces from runUploads, however its worker's timing falls, that a step
+ * which can never run is reported, and that the loaded callback comes last. Then
+ * times a simulated startup, blocking against budgeted. Exits non-zero on
+ * failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.AssetLoaderCheck
+ * </pre>
+ */
+public class AssetLoaderCheck {
+
+  private static final long FRAME_NANOS = 16000000L;
+  private static final long BUDGET_NANOS = 4000000L;
+
+  public static void main(String[] args) throws Exception {
+    verifyOrdering();
+    verifyBudget();
+    verifyFailure();
+    verifyNeverQueued();
+    System.out.println("ordering, budget and failures check out");
+    compareStartup();
+  }
+
+  private static void verifyOrdering() throws Exception {
+    final AssetLoader loader = new AssetLoader(3);
+    final Thread renderThread = Thread.currentThread();
+    final List<String> log = new ArrayList<String>();
+    final Future<String> slow = loader.load(sleepThen(30, "slow"));
+    final Future<String> fast = loader.load(sleepThen(1, "fast"));
+    final Future<String> afterSlow = loader.upload(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        check(Thread.currentThread() == renderThread, "GL step ran off the render thread");
+        log.add("upload " + slow.get());
+        return "uploaded";
+      }
+    }, slow);
+    loader.upload(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        log.add("upload " + fast.get());
+        return null;
+      }
+    }, fast);
+    loader.upload(new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        log.add("upload after " + afterSlow.get());
+        return null;
+      }
+    }, afterSlow);
+    loader.whenLoaded(new Runnable() {
+      @Override
+      public void run() {
+        log.add("loaded");
+      }
+    });
+    int frames = 0;
+    while (!loader.runUploads(BUDGET_NANOS)) {
+      frames++;
+      Thread.sleep(1);
+    }
+    check(frames > 0, "uploads finished before the slow load could have");
+    check(log.toString().equals("[upload fast, upload slow, upload after uploaded, loaded]"), "steps ran as " + log);
+    check(loader.getPendingUploadCount() == 0, "steps left over");
+  }
+
+  private static void verifyBudget() throws Exception {
+    final AssetLoader loader = new AssetLoader(1);
+    final int[] ran = new int[1];
+    for (int i = 0; i < 10; i++) {
+      loader.upload(new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+          ran[0]++;
+          Thread.sleep(3);
+          return null;
+        }
+      });
+    }
+    loader.runUploads(BUDGET_NANOS);
+    // a third step could only start 6 ms in
+    check(ran[0] == 1 || ran[0] == 2, "a 4 ms budget ran " + ran[0] + " steps of 3 ms");
+    final int before = ran[0];
+    loader.runUploads(0);
+    check(ran[0] == before + 1, "a spent budget should still run one step, ran " + (ran[0] - before));
+    loader.finishUploads();
+    check(ran[0] == 10, "finishUploads left steps behind");
+  }
+
+  /**
+   * Many times over, as a load finishing just as finishUploads looks must not read as steps waiting on each other.
+   */
+  private static void verifyFailure() {
+    final AssetLoader loader = new AssetLoader(1);
+    for (int i = 0; i < 2000; i++) {
+      final Future<String> broken = loader.load(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          throw new IllegalStateException("no such shader");
+        }
+      });
+      loader.upload(new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return broken.get();
+        }
+      }, broken);
+      try {
+        loader.finishUploads();
+        fail("a failed load did not surface");
+      } catch (RuntimeException e) {
+        check(e.getCause() instanceof IllegalStateException, "failure surfaced as " + e.getCause() + " on run " + i);
+      }
+    }
+  }
+
+  private static void verifyNeverQueued() {
+    final AssetLoader loader = new AssetLoader(1);
+    final Future<String> elsewhere = new AssetLoader(1).upload(sleepThen(0, "elsewhere"));
+    loader.upload(sleepThen(0, null), loader.load(sleepThen(1, null)), elsewhere);
+    try {
+      loader.finishUploads();
+      fail("a step after a step never run did not surface");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Seven loads of 5 to 40 ms, each feeding a 2 ms GL step: how long until
+   * the first frame of any kind, and until the first real one.
+   */
+  private static void compareStartup() throws Exception {
+    for (int blocking = 1; blocking >= 0; blocking--) {
+      final AssetLoader loader = new AssetLoader(AssetLoader.defaultThreadCount());
+      final long start = System.nanoTime();
+      final int[] sleeps = {5, 5, 10, 5, 5, 40, 20};
+      for (int sleep : sleeps)
+        loader.upload(sleepThen(2, null), loader.load(sleepThen(sleep, null)));
+      long firstFrame = 0;
+      int placeholders = 0;
+      if (blocking == 1) {
+        loader.finishUploads();
+      } else {
+        while (!loader.runUploads(BUDGET_NANOS)) {
+          if (firstFrame == 0)
+            firstFrame = System.nanoTime();
+          placeholders++;
+          // the rest of a placeholder frame is waiting for vsync
+          final long untilVsync = FRAME_NANOS - (System.nanoTime() - start) % FRAME_NANOS;
+          Thread.sleep(untilVsync / 1000000L, (int) (untilVsync % 1000000L));
+        }
+      }
+      final long loaded = System.nanoTime();
+      System.out.println(String.format("%-9s first frame %6.1f ms, loaded %6.1f ms, %d placeholder frames, %d workers",
+          blocking == 1 ? "blocking" : "budgeted", ((firstFrame == 0 ? loaded : firstFrame) - start) / 1e6,
+          (loaded - start) / 1e6, placeholders, AssetLoader.defaultThreadCount()));
+    }
+  }
+
+  private static <T> Callable<T> sleepThen(final long millis, final T value) {
+    return new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        Thread.sleep(millis);
+        return value;
+      }
+    };
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
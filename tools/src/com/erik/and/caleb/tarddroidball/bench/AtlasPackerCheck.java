@@ -0,0 +1,153 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.AtlasPacker;
+import com.erik.and.caleb.tarddroidball.texture.TextureCompiler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Packs random rectangle sets with {@link AtlasPacker} and checks that every
+ * rectangle lies inside the atlas, on the alignment grid when one is asked
+ * for, and no two come within two paddings of each other, that gutters wrap
+ * or clamp as asked and that texture rects stay on texel centres. Then packs
+ * the app's textures as {@link TextureCompiler} does and prints the layout.
+ * Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then, from the project root:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.AtlasPackerCheck [grass_side.png grass_top.png tard_tex.png ...]
+ * </pre>
+ */
+public class AtlasPackerCheck {
+
+  private static final int PADDING = 2;
+  private static final int MAX_SIZE = 2048;
+
+  public static void main(String[] args) throws IOException {
+    final Random random = new Random(42);
+    long usedArea = 0;
+    long atlasArea = 0;
+    for (int set = 0; set < 200; set++) {
+      final boolean powerOfTwo = (set & 1) != 0;
+      final int alignment = set % 3 == 2 ? 8 : 1;
+      final AtlasPacker packer = new AtlasPacker(PADDING, alignment, MAX_SIZE, powerOfTwo);
+      final int count = 1 + random.nextInt(40);
+      for (int i = 0; i < count; i++) {
+        final int w = 1 + random.nextInt(random.nextBoolean() ? 32 : 200);
+        final int h = 1 + random.nextInt(random.nextBoolean() ? 32 : 200);
+        packer.add(w, h);
+        usedArea += (long) w * h;
+      }
+      packer.pack();
+      verifyLayout(packer, powerOfTwo, alignment, "set " + set);
+      atlasArea += (long) packer.getAtlasWidth() * packer.getAtlasHeight();
+    }
+    System.out.println(String.format("200 random sets packed without overlap, %.1f%% of atlas area used", usedArea * 100.0 / atlasArea));
+
+    verifyBlit();
+    verifyTextureRects();
+    System.out.println("gutters and texture rects check out");
+
+    final String[] files = args.length > 0 ? args
+        : new String[]{"res/drawable/grass_side.png", "res/drawable/grass_top.png", "res/drawable/tard_tex.png"};
+    // packed as the texture compiler packs them
+    final AtlasPacker packer = new AtlasPacker(TextureCompiler.PADDING, TextureCompiler.ALIGNMENT, MAX_SIZE, true);
+    long imageArea = 0;
+    for (String file : files) {
+      final BufferedImage image = ImageIO.read(new File(file));
+      if (image == null)
+        fail("Cannot read " + file);
+      packer.add(image.getWidth(), image.getHeight());
+      imageArea += (long) image.getWidth() * image.getHeight();
+    }
+    packer.pack();
+    verifyLayout(packer, true, TextureCompiler.ALIGNMENT, "app textures");
+    System.out.println(String.format("app textures: %dx%d atlas, %.1f%% used",
+        packer.getAtlasWidth(), packer.getAtlasHeight(), imageArea * 100.0 / ((long) packer.getAtlasWidth() * packer.getAtlasHeight())));
+    final float[] rect = new float[4];
+    for (int i = 0; i < files.length; i++) {
+      packer.getTextureRect(i, rect, 0);
+      System.out.println(String.format("  %-32s %4dx%-4d at (%4d, %4d)  uv rect %.5f %.5f %.5f %.5f", new File(files[i]).getName(),
+          packer.getWidth(i), packer.getHeight(i), packer.getX(i), packer.getY(i), rect[0], rect[1], rect[2], rect[3]));
+    }
+  }
+
+  private static void verifyLayout(AtlasPacker packer, boolean powerOfTwo, int alignment, String what) {
+    final int width = packer.getAtlasWidth();
+    final int height = packer.getAtlasHeight();
+    if (width > MAX_SIZE || height > MAX_SIZE)
+      fail(what + ": atlas " + width + "x" + height + " is over the limit");
+    if (powerOfTwo && (Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1))
+      fail(what + ": atlas " + width + "x" + height + " is not a power of two");
+    for (int i = 0; i < packer.getCount(); i++) {
+      final int x = packer.getX(i);
+      final int y = packer.getY(i);
+      if (x < 0 || y < 0 || x + packer.getWidth(i) > width || y + packer.getHeight(i) > height)
+        fail(what + ": rectangle " + i + " sticks out of the atlas");
+      if (x % alignment != 0 || y % alignment != 0)
+        fail(what + ": rectangle " + i + " at (" + x + ", " + y + ") is off the " + alignment + " texel grid");
+      for (int j = 0; j < i; j++) {
+        // padded rectangles must not overlap, so contents are at least two gutters apart
+        final boolean apart = x + packer.getWidth(i) + 2 * PADDING <= packer.getX(j)
+            || packer.getX(j) + packer.getWidth(j) + 2 * PADDING <= x
+            || y + packer.getHeight(i) + 2 * PADDING <= packer.getY(j)
+            || packer.getY(j) + packer.getHeight(j) + 2 * PADDING <= y;
+        if (!apart)
+          fail(what + ": rectangles " + i + " and " + j + " are closer than the padding allows");
+      }
+    }
+  }
+
+  private static void verifyBlit() {
+    // a 3x2 image at (2, 2) of an 8x6 atlas, texels numbered 10 * row + column
+    final int[] image = {0, 1, 2, 10, 11, 12};
+    final int[] atlas = new int[8 * 6];
+    AtlasPacker.blit(atlas, 8, 6, image, 3, 2, 2, 2, PADDING, true);
+    expect(atlas[2 * 8 + 2], 0, "wrapped content");
+    expect(atlas[3 * 8 + 4], 12, "wrapped content");
+    expect(atlas[2 * 8 + 1], 2, "wrapped left gutter");
+    expect(atlas[2 * 8 + 5], 0, "wrapped right gutter");
+    expect(atlas[1 * 8 + 2], 10, "wrapped top gutter");
+    expect(atlas[0 * 8 + 0], 1, "wrapped corner");
+    AtlasPacker.blit(atlas, 8, 6, image, 3, 2, 2, 2, PADDING, false);
+    expect(atlas[2 * 8 + 0], 0, "clamped left gutter");
+    expect(atlas[5 * 8 + 6], 12, "clamped corner");
+    expect(atlas[0 * 8 + 3], 1, "clamped top gutter");
+  }
+
+  private static void verifyTextureRects() {
+    final AtlasPacker packer = new AtlasPacker(PADDING, MAX_SIZE, false);
+    packer.add(128, 64);
+    packer.add(16, 16);
+    packer.pack();
+    final float[] uvs = {0.0f, 0.0f, 1.0f, 1.0f};
+    packer.remapTextureCoordinates(1, uvs, 0, 2);
+    // the corners of the image land on its corner texels' centres
+    expect(uvs[0] * packer.getAtlasWidth(), packer.getX(1) + 0.5f, "remapped u");
+    expect(uvs[1] * packer.getAtlasHeight(), packer.getY(1) + 0.5f, "remapped v");
+    expect(uvs[2] * packer.getAtlasWidth(), packer.getX(1) + 15.5f, "remapped u");
+    expect(uvs[3] * packer.getAtlasHeight(), packer.getY(1) + 15.5f, "remapped v");
+    if (uvs[2] >= 1.0f || uvs[3] >= 1.0f)
+      fail("remapped coordinates reach the atlas edge, past the image's last texel centres");
+  }
+
+  private static void expect(float actual, float expected, String what) {
+    if (Math.abs(actual - expected) > 1e-3f)
+      fail(what + ": expected " + expected + ", got " + actual);
+  }
+
+  private static void expect(int actual, int expected, String what) {
+    if (actual != expected)
+      fail(what + ": expected " + expected + ", got " + actual);
+  }
+
+  private static void fail(String message) {
+    System.err.println(message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,40 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+/**
+ * One measured operation for {@link BenchmarkRunner}. The runner calls setUp
+ * once per scene size, then run() repeatedly for warm-up and measurement.
+ * Everything run() needs should be prepared in setUp so that only the work
+ * being measured shows up in the time and allocation figures.
+ */
+public abstract class Benchmark {
+
+  private final String mName;
+
+  protected Benchmark(String name) {
+    mName = name;
+  }
+
+  public String getName() {
+    return mName;
+  }
+
+  /**
+   * @param size number of objects, events or sources one run() handles
+   */
+  public abstract void setUp(int size) throws Exception;
+
+  /**
+   * Performs one operation. The result must depend on the work done, so the JIT cannot discard it.
+   */
+  public abstract long run() throws Exception;
+
+  /**
+   * @return figures the timings do not show, such as work avoided, over the runs since setUp; null for none
+   */
+  public String getNote() {
+    return null;
+  }
+
+  public void tearDown() throws Exception {
+  }
+}
@@ -0,0 +1,167 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the CPU-side benchmarks on a desktop JVM and prints throughput,
+ * allocation per operation and GC activity for every scene size.
+ * <p/>
+ * There is no build module, so everything is compiled by hand. Only
+ * RawResourceReader and the GL wrappers need the Android SDK jar, and only to
+ * compile and load; nothing from it is called:
+ * <pre>
+ * ANDROID_JAR=$ANDROID_HOME/platforms/android-10/android.jar
+ * javac -cp $ANDROID_JAR -d /tmp/bench $(find tools/src -name '*.java') \
+ *     $(find src/com/erik/and/caleb/tarddroidball/math -name '*.java') \
+ *     src/com/erik/and/caleb/tarddroidball/{SceneGraph,SceneGeometry,InterleavedMesh,IndexedMesh,IndexedMeshBuilder,TouchEventRing,TouchIntegrator}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{AtlasPacker,TextureContainer,TextureAtlas,AssetLoader,ShaderPermutation,ShaderPreprocessor}.java \
+ *     src/com/erik/and/caleb/tarddroidball/gl/{Gl,GlTrace,GlTraceWriter,RecordingGl}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{MeshBounds,MeshContainer,MappedResource,VertexLayout,GlStateTracker,TextureTiling}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{VoxelChunk,VoxelWorld,ChunkMesh,ChunkMesher,ChunkCodec,RegionFile,ChunkStreamer}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{SimplexNoise,TerrainGenerator}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{PhysicsWorld,BroadPhase,CollisionPairs,SpatialHashBroadPhase,SweepAndPruneBroadPhase}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{FixedTimestepSimulation,Simulation,SimulationState,Frustum,BoundingVolumeHierarchy,TardisScene}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{LogLinearHistogram,FrameProfiler}.java \
+ *     src/com/erik/and/caleb/tarddroidball/{ShaderProgram,ShaderCache,VertexBuffer,BatchedMeshRenderer,InstanceBatcher,ChunkRenderer}.java \
+ *     src/com/learnopengles/android/{ShapeBuilder,RawResourceReader,ShaderHelper}.java
+ * java -cp /tmp/bench:$ANDROID_JAR com.erik.and.caleb.tarddroidball.bench.BenchmarkRunner \
+ *     [--sizes 1,100,10000,100000] [--warmup ms] [--time ms] [name filter ...]
+ * </pre>
+ * Run from the project root; the shader and texture benchmarks read res.
+ */
+public class BenchmarkRunner {
+
+  private static volatile long sSink;
+  // looked up once: the lookup allocates, by a varying amount once compiled, and would show up in what it measures
+  private static final java.lang.management.ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  public static void main(String[] args) throws Exception {
+    int[] sizes = {1, 100, 10000, 100000};
+    long warmupMillis = 500;
+    long measureMillis = 1000;
+    final List<String> filters = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--sizes")) {
+        final String[] parts = args[++i].split(",");
+        sizes = new int[parts.length];
+        for (int p = 0; p < parts.length; p++)
+          sizes[p] = Integer.parseInt(parts[p].trim());
+      } else if (args[i].equals("--warmup")) {
+        warmupMillis = Long.parseLong(args[++i]);
+      } else if (args[i].equals("--time")) {
+        measureMillis = Long.parseLong(args[++i]);
+      } else {
+        filters.add(args[i]);
+      }
+    }
+
+    final Benchmark[] benchmarks = {
+        new GeometryBenchmarks.ShapeBuilderCubes(),
+        new GeometryBenchmarks.SceneArrays(),
+        new GeometryBenchmarks.IndexedTardis(),
+        new MatrixBenchmarks.PerObjectMatrixCalls(),
+        new MatrixBenchmarks.SceneGraphUpdate("matrix.sceneGraphStill", 0.0f),
+        new MatrixBenchmarks.SceneGraphUpdate("matrix.sceneGraph1pct", 0.01f),
+        new MatrixBenchmarks.SceneGraphUpdate("matrix.sceneGraph10pct", 0.1f),
+        new MatrixBenchmarks.SceneGraphUpdate("matrix.sceneGraphAll", 1.0f),
+        new MatrixBenchmarks.RecomputeEverything(),
+        new MathBenchmarks.ReferenceMultiply(),
+        new MathBenchmarks.Mat4Multiply(),
+        new MathBenchmarks.Mat4MultiplyByAffineBatch(),
+        new MathBenchmarks.ArenaMultiply(),
+        new MathBenchmarks.ArenaMultiplyAffine(),
+        new MathBenchmarks.ReferencePoints(),
+        new MathBenchmarks.Mat4Points(),
+        new MathBenchmarks.ArenaPoints(),
+        new TouchBenchmarks.Ring(),
+        new TouchBenchmarks.CopyOnWriteList(),
+        new ShaderSourceBenchmark(),
+        new TextureLoadBenchmarks.Png(),
+        new TextureLoadBenchmarks.Compiled(),
+        new VoxelBenchmarks.Naive(),
+        new VoxelBenchmarks.Greedy(),
+        new VoxelBenchmarks.GreedyPooled(),
+        new TerrainBenchmarks.Generate(),
+        new TerrainBenchmarks.GeneratePooled(),
+        new PhysicsBenchmarks.HashStep(),
+        new PhysicsBenchmarks.SapStep(),
+    };
+
+    System.out.println(String.format("%-24s %7s %14s %14s %12s %8s %8s",
+        "benchmark", "size", "ops/s", "ns/op", "B/op", "gc", "gc ms"));
+    for (Benchmark benchmark : benchmarks) {
+      if (!matches(benchmark.getName(), filters))
+        continue;
+      for (int size : sizes)
+        measure(benchmark, size, warmupMillis * 1000000L, measureMillis * 1000000L);
+    }
+  }
+
+  private static boolean matches(String name, List<String> filters) {
+    if (filters.isEmpty())
+      return true;
+    for (String filter : filters) {
+      if (name.contains(filter))
+        return true;
+    }
+    return false;
+  }
+
+  private static void measure(Benchmark benchmark, int size, long warmupNanos, long measureNanos) throws Exception {
+    benchmark.setUp(size);
+    long sink = 0;
+    long start = System.nanoTime();
+    do {
+      sink += benchmark.run();
+    } while (System.nanoTime() - start < warmupNanos);
+
+    final long allocatedBefore = allocatedBytes();
+    final long gcCountBefore = gcCount();
+    final long gcTimeBefore = gcMillis();
+    long operations = 0;
+    long elapsed;
+    start = System.nanoTime();
+    do {
+      sink += benchmark.run();
+      operations++;
+    } while ((elapsed = System.nanoTime() - start) < measureNanos);
+    final long allocated = allocatedBytes() - allocatedBefore;
+    final long gcCount = gcCount() - gcCountBefore;
+    final long gcTime = gcMillis() - gcTimeBefore;
+    final String note = benchmark.getNote();
+    benchmark.tearDown();
+    sSink += sink;
+
+    System.out.println(String.format("%-24s %7d %14.1f %14.1f %12s %8d %8d%s",
+        benchmark.getName(), size, operations * 1e9 / elapsed, (double) elapsed / operations,
+        allocatedBefore < 0 ? "n/a" : String.valueOf(allocated / operations), gcCount, gcTime,
+        note == null ? "" : "  " + note));
+  }
+
+  /**
+   * Bytes allocated so far by this thread, or -1 where the JVM cannot tell.
+   */
+  static long allocatedBytes() {
+    final java.lang.management.ThreadMXBean threads = THREADS;
+    if (threads instanceof com.sun.management.ThreadMXBean)
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    return -1;
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      count += Math.max(0, gc.getCollectionCount());
+    return count;
+  }
+
+  private static long gcMillis() {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+      time += Math.max(0, gc.getCollectionTime());
+    return time;
+  }
+}
@@ -0,0 +1,230 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.ChunkMesh;
+import com.erik.and.caleb.tarddroidball.ChunkMesher;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Meshes a few worlds both ways and checks every chunk against faces found
+ * block by block: the naive mesh must have exactly the faces between a block
+ * and air, and the greedy mesh must cover exactly those faces once each.
+ * Every quad must wind counterclockwise around its normal, sit in its face's
+ * texture and lie inside the mesh's bounds. Then prints the quads each way
+ * beside six per block, and chunks/s on 1 to n workers. Exits non-zero on
+ * failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.ChunkMesherCheck
+ * </pre>
+ */
+public class ChunkMesherCheck {
+
+  private static final int STRIDE = ChunkMesh.LAYOUT.getStride();
+  private static final int NORMAL_OFFSET = ChunkMesh.LAYOUT.getOffset(1);
+
+  public static void main(String[] args) throws Exception {
+    final String[] names = {"hills", "generated", "noise", "one block", "empty"};
+    final VoxelWorld[] worlds = {VoxelBenchmarks.hills(4, 4), TerrainBenchmarks.generated(4, 4), noise(3, 3, 0.4),
+        new VoxelWorld(2, 2), new VoxelWorld(1, 1)};
+    worlds[3].getChunk(1, 1).set(0, 0, 0, VoxelChunk.GRASS);
+    final ChunkMesher mesher = new ChunkMesher();
+    System.out.println(String.format("%-10s %7s %10s %10s %10s %12s", "world", "chunks", "6/block", "naive", "greedy", "greedy bytes"));
+    for (int w = 0; w < worlds.length; w++) {
+      final VoxelWorld world = worlds[w];
+      long solid = 0, naive = 0, greedy = 0, bytes = 0;
+      for (int c = 0; c < world.getChunkCount(); c++) {
+        final VoxelChunk chunk = world.getChunk(c);
+        final Set<Long> expected = visibleFaces(world, chunk);
+        final ChunkMesh naiveMesh = mesher.mesh(world, chunk.getChunkX(), chunk.getChunkZ(), false);
+        final ChunkMesh greedyMesh = mesher.mesh(world, chunk.getChunkX(), chunk.getChunkZ(), true);
+        check(naiveMesh.getQuadCount() == expected.size(), names[w] + " " + chunk + ": naive mesh has "
+            + naiveMesh.getQuadCount() + " quads for " + expected.size() + " visible faces");
+        check(covered(world, naiveMesh).equals(expected), names[w] + " " + chunk + ": naive mesh covers the wrong faces");
+        check(covered(world, greedyMesh).equals(expected), names[w] + " " + chunk + ": greedy mesh covers the wrong faces");
+        solid += 6L * chunk.countSolid();
+        naive += naiveMesh.getQuadCount();
+        greedy += greedyMesh.getQuadCount();
+        bytes += greedyMesh.getVertices().capacity();
+      }
+      System.out.println(String.format("%-10s %7d %10d %10d %10d %12d", names[w], world.getChunkCount(), solid, naive, greedy, bytes));
+    }
+    System.out.println("faces, winding, textures and bounds check out");
+    compareWorkers(VoxelBenchmarks.hills(VoxelBenchmarks.WORLD_CHUNKS, VoxelBenchmarks.WORLD_CHUNKS));
+  }
+
+  private static VoxelWorld noise(int chunksX, int chunksZ, double fill) {
+    final VoxelWorld world = new VoxelWorld(chunksX, chunksZ);
+    final Random random = new Random(22);
+    for (int c = 0; c < world.getChunkCount(); c++) {
+      final VoxelChunk chunk = world.getChunk(c);
+      for (int y = 0; y < 24; y++) {
+        for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+          for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+            if (random.nextDouble() < fill)
+              chunk.set(x, y, z, (byte) (1 + random.nextInt(VoxelChunk.BLOCK_TYPES - 1)));
+          }
+        }
+      }
+    }
+    return world;
+  }
+
+  /**
+   * Every face between a block and air, block by block, keyed as
+   * {@link #face} does; below the world counts as solid.
+   */
+  private static Set<Long> visibleFaces(VoxelWorld world, VoxelChunk chunk) {
+    final Set<Long> faces = new HashSet<Long>();
+    final int baseX = chunk.getChunkX() * VoxelChunk.WIDTH;
+    final int baseZ = chunk.getChunkZ() * VoxelChunk.DEPTH;
+    final int[] cell = new int[3];
+    for (int y = 0; y < VoxelChunk.HEIGHT; y++) {
+      for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+        for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+          if (chunk.get(x, y, z) == VoxelChunk.AIR)
+            continue;
+          for (int axis = 0; axis < 3; axis++) {
+            for (int direction = -1; direction <= 1; direction += 2) {
+              cell[0] = baseX + x;
+              cell[1] = y;
+              cell[2] = baseZ + z;
+              cell[axis] += direction;
+              if (cell[1] >= 0 && world.getBlock(cell[0], cell[1], cell[2]) == VoxelChunk.AIR)
+                faces.add(face(axis, direction, baseX + x, y, baseZ + z));
+            }
+          }
+        }
+      }
+    }
+    return faces;
+  }
+
+  /**
+   * The block faces a mesh's quads cover, checking each quad on the way;
+   * fails if any face is covered twice or drawn in another block's texture.
+   */
+  private static Set<Long> covered(VoxelWorld world, ChunkMesh mesh) {
+    final Set<Long> faces = new HashSet<Long>();
+    final ByteBuffer vertices = mesh.getVertices();
+    final int baseX = mesh.getChunkX() * VoxelChunk.WIDTH;
+    final int baseZ = mesh.getChunkZ() * VoxelChunk.DEPTH;
+    final int[][] corners = new int[4][3];
+    for (int texture = 0; texture < ChunkMesher.TEXTURE_COUNT; texture++) {
+      for (int q = 0; q < mesh.getQuadCount(texture); q++) {
+        final int quad = (mesh.getFirstQuad(texture) + q) * ChunkMesh.VERTICES_PER_QUAD * STRIDE;
+        for (int c = 0; c < 4; c++) {
+          for (int k = 0; k < 3; k++)
+            corners[c][k] = vertices.get(quad + c * STRIDE + k) & 0xff;
+        }
+        int axis = -1;
+        int direction = 0;
+        for (int k = 0; k < 3; k++) {
+          final int n = vertices.get(quad + NORMAL_OFFSET + k);
+          if (n != 0) {
+            check(axis < 0 && Math.abs(n) == 127, mesh + ": normal is not along one axis");
+            axis = k;
+            direction = n > 0 ? 1 : -1;
+          }
+        }
+        check(axis >= 0, mesh + ": quad without a normal");
+        final int[] winding = cross(corners[0], corners[1], corners[2]);
+        check(winding[axis] * direction > 0 && winding[(axis + 1) % 3] == 0 && winding[(axis + 2) % 3] == 0,
+            mesh + ": quad winds against its normal");
+        final int u = (axis + 1) % 3, v = (axis + 2) % 3;
+        final int plane = corners[0][axis];
+        int minU = Integer.MAX_VALUE, maxU = 0, minV = Integer.MAX_VALUE, maxV = 0;
+        for (int c = 0; c < 4; c++) {
+          check(corners[c][axis] == plane, mesh + ": quad is not flat");
+          check(corners[c][1] >= mesh.getBounds().getMinY() && corners[c][1] <= mesh.getBounds().getMaxY(), mesh + ": quad outside bounds");
+          minU = Math.min(minU, corners[c][u]);
+          maxU = Math.max(maxU, corners[c][u]);
+          minV = Math.min(minV, corners[c][v]);
+          maxV = Math.max(maxV, corners[c][v]);
+        }
+        final int[] cell = new int[3];
+        cell[axis] = direction > 0 ? plane - 1 : plane;
+        for (int j = minV; j < maxV; j++) {
+          for (int i = minU; i < maxU; i++) {
+            cell[u] = i;
+            cell[v] = j;
+            check(faces.add(face(axis, direction, baseX + cell[0], cell[1], baseZ + cell[2])), mesh + ": face covered twice");
+            final int block = world.getBlock(baseX + cell[0], cell[1], baseZ + cell[2]);
+            check(ChunkMesher.getFaceTexture(block, axis * 2 + (direction > 0 ? 1 : 0)) == texture,
+                mesh + ": face of block " + block + " on axis " + axis + " in texture " + texture);
+          }
+        }
+      }
+    }
+    return faces;
+  }
+
+  private static long face(int axis, int direction, int x, int y, int z) {
+    return ((((long) (axis * 2 + (direction > 0 ? 1 : 0)) * 4096 + x) * VoxelChunk.HEIGHT + y) * 4096) + z;
+  }
+
+  private static int[] cross(int[] a, int[] b, int[] c) {
+    final int ux = b[0] - a[0], uy = b[1] - a[1], uz = b[2] - a[2];
+    final int vx = c[0] - a[0], vy = c[1] - a[1], vz = c[2] - a[2];
+    return new int[]{uy * vz - uz * vy, uz * vx - ux * vz, ux * vy - uy * vx};
+  }
+
+  private static void compareWorkers(final VoxelWorld world) throws Exception {
+    final int rounds = 20;
+    final int cores = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      final ExecutorService pool = Executors.newFixedThreadPool(threads);
+      final ThreadLocal<ChunkMesher> meshers = new ThreadLocal<ChunkMesher>() {
+        @Override
+        protected ChunkMesher initialValue() {
+          return new ChunkMesher();
+        }
+      };
+      long start = 0;
+      // the first rounds warm up
+      for (int round = -rounds; round < rounds; round++) {
+        if (round == 0)
+          start = System.nanoTime();
+        final List<Future<ChunkMesh>> meshes = new ArrayList<Future<ChunkMesh>>();
+        for (int c = 0; c < world.getChunkCount(); c++) {
+          final VoxelChunk chunk = world.getChunk(c);
+          meshes.add(pool.submit(new Callable<ChunkMesh>() {
+            @Override
+            public ChunkMesh call() {
+              return meshers.get().mesh(world, chunk.getChunkX(), chunk.getChunkZ(), true);
+            }
+          }));
+        }
+        for (Future<ChunkMesh> mesh : meshes)
+          mesh.get();
+      }
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      pool.shutdown();
+      System.out.println(String.format("%2d workers %10.0f chunks/s", threads, rounds * world.getChunkCount() / seconds));
+      if (threads < cores && threads * 2 > cores)
+        threads = cores / 2;
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,303 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.ChunkCodec;
+import com.erik.and.caleb.tarddroidball.ChunkStreamer;
+import com.erik.and.caleb.tarddroidball.RegionFile;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that chunks survive run-length coding and region files, reopened
+ * and rewritten, then walks a {@link ChunkStreamer} around a world with a
+ * budget well under its size: after every step everything within the radius
+ * must be resident, the rest must fit the budget, every eviction must take
+ * the chunk needed least recently, and edits must survive eviction and a
+ * new streamer. Then prints load latency and resident memory for the same
+ * walk, first generating every chunk and then reading them back. Exits
+ * non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.ChunkStreamerCheck
+ * </pre>
+ */
+public class ChunkStreamerCheck {
+
+  private static final int WORLD_CHUNKS = 16;
+  private static final int RADIUS = 2;
+  private static final int BUDGET_CHUNKS = 40;
+
+  private static final ChunkStreamer.Generator HILLS = new ChunkStreamer.Generator() {
+    @Override
+    public void generate(VoxelChunk chunk) {
+      for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+        for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+          final int worldX = chunk.getChunkX() * VoxelChunk.WIDTH + x;
+          final int worldZ = chunk.getChunkZ() * VoxelChunk.DEPTH + z;
+          chunk.fillColumn(x, z, 0, 40 + (int) (12 * Math.sin(worldX * 0.11) * Math.cos(worldZ * 0.07)), VoxelChunk.GRASS);
+        }
+      }
+    }
+  };
+
+  public static void main(String[] args) throws Exception {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "chunk-streamer-check");
+    verifyCodec();
+    verifyRegionFile(directory);
+    verifyStreaming(directory);
+    System.out.println("coding, region files, eviction and persistence check out");
+    measure(directory);
+  }
+
+  private static void verifyCodec() throws IOException {
+    final VoxelWorld world = VoxelBenchmarks.hills(1, 1);
+    final byte[][] chunks = {world.getChunk(0).getBlocks(), new byte[VoxelChunk.VOLUME], noise(7).getBlocks(),
+        new byte[VoxelChunk.VOLUME]};
+    Arrays.fill(chunks[3], VoxelChunk.GRASS);
+    final byte[] coded = new byte[ChunkCodec.MAX_ENCODED_SIZE];
+    final byte[] decoded = new byte[VoxelChunk.VOLUME];
+    for (byte[] blocks : chunks) {
+      final int length = ChunkCodec.encode(blocks, coded);
+      ChunkCodec.decode(ByteBuffer.wrap(coded, 0, length), length, decoded);
+      check(Arrays.equals(blocks, decoded), "chunk changed going through the codec");
+    }
+    final byte[] alternating = new byte[VoxelChunk.VOLUME];
+    for (int i = 0; i < alternating.length; i += 2)
+      alternating[i] = VoxelChunk.GRASS;
+    check(ChunkCodec.encode(alternating, coded) == ChunkCodec.MAX_ENCODED_SIZE, "runs of one block should take two bytes each");
+    final int length = ChunkCodec.encode(chunks[0], coded);
+    try {
+      ChunkCodec.decode(ByteBuffer.wrap(coded, 0, length - 2), length - 2, decoded);
+      fail("a chunk cut short decoded");
+    } catch (IOException expected) {
+    }
+    System.out.println(String.format("coded sizes: hills %d, air %d, noise %d, solid %d bytes of %d",
+        ChunkCodec.encode(chunks[0], coded), ChunkCodec.encode(chunks[1], coded), ChunkCodec.encode(chunks[2], coded),
+        ChunkCodec.encode(chunks[3], coded), VoxelChunk.VOLUME));
+  }
+
+  private static void verifyRegionFile(File directory) throws IOException {
+    clear(directory);
+    final File file = new File(directory, RegionFile.getName(0, 0));
+    final VoxelWorld hills = VoxelBenchmarks.hills(RegionFile.CHUNKS, RegionFile.CHUNKS);
+    RegionFile region = new RegionFile(file);
+    for (int i = 0; i < hills.getChunkCount(); i++) {
+      final VoxelChunk chunk = hills.getChunk(i);
+      region.write(chunk.getChunkX(), chunk.getChunkZ(), chunk.getBlocks());
+    }
+    // a noisy chunk needs more sectors than it had, and the next one fewer
+    final VoxelChunk noisy = noise(3);
+    region.write(5, 5, noisy.getBlocks());
+    region.write(6, 5, new byte[VoxelChunk.VOLUME]);
+    region.close();
+
+    region = new RegionFile(file);
+    final byte[] blocks = new byte[VoxelChunk.VOLUME];
+    for (int i = 0; i < hills.getChunkCount(); i++) {
+      final VoxelChunk chunk = hills.getChunk(i);
+      check(region.read(chunk.getChunkX(), chunk.getChunkZ(), blocks), "chunk " + i + " missing after reopening");
+      final byte[] expected = i == 5 * RegionFile.CHUNKS + 5 ? noisy.getBlocks()
+          : i == 5 * RegionFile.CHUNKS + 6 ? new byte[VoxelChunk.VOLUME] : chunk.getBlocks();
+      check(Arrays.equals(expected, blocks), "chunk " + i + " changed after reopening");
+    }
+    final int usedSectors = region.getUsedSectorCount();
+    region.write(5, 5, hills.getChunk(5 * RegionFile.CHUNKS + 5).getBlocks());
+    check(region.getUsedSectorCount() < usedSectors, "rewriting a chunk smaller did not free sectors");
+    // into the sectors just freed, which must not overlap anything still in use
+    region.write(7, 7, noisy.getBlocks());
+    region.close();
+    region = new RegionFile(file);
+    for (int i = 0; i < hills.getChunkCount(); i++) {
+      final VoxelChunk chunk = hills.getChunk(i);
+      region.read(chunk.getChunkX(), chunk.getChunkZ(), blocks);
+      final byte[] expected = i == 7 * RegionFile.CHUNKS + 7 ? noisy.getBlocks()
+          : i == 5 * RegionFile.CHUNKS + 6 ? new byte[VoxelChunk.VOLUME] : chunk.getBlocks();
+      check(Arrays.equals(expected, blocks), "chunk " + i + " changed after moving chunks around");
+    }
+    region.close();
+
+    final RandomAccessFile access = new RandomAccessFile(file, "rw");
+    access.seek(4);
+    access.writeInt(RegionFile.VERSION + 1);
+    access.close();
+    region = new RegionFile(file);
+    check(!region.read(0, 0, blocks), "a region of another version should read as empty");
+    region.close();
+  }
+
+  private static void verifyStreaming(File directory) throws Exception {
+    clear(directory);
+    final Recency recency = new Recency();
+    final VoxelWorld world = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS, false);
+    ChunkStreamer streamer = new ChunkStreamer(world, directory, HILLS, recency, RADIUS, BUDGET_CHUNKS * (long) VoxelChunk.VOLUME);
+    recency.mStreamer = streamer;
+    final int[][] path = walk();
+    // an edit at the start of the walk, which is far behind by its middle
+    settle(streamer, recency, path[0][0], path[0][1]);
+    world.getChunk(path[0][0], path[0][1]).set(3, 100, 4, VoxelChunk.GRASS);
+    streamer.markDirty(path[0][0], path[0][1]);
+    boolean evicted = false;
+    for (int[] step : path) {
+      settle(streamer, recency, step[0], step[1]);
+      for (int z = 0; z < WORLD_CHUNKS; z++) {
+        for (int x = 0; x < WORLD_CHUNKS; x++) {
+          final boolean near = streamer.isNear(x, z);
+          check(!near || streamer.isResident(x, z), "chunk " + x + "," + z + " within the radius is not resident");
+          check(streamer.isResident(x, z) == (world.getChunk(x, z) != null), "world and streamer disagree on " + x + "," + z);
+        }
+      }
+      check(streamer.getResidentBytes() <= streamer.getBudgetBytes(), "resident chunks over budget: " + streamer);
+      evicted |= !streamer.isResident(path[0][0], path[0][1]);
+    }
+    check(evicted, "the walk never evicted the edited chunk");
+    check(streamer.getEvictionCount() > 0 && recency.mEvictions == streamer.getEvictionCount(), "evictions went unreported");
+    settle(streamer, recency, path[0][0], path[0][1]);
+    check(world.getChunk(path[0][0], path[0][1]).get(3, 100, 4) == VoxelChunk.GRASS, "an edit was lost to eviction");
+    streamer.close();
+
+    final VoxelWorld reopened = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS, false);
+    streamer = new ChunkStreamer(reopened, directory, HILLS, new Recency(), RADIUS, BUDGET_CHUNKS * (long) VoxelChunk.VOLUME);
+    settle(streamer, null, path[0][0], path[0][1]);
+    check(reopened.getChunk(path[0][0], path[0][1]).get(3, 100, 4) == VoxelChunk.GRASS, "an edit was lost closing the streamer");
+    check(streamer.getGeneratedCount() == 0, "chunks saved before were generated again");
+    streamer.close();
+  }
+
+  /**
+   * Cold, every chunk generated and saved, then warm, every chunk read back,
+   * walking the same path with the same budget.
+   */
+  private static void measure(File directory) throws Exception {
+    clear(directory);
+    final int[][] path = walk();
+    for (int pass = 0; pass < 2; pass++) {
+      final ChunkStreamer streamer = new ChunkStreamer(new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS, false), directory, HILLS,
+          new Recency(), RADIUS, BUDGET_CHUNKS * (long) VoxelChunk.VOLUME);
+      long maxResident = 0;
+      final long start = System.nanoTime();
+      for (int[] step : path) {
+        settle(streamer, null, step[0], step[1]);
+        maxResident = Math.max(maxResident, streamer.getResidentBytes());
+      }
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      streamer.close();
+      long fileBytes = 0;
+      for (File file : directory.listFiles())
+        fileBytes += file.length();
+      System.out.println(String.format("%-4s %4d loads, %5.2f ms avg, %5.2f ms max, %3d read, %3d generated, %3d evicted, "
+          + "%.1f s walking; resident %d KB max of %d KB; region files %d KB for %d KB of blocks",
+          pass == 0 ? "cold" : "warm", streamer.getLoadCount(), streamer.getAverageLoadMillis(), streamer.getMaxLoadMillis(),
+          streamer.getReadCount(), streamer.getGeneratedCount(), streamer.getEvictionCount(), seconds, maxResident / 1024,
+          streamer.getBudgetBytes() / 1024, fileBytes / 1024, WORLD_CHUNKS * WORLD_CHUNKS * (long) VoxelChunk.VOLUME / 1024));
+    }
+  }
+
+  /**
+   * Around the world's edge, one chunk at a time, then back across the middle.
+   */
+  private static int[][] walk() {
+    final int last = WORLD_CHUNKS - 1 - RADIUS;
+    final int side = last - RADIUS;
+    final int[][] path = new int[side * 4 + side][];
+    int i = 0;
+    for (int k = 0; k < side; k++)
+      path[i++] = new int[]{RADIUS + k, RADIUS};
+    for (int k = 0; k < side; k++)
+      path[i++] = new int[]{last, RADIUS + k};
+    for (int k = 0; k < side; k++)
+      path[i++] = new int[]{last - k, last};
+    for (int k = 0; k < side; k++)
+      path[i++] = new int[]{RADIUS, last - k};
+    for (int k = 0; k < side; k++)
+      path[i++] = new int[]{RADIUS + k, RADIUS + k};
+    return path;
+  }
+
+  private static void settle(ChunkStreamer streamer, Recency recency, int centerX, int centerZ) throws InterruptedException {
+    if (recency != null)
+      recency.touch(centerX, centerZ);
+    while (true) {
+      streamer.update(centerX, centerZ);
+      if (streamer.getPendingLoadCount() == 0)
+        return;
+      Thread.sleep(1);
+    }
+  }
+
+  private static VoxelChunk noise(long seed) {
+    final VoxelChunk chunk = new VoxelChunk(0, 0);
+    final Random random = new Random(seed);
+    for (int i = 0; i < 40 * VoxelChunk.WIDTH * VoxelChunk.DEPTH; i++) {
+      if (random.nextBoolean())
+        chunk.getBlocks()[i] = VoxelChunk.GRASS;
+    }
+    return chunk;
+  }
+
+  private static void clear(File directory) {
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files)
+        check(file.delete(), "could not delete " + file);
+    }
+    directory.mkdirs();
+  }
+
+  /**
+   * When each chunk was last needed, kept alongside the streamer, to check
+   * that every eviction takes the chunk needed least recently.
+   */
+  private static class Recency implements ChunkStreamer.Listener {
+    ChunkStreamer mStreamer;
+    final Map<Integer, Long> mLastNeeded = new HashMap<Integer, Long>();
+    long mClock;
+    int mEvictions;
+
+    void touch(int centerX, int centerZ) {
+      for (int z = centerZ - RADIUS; z <= centerZ + RADIUS; z++) {
+        for (int x = centerX - RADIUS; x <= centerX + RADIUS; x++) {
+          if (mStreamer.isResident(x, z))
+            mLastNeeded.put(z * WORLD_CHUNKS + x, ++mClock);
+        }
+      }
+    }
+
+    @Override
+    public void onChunkLoaded(VoxelChunk chunk) {
+      mLastNeeded.put(chunk.getChunkZ() * WORLD_CHUNKS + chunk.getChunkX(), ++mClock);
+    }
+
+    @Override
+    public void onChunkEvicted(VoxelChunk chunk) {
+      mEvictions++;
+      if (mStreamer == null)
+        return;
+      check(!mStreamer.isNear(chunk.getChunkX(), chunk.getChunkZ()), "evicted " + chunk + " within the radius");
+      final long evicted = mLastNeeded.remove(chunk.getChunkZ() * WORLD_CHUNKS + chunk.getChunkX());
+      for (Map.Entry<Integer, Long> entry : mLastNeeded.entrySet()) {
+        final int x = entry.getKey() % WORLD_CHUNKS, z = entry.getKey() / WORLD_CHUNKS;
+        if (mStreamer.isResident(x, z) && !mStreamer.isNear(x, z))
+          check(entry.getValue() > evicted, "evicted " + chunk + " before " + x + "," + z + ", which was needed longer ago");
+      }
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,192 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.BoundingVolumeHierarchy;
+import com.erik.and.caleb.tarddroidball.Frustum;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.MeshBounds;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.erik.and.caleb.tarddroidball.SimulationState;
+import com.erik.and.caleb.tarddroidball.TardisScene;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link BoundingVolumeHierarchy#cull} against testing every box on its
+ * own with {@link Frustum#classifyBox}, for random boxes and cameras, after
+ * builds of every size around {@link BoundingVolumeHierarchy#LEAF_SIZE} and
+ * after boxes move and the tree is refit; that setting a box to what it was
+ * refits nothing; and that the stress TARDISes of {@link TardisScene}, while
+ * they spin, are never refit and never culled when their bounding spheres
+ * are in view. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.CullingCheck
+ * </pre>
+ */
+public class CullingCheck {
+
+  private static final int[] ITEM_COUNTS = {0, 1, BoundingVolumeHierarchy.LEAF_SIZE,
+      BoundingVolumeHierarchy.LEAF_SIZE + 1, 100, 5000};
+  private static final int CAMERAS = 50;
+  private static final int STRESS_TARDISES = 400;
+
+  private static final Random sRandom = new Random(11);
+  private static final Frustum sFrustum = new Frustum();
+
+  public static void main(String[] args) {
+    for (int items : ITEM_COUNTS)
+      checkCull(items);
+    checkSameBoundsRefitNothing();
+    checkSpinningTardises();
+    System.out.println("BVH culling matches testing every box, and spinning TARDISes are not refit");
+  }
+
+  private static void checkCull(int itemCount) {
+    final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy();
+    final float[] bounds = new float[itemCount * 6];
+    for (int i = 0; i < itemCount; i++)
+      randomBox(bounds, i);
+    // a few boxes share one centre, so the median split has ties to break
+    for (int i = 0; i < itemCount / 10; i++)
+      System.arraycopy(bounds, 0, bounds, i * 6, 6);
+    bvh.build(bounds, itemCount);
+    compareCameras(bvh, bounds, itemCount, "built");
+
+    for (int i = 0; i < itemCount; i += 3) {
+      randomBox(bounds, i);
+      bvh.setItemBounds(i, bounds[i * 6], bounds[i * 6 + 1], bounds[i * 6 + 2], bounds[i * 6 + 3], bounds[i * 6 + 4],
+          bounds[i * 6 + 5]);
+    }
+    bvh.refit();
+    compareCameras(bvh, bounds, itemCount, "refit");
+  }
+
+  private static void compareCameras(BoundingVolumeHierarchy bvh, float[] bounds, int itemCount, String when) {
+    final int[] visible = new int[itemCount];
+    final float[] viewProjection = new float[16];
+    for (int camera = 0; camera < CAMERAS; camera++) {
+      randomCamera(viewProjection);
+      sFrustum.set(viewProjection, 0);
+      final int count = bvh.cull(sFrustum, visible);
+      final int[] found = Arrays.copyOf(visible, count);
+      Arrays.sort(found);
+      final int[] expected = new int[itemCount];
+      int expectedCount = 0;
+      for (int i = 0; i < itemCount; i++) {
+        final int b = i * 6;
+        if (sFrustum.classifyBox(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5])
+            != Frustum.OUTSIDE)
+          expected[expectedCount++] = i;
+      }
+      check(Arrays.equals(found, Arrays.copyOf(expected, expectedCount)), itemCount + " items " + when + ", camera "
+          + camera + ": the tree finds " + count + " visible, testing each box finds " + expectedCount);
+    }
+  }
+
+  private static void checkSameBoundsRefitNothing() {
+    final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy();
+    final float[] bounds = new float[100 * 6];
+    for (int i = 0; i < 100; i++)
+      randomBox(bounds, i);
+    bvh.build(bounds, 100);
+    for (int i = 0; i < 100; i++)
+      bvh.setItemBounds(i, bounds[i * 6], bounds[i * 6 + 1], bounds[i * 6 + 2], bounds[i * 6 + 3], bounds[i * 6 + 4],
+          bounds[i * 6 + 5]);
+    bvh.refit();
+    check(bvh.getLastRefitNodes() == 0, "unchanged boxes refit " + bvh.getLastRefitNodes() + " nodes");
+    bvh.setItemBounds(7, bounds[42], bounds[43], bounds[44], bounds[45] + 1.0f, bounds[46], bounds[47]);
+    bvh.refit();
+    check(bvh.getLastRefitNodes() > 0, "a moved box refit nothing");
+  }
+
+  /**
+   * Spins the stress grid through a turn and more, with the camera panning
+   * across it, as GraphicsRenderer draws it.
+   */
+  private static void checkSpinningTardises() {
+    final MeshBounds tardis = MeshBounds.of(new IndexedMeshBuilder().build(InterleavedMesh.interleave(new float[][]{
+        SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getTardisTextureCoordinateData()}, new int[]{3, 3, 2})).getVertices(), 0);
+    final TardisScene scene = new TardisScene();
+    final int firstStressNode = scene.getScene().getNodeCount();
+    scene.addStressTardises(STRESS_TARDISES);
+    scene.setTardisBounds(tardis);
+
+    final SimulationState state = new SimulationState();
+    final float[] view = new float[16];
+    final float[] projection = new float[16];
+    final float[] viewProjection = new float[16];
+    final float[] sphere = new float[4];
+    final boolean[] culled = new boolean[STRESS_TARDISES];
+    Mat4.frustum(projection, 0, -800.0f / 480, 800.0f / 480, -1.0f, 1.0f, 1.0f, 10.0f);
+    int everCulled = 0;
+    for (int frame = 0; frame < 100; frame++) {
+      state.whiteTardisAngle = frame * 4.7f;
+      Mat4.setLookAt(view, 0, 0.0f, 0.0f, 2.0f, (frame - 50) * 0.2f, 0.0f, -5.0f, 0.0f, 1.0f, 0.0f);
+      scene.update(state, view, projection);
+      final int visible = scene.cullTardises();
+      if (frame > 0)
+        check(scene.getStressBvh().getLastRefitNodes() == 0, "frame " + frame + ": spinning refit "
+            + scene.getStressBvh().getLastRefitNodes() + " nodes");
+
+      Arrays.fill(culled, true);
+      final int[] nodes = scene.getVisibleTardises();
+      for (int i = 0; i < visible; i++) {
+        if (nodes[i] >= firstStressNode)
+          culled[nodes[i] - firstStressNode] = false;
+      }
+      Mat4.multiplyByAffine(viewProjection, 0, projection, 0, view, 0);
+      sFrustum.set(viewProjection, 0);
+      for (int i = 0; i < STRESS_TARDISES; i++) {
+        tardis.transformSphere(scene.getScene().getWorldMatrices(), (firstStressNode + i) * 16, sphere);
+        check(!culled[i] || !sFrustum.intersectsSphere(sphere[0], sphere[1], sphere[2], sphere[3]), "frame " + frame
+            + ": stress TARDIS " + i + " was culled with its bounding sphere in view");
+        if (culled[i])
+          everCulled++;
+      }
+    }
+    check(everCulled > 0, "the stress grid never culled a TARDIS");
+  }
+
+  /**
+   * Writes item i's box somewhere in a 200 unit cube, from a point to 20 units across.
+   */
+  private static void randomBox(float[] bounds, int i) {
+    final float x = sRandom.nextFloat() * 200 - 100, y = sRandom.nextFloat() * 200 - 100, z = sRandom.nextFloat() * 200 - 100;
+    final float size = sRandom.nextInt(4) == 0 ? 0.0f : sRandom.nextFloat() * 20;
+    bounds[i * 6] = x;
+    bounds[i * 6 + 1] = y;
+    bounds[i * 6 + 2] = z;
+    bounds[i * 6 + 3] = x + size * sRandom.nextFloat();
+    bounds[i * 6 + 4] = y + size * sRandom.nextFloat();
+    bounds[i * 6 + 5] = z + size * sRandom.nextFloat();
+  }
+
+  /**
+   * A perspective camera inside the cube, looking a random way.
+   */
+  private static void randomCamera(float[] viewProjection) {
+    final float[] view = new float[16];
+    final float[] projection = new float[16];
+    final float x = sRandom.nextFloat() * 160 - 80, y = sRandom.nextFloat() * 160 - 80, z = sRandom.nextFloat() * 160 - 80;
+    Mat4.setLookAt(view, 0, x, y, z, x + sRandom.nextFloat() - 0.5f, y + sRandom.nextFloat() - 0.5f,
+        z + sRandom.nextFloat() - 0.5f, 0.0f, 1.0f, 0.0f);
+    final float aspect = 0.5f + sRandom.nextFloat();
+    Mat4.frustum(projection, 0, -aspect, aspect, -1.0f, 1.0f, 1.0f, 10.0f + sRandom.nextFloat() * 150);
+    Mat4.multiplyByAffine(viewProjection, 0, projection, 0, view, 0);
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
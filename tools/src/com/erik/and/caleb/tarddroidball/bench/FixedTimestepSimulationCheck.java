@@ -0,0 +1,275 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.FixedTimestepSimulation;
+import com.erik.and.caleb.tarddroidball.Simulation;
+import com.erik.and.caleb.tarddroidball.SimulationState;
+
+import java.util.Random;
+
+/**
+ * Drives a {@link FixedTimestepSimulation} with made-up timestamps: frames
+ * at an exact 60 Hz and frames at uneven intervals, some shorter than a
+ * step, must step the scene to the same state to the bit as stepping a
+ * {@link Simulation} by hand, and a long stall must only catch up so many
+ * steps. Every interpolated read must lie between the two states it blends.
+ * Then the simulation runs on its own thread while this one reads: each
+ * snapshot is tagged with its step, so a read mixing two snapshots, one
+ * going back in time, or one older than the last step once the thread is
+ * stopped shows up. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.FixedTimestepSimulationCheck
+ * </pre>
+ */
+public class FixedTimestepSimulationCheck {
+
+  private static final long STEP_NANOS = 1000000000L / 60;
+  private static final int STEPS = 36000;
+  private static final long START_NANOS = 5000000000L;
+  private static final long THREADED_NANOS = 1000000000L;
+
+  public static void main(String[] args) throws InterruptedException {
+    verifyFrameRates();
+    verifyCatchUp();
+    verifyInterpolation();
+    verifyThreaded();
+    verifyContended();
+    System.out.println("stepping, catching up, interpolation and the threaded handoff check out");
+  }
+
+  /**
+   * Ten minutes of simulated time, long enough for the angles to wrap, at 60 Hz and unevenly.
+   */
+  private static void verifyFrameRates() {
+    final Simulation simulation = new Simulation();
+    final SimulationState previous = new SimulationState();
+    final SimulationState current = new SimulationState();
+    simulation.reset(current);
+    for (int step = 0; step < STEPS; step++) {
+      previous.set(current);
+      simulation.step(current, STEP_NANOS / 1e9f);
+      simulation.wrapAngles(previous, current);
+    }
+    final long end = START_NANOS + STEPS * STEP_NANOS;
+
+    final FixedTimestepSimulation even = new FixedTimestepSimulation(new Simulation(), STEP_NANOS);
+    for (long now = START_NANOS; now <= end; now += STEP_NANOS)
+      check(even.advanceTo(now) == (now == START_NANOS ? 0 : 1), "60 Hz frames did not take one step each");
+
+    final FixedTimestepSimulation uneven = new FixedTimestepSimulation(new Simulation(), STEP_NANOS);
+    final Random random = new Random(9);
+    long now = START_NANOS;
+    while (now < end) {
+      uneven.advanceTo(now);
+      // from a third of a step to three steps, never on the step grid
+      now = Math.min(end, now + STEP_NANOS / 3 + random.nextInt((int) (STEP_NANOS * 8 / 3)));
+    }
+    uneven.advanceTo(end);
+
+    check(even.getStepCount() == STEPS && uneven.getStepCount() == STEPS, "took " + even.getStepCount() + " and "
+        + uneven.getStepCount() + " steps for " + STEPS);
+    final SimulationState expected = new SimulationState();
+    final SimulationState evenState = new SimulationState();
+    final SimulationState unevenState = new SimulationState();
+    // the ends read the states as stepped; in between only the two runs must agree
+    for (int i = 0; i <= 4; i++) {
+      final long at = end + i * STEP_NANOS / 4;
+      final float alpha = even.readInterpolated(at, evenState);
+      check(uneven.readInterpolated(at, unevenState) == alpha && same(unevenState, evenState), "uneven frames read "
+          + describe(unevenState) + " where 60 Hz frames read " + describe(evenState));
+      if (i == 0 || i == 4) {
+        expected.interpolate(previous, current, alpha);
+        check(same(evenState, expected), "stepped to " + describe(evenState) + " instead of " + describe(expected));
+      }
+    }
+  }
+
+  private static void verifyCatchUp() {
+    final FixedTimestepSimulation simulation = new FixedTimestepSimulation(new Simulation(), STEP_NANOS);
+    simulation.advanceTo(START_NANOS);
+    // a second's stall, as after a long GC or a slow load
+    final int steps = simulation.advanceTo(START_NANOS + 60 * STEP_NANOS);
+    check(steps == 10, "caught up " + steps + " steps after a stall");
+    check(simulation.advanceTo(START_NANOS + 61 * STEP_NANOS) == 1, "the stall's dropped time came back");
+  }
+
+  /**
+   * Reads at random times around each step, a bit before and past it too,
+   * and checks every field against the two states it comes from.
+   */
+  private static void verifyInterpolation() {
+    final Simulation simulation = new Simulation();
+    final SimulationState previous = new SimulationState();
+    final SimulationState current = new SimulationState();
+    simulation.reset(current);
+    final FixedTimestepSimulation stepped = new FixedTimestepSimulation(new Simulation(), STEP_NANOS);
+    final SimulationState read = new SimulationState();
+    final Random random = new Random(3);
+    stepped.advanceTo(START_NANOS);
+    for (int step = 1; step <= 1200; step++) {
+      previous.set(current);
+      simulation.step(current, STEP_NANOS / 1e9f);
+      simulation.wrapAngles(previous, current);
+      final long stepNanos = START_NANOS + step * STEP_NANOS;
+      stepped.advanceTo(stepNanos);
+      for (int i = 0; i < 8; i++) {
+        final long at = stepNanos - STEP_NANOS / 2 + (long) (random.nextDouble() * STEP_NANOS * 2);
+        final float alpha = stepped.readInterpolated(at, read);
+        check(alpha >= 0.0f && alpha <= 1.0f, "interpolated by " + alpha);
+        check(between(read.whiteTardisAngle, previous.whiteTardisAngle, current.whiteTardisAngle)
+            && between(read.redTardisAngle, previous.redTardisAngle, current.redTardisAngle)
+            && between(read.lightAngle, previous.lightAngle, current.lightAngle)
+            && between(read.redTardisY, previous.redTardisY, current.redTardisY)
+            && read.redTardisDirection == current.redTardisDirection,
+            "read " + describe(read) + " at step " + step + ", between " + describe(previous) + " and " + describe(current));
+      }
+    }
+  }
+
+  /**
+   * Reads as fast as it can for a second while the simulation thread publishes at 60 Hz.
+   */
+  private static void verifyThreaded() throws InterruptedException {
+    final FixedTimestepSimulation simulation = new FixedTimestepSimulation(new TaggingSimulation(), STEP_NANOS, true);
+    final SimulationState read = new SimulationState();
+    try {
+      simulation.advanceTo(START_NANOS);
+      fail("a threaded simulation took steps from another thread");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    simulation.start();
+    final long start = System.nanoTime();
+    float lastStep = 0;
+    int reads = 0;
+    int newSnapshots = 0;
+    while (System.nanoTime() - start < THREADED_NANOS) {
+      final float alpha = simulation.readInterpolated(System.nanoTime(), read);
+      checkWhole(read, alpha);
+      check(read.redTardisDirection >= lastStep, "read step " + read.redTardisDirection + " after step " + lastStep);
+      if (read.redTardisDirection > lastStep)
+        newSnapshots++;
+      lastStep = read.redTardisDirection;
+      reads++;
+      Thread.yield();
+    }
+    simulation.stop();
+    final long steps = simulation.getStepCount();
+    final float alpha = simulation.readInterpolated(System.nanoTime(), read);
+    checkWhole(read, alpha);
+    check(read.redTardisDirection == steps, "read step " + read.redTardisDirection + " once stopped after " + steps + " steps");
+    check(newSnapshots > 30, "only " + newSnapshots + " new snapshots seen in a second at 60 Hz");
+    System.out.println(String.format("threaded: %d reads saw %d snapshots of %d steps, none torn or stale", reads,
+        newSnapshots, steps));
+  }
+
+  /**
+   * Steps as fast as a thread can, a step per advance, so publishes land in
+   * the middle of reads far more often than at 60 Hz.
+   */
+  private static void verifyContended() throws InterruptedException {
+    final FixedTimestepSimulation simulation = new FixedTimestepSimulation(new TaggingSimulation(), STEP_NANOS);
+    final SimulationState read = new SimulationState();
+    final boolean[] stop = new boolean[1];
+    final Thread stepper = new Thread("Stepper") {
+      @Override
+      public void run() {
+        for (long now = START_NANOS; ; now += STEP_NANOS) {
+          synchronized (stop) {
+            if (stop[0])
+              return;
+          }
+          simulation.advanceTo(now);
+        }
+      }
+    };
+    stepper.start();
+    final long start = System.nanoTime();
+    float lastStep = 0;
+    int reads = 0;
+    while (System.nanoTime() - start < THREADED_NANOS) {
+      // alternately the previous state as it is and the current one
+      final float alpha = simulation.readInterpolated((reads & 1) == 0 ? 0 : Long.MAX_VALUE, read);
+      checkWhole(read, alpha);
+      check(read.redTardisDirection >= lastStep, "read step " + read.redTardisDirection + " after step " + lastStep);
+      lastStep = read.redTardisDirection;
+      reads++;
+    }
+    synchronized (stop) {
+      stop[0] = true;
+    }
+    stepper.join();
+    simulation.readInterpolated(0, read);
+    checkWhole(read, 0);
+    check(read.redTardisDirection == simulation.getStepCount(), "read step " + read.redTardisDirection + " once stopped after "
+        + simulation.getStepCount() + " steps");
+    System.out.println(String.format("contended: %d reads while stepping %d times, none torn or stale", reads,
+        simulation.getStepCount()));
+  }
+
+  /**
+   * A read blends one snapshot's two states only if every field agrees with the step the current state carries.
+   */
+  private static void checkWhole(SimulationState read, float alpha) {
+    final float step = read.redTardisDirection;
+    // before the first step both states are the reset one
+    final float blended = step == 0 ? 0 : step - 1 + alpha;
+    check(Math.abs(read.whiteTardisAngle - blended) < 1e-2f && Math.abs(read.lightAngle - blended * 3) < 3e-2f
+        && Math.abs(read.redTardisY + blended) < 1e-2f && Math.abs(read.redTardisAngle - blended * 0.5f) < 1e-2f,
+        "torn read at step " + step + ", alpha " + alpha + ": " + describe(read));
+  }
+
+  /**
+   * Writes its step number into every field, and into redTardisDirection,
+   * which reads copy from the current state as it is.
+   */
+  private static class TaggingSimulation extends Simulation {
+    @Override
+    public void reset(SimulationState state) {
+      state.whiteTardisAngle = 0;
+      state.redTardisAngle = 0;
+      state.lightAngle = 0;
+      state.redTardisY = 0;
+      state.redTardisDirection = 0;
+    }
+
+    @Override
+    public void step(SimulationState state, float dt) {
+      final float step = state.redTardisDirection + 1;
+      state.whiteTardisAngle = step;
+      state.redTardisAngle = step * 0.5f;
+      state.lightAngle = step * 3;
+      state.redTardisY = -step;
+      state.redTardisDirection = step;
+    }
+
+    @Override
+    public void wrapAngles(SimulationState previous, SimulationState current) {
+    }
+  }
+
+  private static boolean between(float value, float a, float b) {
+    return value >= Math.min(a, b) && value <= Math.max(a, b);
+  }
+
+  private static boolean same(SimulationState a, SimulationState b) {
+    return a.whiteTardisAngle == b.whiteTardisAngle && a.redTardisAngle == b.redTardisAngle && a.lightAngle == b.lightAngle
+        && a.redTardisY == b.redTardisY && a.redTardisDirection == b.redTardisDirection;
+  }
+
+  private static String describe(SimulationState state) {
+    return String.format("(white %s, red %s, light %s, red y %s, direction %s)", state.whiteTardisAngle, state.redTardisAngle,
+        state.lightAngle, state.redTardisY, state.redTardisDirection);
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,342 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.BatchedMeshRenderer;
+import com.erik.and.caleb.tarddroidball.ChunkMesh;
+import com.erik.and.caleb.tarddroidball.ChunkMesher;
+import com.erik.and.caleb.tarddroidball.ChunkRenderer;
+import com.erik.and.caleb.tarddroidball.ChunkStreamer;
+import com.erik.and.caleb.tarddroidball.FixedTimestepSimulation;
+import com.erik.and.caleb.tarddroidball.GlStateTracker;
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.MeshBounds;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.erik.and.caleb.tarddroidball.SceneGraph;
+import com.erik.and.caleb.tarddroidball.ShaderProgram;
+import com.erik.and.caleb.tarddroidball.Simulation;
+import com.erik.and.caleb.tarddroidball.SimulationState;
+import com.erik.and.caleb.tarddroidball.TardisScene;
+import com.erik.and.caleb.tarddroidball.TerrainGenerator;
+import com.erik.and.caleb.tarddroidball.TouchEventRing;
+import com.erik.and.caleb.tarddroidball.VertexLayout;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Runs the steady state of GraphicsRenderer.onDrawFrame off the device,
+ * through the renderer's own {@link TardisScene} and against a
+ * {@link NoOpGl}: touch samples published and integrated, the fixed-step
+ * simulation advanced and interpolated, the green TARDIS dragged and
+ * collided, terrain streamed from region files and drawn, the scene updated
+ * and culled, and the
+ * TARDISes batched through the palette, or pre-transformed once there are
+ * more than it holds or the device has too few uniforms for it. After
+ * {@link #WARMUP_FRAMES} frames, every one of {@link #MEASURED_FRAMES} must
+ * allocate nothing, going by the thread's allocated bytes as
+ * {@link BenchmarkRunner} reads them. Frame stats and profiling, which build
+ * a report once a second and are off by default, are left out, and so is
+ * loading: new chunks and meshes are allocated on purpose. Exits non-zero on
+ * failure, including on a JVM that cannot count allocated bytes.
+ * <p/>
+ * Runs on C1 or the interpreter only: C2's escape analysis hides allocations
+ * Dalvik would make, and its traps allocate on their own now and then.
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -XX:TieredStopAtLevel=1 -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.FrameAllocationCheck
+ * </pre>
+ */
+public class FrameAllocationCheck {
+
+  private static final int WARMUP_FRAMES = 300;
+  private static final int MEASURED_FRAMES = 1000;
+  private static final long FRAME_NANOS = 16666667L;
+
+  public static void main(String[] args) throws Exception {
+    check(BenchmarkRunner.allocatedBytes() >= 0, "this JVM cannot count the bytes a thread allocates");
+    check(isWithoutC2(), "run with -XX:TieredStopAtLevel=1 or -Xint");
+    // the palette, the palette full, the BVH with pre-transformed batches, and a device without room for the palette
+    measure("palette", 0, 128);
+    measure("palette, 20 stress", 20, 128);
+    measure("bvh, 500 stress", 500, 128);
+    measure("no palette", 0, 64);
+    System.out.println("the frame loop allocates nothing once warmed up");
+  }
+
+  private static void measure(String name, int stressTardises, int maxVertexUniformVectors) throws Exception {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "frame-allocation-check");
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files)
+        check(file.delete(), "could not delete " + file);
+    }
+    final Frame frame = new Frame(new NoOpGl(maxVertexUniformVectors), stressTardises, directory);
+    final Random random = new Random(6);
+    long frameNanos = 1000000000L;
+    // until the terrain around the camera is in, then the warm-up proper
+    int frames = 0;
+    while (!frame.isTerrainResident()) {
+      check(++frames < 10000, name + ": terrain did not stream in");
+      frame.draw(frameNanos += FRAME_NANOS);
+      Thread.sleep(1);
+    }
+    for (int i = 0; i < WARMUP_FRAMES; i++)
+      frame.draw(frameNanos += interval(random));
+
+    final long overhead = -BenchmarkRunner.allocatedBytes() + BenchmarkRunner.allocatedBytes();
+    int allocatingFrames = 0;
+    long allocated = 0;
+    for (int i = 0; i < MEASURED_FRAMES; i++) {
+      final long before = BenchmarkRunner.allocatedBytes();
+      frame.draw(frameNanos += interval(random));
+      final long bytes = BenchmarkRunner.allocatedBytes() - before - overhead;
+      if (bytes > 0) {
+        allocatingFrames++;
+        allocated += bytes;
+      }
+    }
+    frame.close();
+    System.out.println(String.format("%-20s %5d frames, %5d allocating, %8d bytes, %3d draws a frame", name,
+        MEASURED_FRAMES, allocatingFrames, allocated, frame.getDrawCalls()));
+    check(allocatingFrames == 0, name + ": " + allocatingFrames + " of " + MEASURED_FRAMES + " frames allocated "
+        + allocated + " bytes after warm-up");
+  }
+
+  /**
+   * Mostly 60 Hz, with the odd late frame and a few early ones.
+   */
+  private static long interval(Random random) {
+    final int roll = random.nextInt(20);
+    return roll == 0 ? FRAME_NANOS * 3 : roll < 3 ? FRAME_NANOS / 2 : FRAME_NANOS;
+  }
+
+  /**
+   * The renderer's per-frame path: everything up to drawing is its own
+   * {@link TardisScene}, called in the same order, and the drawing is the
+   * renderer's with the ground and the debug overlays left out. What
+   * onSurfaceCreated and the loader set up is done up front.
+   */
+  private static class Frame {
+    private static final int TERRAIN_CHUNKS = 8;
+    private static final int TERRAIN_CENTER = TERRAIN_CHUNKS / 2;
+    private static final VertexLayout SCENE_LAYOUT = new VertexLayout.Builder()
+        .add("a_Position", 3, VertexLayout.TYPE_FLOAT, false)
+        .add("a_Normal", 3, VertexLayout.TYPE_BYTE, true)
+        .add("a_TexCoordinate", 2, VertexLayout.TYPE_UNSIGNED_SHORT, true)
+        .constant("a_Color", 1.0f, 1.0f, 1.0f, 1.0f)
+        .build();
+
+    private final Gl mGl;
+    private final GlStateTracker mState;
+    private final TardisScene mTardisScene = new TardisScene();
+    private final SceneGraph mScene = mTardisScene.getScene();
+    private final FixedTimestepSimulation mSimulation = new FixedTimestepSimulation(new Simulation(), FRAME_NANOS);
+    private final SimulationState mFrameState = new SimulationState();
+
+    private final ShaderProgram mProgram;
+    private final ShaderProgram mPointProgram;
+    private final ShaderProgram.Uniform mMVPMatrixUniform;
+    private final ShaderProgram.Uniform mMVMatrixUniform;
+    private final ShaderProgram.Uniform mLightPosUniform;
+    private final ShaderProgram.Uniform mTextureUniform;
+    private final ShaderProgram.Uniform mAtlasRectUniform;
+    private final ShaderProgram.Uniform mPointMVPMatrixUniform;
+    private final int mPointPositionHandle;
+    private final BatchedMeshRenderer mTardisBatch;
+
+    private final ChunkStreamer mStreamer;
+    private final ChunkMesher mChunkMesher = new ChunkMesher();
+    private final ChunkRenderer mChunkRenderer;
+    private final int[] mChunkAttributeHandles;
+    private final int[] mChunkTextureHandles = new int[ChunkMesher.TEXTURE_COUNT];
+    private boolean[] mChunkVisible = new boolean[0];
+
+    private final float[] mViewMatrix = new float[16];
+    private final float[] mProjectionMatrix = new float[16];
+    private final float[] mLightInModelSpace = {0.0f, 0.0f, 0.0f, 1.0f};
+    private final float[] mLightInEyeSpace = new float[4];
+
+    private long mLastFrameNanos;
+    private long mFrameIntervalNanos = FRAME_NANOS;
+    private int mFrames;
+
+    Frame(Gl gl, int stressTardises, File terrainDirectory) {
+      mGl = gl;
+      mState = new GlStateTracker(gl);
+      mState.viewport(0, 0, 800, 480);
+      Mat4.frustum(mProjectionMatrix, 0, -800.0f / 480, 800.0f / 480, -1.0f, 1.0f, 1.0f, 10.0f);
+      Mat4.setLookAt(mViewMatrix, 0, 0.0f, 0.0f, 2.0f, 0.0f, 0.0f, -5.0f, 0.0f, 1.0f, 0.0f);
+      mTardisScene.addStressTardises(stressTardises);
+
+      mProgram = new ShaderProgram(mState, "", "", SCENE_LAYOUT.getAllNames());
+      mMVPMatrixUniform = mProgram.getUniform("u_MVPMatrix");
+      mMVMatrixUniform = mProgram.getUniform("u_MVMatrix");
+      mLightPosUniform = mProgram.getUniform("u_LightPos");
+      mTextureUniform = mProgram.getUniform("u_Texture");
+      mAtlasRectUniform = mProgram.getUniform("u_AtlasRect");
+      mChunkAttributeHandles = mProgram.getAttributeLocations(ChunkMesh.LAYOUT);
+      mPointProgram = new ShaderProgram(mState, "", "", new String[]{"a_Position"});
+      mPointMVPMatrixUniform = mPointProgram.getUniform("u_MVPMatrix");
+      mPointPositionHandle = mPointProgram.getAttributeLocation("a_Position");
+      final ShaderProgram paletteProgram = new ShaderProgram(mState, "", "",
+          new String[]{"a_Position", "a_Normal", "a_TexCoordinate", "a_Color", "a_InstanceIndex"});
+      gl.glGenTextures(mChunkTextureHandles.length, mChunkTextureHandles, 0);
+
+      final IndexedMesh tardis = new IndexedMeshBuilder().build(InterleavedMesh.interleave(new float[][]{
+          SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+          SceneGeometry.getTardisTextureCoordinateData()}, new int[]{3, 3, 2}));
+      mTardisScene.setTardisBounds(MeshBounds.of(tardis.getVertices(), 0));
+      mTardisBatch = new BatchedMeshRenderer(mState, tardis, SCENE_LAYOUT, paletteProgram, mProgram);
+
+      mTardisScene.addTerrain(TERRAIN_CENTER * VoxelChunk.WIDTH, TardisScene.GROUND_TOP - 40.0f, TERRAIN_CENTER * VoxelChunk.DEPTH);
+      mChunkRenderer = new ChunkRenderer(mState);
+      mStreamer = new ChunkStreamer(new VoxelWorld(TERRAIN_CHUNKS, TERRAIN_CHUNKS, false), terrainDirectory,
+          new TerrainGenerator(TerrainBenchmarks.SEED), new ChunkStreamer.Listener() {
+            @Override
+            public void onChunkLoaded(VoxelChunk chunk) {
+              // the renderer meshes on a worker and uploads a frame or so later; loading is not steady state either way
+              final ChunkMesh mesh = mChunkMesher.mesh(mStreamer.getWorld(), chunk, true);
+              final int slot = mChunkRenderer.put(mesh);
+              mTardisScene.placeChunk(slot, mesh);
+              if (slot >= mChunkVisible.length)
+                mChunkVisible = new boolean[Math.max(16, slot * 2)];
+            }
+
+            @Override
+            public void onChunkEvicted(VoxelChunk chunk) {
+              mChunkRenderer.remove(chunk.getChunkX(), chunk.getChunkZ());
+            }
+          }, 1, Long.MAX_VALUE);
+      mState.setCullFace(true);
+      mState.setDepthTest(true);
+    }
+
+    boolean isTerrainResident() {
+      return mStreamer.getResidentCount() == 9 && mStreamer.getPendingLoadCount() == 0;
+    }
+
+    int getDrawCalls() {
+      return mState.getLastFrameDrawCalls();
+    }
+
+    void close() throws InterruptedException {
+      mStreamer.close();
+    }
+
+    void draw(long frameNanos) {
+      publishTouches(frameNanos);
+
+      mState.beginFrame();
+      if (mLastFrameNanos != 0)
+        mFrameIntervalNanos += (frameNanos - mLastFrameNanos - mFrameIntervalNanos) / 8;
+      mLastFrameNanos = frameNanos;
+      mGl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+      mState.countCall(false);
+
+      mSimulation.advanceTo(frameNanos);
+      final SimulationState state = mFrameState;
+      mSimulation.readInterpolated(frameNanos, state);
+
+      mTardisScene.moveGreenTardis(frameNanos, frameNanos + mFrameIntervalNanos);
+      mTardisScene.collideTardises(state);
+      mTardisScene.updateTerrainCenter();
+      mStreamer.update(mTardisScene.getTerrainCenterX(), mTardisScene.getTerrainCenterZ());
+      mTardisScene.update(state, mViewMatrix, mProjectionMatrix);
+
+      mProgram.use();
+      mState.bindTexture(0, 1);
+      mTextureUniform.set1i(0);
+      final int lightNode = mTardisScene.getLightNode();
+      Mat4.multiplyVector(mLightInEyeSpace, 0, mScene.getModelViewMatrices(), lightNode * 16, mLightInModelSpace[0],
+          mLightInModelSpace[1], mLightInModelSpace[2], mLightInModelSpace[3]);
+
+      drawTerrain();
+
+      mTardisBatch.begin();
+      final int visible = mTardisScene.cullTardises();
+      final int[] visibleTardises = mTardisScene.getVisibleTardises();
+      for (int i = 0; i < visible; i++) {
+        final int node = visibleTardises[i];
+        mTardisBatch.add(mScene.getWorldMatrices(), node * 16, mScene.getModelViewMatrices(), node * 16);
+      }
+      mTardisBatch.flush(mViewMatrix, mProjectionMatrix, mLightInEyeSpace[0], mLightInEyeSpace[1], mLightInEyeSpace[2]);
+
+      mPointProgram.use();
+      mState.disableVertexAttribArray(mPointPositionHandle);
+      mState.vertexAttrib4f(mPointPositionHandle, 0.0f, 0.0f, 0.0f, 1.0f);
+      mPointMVPMatrixUniform.setMatrix4(mScene.getModelViewProjectionMatrices(), lightNode * 16);
+      mState.drawArrays(GLES20.GL_POINTS, 0, 1);
+      mFrames++;
+    }
+
+    /**
+     * What the UI thread would publish: a drag with its history most frames,
+     * a two finger turn now and then, and lifting and homing the green TARDIS.
+     */
+    private void publishTouches(long frameNanos) {
+      final TouchEventRing touches = mTardisScene.getTouchEvents();
+      final float direction = (mFrames / 120) % 2 == 0 ? 1.0f : -1.0f;
+      for (int i = 0; i < 3; i++) {
+        touches.publish(TouchEventRing.KIND_MOVE, 0, 400.0f + i, 240.0f, 0.002f * direction, 0.001f * direction,
+            frameNanos - FRAME_NANOS + i * FRAME_NANOS / 3);
+      }
+      if (mFrames % 50 == 0)
+        touches.publish(TouchEventRing.KIND_ROTATE, 0, 0, 0, 1.0f, 0.5f, frameNanos);
+      if (mFrames % 90 == 0)
+        touches.publish(TouchEventRing.KIND_UP, 0, 0, 0, 0, 0, frameNanos);
+      if (mFrames % 600 == 599)
+        touches.publish(TouchEventRing.KIND_HOME, 0, 0, 0, 0, 0, frameNanos);
+    }
+
+    private void drawTerrain() {
+      final int chunks = mChunkRenderer.getSlotCount();
+      for (int slot = 0; slot < chunks; slot++)
+        mChunkVisible[slot] = mTardisScene.isChunkVisible(slot, mChunkRenderer.getMesh(slot));
+      mAtlasRectUniform.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+      for (int texture = 0; texture < ChunkMesher.TEXTURE_COUNT; texture++) {
+        mState.bindTexture(0, mChunkTextureHandles[texture]);
+        for (int slot = 0; slot < chunks; slot++) {
+          if (!mChunkVisible[slot])
+            continue;
+          final int node = mTardisScene.getChunkNode(slot);
+          mMVMatrixUniform.setMatrix4(mScene.getModelViewMatrices(), node * 16);
+          mMVPMatrixUniform.setMatrix4(mScene.getModelViewProjectionMatrices(), node * 16);
+          mLightPosUniform.set3f(mLightInEyeSpace[0], mLightInEyeSpace[1], mLightInEyeSpace[2]);
+          mChunkRenderer.draw(slot, texture, mChunkAttributeHandles);
+        }
+      }
+      mState.bindTexture(0, 1);
+    }
+  }
+
+  private static boolean isWithoutC2() {
+    if (String.valueOf(System.getProperty("java.vm.info")).contains("interpreted"))
+      return true;
+    final HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+    try {
+      return hotSpot != null && hotSpot.getVMOption("TieredCompilation").getValue().equals("true")
+          && hotSpot.getVMOption("TieredStopAtLevel").getValue().equals("1");
+    } catch (IllegalArgumentException e) {
+      // not HotSpot
+      return false;
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
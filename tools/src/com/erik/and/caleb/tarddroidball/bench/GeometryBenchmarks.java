@@ -0,0 +1,99 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.learnopengles.android.ShapeBuilder;
+
+/**
+ * Geometry generation, one box per object: the tutorial cube generator, the
+ * renderer's own attribute arrays interleaved into one vertex array, and
+ * welding plus cache ordering of the result.
+ */
+final class GeometryBenchmarks {
+
+  private GeometryBenchmarks() {
+  }
+
+  private static final int[] ATTRIBUTE_SIZES = {3, 4, 3, 2};
+
+  static class ShapeBuilderCubes extends Benchmark {
+    private int mSize;
+    private float[][] mCorners;
+
+    ShapeBuilderCubes() {
+      super("geometry.shapeBuilder");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+      mCorners = new float[8][];
+      for (int i = 0; i < 8; i++)
+        mCorners[i] = new float[]{(i & 1) == 0 ? -1 : 1, (i & 2) == 0 ? 1 : -1, (i & 4) == 0 ? 1 : -1};
+    }
+
+    @Override
+    public long run() {
+      final float[][] c = mCorners;
+      long floats = 0;
+      for (int i = 0; i < mSize; i++)
+        floats += ShapeBuilder.generateCubeData(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7], 3).length;
+      return floats;
+    }
+  }
+
+  static class SceneArrays extends Benchmark {
+    private int mSize;
+
+    SceneArrays() {
+      super("geometry.sceneArrays");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+    }
+
+    @Override
+    public long run() {
+      long vertices = 0;
+      for (int i = 0; i < mSize; i++) {
+        final InterleavedMesh mesh = InterleavedMesh.interleave(new float[][]{
+            SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareColorData(),
+            SceneGeometry.getSquareNormalData(), SceneGeometry.getTardisTextureCoordinateData()}, ATTRIBUTE_SIZES);
+        vertices += mesh.getVertexCount();
+      }
+      return vertices;
+    }
+  }
+
+  static class IndexedTardis extends Benchmark {
+    private final IndexedMeshBuilder mBuilder = new IndexedMeshBuilder();
+    private InterleavedMesh mTardis;
+    private int mSize;
+
+    IndexedTardis() {
+      super("geometry.indexedMesh");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+      mTardis = InterleavedMesh.interleave(new float[][]{
+          SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareColorData(),
+          SceneGeometry.getSquareNormalData(), SceneGeometry.getTardisTextureCoordinateData()}, ATTRIBUTE_SIZES);
+    }
+
+    @Override
+    public long run() {
+      long indices = 0;
+      for (int i = 0; i < mSize; i++) {
+        final IndexedMesh mesh = mBuilder.build(mTardis);
+        indices += mesh.getIndexCount();
+      }
+      return indices;
+    }
+  }
+}
@@ -0,0 +1,383 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.ChunkMesh;
+import com.erik.and.caleb.tarddroidball.ChunkMesher;
+import com.erik.and.caleb.tarddroidball.ChunkRenderer;
+import com.erik.and.caleb.tarddroidball.GlStateTracker;
+import com.erik.and.caleb.tarddroidball.ShaderProgram;
+import com.erik.and.caleb.tarddroidball.gl.GlTrace;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts the calls {@link GlStateTracker} and the uniform shadows of
+ * {@link ShaderProgram} let through to the driver: repeated binds, enables
+ * and uploads of what is already set must be dropped, changes and anything
+ * after {@link GlStateTracker#invalidate()} must not be, and a buffer deleted
+ * and generated again, under the same name as drivers hand them out, must be
+ * bound again. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.GlStateCheck
+ * </pre>
+ */
+public class GlStateCheck {
+
+  private static final CountingGl sGl = new CountingGl();
+
+  public static void main(String[] args) {
+    checkTracker();
+    checkUniforms();
+    checkDeletedBuffers();
+    System.out.println("redundant GL calls are dropped and needed ones are not");
+  }
+
+  private static void checkTracker() {
+    final GlStateTracker state = new GlStateTracker(sGl);
+    final int before = sGl.getTotal();
+    state.useProgram(5);
+    state.useProgram(5);
+    expect("glUseProgram", GlTrace.USE_PROGRAM, 1);
+    state.useProgram(6);
+    expect("glUseProgram with another program", GlTrace.USE_PROGRAM, 1);
+
+    state.bindTexture(0, 7);
+    state.bindTexture(0, 7);
+    expect("glBindTexture", GlTrace.BIND_TEXTURE, 1);
+    expect("glActiveTexture", GlTrace.ACTIVE_TEXTURE, 1);
+    // the same texture on another unit is another binding; back on the first unit, only the unit changes
+    state.bindTexture(1, 7);
+    expect("glBindTexture on another unit", GlTrace.BIND_TEXTURE, 1);
+    expect("glActiveTexture for another unit", GlTrace.ACTIVE_TEXTURE, 1);
+    state.bindTexture(0, 8);
+    expect("glBindTexture of another texture", GlTrace.BIND_TEXTURE, 1);
+    expect("glActiveTexture back to the first unit", GlTrace.ACTIVE_TEXTURE, 1);
+
+    state.bindArrayBuffer(3);
+    state.bindArrayBuffer(3);
+    state.bindElementArrayBuffer(3);
+    state.bindElementArrayBuffer(3);
+    expect("glBindBuffer of both targets", GlTrace.BIND_BUFFER, 2);
+
+    state.enableVertexAttribArray(2);
+    state.enableVertexAttribArray(2);
+    expect("glEnableVertexAttribArray", GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY, 1);
+    state.disableVertexAttribArray(2);
+    state.disableVertexAttribArray(2);
+    expect("glDisableVertexAttribArray", GlTrace.DISABLE_VERTEX_ATTRIB_ARRAY, 1);
+    state.vertexAttrib4f(2, 1.0f, 0.5f, 0.0f, 1.0f);
+    state.vertexAttrib4f(2, 1.0f, 0.5f, 0.0f, 1.0f);
+    expect("glVertexAttrib4f", GlTrace.VERTEX_ATTRIB4F, 1);
+    state.vertexAttrib4f(2, 1.0f, 0.5f, 0.0f, 0.5f);
+    expect("glVertexAttrib4f with a new w", GlTrace.VERTEX_ATTRIB4F, 1);
+
+    state.setBlend(true);
+    state.setBlend(true);
+    state.setDepthTest(true);
+    state.setCullFace(true);
+    expect("glEnable", GlTrace.ENABLE, 3);
+    state.setBlend(false);
+    state.setBlend(false);
+    expect("glDisable", GlTrace.DISABLE, 1);
+    state.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    state.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    expect("glBlendFunc", GlTrace.BLEND_FUNC, 1);
+    state.viewport(0, 0, 800, 480);
+    state.viewport(0, 0, 800, 480);
+    expect("glViewport", GlTrace.VIEWPORT, 1);
+    state.viewport(0, 0, 480, 800);
+    expect("glViewport after turning", GlTrace.VIEWPORT, 1);
+
+    // draws and attribute pointers are never dropped
+    state.vertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+    state.vertexAttribPointer(0, 3, GLES20.GL_FLOAT, false, 12, 0);
+    expect("glVertexAttribPointer", GlTrace.VERTEX_ATTRIB_POINTER, 2);
+    state.drawArrays(GLES20.GL_POINTS, 0, 1);
+    state.drawArrays(GLES20.GL_POINTS, 0, 1);
+    expect("glDrawArrays", GlTrace.DRAW_ARRAYS, 2);
+    check(state.getIssuedCalls() == sGl.getTotal() - before, state.getIssuedCalls() + " calls counted as issued, but "
+        + (sGl.getTotal() - before) + " reached the driver");
+    check(state.getElidedCalls() == 11, state.getElidedCalls() + " calls counted as dropped, not 11");
+    check(state.getDrawCalls() == 2, state.getDrawCalls() + " draws counted, not 2");
+
+    // a lost context forgets everything
+    state.invalidate();
+    final int invalidated = sGl.getTotal();
+    state.useProgram(6);
+    state.bindTexture(0, 8);
+    state.bindArrayBuffer(3);
+    state.enableVertexAttribArray(2);
+    state.vertexAttrib4f(2, 1.0f, 0.5f, 0.0f, 0.5f);
+    state.setCullFace(true);
+    state.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+    state.viewport(0, 0, 480, 800);
+    check(sGl.getTotal() - invalidated == 9, "after invalidate, " + (sGl.getTotal() - invalidated)
+        + " of 9 calls reached the driver");
+    sGl.reset();
+  }
+
+  private static void checkUniforms() {
+    final GlStateTracker state = new GlStateTracker(sGl);
+    final ShaderProgram first = new ShaderProgram(state, "", "", new String[]{"a_Position"});
+    final ShaderProgram second = new ShaderProgram(state, "", "", new String[]{"a_Position"});
+    sGl.reset();
+    final ShaderProgram.Uniform color = first.getUniform("u_AtlasRect");
+    final ShaderProgram.Uniform texture = first.getUniform("u_Texture");
+    final ShaderProgram.Uniform mvp = first.getUniform("u_MVPMatrix");
+    final ShaderProgram.Uniform palette = first.getUniform("u_MVMatrices");
+    check(color.isActive() && texture.isActive() && mvp.isActive() && palette.isActive(), "NoOpGl lost a uniform");
+
+    first.use();
+    color.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+    color.set4f(0.0f, 0.0f, 1.0f, 1.0f);
+    expect("glUniform4f", GlTrace.UNIFORM4F, 1);
+    color.set4f(0.0f, 0.0f, 1.0f, 0.5f);
+    expect("glUniform4f of a new value", GlTrace.UNIFORM4F, 1);
+    texture.set1i(0);
+    texture.set1i(0);
+    expect("glUniform1i", GlTrace.UNIFORM1I, 1);
+
+    final float[] matrices = new float[32];
+    for (int i = 0; i < matrices.length; i++)
+      matrices[i] = i;
+    mvp.setMatrix4(matrices, 0);
+    mvp.setMatrix4(matrices.clone(), 0);
+    expect("glUniformMatrix4fv", GlTrace.UNIFORM_MATRIX4FV, 1);
+    // only the last element differs
+    mvp.setMatrix4(matrices, 16);
+    matrices[31] = -1.0f;
+    mvp.setMatrix4(matrices, 16);
+    expect("glUniformMatrix4fv of changed matrices", GlTrace.UNIFORM_MATRIX4FV, 2);
+
+    // values belong to the program, so switching programs and back keeps the shadow
+    second.use();
+    second.getUniform("u_AtlasRect").set4f(0.0f, 0.0f, 1.0f, 0.5f);
+    first.use();
+    color.set4f(0.0f, 0.0f, 1.0f, 0.5f);
+    expect("glUniform4f across programs", GlTrace.UNIFORM4F, 1);
+
+    // arrays are never shadowed, and one array upload leaves the first matrix unknown
+    palette.setMatrix4Array(matrices, 0, 2);
+    palette.setMatrix4Array(matrices, 0, 2);
+    palette.setMatrix4(matrices, 0);
+    expect("glUniformMatrix4fv of arrays", GlTrace.UNIFORM_MATRIX4FV, 3);
+    color.invalidate();
+    color.set4f(0.0f, 0.0f, 1.0f, 0.5f);
+    expect("glUniform4f after invalidate", GlTrace.UNIFORM4F, 1);
+
+    final ShaderProgram.Uniform missing = first.getUniform("u_Missing");
+    check(!missing.isActive(), "NoOpGl found a uniform that is not there");
+    missing.set3f(1.0f, 2.0f, 3.0f);
+    missing.setMatrix4(matrices, 0);
+    expect("uploads to an inactive uniform", GlTrace.UNIFORM3F, 0);
+    expect("matrix uploads to an inactive uniform", GlTrace.UNIFORM_MATRIX4FV, 0);
+    check(color.getUploadCount() == 3 && color.getSkippedUploadCount() == 2, "u_AtlasRect counted "
+        + color.getUploadCount() + " uploads and " + color.getSkippedUploadCount() + " skipped, not 3 and 2");
+    sGl.reset();
+  }
+
+  /**
+   * GL unbinds a deleted buffer and hands its name out again, so a binding
+   * the tracker still remembers would drop the bind of the new buffer.
+   */
+  private static void checkDeletedBuffers() {
+    final GlStateTracker state = new GlStateTracker(sGl);
+    final int[] buffers = new int[1];
+    sGl.glGenBuffers(1, buffers, 0);
+    state.bindArrayBuffer(buffers[0]);
+    state.bindArrayBuffer(0);
+    sGl.glDeleteBuffers(1, buffers, 0);
+    final int deleted = buffers[0];
+    sGl.glGenBuffers(1, buffers, 0);
+    check(buffers[0] == deleted, "the counting GL does not reuse names");
+    state.bindArrayBuffer(buffers[0]);
+    expect("glBindBuffer around a delete", GlTrace.BIND_BUFFER, 3);
+
+    // and the same through the chunk renderer, which deletes a chunk's buffer when it is evicted
+    final ChunkRenderer renderer = new ChunkRenderer(state);
+    final int[] quadCounts = new int[ChunkMesher.TEXTURE_COUNT];
+    quadCounts[0] = 1;
+    final int quadBytes = ChunkMesh.LAYOUT.getStride() * ChunkMesh.VERTICES_PER_QUAD;
+    final int[] locations = new int[ChunkMesh.LAYOUT.getAllNames().length];
+    renderer.put(new ChunkMesh(0, 0, ByteBuffer.allocateDirect(quadBytes), quadCounts, 0, 1));
+    renderer.draw(0, 0, locations);
+    final int first = sGl.mArrayBuffer;
+    renderer.remove(0, 0);
+    final int slot = renderer.put(new ChunkMesh(1, 0, ByteBuffer.allocateDirect(quadBytes), quadCounts, 0, 1));
+    renderer.draw(slot, 0, locations);
+    check(sGl.mArrayBuffer == first, "the chunk put after an eviction drew from buffer " + sGl.mArrayBuffer
+        + ", not its own buffer " + first);
+    sGl.reset();
+  }
+
+  private static void expect(String what, int opcode, int calls) {
+    check(sGl.getCount(opcode) == calls, what + ": " + sGl.getCount(opcode) + " calls reached the driver, not "
+        + calls);
+    sGl.clear(opcode);
+  }
+
+  /**
+   * Counts calls by their {@link GlTrace} opcode, and gives out the lowest free buffer name as drivers do.
+   */
+  private static class CountingGl extends NoOpGl {
+    private final int[] mCounts = new int[GlTrace.OPCODE_COUNT];
+    private int mTotal;
+    private final boolean[] mBufferNames = new boolean[256];
+    private int mArrayBuffer;
+
+    CountingGl() {
+      super(128);
+    }
+
+    int getCount(int opcode) {
+      return mCounts[opcode];
+    }
+
+    /**
+     * @return calls counted since creation, resets included
+     */
+    int getTotal() {
+      return mTotal;
+    }
+
+    private void count(int opcode) {
+      mCounts[opcode]++;
+      mTotal++;
+    }
+
+    void reset() {
+      Arrays.fill(mCounts, 0);
+    }
+
+    void clear(int opcode) {
+      mCounts[opcode] = 0;
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+      count(GlTrace.ACTIVE_TEXTURE);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+      count(GlTrace.BIND_BUFFER);
+      if (target == GLES20.GL_ARRAY_BUFFER)
+        mArrayBuffer = buffer;
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+      count(GlTrace.BIND_TEXTURE);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+      count(GlTrace.BLEND_FUNC);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+      count(GlTrace.DELETE_BUFFERS);
+      for (int i = 0; i < n; i++) {
+        mBufferNames[buffers[offset + i]] = false;
+        if (mArrayBuffer == buffers[offset + i])
+          mArrayBuffer = 0;
+      }
+    }
+
+    @Override
+    public void glDisable(int cap) {
+      count(GlTrace.DISABLE);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+      count(GlTrace.DISABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+      count(GlTrace.DRAW_ARRAYS);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+      count(GlTrace.DRAW_ELEMENTS);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+      count(GlTrace.ENABLE);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+      count(GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+      count(GlTrace.GEN_BUFFERS);
+      for (int i = 0; i < n; i++) {
+        int name = 1;
+        while (mBufferNames[name])
+          name++;
+        mBufferNames[name] = true;
+        buffers[offset + i] = name;
+      }
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+      count(GlTrace.UNIFORM1I);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+      count(GlTrace.UNIFORM3F);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+      count(GlTrace.UNIFORM4F);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+      count(GlTrace.UNIFORM_MATRIX4FV);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+      count(GlTrace.USE_PROGRAM);
+    }
+
+    @Override
+    public void glVertexAttrib4f(int index, float x, float y, float z, float w) {
+      count(GlTrace.VERTEX_ATTRIB4F);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+      count(GlTrace.VERTEX_ATTRIB_POINTER);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+      count(GlTrace.VIEWPORT);
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
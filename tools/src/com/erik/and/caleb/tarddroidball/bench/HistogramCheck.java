@@ -0,0 +1,189 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.FrameProfiler;
+import com.erik.and.caleb.tarddroidball.LogLinearHistogram;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link LogLinearHistogram}: buckets meet edge to edge from 0 to
+ * 2^40 - 1, none wider than 1/32 of its lowest value; percentiles of known
+ * data come out no lower than the exact value and at most about 3% above
+ * it; add() gives what recording everything into one histogram does and
+ * reset() gives an empty one; values past 2^40 clamp into the last bucket.
+ * Then runs frames through a {@link FrameProfiler} and reads its counter
+ * percentiles back from the report. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.HistogramCheck
+ * </pre>
+ */
+public class HistogramCheck {
+
+  private static final long MAX_TRACKED_VALUE = (1L << 40) - 1;
+  private static final double[] PERCENTILES = {0, 1, 25, 50, 90, 95, 99, 99.9, 100};
+
+  public static void main(String[] args) throws IOException {
+    checkBuckets();
+
+    final Random random = new Random(3);
+    final long[] uniform = new long[100000];
+    for (int i = 0; i < uniform.length; i++)
+      uniform[i] = i + 1;
+    checkPercentiles("1 to 100000", uniform);
+    // frame times: mostly near 16 ms, a tail of hitches out to seconds
+    final long[] frames = new long[20000];
+    for (int i = 0; i < frames.length; i++)
+      frames[i] = (long) (16.6e6 * Math.exp(Math.abs(random.nextGaussian()) * (i % 50 == 0 ? 3 : 0.2)));
+    checkPercentiles("frame times", frames);
+    final long[] spread = new long[5000];
+    for (int i = 0; i < spread.length; i++)
+      spread[i] = (long) Math.pow(2, random.nextDouble() * 40);
+    checkPercentiles("2^0 to 2^40", spread);
+    checkPercentiles("one value", new long[]{12345});
+
+    checkAddAndReset(frames);
+    checkClamping();
+    checkProfiler();
+    System.out.println("histogram buckets, percentiles, add, reset and clamping are right");
+  }
+
+  private static void checkBuckets() {
+    for (long value = 0; value < 32; value++) {
+      check(LogLinearHistogram.bucketOf(value) == value && LogLinearHistogram.highestValueIn((int) value) == value,
+          "value " + value + " does not have a bucket to itself");
+    }
+    long lowest = 0;
+    int bucket = 0;
+    while (true) {
+      final long highest = LogLinearHistogram.highestValueIn(bucket);
+      check(highest >= lowest, "bucket " + bucket + " ends at " + highest + " before it starts at " + lowest);
+      check(LogLinearHistogram.bucketOf(lowest) == bucket, "bucket " + bucket + " starts at " + lowest + ", which is in "
+          + LogLinearHistogram.bucketOf(lowest));
+      check(LogLinearHistogram.bucketOf(highest) == bucket, "bucket " + bucket + " ends at " + highest + ", which is in "
+          + LogLinearHistogram.bucketOf(highest));
+      if (lowest >= 32)
+        check((highest - lowest + 1) * 32 <= lowest, "bucket " + bucket + " holds " + lowest + " to " + highest);
+      if (highest >= MAX_TRACKED_VALUE) {
+        check(highest == MAX_TRACKED_VALUE, "the last bucket ends at " + highest + ", not 2^40 - 1");
+        break;
+      }
+      lowest = highest + 1;
+      bucket++;
+    }
+  }
+
+  private static void checkPercentiles(String name, long[] values) {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    for (long value : values)
+      histogram.record(value);
+    final long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    check(histogram.getCount() == values.length, name + ": counted " + histogram.getCount());
+    check(histogram.getMin() == sorted[0] && histogram.getMax() == sorted[sorted.length - 1], name
+        + ": min and max are " + histogram.getMin() + " and " + histogram.getMax());
+    for (double percentile : PERCENTILES) {
+      final long exact = sorted[(int) Math.max(1, Math.ceil(percentile / 100 * sorted.length)) - 1];
+      final long reported = histogram.getValueAtPercentile(percentile);
+      check(reported >= exact && reported <= exact + exact / 32, name + ": p" + percentile + " is " + reported
+          + ", exactly " + exact);
+    }
+  }
+
+  private static void checkAddAndReset(long[] values) {
+    final LogLinearHistogram all = new LogLinearHistogram();
+    final LogLinearHistogram first = new LogLinearHistogram();
+    final LogLinearHistogram second = new LogLinearHistogram();
+    for (int i = 0; i < values.length; i++) {
+      all.record(values[i]);
+      (i % 3 == 0 ? first : second).record(values[i]);
+    }
+    first.add(second);
+    first.add(new LogLinearHistogram());
+    check(same(first, all), "adding two halves differs from recording everything into one");
+
+    // small values too, so leftovers in buckets the values do not reach would show
+    for (long value = 0; value < 10000; value++)
+      first.record(value);
+    first.reset();
+    check(first.getCount() == 0 && first.getMin() == 0 && first.getMax() == 0 && first.getMean() == 0
+        && first.getValueAtPercentile(50) == 0, "a reset histogram is not empty");
+    for (long value : values)
+      first.record(value);
+    check(same(first, all), "a reset histogram records differently from a new one");
+  }
+
+  private static void checkClamping() {
+    final LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(1L << 41);
+    check(histogram.getMax() == 1L << 41, "the max of 2^41 is " + histogram.getMax());
+    check(histogram.getValueAtPercentile(50) == MAX_TRACKED_VALUE, "2^41 is reported as "
+        + histogram.getValueAtPercentile(50) + ", not clamped to 2^40 - 1");
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(MAX_TRACKED_VALUE);
+    check(histogram.getValueAtPercentile(0) == MAX_TRACKED_VALUE, "2^40 - 1 shares a bucket with "
+        + histogram.getValueAtPercentile(0));
+    histogram.reset();
+    histogram.record(-5);
+    check(histogram.getMin() == 0 && histogram.getValueAtPercentile(100) == 0, "a negative value is not counted as 0");
+  }
+
+  /**
+   * Frames whose counters are known; only the time-based columns of the report vary.
+   */
+  private static void checkProfiler() throws IOException {
+    final FrameProfiler profiler = new FrameProfiler("update", "draw");
+    for (int frame = 1; frame <= 100; frame++) {
+      profiler.beginFrame();
+      profiler.endPhase(0);
+      profiler.endPhase(1);
+      profiler.endFrame(frame * 10, frame, 36 * frame, 1);
+    }
+    for (int written = 0; written < 2; written++) {
+      final StringWriter out = new StringWriter();
+      profiler.writeReport(out);
+      final String report = out.toString();
+      check(report.startsWith("100 frames"), "the report does not count 100 frames:\n" + report);
+      // p50, p95 and p99 are the tops of their buckets: exact below 64, 2 wide to 128, 8 and 16 wide past 256
+      expectRow(report, "draw calls", "50.5 50 95 99 100");
+      expectRow(report, "texture binds", "1.0 1 1 1 1");
+      expectRow(report, "gl calls", "505.0 503 959 991 1000");
+    }
+  }
+
+  private static void expectRow(String report, String name, String expected) {
+    for (String line : report.split("\n")) {
+      if (line.startsWith(name + " ")) {
+        check(line.substring(name.length()).trim().replaceAll(" +", " ").equals(expected), "the " + name
+            + " row reads \"" + line.trim() + "\", not " + expected);
+        return;
+      }
+    }
+    fail("the report has no " + name + " row:\n" + report);
+  }
+
+  private static boolean same(LogLinearHistogram a, LogLinearHistogram b) {
+    if (a.getCount() != b.getCount() || a.getMin() != b.getMin() || a.getMax() != b.getMax()
+        || a.getMean() != b.getMean())
+      return false;
+    for (double percentile = 0; percentile <= 100; percentile += 0.5) {
+      if (a.getValueAtPercentile(percentile) != b.getValueAtPercentile(percentile))
+        return false;
+    }
+    return true;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
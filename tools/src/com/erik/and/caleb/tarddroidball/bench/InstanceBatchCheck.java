@@ -0,0 +1,323 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.BatchedMeshRenderer;
+import com.erik.and.caleb.tarddroidball.GlStateTracker;
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InstanceBatcher;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.erik.and.caleb.tarddroidball.ShaderProgram;
+import com.erik.and.caleb.tarddroidball.VertexLayout;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks {@link InstanceBatcher} against {@link Mat4} and what
+ * {@link BatchedMeshRenderer} draws with it, at 1 instance, a full palette,
+ * one past it, as many as one streamed draw holds and past that: replicated
+ * copies and their indices, instances transformed on the CPU, the switch
+ * from the matrix palette to streamed vertices above
+ * {@link BatchedMeshRenderer#PALETTE_SIZE} or when the palette does not fit
+ * the vertex uniforms, and streamed batches split where 16 bit indices run
+ * out. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.InstanceBatchCheck
+ * </pre>
+ */
+public class InstanceBatchCheck {
+
+  private static final VertexLayout SCENE_LAYOUT = new VertexLayout.Builder()
+      .add("a_Position", 3, VertexLayout.TYPE_FLOAT, false)
+      .add("a_Normal", 3, VertexLayout.TYPE_BYTE, true)
+      .add("a_TexCoordinate", 2, VertexLayout.TYPE_UNSIGNED_SHORT, true)
+      .constant("a_Color", 1.0f, 1.0f, 1.0f, 1.0f)
+      .build();
+  private static final String[] PALETTE_ATTRIBUTES = {"a_Position", "a_Normal", "a_TexCoordinate", "a_Color",
+      "a_InstanceIndex"};
+  private static final float TOLERANCE = 1e-5f;
+
+  private static final IndexedMesh TARDIS = new IndexedMeshBuilder().build(InterleavedMesh.interleave(new float[][]{
+      SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+      SceneGeometry.getTardisTextureCoordinateData()}, new int[]{3, 3, 2}));
+  /** Instances of the TARDIS one streamed draw holds. */
+  private static final int PER_DRAW = 65536 / TARDIS.getVertexCount();
+  private static final int[] COUNTS = {1, BatchedMeshRenderer.PALETTE_SIZE, BatchedMeshRenderer.PALETTE_SIZE + 1,
+      PER_DRAW, PER_DRAW + 1, 2 * PER_DRAW + 5};
+
+  private static float[] sModels;
+
+  public static void main(String[] args) {
+    sModels = randomModels(new Random(5), 2 * PER_DRAW + 8);
+
+    for (int copies : COUNTS) {
+      if (copies <= PER_DRAW)
+        checkReplicate(copies);
+      checkTransform(TARDIS.getVertices(), 3, copies);
+    }
+    try {
+      InstanceBatcher.replicate(TARDIS, PER_DRAW + 1);
+      fail((PER_DRAW + 1) + " copies of the TARDIS were given 16 bit indices");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      InstanceBatcher.replicateIndices(TARDIS.getIndices(), TARDIS.getVertexCount(), PER_DRAW + 1);
+      fail((PER_DRAW + 1) + " copies of the TARDIS indices were given 16 bit indices");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    checkRenderer(TARDIS, true, COUNTS);
+    checkRenderer(TARDIS, false, COUNTS);
+    // fewer instances after more keep the stream buffers they grew
+    checkRenderer(TARDIS, false, new int[]{PER_DRAW + 1, BatchedMeshRenderer.PALETTE_SIZE + 1, 1});
+    // the most vertices a mesh may have streams one instance per draw
+    checkRenderer(largestMesh(), false, new int[]{1, 3});
+    System.out.println("instances replicate, transform and draw as Mat4 says, split where 16 bit indices run out");
+  }
+
+  private static void checkReplicate(int copies) {
+    final InterleavedMesh source = TARDIS.getVertices();
+    final int vertexCount = source.getVertexCount();
+    final int sourceStride = source.getFloatsPerVertex();
+    final IndexedMesh replicated = InstanceBatcher.replicate(TARDIS, copies);
+    final InterleavedMesh vertices = replicated.getVertices();
+    check(vertices.getVertexCount() == vertexCount * copies, copies + " copies have " + vertices.getVertexCount()
+        + " vertices");
+    check(vertices.getAttributeCount() == source.getAttributeCount() + 1
+        && vertices.getAttributeSize(source.getAttributeCount()) == 1, copies + " copies lack a one-float instance index");
+    final float[] data = vertices.getData();
+    final float[] sourceData = source.getData();
+    for (int copy = 0; copy < copies; copy++) {
+      for (int v = 0; v < vertexCount; v++) {
+        final int out = (copy * vertexCount + v) * (sourceStride + 1);
+        for (int f = 0; f < sourceStride; f++)
+          check(data[out + f] == sourceData[v * sourceStride + f], "copy " + copy + " of " + copies + ": vertex " + v
+              + " differs from the source");
+        check(data[out + sourceStride] == copy, "copy " + copy + " of " + copies + " is tagged "
+            + data[out + sourceStride]);
+      }
+    }
+
+    final short[] indices = TARDIS.getIndices();
+    final short[] replicatedIndices = replicated.getIndices();
+    check(replicatedIndices.length == indices.length * copies, copies + " copies have " + replicatedIndices.length
+        + " indices");
+    for (int copy = 0; copy < copies; copy++) {
+      for (int i = 0; i < indices.length; i++)
+        check((replicatedIndices[copy * indices.length + i] & 0xffff) == (indices[i] & 0xffff) + copy * vertexCount,
+            "copy " + copy + " of " + copies + ": index " + i + " does not address that copy");
+    }
+    check(Arrays.equals(replicatedIndices, InstanceBatcher.replicateIndices(indices, vertexCount, copies)),
+        "replicate and replicateIndices disagree at " + copies + " copies");
+  }
+
+  private static void checkTransform(InterleavedMesh mesh, int firstInstance, int count) {
+    final float[] out = new float[count * mesh.getVertexCount() * mesh.getFloatsPerVertex()];
+    InstanceBatcher.transformInstances(mesh, 0, 1, sModels, firstInstance, count, out);
+    final float[] expected = transformed(mesh, firstInstance, count);
+    for (int i = 0; i < out.length; i++) {
+      check(near(out[i], expected[i]), count + " instances from " + firstInstance + ": float " + i + " is " + out[i]
+          + ", Mat4 gives " + expected[i]);
+    }
+  }
+
+  /**
+   * @return the instances transformed vertex by vertex with {@link Mat4#multiplyVector}
+   */
+  private static float[] transformed(InterleavedMesh mesh, int firstInstance, int count) {
+    final float[] data = mesh.getData();
+    final int stride = mesh.getFloatsPerVertex();
+    final int normal = mesh.getOffset(1);
+    final float[] out = new float[count * mesh.getVertexCount() * stride];
+    final float[] vector = new float[4];
+    for (int instance = 0; instance < count; instance++) {
+      final int m = (firstInstance + instance) * 16;
+      for (int v = 0; v < mesh.getVertexCount(); v++) {
+        final int in = v * stride;
+        final int o = (instance * mesh.getVertexCount() + v) * stride;
+        System.arraycopy(data, in, out, o, stride);
+        Mat4.multiplyVector(vector, 0, sModels, m, data[in], data[in + 1], data[in + 2], 1.0f);
+        System.arraycopy(vector, 0, out, o, 3);
+        Mat4.multiplyVector(vector, 0, sModels, m, data[in + normal], data[in + normal + 1], data[in + normal + 2], 0.0f);
+        System.arraycopy(vector, 0, out, o + normal, 3);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Flushes each count of instances through one renderer and checks the draws it issued.
+   */
+  private static void checkRenderer(IndexedMesh mesh, boolean paletteFits, int[] counts) {
+    // the ES 2.0 minimum of 128 vectors holds the palette and projection; 64 does not
+    final DrawGl gl = new DrawGl(paletteFits ? 128 : 64);
+    final GlStateTracker state = new GlStateTracker(gl);
+    final ShaderProgram paletteProgram = new ShaderProgram(state, "", "", PALETTE_ATTRIBUTES);
+    final ShaderProgram worldSpaceProgram = new ShaderProgram(state, "", "", SCENE_LAYOUT.getAllNames());
+    gl.mPaletteLocation = paletteProgram.getUniform("u_MVMatrices").getLocation();
+    final BatchedMeshRenderer renderer = new BatchedMeshRenderer(state, mesh, SCENE_LAYOUT, paletteProgram,
+        worldSpaceProgram);
+    check(renderer.isPaletteSupported() == paletteFits, "palette support is " + renderer.isPaletteSupported()
+        + " with " + (paletteFits ? 128 : 64) + " vertex uniform vectors");
+
+    final float[] view = new float[16];
+    final float[] projection = new float[16];
+    Mat4.setLookAt(view, 0, 0.0f, 3.0f, 8.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+    Mat4.frustum(projection, 0, -1.0f, 1.0f, -1.0f, 1.0f, 1.0f, 100.0f);
+    final int vertexCount = mesh.getVertexCount();
+    final int perDraw = 65536 / vertexCount;
+    int streamCapacity = 0;
+    for (int count : counts) {
+      final String name = count + " instances of " + vertexCount + " vertices"
+          + (paletteFits ? "" : " without a palette");
+      renderer.begin();
+      for (int i = 0; i < count; i++)
+        renderer.add(sModels, i * 16);
+      check(renderer.getInstanceCount() == count, name + ": " + renderer.getInstanceCount() + " queued");
+      gl.clear();
+      renderer.flush(view, projection, 0.0f, 0.0f, 0.0f);
+
+      if (paletteFits && count <= BatchedMeshRenderer.PALETTE_SIZE) {
+        check(gl.mDraws.size() == 1 && gl.mDraws.get(0) == count * mesh.getIndexCount()
+            && gl.mDrawPrograms.get(0) == paletteProgram.getHandle(), name + ": not one palette draw of every index");
+        check(gl.mPaletteCount == count, name + ": " + gl.mPaletteCount + " palette matrices uploaded");
+        check(gl.mStreamed.length == 0, name + ": vertices streamed on the palette path");
+        final float[] modelView = new float[16];
+        for (int i = 0; i < count; i++) {
+          Mat4.multiply(modelView, 0, view, 0, sModels, i * 16);
+          for (int k = 0; k < 16; k++)
+            check(near(gl.mPalette[i * 16 + k], modelView[k]), name + ": palette matrix " + i + " is not view * model");
+        }
+        continue;
+      }
+
+      streamCapacity = Math.max(streamCapacity, Math.min(count, perDraw));
+      check(gl.mPaletteCount == 0, name + ": palette uploaded on the streamed path");
+      check(gl.mDraws.size() == (count + streamCapacity - 1) / streamCapacity, name + ": " + gl.mDraws.size()
+          + " draws with room for " + streamCapacity + " instances each");
+      for (int d = 0; d < gl.mDraws.size(); d++) {
+        final int instances = Math.min(streamCapacity, count - d * streamCapacity);
+        check(gl.mDraws.get(d) == instances * mesh.getIndexCount(), name + ": draw " + d + " has "
+            + gl.mDraws.get(d) + " indices, not " + instances * mesh.getIndexCount());
+        check(gl.mDrawPrograms.get(d) == worldSpaceProgram.getHandle(), name + ": draw " + d
+            + " does not use the world space program");
+      }
+      final float[] expected = transformed(mesh.getVertices(), 0, count);
+      check(gl.mStreamed.length == expected.length, name + ": " + gl.mStreamed.length + " floats streamed, not "
+          + expected.length);
+      for (int i = 0; i < expected.length; i++)
+        check(near(gl.mStreamed[i], expected[i]), name + ": streamed float " + i + " is not the transformed vertex");
+    }
+
+    renderer.release();
+  }
+
+  /**
+   * @return a mesh of 65535 vertices, no two alike, the most IndexedMeshBuilder turns into whole triangles
+   */
+  private static IndexedMesh largestMesh() {
+    final int vertices = 65535;
+    final float[] data = new float[vertices * 8];
+    for (int v = 0; v < vertices; v++) {
+      data[v * 8] = v % 256;
+      data[v * 8 + 1] = v / 256;
+      data[v * 8 + 5] = 1.0f;
+    }
+    return new IndexedMeshBuilder().build(InterleavedMesh.fromInterleaved(data, new int[]{3, 3, 2}));
+  }
+
+  /**
+   * @return count model matrices, each a translation, a rotation and a uniform scale
+   */
+  private static float[] randomModels(Random random, int count) {
+    final float[] models = new float[count * 16];
+    for (int i = 0; i < count; i++) {
+      float qx = random.nextFloat() - 0.5f, qy = random.nextFloat() - 0.5f, qz = random.nextFloat() - 0.5f;
+      float qw = random.nextFloat() - 0.5f;
+      final float length = (float) Math.sqrt(qx * qx + qy * qy + qz * qz + qw * qw);
+      final float scale = 0.5f + random.nextFloat();
+      Mat4.setTranslationRotationScale(models, i * 16, random.nextFloat() * 40 - 20, random.nextFloat() * 4,
+          random.nextFloat() * 40 - 20, qx / length, qy / length, qz / length, qw / length, scale, scale, scale);
+    }
+    return models;
+  }
+
+  private static boolean near(float actual, float expected) {
+    return Math.abs(actual - expected) <= TOLERANCE * Math.max(1.0f, Math.abs(expected));
+  }
+
+  /**
+   * Keeps the draws of the last flush: their index counts and programs, the
+   * palette uploaded and the vertices streamed.
+   */
+  private static class DrawGl extends NoOpGl {
+    private final ArrayList<Integer> mDraws = new ArrayList<Integer>();
+    private final ArrayList<Integer> mDrawPrograms = new ArrayList<Integer>();
+    private int mProgram;
+    private int mPaletteLocation;
+    private int mPaletteCount;
+    private float[] mPalette = new float[0];
+    private float[] mStreamed = new float[0];
+
+    DrawGl(int maxVertexUniformVectors) {
+      super(maxVertexUniformVectors);
+    }
+
+    void clear() {
+      mDraws.clear();
+      mDrawPrograms.clear();
+      mPaletteCount = 0;
+      mStreamed = new float[0];
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+      mProgram = program;
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+      mDraws.add(count);
+      mDrawPrograms.add(mProgram);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+      if (location != mPaletteLocation)
+        return;
+      mPaletteCount = count;
+      mPalette = Arrays.copyOfRange(value, offset, offset + count * 16);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+      if (target != GLES20.GL_ARRAY_BUFFER)
+        return;
+      final FloatBuffer floats = (FloatBuffer) data;
+      final int start = mStreamed.length;
+      mStreamed = Arrays.copyOf(mStreamed, start + size / InterleavedMesh.BYTES_PER_FLOAT);
+      for (int i = start; i < mStreamed.length; i++)
+        mStreamed[i] = floats.get(floats.position() + i - start);
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,201 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+import com.erik.and.caleb.tarddroidball.math.MatrixArena;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+/**
+ * Batch throughput of the math package against android.opengl.Matrix, by
+ * way of {@link ReferenceMatrix}: one view-projection matrix times as many
+ * model matrices as the size, and as many points through one matrix.
+ * {@link MathCheck} shows they compute the same thing.
+ */
+final class MathBenchmarks {
+
+  private MathBenchmarks() {
+  }
+
+  /**
+   * One random view-projection matrix and size random model matrices, as arrays and in arenas.
+   */
+  abstract static class Multiply extends Benchmark {
+    final float[] mViewProjection = new float[16];
+    float[] mModels;
+    float[] mOut;
+    MatrixArena mArena;
+    MatrixArena mArenaOut;
+    int mCount;
+
+    Multiply(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp(int size) {
+      mCount = size;
+      MathCheck.randomProjection(mViewProjection);
+      mModels = new float[size * 16];
+      mOut = new float[size * 16];
+      mArena = new MatrixArena(size);
+      mArenaOut = new MatrixArena(size);
+      final float[] m = new float[16];
+      for (int i = 0; i < size; i++) {
+        MathCheck.randomAffine(m);
+        System.arraycopy(m, 0, mModels, i * 16, 16);
+        mArena.set(mArena.allocate(), m, 0);
+      }
+    }
+  }
+
+  static class ReferenceMultiply extends Multiply {
+    ReferenceMultiply() {
+      super("math.referenceMultiplyMM");
+    }
+
+    @Override
+    public long run() {
+      for (int i = 0; i < mCount; i++)
+        ReferenceMatrix.multiplyMM(mOut, i * 16, mViewProjection, 0, mModels, i * 16);
+      return Float.floatToRawIntBits(mOut[mCount * 16 - 1]);
+    }
+  }
+
+  static class Mat4Multiply extends Multiply {
+    Mat4Multiply() {
+      super("math.mat4Multiply");
+    }
+
+    @Override
+    public long run() {
+      for (int i = 0; i < mCount; i++)
+        Mat4.multiply(mOut, i * 16, mViewProjection, 0, mModels, i * 16);
+      return Float.floatToRawIntBits(mOut[mCount * 16 - 1]);
+    }
+  }
+
+  static class Mat4MultiplyByAffineBatch extends Multiply {
+    Mat4MultiplyByAffineBatch() {
+      super("math.mat4ByAffineBatch");
+    }
+
+    @Override
+    public long run() {
+      Mat4.multiplyByAffine(mOut, 0, mViewProjection, 0, mModels, 0, mCount);
+      return Float.floatToRawIntBits(mOut[mCount * 16 - 1]);
+    }
+  }
+
+  static class ArenaMultiply extends Multiply {
+    ArenaMultiply() {
+      super("math.arenaMultiply");
+    }
+
+    @Override
+    public long run() {
+      MatrixArena.multiply(mViewProjection, 0, mArena, mArenaOut, 0, mCount);
+      return Float.floatToRawIntBits(mArenaOut.getElements(15)[mCount - 1]);
+    }
+  }
+
+  static class ArenaMultiplyAffine extends Multiply {
+    ArenaMultiplyAffine() {
+      super("math.arenaMultiplyAffine");
+    }
+
+    @Override
+    public long run() {
+      MatrixArena.multiplyAffine(mViewProjection, 0, mArena, mArenaOut, 0, mCount);
+      return Float.floatToRawIntBits(mArenaOut.getElements(15)[mCount - 1]);
+    }
+  }
+
+  /**
+   * Size random points and a rigid transform, so points transformed in place over and over stay finite.
+   */
+  abstract static class Points extends Benchmark {
+    final float[] mMatrix = new float[16];
+    float[] mPoints;
+    float[] mOut;
+    float[] mXs;
+    float[] mYs;
+    float[] mZs;
+    MatrixArena mArena;
+    int mHandle;
+    int mCount;
+
+    Points(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp(int size) {
+      mCount = size;
+      final float[] q = new float[4];
+      Quat.setAxisAngle(q, 0, 10, 0, 1, 0);
+      Mat4.setTranslationRotationScale(mMatrix, 0, 0.001f, 0, 0, q[0], q[1], q[2], q[3], 1, 1, 1);
+      final float[] m = new float[16];
+      mPoints = new float[size * 3];
+      mOut = new float[size * 3];
+      mXs = new float[size];
+      mYs = new float[size];
+      mZs = new float[size];
+      for (int i = 0; i < size; i++) {
+        // the translation of a random matrix makes a random point
+        MathCheck.randomAffine(m);
+        mPoints[i * 3] = mXs[i] = m[12];
+        mPoints[i * 3 + 1] = mYs[i] = m[13];
+        mPoints[i * 3 + 2] = mZs[i] = m[14];
+      }
+      mArena = new MatrixArena(1);
+      mHandle = mArena.allocate();
+      mArena.set(mHandle, mMatrix, 0);
+    }
+  }
+
+  static class ReferencePoints extends Points {
+    private final float[] mVector = new float[4];
+    private final float[] mResult = new float[4];
+
+    ReferencePoints() {
+      super("math.referenceMultiplyMV");
+    }
+
+    @Override
+    public long run() {
+      long bits = 0;
+      mVector[3] = 1.0f;
+      for (int i = 0; i < mCount; i++) {
+        mVector[0] = mPoints[i * 3];
+        mVector[1] = mPoints[i * 3 + 1];
+        mVector[2] = mPoints[i * 3 + 2];
+        ReferenceMatrix.multiplyMV(mResult, 0, mMatrix, 0, mVector, 0);
+        bits += Float.floatToRawIntBits(mResult[0]);
+      }
+      return bits;
+    }
+  }
+
+  static class Mat4Points extends Points {
+    Mat4Points() {
+      super("math.mat4Points");
+    }
+
+    @Override
+    public long run() {
+      Mat4.transformPoints(mMatrix, 0, mPoints, 0, mOut, 0, mCount);
+      return Float.floatToRawIntBits(mOut[0]);
+    }
+  }
+
+  static class ArenaPoints extends Points {
+    ArenaPoints() {
+      super("math.arenaPoints");
+    }
+
+    @Override
+    public long run() {
+      mArena.transformPoints(mHandle, mXs, mYs, mZs, 0, mCount);
+      return Float.floatToRawIntBits(mXs[0]);
+    }
+  }
+}
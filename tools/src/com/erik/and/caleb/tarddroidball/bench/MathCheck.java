@@ -0,0 +1,134 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+import com.erik.and.caleb.tarddroidball.math.MatrixArena;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+import java.util.Random;
+
+/**
+ * Checks the math package against {@link ReferenceMatrix} (android.opengl.Matrix)
+ * on random inputs. Their throughput is compared by the math benchmarks in
+ * {@link BenchmarkRunner}. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.MathCheck
+ * </pre>
+ */
+public class MathCheck {
+
+  private static final float TOLERANCE = 1e-5f;
+
+  private static final Random sRandom = new Random(42);
+  private static float sMaxError;
+
+  public static void main(String[] args) {
+    verify();
+  }
+
+  private static void verify() {
+    final float[] a = new float[16], b = new float[16], expected = new float[16], actual = new float[16];
+    for (int round = 0; round < 1000; round++) {
+      randomAffine(a);
+      randomAffine(b);
+      ReferenceMatrix.multiplyMM(expected, 0, a, 0, b, 0);
+      Mat4.multiply(actual, 0, a, 0, b, 0);
+      check("multiply", expected, actual, 16);
+      Mat4.multiplyAffine(actual, 0, a, 0, b, 0);
+      check("multiplyAffine", expected, actual, 16);
+
+      randomProjection(a);
+      ReferenceMatrix.multiplyMM(expected, 0, a, 0, b, 0);
+      Mat4.multiplyByAffine(actual, 0, a, 0, b, 0);
+      check("multiplyByAffine", expected, actual, 16);
+
+      final float angle = random(-720, 720), x = random(-1, 1), y = random(-1, 1), z = random(-1, 1);
+      randomAffine(a);
+      System.arraycopy(a, 0, expected, 0, 16);
+      System.arraycopy(a, 0, actual, 0, 16);
+      ReferenceMatrix.rotateM(expected, 0, angle, x, y, z);
+      Mat4.rotate(actual, 0, angle, x, y, z);
+      check("rotate", expected, actual, 16);
+      ReferenceMatrix.translateM(expected, 0, x, y, z);
+      Mat4.translate(actual, 0, x, y, z);
+      check("translate", expected, actual, 16);
+      ReferenceMatrix.scaleM(expected, 0, x, y, z);
+      Mat4.scale(actual, 0, x, y, z);
+      check("scale", expected, actual, 16);
+
+      final float[] vector = {x, y, z, 1.0f};
+      ReferenceMatrix.multiplyMV(expected, 0, a, 0, vector, 0);
+      Mat4.multiplyVector(actual, 0, a, 0, x, y, z, 1.0f);
+      check("multiplyVector", expected, actual, 4);
+
+      // translate * rotate * scale, the way the renderer used to build model matrices
+      final float tx = random(-10, 10), ty = random(-10, 10), tz = random(-10, 10);
+      final float sx = random(0.1f, 3), sy = random(0.1f, 3), sz = random(0.1f, 3);
+      ReferenceMatrix.setIdentityM(expected, 0);
+      ReferenceMatrix.translateM(expected, 0, tx, ty, tz);
+      ReferenceMatrix.rotateM(expected, 0, angle, x, y, z);
+      ReferenceMatrix.scaleM(expected, 0, sx, sy, sz);
+      final float[] q = new float[4];
+      Quat.setAxisAngle(q, 0, angle, x, y, z);
+      Mat4.setTranslationRotationScale(actual, 0, tx, ty, tz, q[0], q[1], q[2], q[3], sx, sy, sz);
+      check("quaternion TRS", expected, actual, 16);
+
+      final float left = random(-3, -0.1f), bottom = random(-3, -0.1f), near = random(0.1f, 2);
+      ReferenceMatrix.frustumM(expected, 0, left, -left, bottom, -bottom, near, near * 10);
+      Mat4.frustum(actual, 0, left, -left, bottom, -bottom, near, near * 10);
+      check("frustum", expected, actual, 16);
+
+      ReferenceMatrix.setLookAtM(expected, 0, tx, ty, tz, x * 5, y * 5, z * 5, 0, 1, 0);
+      Mat4.setLookAt(actual, 0, tx, ty, tz, x * 5, y * 5, z * 5, 0, 1, 0);
+      check("setLookAt", expected, actual, 16);
+    }
+
+    final int count = 257;
+    final MatrixArena models = new MatrixArena(8);
+    final MatrixArena result = new MatrixArena(8);
+    final float[] modelArray = new float[count * 16];
+    for (int i = 0; i < count; i++) {
+      randomAffine(a);
+      models.set(models.allocate(), a, 0);
+      System.arraycopy(a, 0, modelArray, i * 16, 16);
+    }
+    randomProjection(b);
+    final float[] gathered = new float[count * 16];
+    MatrixArena.multiplyAffine(b, 0, models, result, 0, count);
+    result.get(0, count, gathered, 0);
+    for (int i = 0; i < count; i++) {
+      ReferenceMatrix.multiplyMM(expected, 0, b, 0, modelArray, i * 16);
+      System.arraycopy(gathered, i * 16, actual, 0, 16);
+      check("MatrixArena.multiplyAffine", expected, actual, 16);
+    }
+    System.out.println(String.format("math package matches android.opengl.Matrix, max relative error %.2e", sMaxError));
+  }
+
+  private static void check(String what, float[] expected, float[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      final float error = Math.abs(expected[i] - actual[i]) / Math.max(1.0f, Math.abs(expected[i]));
+      sMaxError = Math.max(sMaxError, error);
+      if (!(error <= TOLERANCE)) {
+        System.err.println(what + " differs at element " + i + ": expected " + expected[i] + ", got " + actual[i]);
+        System.exit(1);
+      }
+    }
+  }
+
+  static void randomAffine(float[] m) {
+    final float[] q = new float[4];
+    Quat.setAxisAngle(q, 0, random(-180, 180), random(-1, 1), random(-1, 1), random(0.1f, 1));
+    Mat4.setTranslationRotationScale(m, 0, random(-10, 10), random(-10, 10), random(-10, 10),
+        q[0], q[1], q[2], q[3], random(0.5f, 2), random(0.5f, 2), random(0.5f, 2));
+  }
+
+  static void randomProjection(float[] m) {
+    final float ratio = random(0.5f, 2);
+    Mat4.frustum(m, 0, -ratio, ratio, -1, 1, random(0.5f, 2), random(10, 100));
+  }
+
+  private static float random(float min, float max) {
+    return min + sRandom.nextFloat() * (max - min);
+  }
+}
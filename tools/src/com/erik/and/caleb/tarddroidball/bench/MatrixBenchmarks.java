@@ -0,0 +1,196 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.SceneGraph;
+import com.erik.and.caleb.tarddroidball.math.Mat4;
+
+/**
+ * Per-frame matrix composition for a scene of spinning objects: the way the
+ * draw methods used to do it with android.opengl.Matrix calls per object,
+ * through the dirty-flag scene graph with none to all of the objects moving,
+ * and by recomputing every node's matrices regardless.
+ */
+final class MatrixBenchmarks {
+
+  private static final int GROUP_SIZE = 8;
+
+  private MatrixBenchmarks() {
+  }
+
+  private static void camera(float[] view, float[] projection) {
+    Mat4.setLookAt(view, 0, 0, 0, 2, 0, 0, -5, 0, 1, 0);
+    Mat4.frustum(projection, 0, -1.5f, 1.5f, -1, 1, 1, 10);
+  }
+
+  static class PerObjectMatrixCalls extends Benchmark {
+    private final float[] mView = new float[16];
+    private final float[] mProjection = new float[16];
+    private final float[] mMVP = new float[16];
+    private float[] mModels;
+    private int mSize;
+    private float mAngle;
+
+    PerObjectMatrixCalls() {
+      super("matrix.perObjectCalls");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+      mModels = new float[size * 16];
+      camera(mView, mProjection);
+    }
+
+    @Override
+    public long run() {
+      mAngle += 1.0f;
+      long bits = 0;
+      for (int i = 0; i < mSize; i++) {
+        final int o = i * 16;
+        ReferenceMatrix.setIdentityM(mModels, o);
+        ReferenceMatrix.translateM(mModels, o, i % 100, 1.0f, -7.0f);
+        ReferenceMatrix.rotateM(mModels, o, mAngle, 0.0f, 1.0f, 0.0f);
+        ReferenceMatrix.multiplyMM(mMVP, 0, mView, 0, mModels, o);
+        ReferenceMatrix.multiplyMM(mMVP, 0, mProjection, 0, mMVP, 0);
+        bits += Float.floatToRawIntBits(mMVP[15]);
+      }
+      return bits;
+    }
+  }
+
+  /**
+   * Groups of one root with seven children, the way the scene used to be
+   * laid out for measuring; only the roots spin.
+   */
+  private static SceneGraph buildScene(int size) {
+    final SceneGraph scene = new SceneGraph(size);
+    for (int i = 0; i < size; i++) {
+      final int node = scene.addNode(i % GROUP_SIZE == 0 ? SceneGraph.NO_PARENT : i - i % GROUP_SIZE);
+      scene.setPosition(node, i % 100, i % GROUP_SIZE, -(i / 100));
+    }
+    return scene;
+  }
+
+  /**
+   * SceneGraph's dirty-flag update with a fraction of the groups moving and the camera still.
+   */
+  static class SceneGraphUpdate extends Benchmark {
+    private final float mFraction;
+    private final float[] mView = new float[16];
+    private final float[] mProjection = new float[16];
+    private SceneGraph mScene;
+    private int mMovingGroups;
+    private float mAngle;
+    private long mRuns;
+    private long mMultiplies;
+    private long mAvoided;
+
+    SceneGraphUpdate(String name, float fraction) {
+      super(name);
+      mFraction = fraction;
+    }
+
+    @Override
+    public void setUp(int size) {
+      camera(mView, mProjection);
+      mScene = buildScene(size);
+      mScene.setCamera(mView, mProjection);
+      mScene.update();
+      final int groups = (size + GROUP_SIZE - 1) / GROUP_SIZE;
+      mMovingGroups = mFraction == 0 ? 0 : Math.max(1, Math.round(groups * mFraction));
+      mRuns = 0;
+      mMultiplies = 0;
+      mAvoided = 0;
+    }
+
+    @Override
+    public long run() {
+      mAngle += 1.0f;
+      for (int g = 0; g < mMovingGroups; g++)
+        mScene.setRotation(g * GROUP_SIZE, mAngle, 0.0f, 1.0f, 0.0f);
+      mScene.setCamera(mView, mProjection);
+      mScene.update();
+      mRuns++;
+      mMultiplies += mScene.getLastMultiplies();
+      mAvoided += mScene.getLastMultipliesAvoided();
+      return mScene.getLastMultiplies();
+    }
+
+    @Override
+    public String getNote() {
+      return String.format("multiplies/op %d, avoided/op %d", mMultiplies / mRuns, mAvoided / mRuns);
+    }
+  }
+
+  /**
+   * The baseline for {@link SceneGraphUpdate}: every world, model-view and
+   * model-view-projection matrix of every node, every frame. The scene's
+   * own world matrices stand in for the local ones; only the amount of work matters.
+   */
+  static class RecomputeEverything extends Benchmark {
+    private final float[] mView = new float[16];
+    private final float[] mProjection = new float[16];
+    private SceneGraph mScene;
+    private float[] mWorld;
+    private float[] mModelView;
+    private float[] mModelViewProjection;
+
+    RecomputeEverything() {
+      super("matrix.recomputeAll");
+    }
+
+    @Override
+    public void setUp(int size) {
+      camera(mView, mProjection);
+      mScene = buildScene(size);
+      mScene.setCamera(mView, mProjection);
+      mScene.update();
+      mWorld = new float[size * 16];
+      mModelView = new float[size * 16];
+      mModelViewProjection = new float[size * 16];
+    }
+
+    @Override
+    public long run() {
+      final float[] local = mScene.getWorldMatrices();
+      final int nodes = mScene.getNodeCount();
+      for (int node = 0; node < nodes; node++) {
+        final int parent = mScene.getParent(node);
+        if (parent == SceneGraph.NO_PARENT)
+          System.arraycopy(local, node * 16, mWorld, node * 16, 16);
+        else
+          multiply(mWorld, node * 16, mWorld, parent * 16, local, node * 16);
+        multiply(mModelView, node * 16, mView, 0, mWorld, node * 16);
+        multiply(mModelViewProjection, node * 16, mProjection, 0, mModelView, node * 16);
+      }
+      return Float.floatToRawIntBits(mModelViewProjection[nodes * 16 - 1]);
+    }
+
+    @Override
+    public String getNote() {
+      return String.format("multiplies/op %d, avoided/op 0", 3 * mScene.getNodeCount() - countRoots());
+    }
+
+    private int countRoots() {
+      int roots = 0;
+      for (int node = 0; node < mScene.getNodeCount(); node++) {
+        if (mScene.getParent(node) == SceneGraph.NO_PARENT)
+          roots++;
+      }
+      return roots;
+    }
+  }
+
+  private static void multiply(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    // same loop shape as SceneGraph's, so only the amount of work differs
+    for (int column = 0; column < 4; column++) {
+      final float r0 = rhs[rhsOffset + column * 4];
+      final float r1 = rhs[rhsOffset + column * 4 + 1];
+      final float r2 = rhs[rhsOffset + column * 4 + 2];
+      final float r3 = rhs[rhsOffset + column * 4 + 3];
+      for (int row = 0; row < 4; row++) {
+        result[resultOffset + column * 4 + row] = lhs[lhsOffset + row] * r0 + lhs[lhsOffset + 4 + row] * r1
+            + lhs[lhsOffset + 8 + row] * r2 + lhs[lhsOffset + 12 + row] * r3;
+      }
+    }
+  }
+}
@@ -0,0 +1,303 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.gl.Gl;
+
+import java.nio.Buffer;
+
+/**
+ * A {@link Gl} that draws nothing: it hands out handles, compiles and links
+ * everything, and reports the same active uniforms and attributes for every
+ * program, so rendering code runs its whole path on a desktop JVM. Wrap it in
+ * a {@link com.erik.and.caleb.tarddroidball.gl.RecordingGl} to see the calls.
+ * Allocates nothing per call.
+ */
+public class NoOpGl implements Gl {
+
+  /** Every uniform of the app's programs, arrays as "name[0]". */
+  private static final String[] UNIFORMS = {"u_MVPMatrix", "u_MVMatrix", "u_PMatrix", "u_MVMatrices[0]", "u_LightPos",
+      "u_Texture", "u_AtlasRect"};
+  private static final int[] UNIFORM_TYPES = {GLES20.GL_FLOAT_MAT4, GLES20.GL_FLOAT_MAT4, GLES20.GL_FLOAT_MAT4,
+      GLES20.GL_FLOAT_MAT4, GLES20.GL_FLOAT_VEC3, GLES20.GL_SAMPLER_2D, GLES20.GL_FLOAT_VEC4};
+  private static final int[] UNIFORM_SIZES = {1, 1, 1, 24, 1, 1, 1};
+  private static final String[] ATTRIBUTES = {"a_Position", "a_Normal", "a_TexCoordinate", "a_Color", "a_InstanceIndex"};
+
+  private final int mMaxVertexUniformVectors;
+  private int mNextHandle = 1;
+
+  /**
+   * @param maxVertexUniformVectors what GL_MAX_VERTEX_UNIFORM_VECTORS reports; 128 is the ES 2.0 minimum
+   */
+  public NoOpGl(int maxVertexUniformVectors) {
+    mMaxVertexUniformVectors = maxVertexUniformVectors;
+  }
+
+  @Override
+  public void glActiveTexture(int texture) {
+  }
+
+  @Override
+  public void glAttachShader(int program, int shader) {
+  }
+
+  @Override
+  public void glBindAttribLocation(int program, int index, String name) {
+  }
+
+  @Override
+  public void glBindBuffer(int target, int buffer) {
+  }
+
+  @Override
+  public void glBindTexture(int target, int texture) {
+  }
+
+  @Override
+  public void glBlendFunc(int sfactor, int dfactor) {
+  }
+
+  @Override
+  public void glBufferData(int target, int size, Buffer data, int usage) {
+  }
+
+  @Override
+  public void glBufferSubData(int target, int offset, int size, Buffer data) {
+  }
+
+  @Override
+  public void glClear(int mask) {
+  }
+
+  @Override
+  public void glClearColor(float red, float green, float blue, float alpha) {
+  }
+
+  @Override
+  public void glCompileShader(int shader) {
+  }
+
+  @Override
+  public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                     int imageSize, Buffer data) {
+  }
+
+  @Override
+  public int glCreateProgram() {
+    return mNextHandle++;
+  }
+
+  @Override
+  public int glCreateShader(int type) {
+    return mNextHandle++;
+  }
+
+  @Override
+  public void glDeleteBuffers(int n, int[] buffers, int offset) {
+  }
+
+  @Override
+  public void glDeleteProgram(int program) {
+  }
+
+  @Override
+  public void glDeleteShader(int shader) {
+  }
+
+  @Override
+  public void glDisable(int cap) {
+  }
+
+  @Override
+  public void glDisableVertexAttribArray(int index) {
+  }
+
+  @Override
+  public void glDrawArrays(int mode, int first, int count) {
+  }
+
+  @Override
+  public void glDrawElements(int mode, int count, int type, int offset) {
+  }
+
+  @Override
+  public void glEnable(int cap) {
+  }
+
+  @Override
+  public void glEnableVertexAttribArray(int index) {
+  }
+
+  @Override
+  public void glGenBuffers(int n, int[] buffers, int offset) {
+    for (int i = 0; i < n; i++)
+      buffers[offset + i] = mNextHandle++;
+  }
+
+  @Override
+  public void glGenTextures(int n, int[] textures, int offset) {
+    for (int i = 0; i < n; i++)
+      textures[offset + i] = mNextHandle++;
+  }
+
+  @Override
+  public void glGetActiveAttrib(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                                int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+    length[lengthOffset] = copyName(ATTRIBUTES[index], name, nameOffset);
+    size[sizeOffset] = 1;
+    type[typeOffset] = GLES20.GL_FLOAT_VEC4;
+  }
+
+  @Override
+  public void glGetActiveUniform(int program, int index, int bufsize, int[] length, int lengthOffset, int[] size,
+                                 int sizeOffset, int[] type, int typeOffset, byte[] name, int nameOffset) {
+    length[lengthOffset] = copyName(UNIFORMS[index], name, nameOffset);
+    size[sizeOffset] = UNIFORM_SIZES[index];
+    type[typeOffset] = UNIFORM_TYPES[index];
+  }
+
+  private static int copyName(String from, byte[] to, int offset) {
+    for (int i = 0; i < from.length(); i++)
+      to[offset + i] = (byte) from.charAt(i);
+    return from.length();
+  }
+
+  @Override
+  public int glGetAttribLocation(int program, String name) {
+    return indexOf(ATTRIBUTES, name);
+  }
+
+  @Override
+  public void glGetIntegerv(int pname, int[] params, int offset) {
+    params[offset] = pname == GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS ? mMaxVertexUniformVectors : 0;
+  }
+
+  @Override
+  public String glGetProgramInfoLog(int program) {
+    return "";
+  }
+
+  @Override
+  public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+    switch (pname) {
+      case GLES20.GL_ACTIVE_UNIFORMS:
+        params[offset] = UNIFORMS.length;
+        break;
+      case GLES20.GL_ACTIVE_UNIFORM_MAX_LENGTH:
+        params[offset] = longest(UNIFORMS) + 1;
+        break;
+      case GLES20.GL_ACTIVE_ATTRIBUTES:
+        params[offset] = ATTRIBUTES.length;
+        break;
+      case GLES20.GL_ACTIVE_ATTRIBUTE_MAX_LENGTH:
+        params[offset] = longest(ATTRIBUTES) + 1;
+        break;
+      default:
+        params[offset] = GLES20.GL_TRUE;
+    }
+  }
+
+  @Override
+  public String glGetShaderInfoLog(int shader) {
+    return "";
+  }
+
+  @Override
+  public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+    params[offset] = GLES20.GL_TRUE;
+  }
+
+  @Override
+  public String glGetString(int name) {
+    return "";
+  }
+
+  @Override
+  public int glGetUniformLocation(int program, String name) {
+    for (int i = 0; i < UNIFORMS.length; i++) {
+      if (UNIFORMS[i].equals(name) || UNIFORMS[i].startsWith(name + "["))
+        return i;
+    }
+    return -1;
+  }
+
+  @Override
+  public void glLinkProgram(int program) {
+  }
+
+  @Override
+  public void glShaderSource(int shader, String string) {
+  }
+
+  @Override
+  public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format,
+                           int type, Buffer pixels) {
+  }
+
+  @Override
+  public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+  }
+
+  @Override
+  public void glTexParameteri(int target, int pname, int param) {
+  }
+
+  @Override
+  public void glUniform1f(int location, float x) {
+  }
+
+  @Override
+  public void glUniform1i(int location, int x) {
+  }
+
+  @Override
+  public void glUniform2f(int location, float x, float y) {
+  }
+
+  @Override
+  public void glUniform3f(int location, float x, float y, float z) {
+  }
+
+  @Override
+  public void glUniform4f(int location, float x, float y, float z, float w) {
+  }
+
+  @Override
+  public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+  }
+
+  @Override
+  public void glUseProgram(int program) {
+  }
+
+  @Override
+  public void glVertexAttrib3f(int index, float x, float y, float z) {
+  }
+
+  @Override
+  public void glVertexAttrib4f(int index, float x, float y, float z, float w) {
+  }
+
+  @Override
+  public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+  }
+
+  @Override
+  public void glViewport(int x, int y, int width, int height) {
+  }
+
+  private static int indexOf(String[] names, String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name))
+        return i;
+    }
+    return -1;
+  }
+
+  private static int longest(String[] names) {
+    int longest = 0;
+    for (String name : names)
+      longest = Math.max(longest, name.length());
+    return longest;
+  }
+}
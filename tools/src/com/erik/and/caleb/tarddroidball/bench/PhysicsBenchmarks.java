@@ -0,0 +1,137 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.BroadPhase;
+import com.erik.and.caleb.tarddroidball.CollisionPairs;
+import com.erik.and.caleb.tarddroidball.PhysicsWorld;
+import com.erik.and.caleb.tarddroidball.SpatialHashBroadPhase;
+import com.erik.and.caleb.tarddroidball.SweepAndPruneBroadPhase;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+import java.util.Random;
+
+/**
+ * One physics step of size boxes falling into an arena that grows with
+ * them, so the boxes per unit of floor stays the same; try --sizes 1000,10000.
+ * "physics.hashStep" finds pairs with a {@link SpatialHashBroadPhase},
+ * "physics.sapStep" with a {@link SweepAndPruneBroadPhase}. PhysicsCheck
+ * prints the box tests each makes beside testing every pair.
+ */
+class PhysicsBenchmarks {
+
+  static final float STEP_SECONDS = 1 / 60.0f;
+  // a turned box is up to root 3 units across, and must cover no more than 2 cells a side
+  static final float CELL_SIZE = 2.0f;
+  private static final float MAX_HALF_EXTENT = 0.5f;
+
+  private PhysicsBenchmarks() {
+  }
+
+  /**
+   * Boxes up to one unit across, one in ten turned, scattered at random
+   * speeds through the lowest 8 units of an arena with about four boxes to
+   * three square units of floor.
+   */
+  static PhysicsWorld arena(BroadPhase broadPhase, int bodies, long seed) {
+    final PhysicsWorld world = new PhysicsWorld(broadPhase);
+    final Random random = new Random(seed);
+    final float side = (float) Math.sqrt(bodies * 3.0 / 4.0) + 2;
+    final float height = 8;
+    world.setGravity(-9.8f);
+    world.setBounds(0, 0, 0, side, height * 2, side);
+    final float[] q = new float[4];
+    for (int i = 0; i < bodies; i++) {
+      final float halfX = 0.2f + random.nextFloat() * (MAX_HALF_EXTENT - 0.2f);
+      final float halfY = 0.2f + random.nextFloat() * (MAX_HALF_EXTENT - 0.2f);
+      final float halfZ = 0.2f + random.nextFloat() * (MAX_HALF_EXTENT - 0.2f);
+      final int body = world.addBody(1 + random.nextFloat() * (side - 2), 1 + random.nextFloat() * (height - 2),
+          1 + random.nextFloat() * (side - 2), halfX, halfY, halfZ, 0.5f + random.nextFloat());
+      world.setVelocity(body, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2);
+      if (i % 10 == 0) {
+        Quat.setAxisAngle(q, 0, random.nextFloat() * 360, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+            random.nextFloat() - 0.5f);
+        world.setOrientation(body, q, 0);
+      }
+    }
+    return world;
+  }
+
+  /**
+   * Tests every pair, the n(n-1)/2 baseline the real broad phases are measured against.
+   */
+  static class AllPairs implements BroadPhase {
+    private float[] mMinX, mMinY, mMinZ, mMaxX, mMaxY, mMaxZ;
+    private int mCount;
+    private int mLastTests;
+
+    @Override
+    public void update(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count) {
+      mMinX = minX;
+      mMinY = minY;
+      mMinZ = minZ;
+      mMaxX = maxX;
+      mMaxY = maxY;
+      mMaxZ = maxZ;
+      mCount = count;
+    }
+
+    @Override
+    public void findPairs(CollisionPairs pairs) {
+      for (int a = 0; a < mCount; a++) {
+        for (int b = a + 1; b < mCount; b++) {
+          if (mMinX[a] <= mMaxX[b] && mMinX[b] <= mMaxX[a] && mMinY[a] <= mMaxY[b] && mMinY[b] <= mMaxY[a]
+              && mMinZ[a] <= mMaxZ[b] && mMinZ[b] <= mMaxZ[a])
+            pairs.add(a, b);
+        }
+      }
+      mLastTests = (int) Math.min(Integer.MAX_VALUE, (long) mCount * (mCount - 1) / 2);
+    }
+
+    @Override
+    public int getLastTests() {
+      return mLastTests;
+    }
+  }
+
+  private abstract static class Stepping extends Benchmark {
+    PhysicsWorld mWorld;
+
+    Stepping(String name) {
+      super(name);
+    }
+
+    abstract BroadPhase broadPhase();
+
+    @Override
+    public void setUp(int size) {
+      mWorld = arena(broadPhase(), size, 25);
+    }
+
+    @Override
+    public long run() {
+      mWorld.step(STEP_SECONDS);
+      return mWorld.getLastContactCount();
+    }
+  }
+
+  static class HashStep extends Stepping {
+    HashStep() {
+      super("physics.hashStep");
+    }
+
+    @Override
+    BroadPhase broadPhase() {
+      return new SpatialHashBroadPhase(CELL_SIZE);
+    }
+  }
+
+  static class SapStep extends Stepping {
+    SapStep() {
+      super("physics.sapStep");
+    }
+
+    @Override
+    BroadPhase broadPhase() {
+      return new SweepAndPruneBroadPhase();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.BroadPhase;
+import com.erik.and.caleb.tarddroidball.CollisionPairs;
+import com.erik.and.caleb.tarddroidball.PhysicsWorld;
+import com.erik.and.caleb.tarddroidball.SpatialHashBroadPhase;
+import com.erik.and.caleb.tarddroidball.SweepAndPruneBroadPhase;
+import com.erik.and.caleb.tarddroidball.math.Quat;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Steps an arena of falling boxes, big ones among them, and checks after
+ * every step that the spatial hash and sweep and prune find exactly the
+ * pairs testing every pair does, also as bodies are dropped and added.
+ * Then checks the narrow phase on boxes whose axis-aligned boxes overlap
+ * while they themselves do or do not, that a head-on hit keeps momentum and
+ * bounces by the restitution, that a kinematic body pushes without being
+ * pushed, and that a pile settles on the floor. Then prints the box tests
+ * each broad phase makes beside n(n-1)/2, and step times, for 1k and 10k
+ * bodies. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.PhysicsCheck
+ * </pre>
+ */
+public class PhysicsCheck {
+
+  private static final int[] SIZES = {1000, 10000};
+
+  public static void main(String[] args) {
+    verifyBroadPhases();
+    verifyNarrowPhase();
+    verifyImpulses();
+    verifyPile();
+    System.out.println("broad phases, narrow phase, impulses and resting contact check out");
+    System.out.println(String.format("%7s %12s %12s %12s %8s %8s %12s %12s %12s", "bodies", "n(n-1)/2", "hash tests",
+        "sap tests", "pairs", "contacts", "hash ms", "sap ms", "all pairs ms"));
+    for (int size : SIZES)
+      compare(size);
+  }
+
+  private static void verifyBroadPhases() {
+    final PhysicsWorld world = PhysicsBenchmarks.arena(new PhysicsBenchmarks.AllPairs(), 400, 7);
+    // a few far bigger than the cells, which the hash keeps apart
+    for (int i = 0; i < 4; i++)
+      world.addBody(3 + i * 3, 1.5f, 5, 1.5f + i, 1.5f, 1.0f, 0.2f);
+    final BroadPhase[] phases = {new SpatialHashBroadPhase(PhysicsBenchmarks.CELL_SIZE), new SweepAndPruneBroadPhase()};
+    final String[] names = {"hash", "sap"};
+    final int count = world.getBodyCount();
+    final float[][] bounds = new float[6][count];
+    final float[] box = new float[6];
+    final CollisionPairs pairs = new CollisionPairs();
+    for (int step = 0; step < 240; step++) {
+      world.step(PhysicsBenchmarks.STEP_SECONDS);
+      for (int body = 0; body < count; body++) {
+        world.getBounds(body, box, 0);
+        for (int k = 0; k < 6; k++)
+          bounds[k][body] = box[k];
+      }
+      final Set<Long> expected = pairs(world.getPairs());
+      // bodies dropped from the end and added back part of the way through
+      final int active = step < 80 || step >= 160 ? count : count - 57;
+      for (int p = 0; p < phases.length; p++) {
+        phases[p].update(bounds[0], bounds[1], bounds[2], bounds[3], bounds[4], bounds[5], active);
+        pairs.clear();
+        phases[p].findPairs(pairs);
+        final Set<Long> found = pairs(pairs);
+        check(found.size() == pairs.size(), names[p] + " found a pair twice at step " + step);
+        if (active < count) {
+          check(found.equals(below(expected, active)), names[p] + " found other pairs with bodies dropped at step " + step);
+        } else {
+          check(found.equals(expected), names[p] + " found " + found.size() + " pairs for " + expected.size()
+              + " at step " + step);
+        }
+      }
+    }
+  }
+
+  private static Set<Long> pairs(CollisionPairs pairs) {
+    final Set<Long> set = new HashSet<Long>();
+    for (int i = 0; i < pairs.size(); i++) {
+      check(pairs.getFirst(i) < pairs.getSecond(i), "pair " + pairs.getFirst(i) + "," + pairs.getSecond(i) + " out of order");
+      set.add((long) pairs.getFirst(i) << 32 | pairs.getSecond(i));
+    }
+    return set;
+  }
+
+  private static Set<Long> below(Set<Long> pairs, int count) {
+    final Set<Long> set = new HashSet<Long>();
+    for (long pair : pairs) {
+      if ((int) pair < count)
+        set.add(pair);
+    }
+    return set;
+  }
+
+  /**
+   * Two boxes turned 45 degrees about y, side by side along their own axis:
+   * their axis-aligned boxes overlap whether they touch or not.
+   */
+  private static void verifyNarrowPhase() {
+    final float[] q = new float[4];
+    Quat.setAxisAngle(q, 0, 45, 0, 1, 0);
+    for (int apart = 0; apart < 2; apart++) {
+      final float gap = apart == 0 ? -0.1f : 0.1f;
+      // along their axes the centres are 2 + gap apart, so 2 + gap over root 2 along x and along z
+      final float offset = (2 + gap) / (float) Math.sqrt(2);
+      final PhysicsWorld world = new PhysicsWorld(new SweepAndPruneBroadPhase());
+      final int a = world.addBody(0, 0, 0, 1, 1, 1, 1);
+      final int b = world.addBody(offset, 0, offset, 1, 1, 1, 1);
+      world.setOrientation(a, q, 0);
+      world.setOrientation(b, q, 0);
+      world.collide();
+      check(world.getPairs().size() == 1, "turned boxes' axis-aligned boxes should overlap");
+      check(world.getLastContactCount() == 1 - apart, "turned boxes " + gap + " apart: " + world.getLastContactCount()
+          + " contacts");
+      if (apart == 0)
+        check(world.getPositionX(b) > offset && world.getPositionZ(b) > offset && world.getPositionX(a) < 0,
+            "turned boxes were not pushed apart along the diagonal");
+    }
+    // a turned box reaches further along x than its own half extent
+    Quat.setAxisAngle(q, 0, 45, 0, 1, 0);
+    for (int apart = 0; apart < 2; apart++) {
+      final PhysicsWorld world = new PhysicsWorld(new SpatialHashBroadPhase(2));
+      world.addBody(0, 0, 0, 1, 1, 1, 1);
+      world.setOrientation(0, q, 0);
+      world.addBody(apart == 0 ? 2.3f : 2.5f, 0, 0, 1, 1, 1, 1);
+      world.collide();
+      check(world.getLastContactCount() == 1 - apart, "turned box beside a plain one, " + (apart == 0 ? "touching" : "apart")
+          + ": " + world.getLastContactCount() + " contacts");
+    }
+  }
+
+  private static void verifyImpulses() {
+    PhysicsWorld world = new PhysicsWorld(new SweepAndPruneBroadPhase());
+    world.setRestitution(0.5f);
+    final int a = world.addBody(0, 0, 0, 0.5f, 0.5f, 0.5f, 1);
+    final int b = world.addBody(0.95f, 0, 0, 0.5f, 0.5f, 0.5f, 0.5f);
+    world.setVelocity(a, 2, 0, 0);
+    world.setVelocity(b, -1, 0, 0);
+    final float momentum = 2 / 1.0f - 1 / 0.5f;
+    world.collide();
+    final float after = world.getVelocityX(a) / 1.0f + world.getVelocityX(b) / 0.5f;
+    check(Math.abs(after - momentum) < 1e-5f, "momentum " + momentum + " became " + after);
+    final float separating = world.getVelocityX(b) - world.getVelocityX(a);
+    check(Math.abs(separating - 0.5f * 3) < 1e-5f, "bodies closing at 3 part at " + separating + ", not 1.5");
+    check(world.getPositionX(b) - world.getPositionX(a) > 0.95f, "overlapping bodies were not pushed apart");
+
+    world = new PhysicsWorld(new SweepAndPruneBroadPhase());
+    final int pusher = world.addBody(0, 0, 0, 0.5f, 0.5f, 0.5f, 0);
+    final int pushed = world.addBody(1.2f, 0, 0, 0.5f, 0.5f, 0.5f, 1);
+    world.setVelocity(pusher, 3, 0, 0);
+    for (int step = 0; step < 30; step++)
+      world.step(PhysicsBenchmarks.STEP_SECONDS);
+    check(world.getVelocityX(pusher) == 3, "a kinematic body was slowed to " + world.getVelocityX(pusher));
+    check(world.getVelocityX(pushed) >= 3 && world.getPositionX(pushed) > world.getPositionX(pusher) + 0.9f,
+        "a kinematic body did not push the one in its way");
+  }
+
+  /**
+   * Drops an arena of boxes and lets it come to rest: nothing may sink
+   * through the floor, and the pile must stop moving.
+   */
+  private static void verifyPile() {
+    final PhysicsWorld world = PhysicsBenchmarks.arena(new SpatialHashBroadPhase(PhysicsBenchmarks.CELL_SIZE), 300, 11);
+    world.setRestitution(0.2f);
+    for (int step = 0; step < 600; step++)
+      world.step(PhysicsBenchmarks.STEP_SECONDS);
+    final float[] box = new float[6];
+    double speed = 0;
+    for (int body = 0; body < world.getBodyCount(); body++) {
+      world.getBounds(body, box, 0);
+      check(box[1] > -0.01f, "body " + body + " sank through the floor to " + box[1]);
+      speed += Math.sqrt(world.getVelocityX(body) * world.getVelocityX(body) + world.getVelocityY(body) * world.getVelocityY(body)
+          + world.getVelocityZ(body) * world.getVelocityZ(body));
+    }
+    speed /= world.getBodyCount();
+    check(speed < 0.5, "the pile is still moving at " + speed + " units/s on average after 10 s");
+  }
+
+  private static void compare(int size) {
+    final PhysicsWorld hash = PhysicsBenchmarks.arena(new SpatialHashBroadPhase(PhysicsBenchmarks.CELL_SIZE), size, 25);
+    final PhysicsWorld sap = PhysicsBenchmarks.arena(new SweepAndPruneBroadPhase(), size, 25);
+    final PhysicsWorld all = PhysicsBenchmarks.arena(new PhysicsBenchmarks.AllPairs(), size, 25);
+    // the first steps warm up and let the boxes land
+    final double hashMillis = time(hash, 120, 120);
+    final double sapMillis = time(sap, 120, 120);
+    final double allMillis = time(all, 2, size > 1000 ? 3 : 30);
+    System.out.println(String.format("%7d %12d %12d %12d %8d %8d %12.2f %12.2f %12.2f", size, (long) size * (size - 1) / 2,
+        hash.getBroadPhase().getLastTests(), sap.getBroadPhase().getLastTests(), hash.getPairs().size(),
+        hash.getLastContactCount(), hashMillis, sapMillis, allMillis));
+  }
+
+  private static double time(PhysicsWorld world, int warmup, int steps) {
+    for (int step = 0; step < warmup; step++)
+      world.step(PhysicsBenchmarks.STEP_SECONDS);
+    final long start = System.nanoTime();
+    for (int step = 0; step < steps; step++)
+      world.step(PhysicsBenchmarks.STEP_SECONDS);
+    return (System.nanoTime() - start) / 1e6 / steps;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,151 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+/**
+ * The parts of android.opengl.Matrix the app used to call, reproduced from the
+ * platform source so that the math package can be checked against them on a
+ * desktop JVM. Kept deliberately literal, temporary array in rotateM included.
+ */
+final class ReferenceMatrix {
+
+  private ReferenceMatrix() {
+  }
+
+  static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float[] temp = new float[16];
+    for (int i = 0; i < 4; i++) {
+      for (int j = 0; j < 4; j++) {
+        float sum = 0;
+        for (int k = 0; k < 4; k++)
+          sum += lhs[lhsOffset + k * 4 + j] * rhs[rhsOffset + i * 4 + k];
+        temp[i * 4 + j] = sum;
+      }
+    }
+    System.arraycopy(temp, 0, result, resultOffset, 16);
+  }
+
+  static void multiplyMV(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+    final float[] temp = new float[4];
+    for (int j = 0; j < 4; j++) {
+      float sum = 0;
+      for (int k = 0; k < 4; k++)
+        sum += lhs[lhsOffset + k * 4 + j] * rhs[rhsOffset + k];
+      temp[j] = sum;
+    }
+    System.arraycopy(temp, 0, result, resultOffset, 4);
+  }
+
+  static void setIdentityM(float[] m, int offset) {
+    for (int i = 0; i < 16; i++)
+      m[offset + i] = 0;
+    for (int i = 0; i < 16; i += 5)
+      m[offset + i] = 1.0f;
+  }
+
+  static void translateM(float[] m, int offset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++) {
+      final int mi = offset + i;
+      m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+    }
+  }
+
+  static void scaleM(float[] m, int offset, float x, float y, float z) {
+    for (int i = 0; i < 4; i++) {
+      final int mi = offset + i;
+      m[mi] *= x;
+      m[4 + mi] *= y;
+      m[8 + mi] *= z;
+    }
+  }
+
+  static void setRotateM(float[] rm, int offset, float a, float x, float y, float z) {
+    rm[offset + 3] = 0;
+    rm[offset + 7] = 0;
+    rm[offset + 11] = 0;
+    rm[offset + 12] = 0;
+    rm[offset + 13] = 0;
+    rm[offset + 14] = 0;
+    rm[offset + 15] = 1;
+    a *= (float) (Math.PI / 180.0f);
+    final float s = (float) Math.sin(a);
+    final float c = (float) Math.cos(a);
+    final float len = (float) Math.sqrt(x * x + y * y + z * z);
+    if (len != 1.0f) {
+      final float recipLen = 1.0f / len;
+      x *= recipLen;
+      y *= recipLen;
+      z *= recipLen;
+    }
+    final float nc = 1.0f - c;
+    final float xy = x * y, yz = y * z, zx = z * x;
+    final float xs = x * s, ys = y * s, zs = z * s;
+    rm[offset] = x * x * nc + c;
+    rm[offset + 4] = xy * nc - zs;
+    rm[offset + 8] = zx * nc + ys;
+    rm[offset + 1] = xy * nc + zs;
+    rm[offset + 5] = y * y * nc + c;
+    rm[offset + 9] = yz * nc - xs;
+    rm[offset + 2] = zx * nc - ys;
+    rm[offset + 6] = yz * nc + xs;
+    rm[offset + 10] = z * z * nc + c;
+  }
+
+  static void rotateM(float[] m, int offset, float a, float x, float y, float z) {
+    final float[] temp = new float[32];
+    setRotateM(temp, 0, a, x, y, z);
+    multiplyMM(temp, 16, m, offset, temp, 0);
+    System.arraycopy(temp, 16, m, offset, 16);
+  }
+
+  static void frustumM(float[] m, int offset, float left, float right, float bottom, float top, float near, float far) {
+    final float rWidth = 1.0f / (right - left);
+    final float rHeight = 1.0f / (top - bottom);
+    final float rDepth = 1.0f / (near - far);
+    m[offset] = 2.0f * (near * rWidth);
+    m[offset + 5] = 2.0f * (near * rHeight);
+    m[offset + 8] = (right + left) * rWidth;
+    m[offset + 9] = (top + bottom) * rHeight;
+    m[offset + 10] = (far + near) * rDepth;
+    m[offset + 14] = 2.0f * (far * near * rDepth);
+    m[offset + 11] = -1.0f;
+    m[offset + 1] = m[offset + 2] = m[offset + 3] = m[offset + 4] = 0;
+    m[offset + 6] = m[offset + 7] = m[offset + 12] = m[offset + 13] = m[offset + 15] = 0;
+  }
+
+  static void setLookAtM(float[] rm, int offset, float eyeX, float eyeY, float eyeZ,
+                         float centerX, float centerY, float centerZ, float upX, float upY, float upZ) {
+    float fx = centerX - eyeX;
+    float fy = centerY - eyeY;
+    float fz = centerZ - eyeZ;
+    final float rlf = 1.0f / (float) Math.sqrt(fx * fx + fy * fy + fz * fz);
+    fx *= rlf;
+    fy *= rlf;
+    fz *= rlf;
+    float sx = fy * upZ - fz * upY;
+    float sy = fz * upX - fx * upZ;
+    float sz = fx * upY - fy * upX;
+    final float rls = 1.0f / (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+    sx *= rls;
+    sy *= rls;
+    sz *= rls;
+    final float ux = sy * fz - sz * fy;
+    final float uy = sz * fx - sx * fz;
+    final float uz = sx * fy - sy * fx;
+    rm[offset] = sx;
+    rm[offset + 1] = ux;
+    rm[offset + 2] = -fx;
+    rm[offset + 3] = 0.0f;
+    rm[offset + 4] = sy;
+    rm[offset + 5] = uy;
+    rm[offset + 6] = -fy;
+    rm[offset + 7] = 0.0f;
+    rm[offset + 8] = sz;
+    rm[offset + 9] = uz;
+    rm[offset + 10] = -fz;
+    rm[offset + 11] = 0.0f;
+    rm[offset + 12] = 0.0f;
+    rm[offset + 13] = 0.0f;
+    rm[offset + 14] = 0.0f;
+    rm[offset + 15] = 1.0f;
+    translateM(rm, offset, -eyeX, -eyeY, -eyeZ);
+  }
+}
@@ -0,0 +1,142 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.AssetLoader;
+import com.erik.and.caleb.tarddroidball.GlStateTracker;
+import com.erik.and.caleb.tarddroidball.ShaderCache;
+import com.erik.and.caleb.tarddroidball.ShaderPermutation;
+import com.erik.and.caleb.tarddroidball.ShaderPreprocessor;
+import com.erik.and.caleb.tarddroidball.ShaderProgram;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Requests programs from a {@link ShaderCache} over made-up sources and counts
+ * the compiles and links that reach a {@link NoOpGl}: a repeated request, a
+ * permutation built in another order and a define the shaders never mention
+ * build nothing new; a define a shader uses, another value for it, other
+ * attributes, and a source that differs by a character miss exactly the
+ * shaders and programs they change; the same text under another name is
+ * shared; and after {@link ShaderCache#clear()} everything is compiled again
+ * but no file is read again. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.ShaderCacheCheck
+ * </pre>
+ */
+public class ShaderCacheCheck {
+
+  private static final String[] ATTRIBUTES = {"a_Position", "a_Normal"};
+
+  private static final CountingGl sGl = new CountingGl();
+  private static final AtomicInteger sReads = new AtomicInteger();
+  private static final Map<String, String> sFiles = new HashMap<String, String>();
+
+  public static void main(String[] args) throws Exception {
+    sFiles.put("lighting", "vec3 light(vec3 n) {\n#ifdef FOG\n  return n * 0.5;\n#else\n  return n;\n#endif\n}\n");
+    sFiles.put("scene.vert", "#include \"lighting\"\nattribute vec4 a_Position;\nvoid main() { gl_Position = a_Position; }\n");
+    sFiles.put("scene.frag", "#ifdef TEXTURED\nuniform sampler2D u_Texture;\n#endif\nvoid main() { gl_FragColor = vec4(1.0); }\n");
+    sFiles.put("copy.vert", sFiles.get("scene.vert"));
+    sFiles.put("edited.vert", sFiles.get("scene.vert").replace("a_Position;", "a_Position; "));
+    final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.Sources() {
+      @Override
+      public String read(String name) throws IOException {
+        sReads.incrementAndGet();
+        final String text = sFiles.get(name);
+        if (text == null)
+          throw new IOException("No shader " + name);
+        return text;
+      }
+    });
+    final AssetLoader loader = new AssetLoader(2);
+    final ShaderCache cache = new ShaderCache(new GlStateTracker(sGl), preprocessor, loader);
+
+    final ShaderProgram plain = build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE, ATTRIBUTES,
+        "the first request", 2, 1);
+    final int reads = sReads.get();
+    check(cache.request("scene.vert", "scene.frag", ShaderPermutation.NONE, ATTRIBUTES.clone()).get() == plain,
+        "a repeated request did not return the first program");
+    check(build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE.with("UNUSED"), ATTRIBUTES,
+        "a define neither shader mentions", 0, 0) == plain, "a define neither shader mentions made a new program");
+    check(sReads.get() == reads + 3, "a new permutation read " + (sReads.get() - reads) + " files, not the 3 both"
+        + " shaders and the include take");
+
+    final ShaderPermutation fog = ShaderPermutation.NONE.with("FOG").with("TEXTURED");
+    final ShaderProgram fogged = build(cache, loader, "scene.vert", "scene.frag", fog, ATTRIBUTES,
+        "defines both shaders use", 2, 1);
+    check(fogged != plain, "defines both shaders use gave the plain program");
+    check(build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE.with("TEXTURED").with("FOG"),
+        ATTRIBUTES, "the same defines in another order", 0, 0) == fogged,
+        "the same defines in another order made a new program");
+    build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE.with("FOG", 2).with("TEXTURED"), ATTRIBUTES,
+        "another value for a define only the vertex shader uses", 1, 1);
+    build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE, new String[]{"a_Position"},
+        "other attributes", 0, 1);
+
+    check(build(cache, loader, "copy.vert", "scene.frag", ShaderPermutation.NONE, ATTRIBUTES,
+        "the same text under another name", 0, 0) == plain, "the same text under another name made a new program");
+    build(cache, loader, "edited.vert", "scene.frag", ShaderPermutation.NONE, ATTRIBUTES,
+        "a vertex shader a space longer", 1, 1);
+
+    // a new context: everything compiles again, from the text preprocessed for the old one
+    final int readsBeforeClear = sReads.get();
+    cache.clear();
+    check(build(cache, loader, "scene.vert", "scene.frag", ShaderPermutation.NONE, ATTRIBUTES,
+        "the first request after clear", 2, 1) != plain, "clear kept the program of the lost context");
+    check(sReads.get() == readsBeforeClear, "clear read " + (sReads.get() - readsBeforeClear) + " files again");
+    System.out.println("shader cache: " + cache);
+  }
+
+  /**
+   * Requests a program, runs the uploads and checks how many shaders were
+   * compiled and programs linked for it.
+   */
+  private static ShaderProgram build(ShaderCache cache, AssetLoader loader, String vertex, String fragment,
+                                     ShaderPermutation permutation, String[] attributes, String what, int compiles,
+                                     int links) throws Exception {
+    final int compiled = sGl.mCompiles;
+    final int linked = sGl.mLinks;
+    final Future<ShaderProgram> program = cache.request(vertex, fragment, permutation, attributes);
+    loader.finishUploads();
+    check(sGl.mCompiles - compiled == compiles, what + ": " + (sGl.mCompiles - compiled) + " shaders compiled, not "
+        + compiles);
+    check(sGl.mLinks - linked == links, what + ": " + (sGl.mLinks - linked) + " programs linked, not " + links);
+    return program.get();
+  }
+
+  /**
+   * Counts compiles and links; both run on the render thread, here the main one.
+   */
+  private static class CountingGl extends NoOpGl {
+    private int mCompiles;
+    private int mLinks;
+
+    CountingGl() {
+      super(128);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+      mCompiles++;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+      mLinks++;
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
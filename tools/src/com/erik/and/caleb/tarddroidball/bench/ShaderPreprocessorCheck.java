@@ -0,0 +1,167 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.ShaderPermutation;
+import com.erik.and.caleb.tarddroidball.ShaderPreprocessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks {@link ShaderPreprocessor} on made-up sources: includes expand in
+ * place and only once, cycles are reported, #version stays first, only
+ * defines the source mentions are written, and permutations built in any
+ * order are equal and hash alike. Then preprocesses the app's shaders in
+ * every permutation the renderer can ask for and prints their sizes and
+ * hashes. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then from the project root:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.ShaderPreprocessorCheck
+ * </pre>
+ */
+public class ShaderPreprocessorCheck {
+
+  private static final File RAW_DIRECTORY = new File("res/raw");
+
+  public static void main(String[] args) throws Exception {
+    verifyIncludes();
+    verifyDefines();
+    verifyPermutations();
+    System.out.println("includes, defines and permutations check out");
+    preprocessAppShaders();
+  }
+
+  private static void verifyIncludes() throws Exception {
+    final Map<String, String> files = new HashMap<String, String>();
+    files.put("main", "#version 100\n#include \"a\"\n#include <b>\nvoid main() {}\n");
+    files.put("a", "  #include \"b\"\nfloat a;\n");
+    files.put("b", "float b;\n");
+    final ShaderPreprocessor preprocessor = new ShaderPreprocessor(memory(files));
+    final String out = preprocessor.preprocess("main", ShaderPermutation.NONE);
+    check(out.equals("#version 100\nfloat b;\nfloat a;\nvoid main() {}\n"), "includes expanded to\n" + out);
+
+    files.put("b", "#include \"main\"\n");
+    expectFailure(preprocessor, "main", "Include cycle: main -> a -> b -> main");
+    files.put("b", "float b;\n#version 100\n");
+    expectFailure(preprocessor, "main", "b:2: #version must be the first line of the shader");
+    files.put("b", "#include b\n");
+    expectFailure(preprocessor, "main", "b:1: expected #include \"name\", got #include b");
+    files.remove("b");
+    expectFailure(preprocessor, "main", "Cannot read shader b");
+  }
+
+  private static void verifyDefines() throws Exception {
+    final Map<String, String> files = new HashMap<String, String>();
+    files.put("lit", "#version 100\n#ifdef FOG\nfloat fog;\n#endif\nfloat l[LIGHTS];\n");
+    files.put("plain", "void main() {}\n");
+    final ShaderPreprocessor preprocessor = new ShaderPreprocessor(memory(files));
+    final ShaderPermutation permutation = ShaderPermutation.NONE.with("LIGHTS", 4).with("FOG").with("TEXTURED", 0);
+    final String lit = preprocessor.preprocess("lit", permutation);
+    check(lit.equals("#version 100\n#define FOG 1\n#define LIGHTS 4\n#ifdef FOG\nfloat fog;\n#endif\nfloat l[LIGHTS];\n"),
+        "defines came out as\n" + lit);
+    // a permutation only matters to the shaders that mention its defines
+    check(preprocessor.preprocess("plain", permutation).equals(preprocessor.preprocess("plain", ShaderPermutation.NONE)),
+        "defines the shader never mentions changed it");
+    check(!lit.equals(preprocessor.preprocess("lit", permutation.with("LIGHTS", 2))), "a changed define made no difference");
+  }
+
+  private static void verifyPermutations() {
+    final ShaderPermutation a = ShaderPermutation.NONE.with("VERTEX_LIGHTING").with("LIGHT_COUNT", 3).with("TEXTURED", 0);
+    final ShaderPermutation b = ShaderPermutation.NONE.with("TEXTURED", "0").with("VERTEX_LIGHTING").with("LIGHT_COUNT", 3);
+    check(a.equals(b) && a.hashCode() == b.hashCode(), a + " and " + b + " differ");
+    check(a.toString().equals("LIGHT_COUNT=3,TEXTURED=0,VERTEX_LIGHTING=1"), "key is " + a);
+    check(!a.equals(a.with("TEXTURED", 1)), "redefining made no difference");
+    check(ShaderPermutation.NONE.getDefines().isEmpty(), "with() changed NONE");
+    for (String bad : new String[]{"", "2D", "A-B", "A B"}) {
+      try {
+        ShaderPermutation.NONE.with(bad);
+        fail("accepted define name '" + bad + "'");
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    try {
+      ShaderPermutation.NONE.with("A", "1\n#define B 2");
+      fail("accepted a define spanning lines");
+    } catch (IllegalArgumentException expected) {
+    }
+    check(ShaderPreprocessor.hash("ab") != ShaderPreprocessor.hash("ba"), "hash ignores order");
+  }
+
+  /**
+   * The programs the renderer requests, under each lighting setting.
+   */
+  private static void preprocessAppShaders() throws Exception {
+    final ShaderPreprocessor preprocessor = new ShaderPreprocessor(new ShaderPreprocessor.Sources() {
+      @Override
+      public String read(String name) throws IOException {
+        return readFile(new File(RAW_DIRECTORY, name + ".glsl"));
+      }
+    });
+    final String[] shaders = {"per_pixel_vertex_shader", "palette_vertex_shader", "per_pixel_fragment_shader",
+        "point_vertex_shader", "point_fragment_shader"};
+    final ShaderPermutation[] permutations = {ShaderPermutation.NONE, ShaderPermutation.NONE.with("VERTEX_LIGHTING"),
+        ShaderPermutation.NONE.with("TEXTURED", 0), ShaderPermutation.NONE.with("LIGHT_COUNT", 3)};
+    for (ShaderPermutation permutation : permutations) {
+      System.out.println(permutation == ShaderPermutation.NONE ? "(defaults)" : permutation.toString());
+      for (String shader : shaders) {
+        final String source = preprocessor.preprocess(shader, permutation);
+        check(source.indexOf("#include") < 0, shader + " still includes something");
+        System.out.println(String.format("  %-26s %5d chars  %016x", shader, source.length(), ShaderPreprocessor.hash(source)));
+      }
+    }
+    // lighting moves between stages; the point shaders never light
+    final ShaderPermutation vertexLighting = ShaderPermutation.NONE.with("VERTEX_LIGHTING");
+    check(preprocessor.preprocess("point_vertex_shader", vertexLighting).equals(
+        preprocessor.preprocess("point_vertex_shader", ShaderPermutation.NONE)), "VERTEX_LIGHTING changed the point shader");
+    check(preprocessor.preprocess("per_pixel_fragment_shader", ShaderPermutation.NONE).contains("float lighting("),
+        "the default fragment shader does not light");
+    check(preprocessor.preprocess("palette_vertex_shader", vertexLighting).contains("float lighting("),
+        "the vertex lit palette shader does not light");
+  }
+
+  private static ShaderPreprocessor.Sources memory(final Map<String, String> files) {
+    return new ShaderPreprocessor.Sources() {
+      @Override
+      public String read(String name) {
+        return files.get(name);
+      }
+    };
+  }
+
+  private static void expectFailure(ShaderPreprocessor preprocessor, String name, String message) {
+    try {
+      preprocessor.preprocess(name, ShaderPermutation.NONE);
+      fail("expected \"" + message + "\"");
+    } catch (IOException e) {
+      check(message.equals(e.getMessage()), "expected \"" + message + "\", got \"" + e.getMessage() + "\"");
+    }
+  }
+
+  private static String readFile(File file) throws IOException {
+    final InputStream in = new FileInputStream(file);
+    try {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[4096];
+      for (int n; (n = in.read(buffer)) > 0; )
+        out.write(buffer, 0, n);
+      return out.toString("UTF-8");
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
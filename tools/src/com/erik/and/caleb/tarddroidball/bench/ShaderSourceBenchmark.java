@@ -0,0 +1,66 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.learnopengles.android.RawResourceReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads every shader in res/raw through {@link RawResourceReader} the way
+ * onSurfaceCreated does, size times per operation. The files are loaded into
+ * memory up front so only the reader itself is measured, not the disk.
+ */
+class ShaderSourceBenchmark extends Benchmark {
+
+  private static final File RAW_DIRECTORY = new File("res/raw");
+
+  private byte[][] mSources;
+  private int mSize;
+
+  ShaderSourceBenchmark() {
+    super("shader.read");
+  }
+
+  @Override
+  public void setUp(int size) throws IOException {
+    mSize = size;
+    if (mSources != null)
+      return;
+    final File[] files = RAW_DIRECTORY.listFiles();
+    if (files == null)
+      throw new IOException("No " + RAW_DIRECTORY + " here, run from the project root");
+    mSources = new byte[files.length][];
+    for (int i = 0; i < files.length; i++)
+      mSources[i] = readFully(files[i]);
+  }
+
+  @Override
+  public long run() {
+    long length = 0;
+    for (int i = 0; i < mSize; i++) {
+      final byte[] source = mSources[i % mSources.length];
+      length += RawResourceReader.readTextFile(new ByteArrayInputStream(source)).length();
+    }
+    return length;
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    final byte[] bytes = new byte[(int) file.length()];
+    final InputStream in = new FileInputStream(file);
+    try {
+      int read = 0;
+      while (read < bytes.length) {
+        final int n = in.read(bytes, read, bytes.length - read);
+        if (n < 0)
+          throw new IOException("Short read from " + file);
+        read += n;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,124 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.TerrainGenerator;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Terrain generation, size chunks per operation taken in turn from a 16 x 16
+ * world, so chunks/s is ops/s times the size; try --sizes 1,64.
+ * "terrain.generate" fills them one after another, "terrain.generatePooled"
+ * splits them over one worker per core, as the renderer's loader does, each
+ * worker filling a world of its own so no chunk is written by two at once.
+ * TerrainGeneratorCheck prints chunks/s on 1 to n workers.
+ */
+class TerrainBenchmarks {
+
+  static final long SEED = 24;
+  static final int WORLD_CHUNKS = 16;
+
+  private TerrainBenchmarks() {
+  }
+
+  /**
+   * A world generated from {@link #SEED}.
+   */
+  static VoxelWorld generated(int chunksX, int chunksZ) {
+    final VoxelWorld world = new VoxelWorld(chunksX, chunksZ);
+    final TerrainGenerator generator = new TerrainGenerator(SEED);
+    for (int c = 0; c < world.getChunkCount(); c++)
+      generator.generate(world.getChunk(c));
+    return world;
+  }
+
+  private abstract static class Generating extends Benchmark {
+    final TerrainGenerator mGenerator = new TerrainGenerator(SEED);
+    int mSize;
+    int mNext;
+
+    Generating(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+    }
+
+    /**
+     * @return a block from near the surface, so the work is not optimized away
+     */
+    int generate(VoxelChunk chunk) {
+      mGenerator.generate(chunk);
+      return chunk.get(0, 40, 0);
+    }
+  }
+
+  static class Generate extends Generating {
+    private final VoxelWorld mWorld = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS);
+
+    Generate() {
+      super("terrain.generate");
+    }
+
+    @Override
+    public long run() {
+      long blocks = 0;
+      for (int i = 0; i < mSize; i++)
+        blocks += generate(mWorld.getChunk((mNext + i) % mWorld.getChunkCount()));
+      mNext = (mNext + mSize) % mWorld.getChunkCount();
+      return blocks;
+    }
+  }
+
+  static class GeneratePooled extends Generating {
+    private ExecutorService mPool;
+    private final ThreadLocal<VoxelWorld> mWorlds = new ThreadLocal<VoxelWorld>() {
+      @Override
+      protected VoxelWorld initialValue() {
+        return new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS);
+      }
+    };
+
+    GeneratePooled() {
+      super("terrain.generatePooled");
+    }
+
+    @Override
+    public void setUp(int size) {
+      super.setUp(size);
+      mPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public long run() throws Exception {
+      final List<Future<Integer>> chunks = new ArrayList<Future<Integer>>(mSize);
+      for (int i = 0; i < mSize; i++) {
+        final int index = (mNext + i) % (WORLD_CHUNKS * WORLD_CHUNKS);
+        chunks.add(mPool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            return generate(mWorlds.get().getChunk(index));
+          }
+        }));
+      }
+      long blocks = 0;
+      for (Future<Integer> chunk : chunks)
+        blocks += chunk.get();
+      mNext = (mNext + mSize) % (WORLD_CHUNKS * WORLD_CHUNKS);
+      return blocks;
+    }
+
+    @Override
+    public void tearDown() {
+      mPool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.ChunkStreamer;
+import com.erik.and.caleb.tarddroidball.TerrainGenerator;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Generates a world of chunks on one thread, then again on pools of 2 to 8
+ * workers sharing one generator, in shuffled order and into chunks full of
+ * junk, and checks that every chunk comes out the same, and that the whole
+ * world matches a checksum recorded when the generator last changed, so a
+ * change that forgets {@link TerrainGenerator#VERSION} shows. Another seed
+ * must give other terrain, the level area must come out level, and a
+ * {@link ChunkStreamer} generating on a pool must load exactly the same
+ * chunks. Then prints the
+ * share of each biome and chunks/s on 1 to n workers. Exits non-zero on
+ * failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.TerrainGeneratorCheck
+ * </pre>
+ */
+public class TerrainGeneratorCheck {
+
+  private static final int WORLD_CHUNKS = 12;
+  // of every block of the world from TerrainBenchmarks.SEED, chunks in row order; update with TerrainGenerator.VERSION
+  private static final long EXPECTED_CRC = 0x7a2d2259L;
+  private static final int[] THREADS = {1, 2, 3, 4, 8};
+
+  public static void main(String[] args) throws Exception {
+    final VoxelWorld reference = TerrainBenchmarks.generated(WORLD_CHUNKS, WORLD_CHUNKS);
+    final long crc = crc(reference);
+    System.out.println(String.format("seed %d, version %d: crc %08x", TerrainBenchmarks.SEED, TerrainGenerator.VERSION, crc));
+    check(crc == EXPECTED_CRC, String.format("terrain differs from the recorded crc %08x", EXPECTED_CRC));
+    final TerrainGenerator shared = new TerrainGenerator(TerrainBenchmarks.SEED);
+    for (int threads : THREADS) {
+      final VoxelWorld world = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS);
+      generate(shared, world, threads, new Random(threads));
+      for (int c = 0; c < world.getChunkCount(); c++)
+        check(Arrays.equals(world.getChunk(c).getBlocks(), reference.getChunk(c).getBlocks()),
+            world.getChunk(c) + " differs on " + threads + " workers");
+    }
+    verifySeeds(reference);
+    verifyLevelArea();
+    verifyStreaming(reference);
+    System.out.println("same terrain on 1 to 8 workers, in any order; seeds, level area and streaming check out");
+    printBiomes(new TerrainGenerator(TerrainBenchmarks.SEED), 64);
+    compareWorkers();
+  }
+
+  /**
+   * Generates every chunk of a world on a pool.
+   *
+   * @param random to fill each chunk with junk first and submit them in a random order, null to submit them in order as they are
+   */
+  private static void generate(final TerrainGenerator generator, VoxelWorld world, int threads, Random random) throws Exception {
+    final List<VoxelChunk> chunks = new ArrayList<VoxelChunk>();
+    for (int c = 0; c < world.getChunkCount(); c++)
+      chunks.add(world.getChunk(c));
+    if (random != null) {
+      for (VoxelChunk chunk : chunks) {
+        final byte[] blocks = chunk.getBlocks();
+        for (int i = 0; i < blocks.length; i++)
+          blocks[i] = (byte) random.nextInt(VoxelChunk.BLOCK_TYPES);
+      }
+      Collections.shuffle(chunks, random);
+    }
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    final List<Future<Object>> done = new ArrayList<Future<Object>>();
+    for (final VoxelChunk chunk : chunks) {
+      done.add(pool.submit(new Callable<Object>() {
+        @Override
+        public Object call() {
+          generator.generate(chunk);
+          return null;
+        }
+      }));
+    }
+    for (Future<Object> future : done)
+      future.get();
+    pool.shutdown();
+  }
+
+  private static void verifySeeds(VoxelWorld reference) {
+    final TerrainGenerator other = new TerrainGenerator(TerrainBenchmarks.SEED + 1);
+    int differ = 0;
+    for (int c = 0; c < reference.getChunkCount(); c++) {
+      final VoxelChunk original = reference.getChunk(c);
+      final VoxelChunk chunk = new VoxelChunk(original.getChunkX(), original.getChunkZ());
+      other.generate(chunk);
+      if (!Arrays.equals(chunk.getBlocks(), original.getBlocks()))
+        differ++;
+    }
+    check(differ == reference.getChunkCount(), (reference.getChunkCount() - differ) + " chunks came out the same for another seed");
+  }
+
+  private static void verifyLevelArea() {
+    final int level = 40;
+    final TerrainGenerator generator = new TerrainGenerator(TerrainBenchmarks.SEED);
+    generator.setLevelArea(20, 30, 50, 70, level);
+    final int[] heights = new int[VoxelChunk.WIDTH * VoxelChunk.DEPTH];
+    final byte[] biomes = new byte[heights.length];
+    for (int cz = 0; cz < 6; cz++) {
+      for (int cx = 0; cx < 6; cx++) {
+        generator.generateColumns(cx, cz, heights, biomes);
+        for (int z = 0; z < VoxelChunk.DEPTH; z++) {
+          for (int x = 0; x < VoxelChunk.WIDTH; x++) {
+            final int worldX = cx * VoxelChunk.WIDTH + x, worldZ = cz * VoxelChunk.DEPTH + z;
+            if (worldX < 20 || worldX >= 50 || worldZ < 30 || worldZ >= 70)
+              continue;
+            final int column = z * VoxelChunk.WIDTH + x;
+            check(heights[column] == level && biomes[column] == TerrainGenerator.BIOME_PLAINS,
+                "level area is " + heights[column] + " high, biome " + biomes[column] + " at " + worldX + "," + worldZ);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Streams the whole world in, generating on a pool, and compares every chunk with the reference.
+   */
+  private static void verifyStreaming(VoxelWorld reference) throws Exception {
+    final File directory = new File(System.getProperty("java.io.tmpdir"), "terrain-generator-check");
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files)
+        check(file.delete(), "could not delete " + file);
+    }
+    final ExecutorService pool = Executors.newFixedThreadPool(4);
+    final VoxelWorld world = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS, false);
+    final int radius = WORLD_CHUNKS / 2;
+    final ChunkStreamer streamer = new ChunkStreamer(world, directory, new TerrainGenerator(TerrainBenchmarks.SEED), pool,
+        new ChunkStreamer.Listener() {
+          @Override
+          public void onChunkLoaded(VoxelChunk chunk) {
+          }
+
+          @Override
+          public void onChunkEvicted(VoxelChunk chunk) {
+            fail("evicted " + chunk + " with the whole world in the radius");
+          }
+        }, radius, Long.MAX_VALUE);
+    do {
+      streamer.update(radius, radius);
+      Thread.sleep(1);
+    } while (streamer.getPendingLoadCount() > 0);
+    check(streamer.getGeneratedCount() == world.getChunkCount(), streamer.getGeneratedCount() + " chunks generated of "
+        + world.getChunkCount());
+    for (int c = 0; c < world.getChunkCount(); c++)
+      check(Arrays.equals(world.getChunk(c).getBlocks(), reference.getChunk(c).getBlocks()), world.getChunk(c)
+          + " streamed differs from the one generated directly");
+    streamer.close();
+    pool.shutdown();
+  }
+
+  private static void printBiomes(TerrainGenerator generator, int chunks) {
+    final String[] names = {"plains", "desert", "mountains"};
+    final int[] heights = new int[VoxelChunk.WIDTH * VoxelChunk.DEPTH];
+    final byte[] biomes = new byte[heights.length];
+    final long[] columns = new long[TerrainGenerator.BIOME_COUNT];
+    int minHeight = VoxelChunk.HEIGHT, maxHeight = 0;
+    for (int cz = 0; cz < chunks; cz++) {
+      for (int cx = 0; cx < chunks; cx++) {
+        generator.generateColumns(cx, cz, heights, biomes);
+        for (int i = 0; i < heights.length; i++) {
+          columns[biomes[i]]++;
+          minHeight = Math.min(minHeight, heights[i]);
+          maxHeight = Math.max(maxHeight, heights[i]);
+        }
+      }
+    }
+    final StringBuilder line = new StringBuilder();
+    for (int b = 0; b < columns.length; b++)
+      line.append(String.format("%s %.0f%%, ", names[b], 100.0 * columns[b] / (chunks * chunks * heights.length)));
+    System.out.println(line + "heights " + minHeight + " to " + maxHeight + " over " + chunks + " x " + chunks + " chunks");
+  }
+
+  private static void compareWorkers() throws Exception {
+    final int rounds = 10;
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final TerrainGenerator generator = new TerrainGenerator(TerrainBenchmarks.SEED);
+    final VoxelWorld world = new VoxelWorld(WORLD_CHUNKS, WORLD_CHUNKS);
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      long start = 0;
+      // the first rounds warm up
+      for (int round = -rounds; round < rounds; round++) {
+        if (round == 0)
+          start = System.nanoTime();
+        generate(generator, world, threads, null);
+      }
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%2d workers %10.0f chunks/s", threads, rounds * WORLD_CHUNKS * WORLD_CHUNKS / seconds));
+      if (threads < cores && threads * 2 > cores)
+        threads = cores / 2;
+    }
+  }
+
+  private static long crc(VoxelWorld world) {
+    final CRC32 crc = new CRC32();
+    for (int c = 0; c < world.getChunkCount(); c++)
+      crc.update(world.getChunk(c).getBlocks());
+    return crc.getValue();
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,117 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.AtlasPacker;
+import com.erik.and.caleb.tarddroidball.TextureAtlas;
+import com.erik.and.caleb.tarddroidball.TextureContainer;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The CPU side of getting the texture atlas ready for upload, one whole atlas
+ * per operation; the size is ignored, so run these with --sizes 1.
+ * "texture.png" decodes the drawables and composes level 0 of the atlas, as
+ * the PNG path does with BitmapFactory; "texture.compiled" maps
+ * res/raw/texture_atlas.bin, parses it and reads every ETC1 level the way
+ * glCompressedTexImage2D would. Neither includes the upload itself, which
+ * only a device can measure: compare the "Uploaded" log lines for that.
+ */
+class TextureLoadBenchmarks {
+
+  private static final File CONTAINER = new File("res/raw/texture_atlas.bin");
+  private static final String[] DRAWABLES = {"res/drawable/grass_side.png", "res/drawable/grass_top.png", "res/drawable/tard_tex.png"};
+  private static final boolean[] REPEATS = {true, true, false};
+
+  private TextureLoadBenchmarks() {
+  }
+
+  static class Png extends Benchmark {
+    private byte[][] mFiles;
+    private TextureContainer mLayout;
+
+    Png() {
+      super("texture.png");
+    }
+
+    @Override
+    public void setUp(int size) throws IOException {
+      if (mFiles != null)
+        return;
+      mFiles = new byte[DRAWABLES.length][];
+      for (int i = 0; i < DRAWABLES.length; i++)
+        mFiles[i] = readFully(new File(DRAWABLES[i]));
+      mLayout = new TextureContainer(ByteBuffer.wrap(readFully(CONTAINER)));
+    }
+
+    @Override
+    public long run() throws IOException {
+      final int width = mLayout.getWidth();
+      final int height = mLayout.getHeight();
+      final int[] atlas = new int[width * height];
+      for (int i = 0; i < mFiles.length; i++) {
+        final BufferedImage image = ImageIO.read(new ByteArrayInputStream(mFiles[i]));
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+        AtlasPacker.blit(atlas, width, height, pixels, w, h, mLayout.getImageX(i), mLayout.getImageY(i), TextureAtlas.PNG_PADDING, REPEATS[i]);
+      }
+      return atlas[atlas.length / 2];
+    }
+  }
+
+  static class Compiled extends Benchmark {
+    Compiled() {
+      super("texture.compiled");
+    }
+
+    @Override
+    public void setUp(int size) throws IOException {
+      if (!CONTAINER.exists())
+        throw new IOException("No " + CONTAINER + " here, run from the project root");
+    }
+
+    @Override
+    public long run() throws IOException {
+      final RandomAccessFile file = new RandomAccessFile(CONTAINER, "r");
+      try {
+        final ByteBuffer mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        final TextureContainer container = new TextureContainer(mapped);
+        long sum = 0;
+        for (int level = 0; level < container.getLevelCount(TextureContainer.FORMAT_ETC1); level++) {
+          final ByteBuffer data = container.getLevelData(TextureContainer.FORMAT_ETC1, level);
+          // the driver reads every byte; summing longs stands in for that
+          while (data.remaining() >= 8)
+            sum += data.getLong();
+        }
+        return sum;
+      } finally {
+        file.close();
+      }
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    final byte[] bytes = new byte[(int) file.length()];
+    final FileInputStream in = new FileInputStream(file);
+    try {
+      int read = 0;
+      while (read < bytes.length) {
+        final int n = in.read(bytes, read, bytes.length - read);
+        if (n < 0)
+          throw new IOException("Short read from " + file);
+        read += n;
+      }
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+}
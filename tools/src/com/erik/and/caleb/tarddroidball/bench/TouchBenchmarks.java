@@ -0,0 +1,94 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.TouchEventRing;
+import com.erik.and.caleb.tarddroidball.TouchIntegrator;
+import com.erik.and.caleb.tarddroidball.bench.TouchEventRingStressCheck.LegacyFinger;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Touch handoff from the UI thread to the GL thread, measured single-threaded
+ * so that only the cost of the handoff itself shows: size move samples are
+ * delivered, with a frame draining everything queued every
+ * {@link #SAMPLES_PER_FRAME} samples. {@link TouchEventRingStressCheck} covers
+ * the ring under real concurrency.
+ */
+final class TouchBenchmarks {
+
+  private TouchBenchmarks() {
+  }
+
+  static final int SAMPLES_PER_FRAME = 256;
+
+  static class Ring extends Benchmark {
+    private final TouchEventRing mRing = new TouchEventRing(SAMPLES_PER_FRAME);
+    private final TouchEventRing.Event mScratch = new TouchEventRing.Event();
+    private final TouchIntegrator mIntegrator = new TouchIntegrator();
+    private int mSize;
+    private long mTime;
+
+    Ring() {
+      super("touch.ring");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+    }
+
+    @Override
+    public long run() {
+      float moved = 0;
+      for (int i = 0; i < mSize; i++) {
+        if (!mRing.publish(TouchEventRing.KIND_MOVE, 0, i, i, 0.01f, -0.01f, ++mTime)) {
+          mIntegrator.integrate(mRing, mScratch, mTime, mTime);
+          moved += mIntegrator.getTranslateX();
+          mRing.publish(TouchEventRing.KIND_MOVE, 0, i, i, 0.01f, -0.01f, mTime);
+        }
+      }
+      mIntegrator.integrate(mRing, mScratch, mTime, mTime);
+      return Float.floatToRawIntBits(moved + mIntegrator.getTranslateX());
+    }
+  }
+
+  /**
+   * The handoff the renderer used to have: a new Finger object per sample in a
+   * CopyOnWriteArrayList, drained under its lock. Draining sums every sample,
+   * which is more work than the old code did but keeps the comparison fair.
+   */
+  static class CopyOnWriteList extends Benchmark {
+    private final CopyOnWriteArrayList<LegacyFinger> mFingers = new CopyOnWriteArrayList<LegacyFinger>();
+    private int mSize;
+
+    CopyOnWriteList() {
+      super("touch.copyOnWriteList");
+    }
+
+    @Override
+    public void setUp(int size) {
+      mSize = size;
+    }
+
+    @Override
+    public long run() {
+      float moved = 0;
+      for (int i = 0; i < mSize; i++) {
+        mFingers.add(new LegacyFinger(i, 0.01f, i, -0.01f));
+        if (mFingers.size() == SAMPLES_PER_FRAME)
+          moved += drain();
+      }
+      moved += drain();
+      return Float.floatToRawIntBits(moved);
+    }
+
+    private float drain() {
+      float moved = 0;
+      synchronized (mFingers) {
+        for (LegacyFinger finger : mFingers)
+          moved += finger.dx;
+        mFingers.clear();
+      }
+      return moved;
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.TouchEventRing;
+
+import java.util.Iterator;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Hammers a small {@link TouchEventRing} from a real producer thread while a
+ * consumer thread polls. First the producer retries while the ring is full,
+ * and every record must arrive exactly once, in order and intact. Then it
+ * drops records on a full ring, as the UI thread does, while the consumer
+ * drains once a frame: what arrives must still be in order and intact, and
+ * what arrives plus what the producer saw refused must add up to what was
+ * published, matching the ring's own count of drops. Last, both threads pass
+ * the same records through the ring and through the CopyOnWriteArrayList
+ * handoff the renderer had before, each allowed {@link #CAPACITY} records in
+ * flight, and the records/s of each are printed. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.TouchEventRingStressCheck [records]
+ * </pre>
+ */
+public class TouchEventRingStressCheck {
+
+  private static final int CAPACITY = 64;
+  private static final int COMPARED_RECORDS = 2000000;
+
+  public static void main(String[] args) throws InterruptedException {
+    final int records = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+    verifyLossless(records);
+    verifyDropping(records / 4);
+    compareHandoffs(COMPARED_RECORDS);
+  }
+
+  private static void verifyLossless(final int records) throws InterruptedException {
+    final TouchEventRing ring = new TouchEventRing(CAPACITY);
+    final Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < records; i++) {
+          while (!publish(ring, i))
+            Thread.yield();
+        }
+      }
+    }, "Producer");
+    final Consumer consumer = new Consumer(ring, records, false);
+
+    final long start = System.nanoTime();
+    producer.start();
+    consumer.start();
+    producer.join();
+    consumer.join();
+    final long elapsed = System.nanoTime() - start;
+    check(consumer.mFailure == null, "lossless: " + consumer.mFailure);
+    check(consumer.mReceived == records, "lossless: " + consumer.mReceived + " of " + records + " records arrived");
+    check(!ring.poll(new TouchEventRing.Event()), "lossless: the ring delivered more records than were published");
+    System.out.println(String.format("%d records in order and intact, %.1f M records/s, %d empty polls, %d publishes refused while full",
+        records, records * 1e3 / elapsed, consumer.mEmptyPolls, ring.getDroppedCount()));
+  }
+
+  private static void verifyDropping(final int records) throws InterruptedException {
+    final TouchEventRing ring = new TouchEventRing(CAPACITY);
+    final int[] refused = new int[1];
+    final Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < records; i++) {
+          if (!publish(ring, i))
+            refused[0]++;
+        }
+      }
+    }, "Producer");
+    final Consumer consumer = new Consumer(ring, records, true);
+
+    producer.start();
+    consumer.start();
+    producer.join();
+    // everything published is in the ring or taken now; the consumer drains the rest and stops
+    consumer.mProducerDone = true;
+    consumer.join();
+    check(consumer.mFailure == null, "dropping: " + consumer.mFailure);
+    check(consumer.mReceived + refused[0] == records, "dropping: " + consumer.mReceived + " arrived and " + refused[0]
+        + " refused of " + records);
+    check(ring.getDroppedCount() == refused[0], "dropping: the ring counted " + ring.getDroppedCount() + " drops, the producer "
+        + refused[0]);
+    check(refused[0] > 0, "dropping: a consumer draining once a frame never let the ring fill");
+    System.out.println(String.format("%d records published into a full ring now and then: %d arrived in order and intact, %d dropped and counted",
+        records, consumer.mReceived, refused[0]));
+  }
+
+  /**
+   * Every field is derived from the sequence number, so torn records show up.
+   */
+  private static boolean publish(TouchEventRing ring, int sequence) {
+    return ring.publish(sequence & 3, sequence, sequence, -sequence, sequence * 0.5f, sequence * 0.25f, sequence * 3L);
+  }
+
+  /**
+   * Takes records until the expected count arrives, or, when draining once a
+   * frame, until the producer is done and the ring is empty; checks each one
+   * is whole and later than the last.
+   */
+  private static class Consumer extends Thread {
+    private final TouchEventRing mRing;
+    private final int mRecords;
+    private final boolean mFrames;
+    volatile boolean mProducerDone;
+    String mFailure;
+    int mReceived;
+    long mEmptyPolls;
+
+    Consumer(TouchEventRing ring, int records, boolean frames) {
+      super("Consumer");
+      mRing = ring;
+      mRecords = records;
+      mFrames = frames;
+    }
+
+    @Override
+    public void run() {
+      final TouchEventRing.Event event = new TouchEventRing.Event();
+      int last = -1;
+      while (mReceived < mRecords) {
+        final boolean done = mProducerDone;
+        if (!mRing.poll(event)) {
+          if (done)
+            return;
+          mEmptyPolls++;
+          if (mFrames) {
+            try {
+              Thread.sleep(1);
+            } catch (InterruptedException e) {
+              mFailure = "interrupted";
+              return;
+            }
+          } else {
+            Thread.yield();
+          }
+          continue;
+        }
+        final int sequence = event.pointerId;
+        final float f = sequence;
+        if (event.kind != (sequence & 3) || event.x != f || event.y != -f || event.dx != f * 0.5f
+            || event.dy != f * 0.25f || event.timeNanos != sequence * 3L) {
+          mFailure = "record " + sequence + " arrived torn: kind " + event.kind + ", x " + event.x + ", time " + event.timeNanos;
+          return;
+        }
+        if (mFrames ? sequence <= last : sequence != last + 1) {
+          mFailure = "record " + sequence + " arrived after " + last;
+          return;
+        }
+        last = sequence;
+        mReceived++;
+      }
+    }
+  }
+
+  /**
+   * The same records through the ring and through the old list, both threads
+   * spinning, with the producer waiting while {@link #CAPACITY} records are in flight.
+   */
+  private static void compareHandoffs(int records) throws InterruptedException {
+    System.out.println(String.format("%-22s %12s %14s", "handoff", "records", "records/s"));
+    for (int round = 0; round < 2; round++) {
+      // the first round warms up
+      final double ring = ringHandoff(records);
+      final double list = listHandoff(records);
+      if (round == 1) {
+        System.out.println(String.format("%-22s %12d %14.0f", "ring", records, ring));
+        System.out.println(String.format("%-22s %12d %14.0f", "copyOnWriteArrayList", records, list));
+      }
+    }
+  }
+
+  private static double ringHandoff(final int records) throws InterruptedException {
+    final TouchEventRing ring = new TouchEventRing(CAPACITY);
+    final Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < records; i++) {
+          while (!ring.publish(TouchEventRing.KIND_MOVE, 0, i, i, 0.01f, -0.01f, i))
+            Thread.yield();
+        }
+      }
+    }, "Producer");
+    final long start = System.nanoTime();
+    producer.start();
+    final TouchEventRing.Event event = new TouchEventRing.Event();
+    float moved = 0;
+    int received = 0;
+    while (received < records) {
+      if (!ring.poll(event)) {
+        Thread.yield();
+        continue;
+      }
+      moved += event.dx;
+      received++;
+    }
+    producer.join();
+    final long elapsed = System.nanoTime() - start;
+    check(moved != 0, "ring handoff lost its records");
+    return records * 1e9 / elapsed;
+  }
+
+  /**
+   * The renderer's old handoff: the UI thread adds a new object per sample,
+   * and the GL thread walks the list under its lock and takes what it walked.
+   */
+  private static double listHandoff(final int records) throws InterruptedException {
+    final CopyOnWriteArrayList<LegacyFinger> fingers = new CopyOnWriteArrayList<LegacyFinger>();
+    final Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < records; i++) {
+          while (fingers.size() >= CAPACITY)
+            Thread.yield();
+          fingers.add(new LegacyFinger(i, 0.01f, i, -0.01f));
+        }
+      }
+    }, "Producer");
+    final long start = System.nanoTime();
+    producer.start();
+    float moved = 0;
+    int received = 0;
+    while (received < records) {
+      int taken = 0;
+      synchronized (fingers) {
+        for (Iterator<LegacyFinger> it = fingers.iterator(); it.hasNext(); taken++)
+          moved += it.next().dx;
+        // only what was walked; clear() would lose records added meanwhile
+        fingers.subList(0, taken).clear();
+      }
+      if (taken == 0)
+        Thread.yield();
+      received += taken;
+    }
+    producer.join();
+    final long elapsed = System.nanoTime() - start;
+    check(moved != 0, "list handoff lost its records");
+    return records * 1e9 / elapsed;
+  }
+
+  /** The fields of the old Finger class that a move sample filled in. */
+  static class LegacyFinger {
+    final float x;
+    final float dx;
+    final float y;
+    final float dy;
+    final boolean translate;
+
+    LegacyFinger(float x, float dx, float y, float dy) {
+      this.x = x;
+      this.dx = dx;
+      this.y = y;
+      this.dy = dy;
+      translate = true;
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
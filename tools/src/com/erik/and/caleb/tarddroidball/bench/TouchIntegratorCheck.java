@@ -0,0 +1,91 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.TouchEventRing;
+import com.erik.and.caleb.tarddroidball.TouchIntegrator;
+
+/**
+ * Feeds a {@link TouchIntegrator} known frames of touch records: every move
+ * and rotation of a frame must add up, and a home press must drop whatever
+ * came before it in the same frame, as the renderer sends the TARDIS home
+ * before it applies the frame's deltas. Exits non-zero on failure.
+ * <p/>
+ * Compile as for {@link BenchmarkRunner}, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.bench.TouchIntegratorCheck
+ * </pre>
+ */
+public class TouchIntegratorCheck {
+
+  private static final long FRAME_NANOS = 16000000L;
+
+  private static final TouchEventRing sRing = new TouchEventRing(16);
+  private static final TouchEventRing.Event sEvent = new TouchEventRing.Event();
+  private static final TouchIntegrator sInput = new TouchIntegrator();
+  private static long sNow = 1000000000L;
+
+  public static void main(String[] args) {
+    move(1, 2);
+    move(3, 4);
+    rotate(5, 6);
+    integrate();
+    check(sInput.getEventsThisFrame() == 3, sInput.getEventsThisFrame() + " events in a frame of 3");
+    checkDeltas(4, 6, 5, 6, false, "moves and a rotation");
+
+    move(1, 2);
+    rotate(5, 6);
+    home();
+    move(3, 4);
+    integrate();
+    checkDeltas(3, 4, 0, 0, true, "move, rotate, home, move");
+
+    move(7, 8);
+    home();
+    integrate();
+    checkDeltas(0, 0, 0, 0, true, "move, home");
+
+    integrate();
+    checkDeltas(0, 0, 0, 0, false, "an empty frame");
+    System.out.println("frames add up, and home drops what came before it");
+  }
+
+  private static void move(float dx, float dy) {
+    publish(TouchEventRing.KIND_MOVE, dx, dy);
+  }
+
+  private static void rotate(float dx, float dy) {
+    publish(TouchEventRing.KIND_ROTATE, dx, dy);
+  }
+
+  private static void home() {
+    publish(TouchEventRing.KIND_HOME, 0, 0);
+  }
+
+  private static void publish(int kind, float dx, float dy) {
+    sNow += 1000000L;
+    check(sRing.publish(kind, 0, 0, 0, dx, dy, sNow), "the ring is full");
+  }
+
+  private static void integrate() {
+    sNow += FRAME_NANOS;
+    sInput.integrate(sRing, sEvent, sNow, sNow + FRAME_NANOS);
+  }
+
+  private static void checkDeltas(float translateX, float translateY, float rotateX, float rotateY, boolean home,
+                                  String frame) {
+    check(sInput.getTranslateX() == translateX && sInput.getTranslateY() == translateY
+        && sInput.getRotateX() == rotateX && sInput.getRotateY() == rotateY && sInput.isHomeRequested() == home,
+        String.format("%s: translate (%s, %s), rotate (%s, %s), home %s; expected (%s, %s), (%s, %s), %s", frame,
+            sInput.getTranslateX(), sInput.getTranslateY(), sInput.getRotateX(), sInput.getRotateY(),
+            sInput.isHomeRequested(), translateX, translateY, rotateX, rotateY, home));
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
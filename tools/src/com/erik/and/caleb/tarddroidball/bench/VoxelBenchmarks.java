@@ -0,0 +1,147 @@
+package com.erik.and.caleb.tarddroidball.bench;
+
+import com.erik.and.caleb.tarddroidball.ChunkMesh;
+import com.erik.and.caleb.tarddroidball.ChunkMesher;
+import com.erik.and.caleb.tarddroidball.VoxelChunk;
+import com.erik.and.caleb.tarddroidball.VoxelWorld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Chunk meshing, size chunks per operation taken in turn from an 8 x 8 world
+ * of rolling hills, so chunks/s is ops/s times the size; try --sizes 1,64.
+ * "voxel.naive" keeps every visible face as its own quad, "voxel.greedy"
+ * merges them, and "voxel.greedyPooled" splits the chunks over one worker
+ * per core with a mesher each, as the renderer's loader does.
+ * ChunkMesherCheck prints the quads each emits.
+ */
+class VoxelBenchmarks {
+
+  static final int WORLD_CHUNKS = 8;
+
+  private VoxelBenchmarks() {
+  }
+
+  /**
+   * Hills between about 24 and 56 blocks high, with ridges a few blocks
+   * across on top so that not every slice merges into one quad.
+   */
+  static VoxelWorld hills(int chunksX, int chunksZ) {
+    final VoxelWorld world = new VoxelWorld(chunksX, chunksZ);
+    final int width = world.getWidthInBlocks();
+    final int depth = world.getDepthInBlocks();
+    final int[] heights = new int[width * depth];
+    for (int z = 0; z < depth; z++) {
+      for (int x = 0; x < width; x++)
+        heights[z * width + x] = 40 + (int) (12 * Math.sin(x * 0.11) * Math.cos(z * 0.07))
+            + (int) (4 * Math.sin(x * 0.5 + z * 0.3));
+    }
+    world.fillHeightmap(heights, VoxelChunk.GRASS);
+    return world;
+  }
+
+  private abstract static class Meshing extends Benchmark {
+    VoxelWorld mWorld;
+    int mSize;
+    int mNext;
+
+    Meshing(String name) {
+      super(name);
+    }
+
+    @Override
+    public void setUp(int size) {
+      if (mWorld == null)
+        mWorld = hills(WORLD_CHUNKS, WORLD_CHUNKS);
+      mSize = size;
+    }
+
+    long mesh(ChunkMesher mesher, int first, int count, boolean greedy) {
+      long quads = 0;
+      for (int i = first; i < first + count; i++) {
+        final VoxelChunk chunk = mWorld.getChunk(i % mWorld.getChunkCount());
+        quads += mesher.mesh(mWorld, chunk.getChunkX(), chunk.getChunkZ(), greedy).getQuadCount();
+      }
+      return quads;
+    }
+  }
+
+  static class Naive extends Meshing {
+    private final ChunkMesher mMesher = new ChunkMesher();
+
+    Naive() {
+      super("voxel.naive");
+    }
+
+    @Override
+    public long run() {
+      final long quads = mesh(mMesher, mNext, mSize, false);
+      mNext = (mNext + mSize) % mWorld.getChunkCount();
+      return quads;
+    }
+  }
+
+  static class Greedy extends Meshing {
+    private final ChunkMesher mMesher = new ChunkMesher();
+
+    Greedy() {
+      super("voxel.greedy");
+    }
+
+    @Override
+    public long run() {
+      final long quads = mesh(mMesher, mNext, mSize, true);
+      mNext = (mNext + mSize) % mWorld.getChunkCount();
+      return quads;
+    }
+  }
+
+  static class GreedyPooled extends Meshing {
+    private ExecutorService mPool;
+    private final ThreadLocal<ChunkMesher> mMeshers = new ThreadLocal<ChunkMesher>() {
+      @Override
+      protected ChunkMesher initialValue() {
+        return new ChunkMesher();
+      }
+    };
+
+    GreedyPooled() {
+      super("voxel.greedyPooled");
+    }
+
+    @Override
+    public void setUp(int size) {
+      super.setUp(size);
+      mPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public long run() throws Exception {
+      final List<Future<ChunkMesh>> meshes = new ArrayList<Future<ChunkMesh>>(mSize);
+      for (int i = 0; i < mSize; i++) {
+        final VoxelChunk chunk = mWorld.getChunk((mNext + i) % mWorld.getChunkCount());
+        meshes.add(mPool.submit(new Callable<ChunkMesh>() {
+          @Override
+          public ChunkMesh call() {
+            return mMeshers.get().mesh(mWorld, chunk.getChunkX(), chunk.getChunkZ(), true);
+          }
+        }));
+      }
+      long quads = 0;
+      for (Future<ChunkMesh> mesh : meshes)
+        quads += mesh.get().getQuadCount();
+      mNext = (mNext + mSize) % mWorld.getChunkCount();
+      return quads;
+    }
+
+    @Override
+    public void tearDown() {
+      mPool.shutdown();
+    }
+  }
+}
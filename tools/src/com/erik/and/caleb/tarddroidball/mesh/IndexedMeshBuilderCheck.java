@@ -0,0 +1,204 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.erik.and.caleb.tarddroidball.TextureTiling;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks what {@link IndexedMeshBuilder} makes of the scene meshes and of a
+ * shuffled grid: every welded vertex is distinct and every source vertex is
+ * one of them, the indexed triangles are the source triangles with their
+ * winding, only reordered, and the reordered list misses the simulated
+ * vertex cache no more often than the welded triangles in their source
+ * order, at the cache size it reports and at others. Exits non-zero on
+ * failure.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.mesh.IndexedMeshBuilderCheck
+ * </pre>
+ */
+public class IndexedMeshBuilderCheck {
+
+  private static final int[] SIZES = {3, 3, 2};
+  private static final int[] CACHE_SIZES = {8, 16, 32};
+  private static final int GRID = 40;
+
+  public static void main(String[] args) {
+    // two triangles of a quad share two of their six vertices
+    final float[] quad = {
+        0, 0, 0, 0, 0, 1, 0, 0,
+        1, 0, 0, 0, 0, 1, 1, 0,
+        1, 1, 0, 0, 0, 1, 1, 1,
+        0, 0, 0, 0, 0, 1, 0, 0,
+        1, 1, 0, 0, 0, 1, 1, 1,
+        0, 1, 0, 0, 0, 1, 0, 1,
+    };
+    final IndexedMesh quadMesh = verify("quad", InterleavedMesh.fromInterleaved(quad, SIZES));
+    check(quadMesh.getVertexCount() == 4, "the quad welds to " + quadMesh.getVertexCount() + " vertices, not 4");
+
+    verify("tardis", InterleavedMesh.interleave(new float[][]{SceneGeometry.getTardisPositionData(),
+        SceneGeometry.getSquareNormalData(), SceneGeometry.getTardisTextureCoordinateData()}, SIZES));
+    verify("ground", TextureTiling.split(InterleavedMesh.interleave(new float[][]{SceneGeometry.getGroundPositionData(),
+        SceneGeometry.getSquareNormalData(), SceneGeometry.getSquareTextureCoordinateData()}, SIZES), 2));
+    final IndexedMesh grid = verify("shuffled grid", shuffledGrid(new Random(2)));
+    // a regular grid can get close to 0.5; shuffled, it is near the worst case of 3
+    check(grid.getAcmr() < 1.0f, "the grid reorders to an ACMR of " + grid.getAcmr());
+
+    try {
+      new IndexedMeshBuilder().build(InterleavedMesh.fromInterleaved(new float[] {0, 0, 0, 0, 0, 1, 0, 0}, SIZES));
+      fail("a vertex count that is not a multiple of 3 was accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    // 65538 distinct vertices, past what a short index can reach
+    final float[] distinct = new float[65538 * 8];
+    for (int v = 0; v < 65538; v++)
+      distinct[v * 8] = v;
+    try {
+      new IndexedMeshBuilder().build(InterleavedMesh.fromInterleaved(distinct, SIZES));
+      fail("65538 distinct vertices were indexed with shorts");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    System.out.println("IndexedMeshBuilder welds, keeps the triangles and does not worsen ACMR");
+  }
+
+  /**
+   * Builds the mesh and checks it against the triangles it came from.
+   */
+  private static IndexedMesh verify(String name, InterleavedMesh triangles) {
+    final IndexedMesh mesh = new IndexedMeshBuilder().build(triangles);
+    final int stride = triangles.getFloatsPerVertex();
+    final float[] source = triangles.getData();
+    final float[] welded = mesh.getVertices().getData();
+    final short[] indices = mesh.getIndices();
+    check(mesh.getSourceVertexCount() == triangles.getVertexCount(), name + ": source vertex count is wrong");
+    check(mesh.getIndexCount() == triangles.getVertexCount(), name + ": " + mesh.getIndexCount() + " indices for "
+        + triangles.getVertexCount() / 3 + " triangles");
+    check(welded.length == mesh.getVertexCount() * stride, name + ": welded data does not match the vertex count");
+
+    // no two welded vertices alike, and every source vertex among them
+    final HashMap<String, Integer> weldedIndex = new HashMap<String, Integer>();
+    for (int v = 0; v < mesh.getVertexCount(); v++)
+      check(weldedIndex.put(vertex(welded, stride, v), v) == null, name + ": vertex " + v + " was not welded");
+    final int[] sourceOrder = new int[triangles.getVertexCount()];
+    for (int v = 0; v < sourceOrder.length; v++) {
+      final Integer index = weldedIndex.get(vertex(source, stride, v));
+      check(index != null, name + ": source vertex " + v + " is missing");
+      sourceOrder[v] = index;
+    }
+
+    // the same triangles, each as often, wound the same way
+    final HashMap<String, Integer> sourceTriangles = new HashMap<String, Integer>();
+    for (int t = 0; t < sourceOrder.length / 3; t++)
+      count(sourceTriangles, triangle(source, stride, t * 3, t * 3 + 1, t * 3 + 2), 1);
+    final int[] reordered = new int[indices.length];
+    for (int i = 0; i < indices.length; i++) {
+      reordered[i] = indices[i] & 0xffff;
+      check(reordered[i] < mesh.getVertexCount(), name + ": index " + i + " is out of range");
+    }
+    for (int t = 0; t < reordered.length / 3; t++) {
+      final String triangle = triangle(welded, stride, reordered[t * 3], reordered[t * 3 + 1], reordered[t * 3 + 2]);
+      check(count(sourceTriangles, triangle, -1) >= 0, name + ": triangle " + t + " is not a source triangle");
+    }
+
+    // vertices are numbered in the order they are first drawn
+    int next = 0;
+    for (int index : reordered) {
+      check(index <= next, name + ": vertex " + index + " is drawn before vertex " + next);
+      if (index == next)
+        next++;
+    }
+
+    for (int cacheSize : CACHE_SIZES) {
+      final float before = IndexedMeshBuilder.acmr(sourceOrder, cacheSize);
+      final float after = IndexedMeshBuilder.acmr(reordered, cacheSize);
+      check(after <= before, name + ": ACMR at a cache of " + cacheSize + " went from " + before + " to " + after);
+    }
+    check(mesh.getAcmr() == IndexedMeshBuilder.acmr(reordered, IndexedMeshBuilder.DEFAULT_SIMULATED_CACHE_SIZE),
+        name + ": reports an ACMR of " + mesh.getAcmr() + " for indices that have another");
+    System.out.println(String.format("%-14s %5d -> %5d vertices, ACMR %.3f unindexed, %.3f welded, %.3f reordered",
+        name, mesh.getSourceVertexCount(), mesh.getVertexCount(), mesh.getSourceAcmr(),
+        IndexedMeshBuilder.acmr(sourceOrder, IndexedMeshBuilder.DEFAULT_SIMULATED_CACHE_SIZE), mesh.getAcmr()));
+    return mesh;
+  }
+
+  /**
+   * A GRID by GRID quad grid, its triangles in random order.
+   */
+  private static InterleavedMesh shuffledGrid(Random random) {
+    final int triangles = GRID * GRID * 2;
+    final int[] order = new int[triangles];
+    for (int t = 0; t < triangles; t++)
+      order[t] = t;
+    for (int t = triangles - 1; t > 0; t--) {
+      final int swap = random.nextInt(t + 1);
+      final int kept = order[t];
+      order[t] = order[swap];
+      order[swap] = kept;
+    }
+    final float[] data = new float[triangles * 3 * 8];
+    int at = 0;
+    for (int t : order) {
+      final int x = t / 2 % GRID;
+      final int y = t / 2 / GRID;
+      final int[] corners = t % 2 == 0 ? new int[]{0, 0, 1, 0, 1, 1} : new int[]{0, 0, 1, 1, 0, 1};
+      for (int c = 0; c < 6; c += 2) {
+        data[at++] = x + corners[c];
+        data[at++] = y + corners[c + 1];
+        data[at++] = 0;
+        data[at++] = 0;
+        data[at++] = 0;
+        data[at++] = 1;
+        data[at++] = (x + corners[c]) / (float) GRID;
+        data[at++] = (y + corners[c + 1]) / (float) GRID;
+      }
+    }
+    return InterleavedMesh.fromInterleaved(data, SIZES);
+  }
+
+  private static String vertex(float[] data, int stride, int vertex) {
+    return Arrays.toString(Arrays.copyOfRange(data, vertex * stride, vertex * stride + stride));
+  }
+
+  /**
+   * @return the triangle's vertices from its least one on, so a triangle keeps its key however it is rotated, but
+   * not if it is flipped
+   */
+  private static String triangle(float[] data, int stride, int a, int b, int c) {
+    final String[] vertices = {vertex(data, stride, a), vertex(data, stride, b), vertex(data, stride, c)};
+    int first = 0;
+    for (int k = 1; k < 3; k++) {
+      if (vertices[k].compareTo(vertices[first]) < 0)
+        first = k;
+    }
+    return vertices[first] + vertices[(first + 1) % 3] + vertices[(first + 2) % 3];
+  }
+
+  /**
+   * @return the key's count after adding delta
+   */
+  private static int count(HashMap<String, Integer> counts, String key, int delta) {
+    final Integer count = counts.get(key);
+    final int updated = (count == null ? 0 : count) + delta;
+    counts.put(key, updated);
+    return updated;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
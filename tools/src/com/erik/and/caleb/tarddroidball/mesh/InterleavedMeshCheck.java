@@ -0,0 +1,115 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+
+import java.util.Arrays;
+
+/**
+ * Checks the layout {@link InterleavedMesh} packs: stride and attribute
+ * offsets, the order floats land in for a small two attribute mesh, that
+ * wrapping the packed data again gives the same layout back, and that
+ * attributes of the wrong length or size are turned away. Exits non-zero on
+ * failure.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.mesh.InterleavedMeshCheck
+ * </pre>
+ */
+public class InterleavedMeshCheck {
+
+  private static final int[] SIZES = {3, 2};
+  private static final float[] POSITIONS = {
+      0, 1, 2,
+      10, 11, 12,
+      20, 21, 22,
+  };
+  private static final float[] TEXTURE_COORDINATES = {
+      0.0f, 0.5f,
+      1.0f, 1.5f,
+      2.0f, 2.5f,
+  };
+  private static final float[] PACKED = {
+      0, 1, 2, 0.0f, 0.5f,
+      10, 11, 12, 1.0f, 1.5f,
+      20, 21, 22, 2.0f, 2.5f,
+  };
+
+  public static void main(String[] args) {
+    final InterleavedMesh mesh = InterleavedMesh.interleave(new float[][]{POSITIONS, TEXTURE_COORDINATES}, SIZES);
+    verifyLayout(mesh, "interleaved");
+    check(Arrays.equals(mesh.getData(), PACKED), "packed " + Arrays.toString(mesh.getData()));
+
+    final InterleavedMesh wrapped = InterleavedMesh.fromInterleaved(mesh.getData(), SIZES);
+    verifyLayout(wrapped, "wrapped");
+    check(Arrays.equals(wrapped.getData(), PACKED), "wrapping changed the data");
+    final InterleavedMesh again = InterleavedMesh.interleave(new float[][]{
+        attribute(wrapped, 0), attribute(wrapped, 1)}, SIZES);
+    check(Arrays.equals(again.getData(), PACKED), "unpacking and packing again changed the data");
+    verifyLayout(mesh.withData(PACKED.clone()), "withData");
+
+    verifyRejected();
+    System.out.println("Interleaved layout, packing order, round trip and rejections check out");
+  }
+
+  private static void verifyLayout(InterleavedMesh mesh, String name) {
+    check(mesh.getVertexCount() == 3, name + " has " + mesh.getVertexCount() + " vertices");
+    check(mesh.getAttributeCount() == 2, name + " has " + mesh.getAttributeCount() + " attributes");
+    check(mesh.getAttributeSize(0) == 3 && mesh.getAttributeSize(1) == 2, name + " lost its attribute sizes");
+    check(mesh.getFloatsPerVertex() == 5, name + " vertex is " + mesh.getFloatsPerVertex() + " floats");
+    check(mesh.getStrideInBytes() == 5 * InterleavedMesh.BYTES_PER_FLOAT, name + " stride is " + mesh.getStrideInBytes());
+    check(mesh.getOffset(0) == 0 && mesh.getOffset(1) == 3, name + " offsets are " + mesh.getOffset(0) + ", " + mesh.getOffset(1));
+    check(mesh.getOffsetInBytes(0) == 0 && mesh.getOffsetInBytes(1) == 12, name + " byte offsets are "
+        + mesh.getOffsetInBytes(0) + ", " + mesh.getOffsetInBytes(1));
+  }
+
+  /**
+   * Reads one attribute back out of the packed vertices, as a shader would with the stride and offset.
+   */
+  private static float[] attribute(InterleavedMesh mesh, int attribute) {
+    final int size = mesh.getAttributeSize(attribute);
+    final float[] values = new float[mesh.getVertexCount() * size];
+    for (int v = 0; v < mesh.getVertexCount(); v++)
+      System.arraycopy(mesh.getData(), v * mesh.getFloatsPerVertex() + mesh.getOffset(attribute), values, v * size, size);
+    return values;
+  }
+
+  private static void verifyRejected() {
+    // one texture coordinate short
+    rejected(new float[][]{POSITIONS, Arrays.copyOf(TEXTURE_COORDINATES, 5)}, SIZES, "a short attribute");
+    rejected(new float[][]{POSITIONS, TEXTURE_COORDINATES}, new int[]{3}, "fewer sizes than attributes");
+    rejected(new float[][]{POSITIONS}, SIZES, "more sizes than attributes");
+    rejected(new float[0][], new int[0], "no attributes");
+    rejected(new float[][]{POSITIONS, TEXTURE_COORDINATES}, new int[]{3, 0}, "an empty attribute");
+    // the sizes fit the data, just not the number of vertices the first attribute gives
+    rejected(new float[][]{POSITIONS, TEXTURE_COORDINATES}, new int[]{3, 3}, "sizes that do not fit");
+    try {
+      InterleavedMesh.fromInterleaved(Arrays.copyOf(PACKED, PACKED.length - 1), SIZES);
+      fail("wrapped data that is not a whole number of vertices");
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      InterleavedMesh.fromInterleaved(PACKED, new int[]{5, 0});
+      fail("wrapped data with an empty attribute");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static void rejected(float[][] attributes, int[] sizes, String what) {
+    try {
+      InterleavedMesh.interleave(attributes, sizes);
+      fail("interleaved " + what);
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
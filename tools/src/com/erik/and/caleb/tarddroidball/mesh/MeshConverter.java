@@ -0,0 +1,74 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.MeshContainer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Converts a Wavefront OBJ model into a {@link MeshContainer} for res/raw:
+ * triangulates it, welds identical vertices and orders triangles for the
+ * vertex cache with {@link IndexedMeshBuilder}, then quantizes it with
+ * {@link MeshEncoder}.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.mesh.MeshConverter --out res/raw/model.bin [--no-flip-v] model.obj
+ * </pre>
+ * Use a .bin name, like the texture atlas, so the file can be mapped.
+ */
+public class MeshConverter {
+
+  public static void main(String[] args) throws IOException {
+    File out = null;
+    File in = null;
+    boolean flipV = true;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--out"))
+        out = new File(args[++i]);
+      else if (args[i].equals("--no-flip-v"))
+        flipV = false;
+      else
+        in = new File(args[i]);
+    }
+    if (out == null || in == null) {
+      System.err.println("usage: MeshConverter --out file [--no-flip-v] model.obj");
+      System.exit(2);
+    }
+
+    final long start = System.nanoTime();
+    final ObjReader reader = new ObjReader().setFlipV(flipV);
+    final Reader source = new InputStreamReader(new FileInputStream(in), "UTF-8");
+    final IndexedMesh mesh;
+    try {
+      mesh = new IndexedMeshBuilder().build(reader.read(source));
+    } catch (IOException e) {
+      throw new IOException(in + ": " + e.getMessage(), e);
+    } finally {
+      source.close();
+    }
+    final byte[] encoded = MeshEncoder.encode(mesh, reader.hasTexCoords());
+    final OutputStream stream = new FileOutputStream(out);
+    try {
+      stream.write(encoded);
+    } finally {
+      stream.close();
+    }
+    System.out.println(String.format("%s: %s, %d bytes against %d as floats, %.0f ms", out, mesh, encoded.length,
+        floatSize(mesh), (System.nanoTime() - start) / 1e6));
+  }
+
+  /**
+   * @return the size of the same mesh with float vertices and 16 bit indices
+   */
+  static int floatSize(IndexedMesh mesh) {
+    return mesh.getVertices().getData().length * 4 + mesh.getIndexCount() * 2;
+  }
+}
@@ -0,0 +1,113 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.MeshBounds;
+import com.erik.and.caleb.tarddroidball.MeshContainer;
+import com.erik.and.caleb.tarddroidball.VertexLayout;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Quantizes an indexed mesh with {@link ObjReader#SIZES} attributes into a
+ * {@link MeshContainer}, 16 bytes a vertex against 32 as floats:
+ * <pre>
+ *  0  position   3 normalized unsigned shorts, then 2 bytes of padding
+ *  8  normal     3 normalized bytes, then 1 byte of padding
+ * 12  texcoord   2 normalized unsigned shorts
+ * </pre>
+ * Positions share one scale on every axis, the largest extent of the mesh,
+ * so folding the scale and bias into a model matrix keeps normals pointing
+ * the right way; that costs precision only on the shorter axes. Texture
+ * coordinates are scaled per axis, since they only ever go through the
+ * atlas rect. Normals are stored as GLES2 reads signed bytes, (2c + 1) / 255,
+ * so no shader code decodes them.
+ */
+public class MeshEncoder {
+
+  public static final int STRIDE = 16;
+  private static final int POSITION_OFFSET = 0;
+  private static final int NORMAL_OFFSET = 8;
+  private static final int TEXCOORD_OFFSET = 12;
+
+  private static final int POSITION = 0;
+  private static final int NORMAL = 1;
+  private static final int TEXCOORD = 2;
+
+  /**
+   * @param texCoords whether to keep the texture coordinates; without them the vertex is 12 bytes
+   */
+  public static byte[] encode(IndexedMesh mesh, boolean texCoords) {
+    final InterleavedMesh vertices = mesh.getVertices();
+    final int vertexCount = vertices.getVertexCount();
+    final float[] data = vertices.getData();
+    final int floats = vertices.getFloatsPerVertex();
+    final int stride = texCoords ? STRIDE : TEXCOORD_OFFSET;
+    final int attributes = texCoords ? 3 : 2;
+
+    final MeshBounds bounds = MeshBounds.of(vertices, POSITION);
+    final float[] positionBias = {bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(), 0};
+    final float extent = Math.max(bounds.getMaxX() - bounds.getMinX(), Math.max(bounds.getMaxY() - bounds.getMinY(), bounds.getMaxZ() - bounds.getMinZ()));
+    final float positionScale = extent > 0 ? extent : 1;
+    final float[] texCoordBias = {Float.MAX_VALUE, Float.MAX_VALUE, 0, 0};
+    final float[] texCoordScale = {1, 1, 1, 1};
+    if (texCoords) {
+      final float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE};
+      for (int v = 0; v < vertexCount; v++) {
+        for (int c = 0; c < 2; c++) {
+          final float value = data[v * floats + vertices.getOffset(TEXCOORD) + c];
+          texCoordBias[c] = Math.min(texCoordBias[c], value);
+          max[c] = Math.max(max[c], value);
+        }
+      }
+      for (int c = 0; c < 2; c++) {
+        if (max[c] > texCoordBias[c])
+          texCoordScale[c] = max[c] - texCoordBias[c];
+      }
+    }
+
+    final int vertexOffset = MeshContainer.getHeaderSize(attributes);
+    final int indexOffset = vertexOffset + (vertexCount * stride + 3) / 4 * 4;
+    final ByteBuffer out = ByteBuffer.allocate(indexOffset + mesh.getIndexCount() * 2).order(ByteOrder.LITTLE_ENDIAN);
+    out.putInt(MeshContainer.MAGIC).putInt(MeshContainer.VERSION).putInt(vertexCount).putInt(mesh.getIndexCount())
+        .putInt(stride).putInt(attributes);
+    putAttribute(out, MeshContainer.SEMANTIC_POSITION, 3, VertexLayout.TYPE_UNSIGNED_SHORT, POSITION_OFFSET,
+        new float[]{positionScale, positionScale, positionScale, 1}, positionBias);
+    putAttribute(out, MeshContainer.SEMANTIC_NORMAL, 3, VertexLayout.TYPE_BYTE, NORMAL_OFFSET,
+        new float[]{1, 1, 1, 1}, new float[4]);
+    if (texCoords)
+      putAttribute(out, MeshContainer.SEMANTIC_TEXCOORD, 2, VertexLayout.TYPE_UNSIGNED_SHORT, TEXCOORD_OFFSET, texCoordScale, texCoordBias);
+    out.putFloat(bounds.getMinX()).putFloat(bounds.getMinY()).putFloat(bounds.getMinZ());
+    out.putFloat(bounds.getMaxX()).putFloat(bounds.getMaxY()).putFloat(bounds.getMaxZ());
+    out.putInt(vertexOffset).putInt(indexOffset);
+
+    for (int v = 0; v < vertexCount; v++) {
+      final int base = vertexOffset + v * stride;
+      final int p = v * floats + vertices.getOffset(POSITION);
+      for (int c = 0; c < 3; c++)
+        VertexLayout.put(out, base + POSITION_OFFSET + c * 2, VertexLayout.TYPE_UNSIGNED_SHORT, true, (data[p + c] - positionBias[c]) / positionScale);
+      final int n = v * floats + vertices.getOffset(NORMAL);
+      final float length = (float) Math.sqrt(data[n] * data[n] + data[n + 1] * data[n + 1] + data[n + 2] * data[n + 2]);
+      for (int c = 0; c < 3; c++)
+        VertexLayout.put(out, base + NORMAL_OFFSET + c, VertexLayout.TYPE_BYTE, true, length > 0 ? data[n + c] / length : 0);
+      if (texCoords) {
+        final int t = v * floats + vertices.getOffset(TEXCOORD);
+        for (int c = 0; c < 2; c++)
+          VertexLayout.put(out, base + TEXCOORD_OFFSET + c * 2, VertexLayout.TYPE_UNSIGNED_SHORT, true, (data[t + c] - texCoordBias[c]) / texCoordScale[c]);
+      }
+    }
+    out.position(indexOffset);
+    for (short index : mesh.getIndices())
+      out.putShort(index);
+    return out.array();
+  }
+
+  private static void putAttribute(ByteBuffer out, int semantic, int components, int type, int offset, float[] scale, float[] bias) {
+    out.putInt(semantic).putInt(components).putInt(type).putInt(1).putInt(offset);
+    for (float s : scale)
+      out.putFloat(s);
+    for (float b : bias)
+      out.putFloat(b);
+  }
+}
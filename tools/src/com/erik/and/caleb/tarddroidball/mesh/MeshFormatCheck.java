@@ -0,0 +1,247 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.MeshContainer;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the OBJ reader on the awkward parts of the format, then round-trips
+ * meshes through OBJ text, {@link MeshEncoder} and a mapped
+ * {@link MeshContainer}, and measures how far every attribute moved against
+ * what quantizing allows: half a step of the mesh's range for positions and
+ * texture coordinates, and {@link #MAX_NORMAL_DEGREES} for normals. Indices
+ * must come back exactly. Exits non-zero on failure.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.mesh.MeshFormatCheck
+ * </pre>
+ */
+public class MeshFormatCheck {
+
+  /** Worst case for a unit vector through three signed bytes is about 0.39 degrees. */
+  private static final double MAX_NORMAL_DEGREES = 0.45;
+
+  public static void main(String[] args) throws IOException {
+    verifyObjReader();
+    verifyCorruptFiles();
+    System.out.println("OBJ reading and header checks out");
+    System.out.println(String.format("%-16s %8s %8s %10s %10s %12s %12s %10s", "mesh", "vertices", "tris", "bytes", "as floats",
+        "position", "texcoord", "normal deg"));
+    roundTrip("tardis", toObj(SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getTardisTextureCoordinateData()));
+    roundTrip("ground", toObj(SceneGeometry.getGroundPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getSquareTextureCoordinateData()));
+    roundTrip("random 20k", randomObj(new Random(20), 20000, 500.0f, 0.0f));
+    roundTrip("random far", randomObj(new Random(21), 2000, 3.0f, 1000.0f));
+  }
+
+  private static void verifyObjReader() throws IOException {
+    final String obj = ""
+        + "# a unit quad in z = 0, then a triangle off to the side\n"
+        + "mtllib ignored.mtl\n"
+        + "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n"
+        + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\n"
+        + "vn 0 0 1\n"
+        + "o quad\ng side\ns off\nusemtl grass\n"
+        + "f 1/1/1 2/2/1 3/3/1 4/4/1\n"
+        + "v 5 0 0\nv 6 0 0\nv 5 0 -1   # trailing comment\n"
+        + "f -3//1 -2//1 -1//1\n"
+        + "f 5 7 6\n";
+    final ObjReader reader = new ObjReader();
+    final InterleavedMesh triangles = reader.read(new StringReader(obj));
+    check(triangles.getVertexCount() == 12, "expected 4 triangles, got " + triangles.getVertexCount() / 3);
+    check(reader.hasTexCoords(), "texture coordinates were not noticed");
+    final float[] data = triangles.getData();
+    // the quad's fan: (1, 2, 3) and (1, 3, 4), v flipped
+    check(Arrays.equals(Arrays.copyOfRange(data, 3 * 8, 4 * 8), new float[]{0, 0, 0, 0, 0, 1, 0, 1}), "second fan starts wrong");
+    check(Arrays.equals(Arrays.copyOfRange(data, 5 * 8, 6 * 8), new float[]{0, 1, 0, 0, 0, 1, 0, 0}), "fourth corner is wrong");
+    // the last face has no normals: (5, 0, -1) - (5, 0, 0) cross (6, 0, 0) - (5, 0, 0) points down
+    check(Arrays.equals(Arrays.copyOfRange(data, 9 * 8, 9 * 8 + 6), new float[]{5, 0, 0, 0, -1, 0}), "flat normal is "
+        + Arrays.toString(Arrays.copyOfRange(data, 9 * 8 + 3, 9 * 8 + 6)));
+
+    expectFailure("v 0 0 0\nf 1 2 3\n", "line 2: index 2 out of range, 1 defined");
+    expectFailure("v 0 0\n", "line 1: expected 3 numbers");
+    expectFailure("v 0 0 0\nv 0 0 0\nf 1 2\n", "line 3: a face needs 3 vertices");
+    expectFailure("v 0 0 0\nv 1 0 0\nv 0 1 0\nf 1 2 0\n", "line 4: index 0 out of range, 3 defined");
+    expectFailure("# nothing\n", "No faces");
+  }
+
+  private static void expectFailure(String obj, String message) {
+    try {
+      new ObjReader().read(new StringReader(obj));
+      fail("expected \"" + message + "\"");
+    } catch (IOException e) {
+      check(message.equals(e.getMessage()), "expected \"" + message + "\", got \"" + e.getMessage() + "\"");
+    }
+  }
+
+  private static void verifyCorruptFiles() throws IOException {
+    final byte[] encoded = encode(toObj(SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getTardisTextureCoordinateData()));
+    for (int length : new int[]{0, 16, MeshContainer.getHeaderSize(3), encoded.length - 1}) {
+      try {
+        new MeshContainer(ByteBuffer.wrap(encoded, 0, length).slice());
+        fail("read a mesh cut to " + length + " bytes");
+      } catch (IOException expected) {
+      }
+    }
+    final byte[] wrongVersion = encoded.clone();
+    wrongVersion[4] = 99;
+    try {
+      new MeshContainer(ByteBuffer.wrap(wrongVersion));
+      fail("read a mesh with version 99");
+    } catch (IOException expected) {
+    }
+  }
+
+  private static void roundTrip(String name, String obj) throws IOException {
+    final IndexedMesh source = new IndexedMeshBuilder().build(new ObjReader().read(new StringReader(obj)));
+    final byte[] encoded = MeshEncoder.encode(source, true);
+    final MeshContainer mesh = new MeshContainer(map(encoded));
+    check(mesh.getVertexData().isDirect(), "vertex block is not a slice of the mapped file");
+    check(mesh.getStride() == MeshEncoder.STRIDE, "stride is " + mesh.getStride());
+    check(Arrays.equals(mesh.getIndices(), source.getIndices()), name + ": indices changed");
+
+    final InterleavedMesh decoded = mesh.decode();
+    final float[] expected = source.getVertices().getData();
+    final float[] actual = decoded.getData();
+    check(actual.length == expected.length, name + ": " + decoded.getVertexCount() + " vertices came back");
+    final int position = mesh.findAttribute(MeshContainer.SEMANTIC_POSITION);
+    final int texCoord = mesh.findAttribute(MeshContainer.SEMANTIC_TEXCOORD);
+    double positionError = 0, texCoordError = 0, normalDegrees = 0;
+    double positionAllowed = 0, texCoordAllowed = 0;
+    for (int v = 0; v < decoded.getVertexCount(); v++) {
+      final int i = v * 8;
+      for (int c = 0; c < 3; c++) {
+        positionError = Math.max(positionError, Math.abs(actual[i + c] - expected[i + c]));
+        positionAllowed = Math.max(positionAllowed, halfStep(mesh, position, c, expected[i + c]));
+      }
+      final double dot = (actual[i + 3] * expected[i + 3] + actual[i + 4] * expected[i + 4] + actual[i + 5] * expected[i + 5])
+          / length(actual, i + 3) / length(expected, i + 3);
+      normalDegrees = Math.max(normalDegrees, Math.toDegrees(Math.acos(Math.min(1.0, dot))));
+      for (int c = 0; c < 2; c++) {
+        texCoordError = Math.max(texCoordError, Math.abs(actual[i + 6 + c] - expected[i + 6 + c]));
+        texCoordAllowed = Math.max(texCoordAllowed, halfStep(mesh, texCoord, c, expected[i + 6 + c]));
+      }
+    }
+    System.out.println(String.format("%-16s %8d %8d %10d %10d %12.3g %12.3g %10.3f", name, mesh.getVertexCount(),
+        mesh.getIndexCount() / 3, encoded.length, MeshConverter.floatSize(source), positionError, texCoordError, normalDegrees));
+    check(positionError <= positionAllowed, name + ": positions moved " + positionError + ", allowed " + positionAllowed);
+    check(texCoordError <= texCoordAllowed, name + ": texture coordinates moved " + texCoordError + ", allowed " + texCoordAllowed);
+    check(normalDegrees <= MAX_NORMAL_DEGREES, name + ": normals turned " + normalDegrees + " degrees");
+  }
+
+  /**
+   * Half a quantizing step, plus the float rounding of bias + scale * x near value.
+   */
+  private static double halfStep(MeshContainer mesh, int attribute, int component, float value) {
+    return 0.5 * mesh.getScale(attribute, component) / 65535.0
+        + 2 * (Math.ulp(Math.abs(value) + Math.abs(mesh.getBias(attribute, component))) + Math.ulp(mesh.getScale(attribute, component)));
+  }
+
+  private static double length(float[] data, int offset) {
+    return Math.sqrt(data[offset] * data[offset] + data[offset + 1] * data[offset + 1] + data[offset + 2] * data[offset + 2]);
+  }
+
+  private static byte[] encode(String obj) throws IOException {
+    return MeshEncoder.encode(new IndexedMeshBuilder().build(new ObjReader().read(new StringReader(obj))), true);
+  }
+
+  /**
+   * Writes the mesh to a file and maps it, as the app maps res/raw.
+   */
+  private static ByteBuffer map(byte[] encoded) throws IOException {
+    final File file = File.createTempFile("mesh", ".bin");
+    file.deleteOnExit();
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(encoded);
+    } finally {
+      out.close();
+    }
+    final RandomAccessFile in = new RandomAccessFile(file, "r");
+    try {
+      return in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, encoded.length);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * An unindexed float mesh as OBJ text; v is flipped back so the reader's flip restores it.
+   */
+  private static String toObj(float[] positions, float[] normals, float[] texCoords) {
+    final int[] triangles = new int[positions.length / 3];
+    for (int i = 0; i < triangles.length; i++)
+      triangles[i] = i;
+    final float[] flipped = texCoords.clone();
+    for (int v = 1; v < flipped.length; v += 2)
+      flipped[v] = 1.0f - flipped[v];
+    return toObj(positions, normals, flipped, triangles);
+  }
+
+  /**
+   * Triangles between random shared vertices, with random normals and texture coordinates past [0, 1].
+   */
+  private static String randomObj(Random random, int vertices, float size, float offset) {
+    final float[] positions = new float[vertices * 3];
+    final float[] normals = new float[vertices * 3];
+    final float[] texCoords = new float[vertices * 2];
+    for (int v = 0; v < vertices; v++) {
+      for (int c = 0; c < 3; c++) {
+        positions[v * 3 + c] = offset + (random.nextFloat() - 0.5f) * size * (c + 1);
+        normals[v * 3 + c] = (float) random.nextGaussian();
+      }
+      texCoords[v * 2] = random.nextFloat() * 8 - 3;
+      texCoords[v * 2 + 1] = random.nextFloat();
+    }
+    final int[] triangles = new int[vertices * 6];
+    for (int i = 0; i < triangles.length; i++)
+      triangles[i] = random.nextInt(vertices);
+    return toObj(positions, normals, texCoords, triangles);
+  }
+
+  /**
+   * One v, vn and vt per vertex, and faces using the same index for all three.
+   */
+  private static String toObj(float[] positions, float[] normals, float[] texCoords, int[] triangles) {
+    final StringBuilder obj = new StringBuilder();
+    for (int v = 0; v < positions.length / 3; v++) {
+      obj.append("v ").append(positions[v * 3]).append(' ').append(positions[v * 3 + 1]).append(' ').append(positions[v * 3 + 2]).append('\n');
+      obj.append("vn ").append(normals[v * 3]).append(' ').append(normals[v * 3 + 1]).append(' ').append(normals[v * 3 + 2]).append('\n');
+      obj.append("vt ").append(texCoords[v * 2]).append(' ').append(texCoords[v * 2 + 1]).append('\n');
+    }
+    for (int t = 0; t < triangles.length; t += 3) {
+      obj.append('f');
+      for (int c = 0; c < 3; c++) {
+        final int index = triangles[t + c] + 1;
+        obj.append(' ').append(index).append('/').append(index).append('/').append(index);
+      }
+      obj.append('\n');
+    }
+    return obj.toString();
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,193 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the geometry out of a Wavefront OBJ file: v, vt and vn lines and
+ * faces, which are split into triangle fans. Faces without normals get the
+ * flat normal of each triangle, faces without texture coordinates get (0, 0).
+ * Groups, smoothing and materials are ignored.
+ */
+public class ObjReader {
+
+  /** Attribute sizes of what {@link #read} returns: position, normal, texture coordinate. */
+  public static final int[] SIZES = {3, 3, 2};
+
+  private final FloatList mPositions = new FloatList();
+  private final FloatList mNormals = new FloatList();
+  private final FloatList mTexCoords = new FloatList();
+  private final FloatList mTriangles = new FloatList();
+  private boolean mFlipV = true;
+  private boolean mHasTexCoords;
+  private int mLineNumber;
+
+  /**
+   * OBJ puts v = 0 at the bottom of the image, while textures here are
+   * uploaded top row first, so v is flipped unless this is turned off.
+   */
+  public ObjReader setFlipV(boolean flipV) {
+    mFlipV = flipV;
+    return this;
+  }
+
+  /**
+   * @return an unindexed triangle list with {@link #SIZES} attributes
+   */
+  public InterleavedMesh read(Reader in) throws IOException {
+    final BufferedReader lines = new BufferedReader(in);
+    for (String line; (line = lines.readLine()) != null; ) {
+      mLineNumber++;
+      final int comment = line.indexOf('#');
+      final String[] tokens = (comment >= 0 ? line.substring(0, comment) : line).trim().split("\\s+");
+      if (tokens[0].equals("v"))
+        add(mPositions, tokens, 3);
+      else if (tokens[0].equals("vn"))
+        add(mNormals, tokens, 3);
+      else if (tokens[0].equals("vt"))
+        add(mTexCoords, tokens, 2);
+      else if (tokens[0].equals("f"))
+        face(tokens);
+    }
+    if (mTriangles.size() == 0)
+      throw new IOException("No faces");
+    return InterleavedMesh.fromInterleaved(mTriangles.toArray(), SIZES);
+  }
+
+  /**
+   * @return whether any face had texture coordinates
+   */
+  public boolean hasTexCoords() {
+    return mHasTexCoords;
+  }
+
+  private void add(FloatList list, String[] tokens, int count) throws IOException {
+    if (tokens.length < count + 1)
+      throw error("expected " + count + " numbers");
+    for (int i = 1; i <= count; i++) {
+      try {
+        list.add(Float.parseFloat(tokens[i]));
+      } catch (NumberFormatException e) {
+        throw error("not a number: " + tokens[i]);
+      }
+    }
+  }
+
+  private void face(String[] tokens) throws IOException {
+    if (tokens.length < 4)
+      throw error("a face needs 3 vertices");
+    final int corners = tokens.length - 1;
+    // per corner: position, texture coordinate and normal index, -1 where missing
+    final int[] indices = new int[corners * 3];
+    for (int c = 0; c < corners; c++) {
+      final String[] parts = tokens[c + 1].split("/", -1);
+      if (parts.length > 3)
+        throw error("bad vertex " + tokens[c + 1]);
+      indices[c * 3] = index(parts[0], mPositions.size() / 3);
+      indices[c * 3 + 1] = parts.length > 1 ? index(parts[1], mTexCoords.size() / 2) : -1;
+      indices[c * 3 + 2] = parts.length > 2 ? index(parts[2], mNormals.size() / 3) : -1;
+    }
+    for (int c = 1; c + 1 < corners; c++)
+      triangle(indices, 0, c, c + 1);
+  }
+
+  private int index(String token, int count) throws IOException {
+    if (token.length() == 0)
+      return -1;
+    final int index;
+    try {
+      index = Integer.parseInt(token);
+    } catch (NumberFormatException e) {
+      throw error("not an index: " + token);
+    }
+    // 1-based, or negative counting back from the last one read
+    final int resolved = index < 0 ? count + index : index - 1;
+    if (index == 0 || resolved < 0 || resolved >= count)
+      throw error("index " + index + " out of range, " + count + " defined");
+    return resolved;
+  }
+
+  private void triangle(int[] indices, int a, int b, int c) {
+    final int[] corners = {a, b, c};
+    float nx = 0, ny = 0, nz = 0;
+    if (indices[a * 3 + 2] < 0 || indices[b * 3 + 2] < 0 || indices[c * 3 + 2] < 0) {
+      final float[] p = mPositions.array();
+      final int pa = indices[a * 3] * 3, pb = indices[b * 3] * 3, pc = indices[c * 3] * 3;
+      final float ux = p[pb] - p[pa], uy = p[pb + 1] - p[pa + 1], uz = p[pb + 2] - p[pa + 2];
+      final float vx = p[pc] - p[pa], vy = p[pc + 1] - p[pa + 1], vz = p[pc + 2] - p[pa + 2];
+      nx = uy * vz - uz * vy;
+      ny = uz * vx - ux * vz;
+      nz = ux * vy - uy * vx;
+      final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+      if (length > 0) {
+        nx /= length;
+        ny /= length;
+        nz /= length;
+      }
+    }
+    for (int corner : corners) {
+      final int position = indices[corner * 3] * 3;
+      mTriangles.add(mPositions.get(position));
+      mTriangles.add(mPositions.get(position + 1));
+      mTriangles.add(mPositions.get(position + 2));
+      final int normal = indices[corner * 3 + 2] * 3;
+      if (normal >= 0) {
+        mTriangles.add(mNormals.get(normal));
+        mTriangles.add(mNormals.get(normal + 1));
+        mTriangles.add(mNormals.get(normal + 2));
+      } else {
+        mTriangles.add(nx);
+        mTriangles.add(ny);
+        mTriangles.add(nz);
+      }
+      final int texCoord = indices[corner * 3 + 1] * 2;
+      if (texCoord >= 0) {
+        mHasTexCoords = true;
+        mTriangles.add(mTexCoords.get(texCoord));
+        mTriangles.add(mFlipV ? 1.0f - mTexCoords.get(texCoord + 1) : mTexCoords.get(texCoord + 1));
+      } else {
+        mTriangles.add(0.0f);
+        mTriangles.add(0.0f);
+      }
+    }
+  }
+
+  private IOException error(String message) {
+    return new IOException("line " + mLineNumber + ": " + message);
+  }
+
+  private static class FloatList {
+    private float[] mValues = new float[1024];
+    private int mSize;
+
+    void add(float value) {
+      if (mSize == mValues.length) {
+        final float[] grown = new float[mSize * 2];
+        System.arraycopy(mValues, 0, grown, 0, mSize);
+        mValues = grown;
+      }
+      mValues[mSize++] = value;
+    }
+
+    float get(int index) {
+      return mValues[index];
+    }
+
+    int size() {
+      return mSize;
+    }
+
+    float[] array() {
+      return mValues;
+    }
+
+    float[] toArray() {
+      final float[] values = new float[mSize];
+      System.arraycopy(mValues, 0, values, 0, mSize);
+      return values;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.erik.and.caleb.tarddroidball.mesh;
+
+import com.erik.and.caleb.tarddroidball.IndexedMesh;
+import com.erik.and.caleb.tarddroidball.IndexedMeshBuilder;
+import com.erik.and.caleb.tarddroidball.InterleavedMesh;
+import com.erik.and.caleb.tarddroidball.MeshContainer;
+import com.erik.and.caleb.tarddroidball.SceneGeometry;
+import com.erik.and.caleb.tarddroidball.TextureTiling;
+import com.erik.and.caleb.tarddroidball.VertexLayout;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checks that every packed type reads back what GLES2 would make of it for
+ * every code, that layouts put attributes where the drivers want them, and
+ * that the scene meshes survive packing into the renderer's layout: normals
+ * within {@link #MAX_NORMAL_DEGREES}, texture coordinates within half a step.
+ * Prints the bytes each mesh takes packed against as floats with a color.
+ * Exits non-zero on failure.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.mesh.VertexLayoutCheck
+ * </pre>
+ */
+public class VertexLayoutCheck {
+
+  private static final double MAX_NORMAL_DEGREES = 0.45;
+
+  /** What GraphicsRenderer draws the scene with. */
+  private static final VertexLayout SCENE = new VertexLayout.Builder()
+      .add("a_Position", 3, VertexLayout.TYPE_FLOAT, false)
+      .add("a_Normal", 3, VertexLayout.TYPE_BYTE, true)
+      .add("a_TexCoordinate", 2, VertexLayout.TYPE_UNSIGNED_SHORT, true)
+      .constant("a_Color", 1.0f, 1.0f, 1.0f, 1.0f)
+      .build();
+
+  public static void main(String[] args) throws IOException {
+    verifyCodes(VertexLayout.TYPE_BYTE, -128, 127);
+    verifyCodes(VertexLayout.TYPE_UNSIGNED_BYTE, 0, 255);
+    verifyCodes(VertexLayout.TYPE_SHORT, -32768, 32767);
+    verifyCodes(VertexLayout.TYPE_UNSIGNED_SHORT, 0, 65535);
+    verifyLayouts();
+    System.out.println("Packed types and layouts check out");
+    System.out.println("Scene layout: " + SCENE);
+
+    final int[] sizes = {3, 3, 2};
+    pack("ground", new IndexedMeshBuilder().build(TextureTiling.split(InterleavedMesh.interleave(new float[][]{
+        SceneGeometry.getGroundPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getSquareTextureCoordinateData()}, sizes), 2)));
+    pack("tardis", new IndexedMeshBuilder().build(InterleavedMesh.interleave(new float[][]{
+        SceneGeometry.getTardisPositionData(), SceneGeometry.getSquareNormalData(),
+        SceneGeometry.getTardisTextureCoordinateData()}, sizes)));
+  }
+
+  /**
+   * Every code of a type must be what put stores for the value get reads from it, normalized or not.
+   */
+  private static void verifyCodes(int type, int min, int max) {
+    final ByteBuffer stored = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+    for (int normalized = 0; normalized < 2; normalized++) {
+      for (int code = min; code <= max; code++) {
+        final float value = VertexLayout.get(encode(type, code), 0, type, normalized != 0);
+        VertexLayout.put(stored, 0, type, normalized != 0, value);
+        check(VertexLayout.get(stored, 0, type, normalized != 0) == value,
+            "type 0x" + Integer.toHexString(type) + " code " + code + " does not round-trip");
+      }
+      // out of range values clamp instead of wrapping
+      VertexLayout.put(stored, 0, type, normalized != 0, normalized != 0 ? 2.0f : max + 1000.0f);
+      check(VertexLayout.get(stored, 0, type, normalized != 0) == VertexLayout.get(encode(type, max), 0, type, normalized != 0),
+          "type 0x" + Integer.toHexString(type) + " does not clamp");
+    }
+  }
+
+  private static ByteBuffer encode(int type, int code) {
+    final ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+    if (VertexLayout.bytesPerComponent(type) == 1)
+      buffer.put(0, (byte) code);
+    else
+      buffer.putShort(0, (short) code);
+    return buffer;
+  }
+
+  private static void verifyLayouts() throws IOException {
+    check(SCENE.getStride() == 20, "scene vertex is " + SCENE.getStride() + " bytes");
+    check(SCENE.getOffset(1) == 12 && SCENE.getOffset(2) == 16, "scene attributes are not 4 byte aligned");
+    check(SCENE.getAllNames().length == 4 && SCENE.getAllNames()[3].equals("a_Color"), "constants do not follow the arrays");
+
+    final VertexLayout palette = SCENE.toBuilder().add("a_InstanceIndex", 1, VertexLayout.TYPE_UNSIGNED_BYTE, false).build();
+    check(palette.getStride() == 24 && palette.getOffset(3) == 20, "palette layout is " + palette);
+    check(palette.getConstantCount() == 1, "palette layout lost the color");
+
+    final VertexLayout floats = SCENE.asFloats();
+    check(floats.getStride() == 32 && floats.getOffset(2) == 24, "float layout is " + floats);
+
+    try {
+      new VertexLayout.Builder().add("a_Position", 3, VertexLayout.TYPE_FLOAT, false).setStride(8).build();
+      fail("built a 12 byte attribute into an 8 byte vertex");
+    } catch (IllegalArgumentException expected) {
+    }
+
+    // a converted mesh binds with the same names and offsets its header gives
+    final String obj = "v 0 0 0\nv 1 0 0\nv 0 1 0\nvt 0 0\nvt 1 0\nvt 0 1\nf 1/1 2/2 3/3\n";
+    final MeshContainer mesh = new MeshContainer(ByteBuffer.wrap(MeshEncoder.encode(
+        new IndexedMeshBuilder().build(new ObjReader().read(new StringReader(obj))), true)));
+    final VertexLayout layout = mesh.getLayout();
+    check(layout.getStride() == MeshEncoder.STRIDE, "container layout stride " + layout.getStride());
+    for (int a = 0; a < mesh.getAttributeCount(); a++)
+      check(layout.getOffset(a) == mesh.getOffset(a) && layout.getType(a) == mesh.getType(a), "container attribute " + a + " moved");
+    check(layout.getName(0).equals("a_Position") && layout.getName(1).equals("a_Normal")
+        && layout.getName(2).equals("a_TexCoordinate"), "container layout names " + layout);
+  }
+
+  private static void pack(String name, IndexedMesh mesh) {
+    final InterleavedMesh vertices = mesh.getVertices();
+    final ByteBuffer packed = SCENE.pack(vertices);
+    final float[] data = vertices.getData();
+    final int floats = vertices.getFloatsPerVertex();
+    double worstNormal = 0;
+    double worstTexCoord = 0;
+    for (int v = 0; v < vertices.getVertexCount(); v++) {
+      final int at = v * SCENE.getStride();
+      for (int c = 0; c < 3; c++)
+        check(VertexLayout.get(packed, at + c * 4, VertexLayout.TYPE_FLOAT, false) == data[v * floats + c], name + " position moved");
+      final int n = v * floats + vertices.getOffset(1);
+      double dot = 0, length = 0;
+      for (int c = 0; c < 3; c++) {
+        final float read = VertexLayout.get(packed, at + SCENE.getOffset(1) + c, VertexLayout.TYPE_BYTE, true);
+        dot += read * data[n + c];
+        length += read * read;
+      }
+      worstNormal = Math.max(worstNormal, Math.toDegrees(Math.acos(Math.min(1.0, dot / Math.sqrt(length)))));
+      final int t = v * floats + vertices.getOffset(2);
+      for (int c = 0; c < 2; c++) {
+        final float read = VertexLayout.get(packed, at + SCENE.getOffset(2) + c * 2, VertexLayout.TYPE_UNSIGNED_SHORT, true);
+        worstTexCoord = Math.max(worstTexCoord, Math.abs(read - data[t + c]));
+      }
+    }
+    check(worstNormal <= MAX_NORMAL_DEGREES, name + " normals off by " + worstNormal + " degrees");
+    check(worstTexCoord <= 0.5 / 65535 + 1e-7, name + " texture coordinates off by " + worstTexCoord);
+    // the layout before: position, RGBA color, normal and texture coordinate, all floats
+    final int before = vertices.getVertexCount() * (3 + 4 + 3 + 2) * InterleavedMesh.BYTES_PER_FLOAT;
+    System.out.println(String.format("%-8s %5d vertices: %6d bytes against %6d, normal %.2f deg, texcoord %.2e",
+        name, vertices.getVertexCount(), packed.capacity(), before, worstNormal, worstTexCoord));
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
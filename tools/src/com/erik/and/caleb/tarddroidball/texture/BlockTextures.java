@@ -0,0 +1,117 @@
+package com.erik.and.caleb.tarddroidball.texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Draws the block textures the terrain needs past grass, in the grass
+ * drawables' style: 16 x 16 texels blown up to 128 x 128 without filtering.
+ * Dirt is cut from grass_side's dirt, below its grass, so the two match;
+ * stone and sand are speckled from small palettes with a fixed seed, so
+ * running it again draws the same files.
+ * <p/>
+ * Compile as for {@link com.erik.and.caleb.tarddroidball.bench.BenchmarkRunner}, then, from the project:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.texture.BlockTextures [res/drawable]
+ * </pre>
+ */
+public final class BlockTextures {
+
+  private static final int TEXELS = 16;
+  private static final int SCALE = 8;
+  private static final int[] STONE = {0x5e5e5e, 0x6b6b6b, 0x787878, 0x838583, 0x919191};
+  private static final int[] SAND = {0xc4b47a, 0xcdbf86, 0xdbcf9a, 0xe3d8a6, 0xede3b7};
+
+  private BlockTextures() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    final File directory = new File(args.length > 0 ? args[0] : "res/drawable");
+    final int[] side = texels(TextureImages.read(new File(directory, "grass_side.png")));
+    write(dirt(side), new File(directory, "dirt.png"));
+    write(speckle(STONE, new Random(3), 0.55), new File(directory, "stone.png"));
+    write(speckle(SAND, new Random(4), 0.3), new File(directory, "sand.png"));
+  }
+
+  /**
+   * grass_side's rows below the last with any green, repeated down the
+   * texture, each repeat shifted sideways so it does not read as stripes.
+   */
+  private static int[] dirt(int[] side) {
+    int first = 0;
+    for (int y = 0; y < TEXELS; y++) {
+      for (int x = 0; x < TEXELS; x++) {
+        if (green(side[y * TEXELS + x]))
+          first = y + 1;
+      }
+    }
+    if (first >= TEXELS)
+      throw new IllegalArgumentException("grass_side has no rows of dirt");
+    final int rows = TEXELS - first;
+    final int[] out = new int[TEXELS * TEXELS];
+    for (int y = 0; y < TEXELS; y++) {
+      final int row = first + y % rows;
+      final int shift = y / rows * 5;
+      for (int x = 0; x < TEXELS; x++)
+        out[y * TEXELS + x] = side[row * TEXELS + (x + shift) % TEXELS];
+    }
+    return out;
+  }
+
+  /**
+   * Mostly the palette's middle, then lighter and darker specks, clumped by
+   * taking some texels from a neighbour.
+   *
+   * @param clumping the share of texels copied from the one to their left or above
+   */
+  private static int[] speckle(int[] palette, Random random, double clumping) {
+    final int[] out = new int[TEXELS * TEXELS];
+    for (int y = 0; y < TEXELS; y++) {
+      for (int x = 0; x < TEXELS; x++) {
+        final int i = y * TEXELS + x;
+        if (random.nextDouble() < clumping && (x > 0 || y > 0)) {
+          out[i] = x > 0 && (y == 0 || random.nextBoolean()) ? out[i - 1] : out[i - TEXELS];
+          continue;
+        }
+        // a triangular spread around the middle colour
+        final int shade = (random.nextInt(palette.length) + random.nextInt(palette.length) + 1) / 2;
+        out[i] = palette[Math.min(palette.length - 1, shade)];
+      }
+    }
+    return out;
+  }
+
+  private static boolean green(int rgb) {
+    final int r = rgb >> 16 & 0xff, g = rgb >> 8 & 0xff, b = rgb & 0xff;
+    return g > r + 16 && g > b;
+  }
+
+  /**
+   * Samples a texture drawn in cells of {@link #TEXELS} x {@link #TEXELS} at each cell's middle.
+   */
+  private static int[] texels(BufferedImage image) {
+    final int[] out = new int[TEXELS * TEXELS];
+    final int cell = image.getWidth() / TEXELS;
+    for (int y = 0; y < TEXELS; y++) {
+      for (int x = 0; x < TEXELS; x++)
+        out[y * TEXELS + x] = image.getRGB(x * cell + cell / 2, y * cell + cell / 2) & 0xffffff;
+    }
+    return out;
+  }
+
+  private static void write(int[] texels, File file) throws IOException {
+    final int size = TEXELS * SCALE;
+    final BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++)
+        image.setRGB(x, y, texels[y / SCALE * TEXELS + x / SCALE]);
+    }
+    if (!ImageIO.write(image, "png", file))
+      throw new IOException("Cannot write " + file);
+    System.out.println("wrote " + file);
+  }
+}
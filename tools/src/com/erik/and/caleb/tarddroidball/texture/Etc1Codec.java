@@ -0,0 +1,297 @@
+package com.erik.and.caleb.tarddroidball.texture;
+
+/**
+ * ETC1 (OES_compressed_ETC1_RGB8_texture) encoding and decoding in plain Java.
+ * <p/>
+ * Each 4x4 block is split into two 2x4 or 4x2 halves, each with a base color
+ * and one of eight intensity tables, and each texel picks one of four
+ * offsets from its half's table. The encoder tries both splits, both base
+ * color encodings and every table for each half, taking the base color from
+ * the half's mean and then nudging its brightness. That is far from an
+ * exhaustive search, but fast enough to run on every build.
+ * <p/>
+ * Pixels are packed 0xAARRGGBB ints, row by row; alpha is dropped.
+ */
+public final class Etc1Codec {
+
+  public static final int BLOCK_BYTES = 8;
+
+  private static final int[][] MODIFIERS = {
+      {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}};
+
+  private Etc1Codec() {
+  }
+
+  public static int encodedSize(int width, int height) {
+    return (width + 3) / 4 * ((height + 3) / 4) * BLOCK_BYTES;
+  }
+
+  /**
+   * Encodes an image block by block, in rows of blocks. Blocks past the right
+   * or bottom edge repeat the edge texels.
+   */
+  public static byte[] encode(int[] pixels, int width, int height) {
+    final byte[] out = new byte[encodedSize(width, height)];
+    final int[] block = new int[16];
+    final Encoder encoder = new Encoder();
+    int offset = 0;
+    for (int by = 0; by < height; by += 4) {
+      for (int bx = 0; bx < width; bx += 4) {
+        for (int y = 0; y < 4; y++) {
+          final int row = Math.min(by + y, height - 1) * width;
+          for (int x = 0; x < 4; x++)
+            block[y * 4 + x] = pixels[row + Math.min(bx + x, width - 1)];
+        }
+        final long bits = encoder.encodeBlock(block);
+        for (int i = 0; i < 8; i++)
+          out[offset + i] = (byte) (bits >>> (56 - 8 * i));
+        offset += BLOCK_BYTES;
+      }
+    }
+    return out;
+  }
+
+  public static int[] decode(byte[] data, int offset, int width, int height) {
+    final int[] pixels = new int[width * height];
+    final int[] block = new int[16];
+    for (int by = 0; by < height; by += 4) {
+      for (int bx = 0; bx < width; bx += 4) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++)
+          bits = bits << 8 | (data[offset + i] & 0xff);
+        offset += BLOCK_BYTES;
+        decodeBlock(bits, block);
+        for (int y = 0; y < 4 && by + y < height; y++) {
+          for (int x = 0; x < 4 && bx + x < width; x++)
+            pixels[(by + y) * width + bx + x] = block[y * 4 + x];
+        }
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Decodes one block into 16 opaque pixels, row by row.
+   */
+  public static void decodeBlock(long bits, int[] pixels) {
+    final boolean differential = (bits >>> 33 & 1) != 0;
+    final boolean flip = (bits >>> 32 & 1) != 0;
+    final int[] base = new int[6];
+    for (int c = 0; c < 3; c++) {
+      final int shift = 59 - 8 * c;
+      if (differential) {
+        final int first = (int) (bits >>> shift) & 0x1f;
+        final int delta = ((int) (bits >>> (shift - 3)) & 7) << 29 >> 29;
+        base[c] = expand5(first);
+        base[3 + c] = expand5(first + delta);
+      } else {
+        base[c] = expand4((int) (bits >>> (shift + 1)) & 0xf);
+        base[3 + c] = expand4((int) (bits >>> (shift - 3)) & 0xf);
+      }
+    }
+    final int[] tables = {(int) (bits >>> 37) & 7, (int) (bits >>> 34) & 7};
+    for (int y = 0; y < 4; y++) {
+      for (int x = 0; x < 4; x++) {
+        final int half = flip ? y >> 1 : x >> 1;
+        final int index = x * 4 + y;
+        final int selector = ((int) (bits >>> (16 + index)) & 1) << 1 | ((int) (bits >>> index) & 1);
+        final int modifier = modifier(tables[half], selector);
+        pixels[y * 4 + x] = 0xff000000 | clamp(base[half * 3] + modifier) << 16
+            | clamp(base[half * 3 + 1] + modifier) << 8 | clamp(base[half * 3 + 2] + modifier);
+      }
+    }
+  }
+
+  private static int modifier(int table, int selector) {
+    final int magnitude = MODIFIERS[table][selector & 1];
+    return (selector & 2) == 0 ? magnitude : -magnitude;
+  }
+
+  private static int expand4(int value) {
+    return value << 4 | value;
+  }
+
+  private static int expand5(int value) {
+    return value << 3 | value >> 2;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : value > 255 ? 255 : value;
+  }
+
+  /**
+   * Scratch for encoding one block at a time.
+   */
+  private static class Encoder {
+    // texel indices (y * 4 + x) of each half, for the side-by-side and the stacked split
+    private static final int[][][] HALVES = new int[2][2][8];
+
+    static {
+      final int[] counts = new int[4];
+      for (int y = 0; y < 4; y++) {
+        for (int x = 0; x < 4; x++) {
+          HALVES[0][x >> 1][counts[x >> 1]++] = y * 4 + x;
+          HALVES[1][y >> 1][counts[2 + (y >> 1)]++] = y * 4 + x;
+        }
+      }
+    }
+
+    private final int[] mRed = new int[16];
+    private final int[] mGreen = new int[16];
+    private final int[] mBlue = new int[16];
+    // per half: error, table, then the 8 selectors
+    private final int[][] mBest = new int[2][10];
+    private final int[] mTrial = new int[10];
+
+    long encodeBlock(int[] pixels) {
+      for (int i = 0; i < 16; i++) {
+        mRed[i] = pixels[i] >> 16 & 0xff;
+        mGreen[i] = pixels[i] >> 8 & 0xff;
+        mBlue[i] = pixels[i] & 0xff;
+      }
+      long best = 0;
+      long bestError = Long.MAX_VALUE;
+      for (int flip = 0; flip < 2; flip++) {
+        final int[] first = HALVES[flip][0];
+        final int[] second = HALVES[flip][1];
+        final float[] mean0 = mean(first);
+        final float[] mean1 = mean(second);
+
+        // differential: 5 bit first color, second within -4..3 of it
+        final int[] q0 = quantize(mean0, 31);
+        final int[] q1 = quantize(mean1, 31);
+        if (fitsDifference(q0, q1)) {
+          final int[] shifted0 = q0.clone();
+          final int[] shifted1 = q1.clone();
+          long error = fitHalf(first, shifted0, 31, 0, true) + fitHalf(second, shifted1, 31, 1, true);
+          if (fitsDifference(shifted0, shifted1)) {
+            System.arraycopy(shifted0, 0, q0, 0, 3);
+            System.arraycopy(shifted1, 0, q1, 0, 3);
+          } else {
+            // brightening the halves separately pulled them too far apart
+            error = fitHalf(first, q0, 31, 0, false) + fitHalf(second, q1, 31, 1, false);
+          }
+          if (error < bestError) {
+            bestError = error;
+            best = pack(true, flip, q0, q1, first, second);
+          }
+        }
+
+        // individual: two independent 4 bit colors
+        final int[] i0 = quantize(mean0, 15);
+        final int[] i1 = quantize(mean1, 15);
+        final long error = fitHalf(first, i0, 15, 0, true) + fitHalf(second, i1, 15, 1, true);
+        if (error < bestError) {
+          bestError = error;
+          best = pack(false, flip, i0, i1, first, second);
+        }
+      }
+      return best;
+    }
+
+    private static boolean fitsDifference(int[] first, int[] second) {
+      for (int c = 0; c < 3; c++) {
+        if (second[c] - first[c] < -4 || second[c] - first[c] > 3)
+          return false;
+      }
+      return true;
+    }
+
+    private float[] mean(int[] half) {
+      float r = 0, g = 0, b = 0;
+      for (int i : half) {
+        r += mRed[i];
+        g += mGreen[i];
+        b += mBlue[i];
+      }
+      return new float[]{r / half.length, g / half.length, b / half.length};
+    }
+
+    private static int[] quantize(float[] color, int max) {
+      final int[] q = new int[3];
+      for (int c = 0; c < 3; c++)
+        q[c] = Math.min(max, Math.max(0, Math.round(color[c] * max / 255.0f)));
+      return q;
+    }
+
+    /**
+     * Picks the best table and selectors for a half around the quantized base
+     * color into mBest[slot]. With shift, also tries the base one step darker
+     * and lighter in every channel, and updates it in place.
+     *
+     * @return the summed squared error
+     */
+    private long fitHalf(int[] half, int[] base, int max, int slot, boolean shift) {
+      final int[] best = mBest[slot];
+      best[0] = Integer.MAX_VALUE;
+      int bestShift = 0;
+      for (int step = shift ? -1 : 0; step <= (shift ? 1 : 0); step++) {
+        final int r = base[0] + step, g = base[1] + step, b = base[2] + step;
+        if (r < 0 || g < 0 || b < 0 || r > max || g > max || b > max)
+          continue;
+        final int er = max == 31 ? expand5(r) : expand4(r);
+        final int eg = max == 31 ? expand5(g) : expand4(g);
+        final int eb = max == 31 ? expand5(b) : expand4(b);
+        for (int table = 0; table < 8; table++) {
+          mTrial[0] = 0;
+          mTrial[1] = table;
+          for (int t = 0; t < half.length && mTrial[0] < best[0]; t++) {
+            final int i = half[t];
+            int texelError = Integer.MAX_VALUE;
+            for (int selector = 0; selector < 4; selector++) {
+              final int m = modifier(table, selector);
+              final int dr = clamp(er + m) - mRed[i];
+              final int dg = clamp(eg + m) - mGreen[i];
+              final int db = clamp(eb + m) - mBlue[i];
+              final int e = dr * dr + dg * dg + db * db;
+              if (e < texelError) {
+                texelError = e;
+                mTrial[2 + t] = selector;
+              }
+            }
+            mTrial[0] += texelError;
+          }
+          if (mTrial[0] < best[0]) {
+            System.arraycopy(mTrial, 0, best, 0, best.length);
+            bestShift = step;
+          }
+        }
+      }
+      base[0] += bestShift;
+      base[1] += bestShift;
+      base[2] += bestShift;
+      return best[0];
+    }
+
+    private long pack(boolean differential, int flip, int[] c0, int[] c1, int[] first, int[] second) {
+      long bits = 0;
+      for (int c = 0; c < 3; c++) {
+        final int shift = 59 - 8 * c;
+        if (differential) {
+          bits |= (long) c0[c] << shift;
+          bits |= (long) ((c1[c] - c0[c]) & 7) << (shift - 3);
+        } else {
+          bits |= (long) c0[c] << (shift + 1);
+          bits |= (long) c1[c] << (shift - 3);
+        }
+      }
+      bits |= (long) mBest[0][1] << 37;
+      bits |= (long) mBest[1][1] << 34;
+      if (differential)
+        bits |= 1L << 33;
+      bits |= (long) flip << 32;
+      return bits | selectorBits(first, mBest[0]) | selectorBits(second, mBest[1]);
+    }
+
+    // the high bits of all 16 selectors, then the low bits, each in column order
+    private static long selectorBits(int[] half, int[] fit) {
+      long bits = 0;
+      for (int t = 0; t < half.length; t++) {
+        final int index = (half[t] & 3) * 4 + (half[t] >> 2);
+        final int selector = fit[2 + t];
+        bits |= (long) (selector >> 1) << (16 + index) | (long) (selector & 1) << index;
+      }
+      return bits;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package com.erik.and.caleb.tarddroidball.texture;
+
+import com.erik.and.caleb.tarddroidball.AtlasPacker;
+import com.erik.and.caleb.tarddroidball.TextureContainer;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles PNGs into one {@link TextureContainer}: packs them into a power of
+ * two atlas, builds the full mip chain and encodes it as ETC1, plus RGB565 for
+ * devices without ETC1.
+ * <p/>
+ * Images are packed on an {@link #ALIGNMENT} grid with {@link #PADDING}
+ * texels around each, so for the first levels every image is downsampled on
+ * its own and gets its own gutter, and nothing bleeds between images; only
+ * the last few levels, a handful of texels per image, are filtered across the
+ * whole atlas. Images marked :repeat get gutters that wrap around.
+ * <p/>
+ * Compile as for the benchmarks, then, from the project root:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.texture.TextureCompiler --out res/raw/texture_atlas.bin \
+ *     res/drawable/grass_side.png:repeat res/drawable/grass_top.png:repeat res/drawable/tard_tex.png
+ * </pre>
+ * Images keep the order given, which is the index the app uses for each.
+ */
+public class TextureCompiler {
+
+  public static final int PADDING = 8;
+  public static final int ALIGNMENT = 8;
+  private static final int MAX_SIZE = 2048;
+
+  public static void main(String[] args) throws IOException {
+    File out = null;
+    boolean rgb565 = true;
+    final List<String> inputs = new ArrayList<String>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--out"))
+        out = new File(args[++i]);
+      else if (args[i].equals("--no-rgb565"))
+        rgb565 = false;
+      else
+        inputs.add(args[i]);
+    }
+    if (out == null || inputs.isEmpty()) {
+      System.err.println("usage: TextureCompiler --out file [--no-rgb565] image.png[:repeat] ...");
+      System.exit(2);
+    }
+
+    final long start = System.nanoTime();
+    final Atlas atlas = build(inputs);
+    final byte[][] etc1 = new byte[atlas.getLevelCount()][];
+    final byte[][] rgb = rgb565 ? new byte[atlas.getLevelCount()][] : null;
+    for (int level = 0; level < atlas.getLevelCount(); level++) {
+      etc1[level] = Etc1Codec.encode(atlas.getLevel(level), atlas.getLevelWidth(level), atlas.getLevelHeight(level));
+      if (rgb != null)
+        rgb[level] = TextureImages.encodeRgb565(atlas.getLevel(level), atlas.getLevelWidth(level), atlas.getLevelHeight(level));
+    }
+    final OutputStream stream = new BufferedOutputStream(new FileOutputStream(out));
+    try {
+      write(stream, atlas, rgb == null ? new int[]{TextureContainer.FORMAT_ETC1}
+          : new int[]{TextureContainer.FORMAT_ETC1, TextureContainer.FORMAT_RGB565},
+          rgb == null ? new byte[][][]{etc1} : new byte[][][]{etc1, rgb});
+    } finally {
+      stream.close();
+    }
+    System.out.println(String.format("%s: %d images in %dx%d, %d levels, %d bytes, %.0f ms", out, inputs.size(),
+        atlas.getLevelWidth(0), atlas.getLevelHeight(0), atlas.getLevelCount(), out.length(), (System.nanoTime() - start) / 1e6));
+  }
+
+  /**
+   * Reads and packs the images and builds every mip level of the atlas.
+   *
+   * @param inputs file names, each optionally followed by :repeat
+   */
+  public static Atlas build(List<String> inputs) throws IOException {
+    final AtlasPacker packer = new AtlasPacker(PADDING, ALIGNMENT, MAX_SIZE, true);
+    final int[][] images = new int[inputs.size()][];
+    final boolean[] repeats = new boolean[inputs.size()];
+    for (int i = 0; i < inputs.size(); i++) {
+      String name = inputs.get(i);
+      if (name.endsWith(":repeat")) {
+        repeats[i] = true;
+        name = name.substring(0, name.length() - ":repeat".length());
+      }
+      final BufferedImage image = TextureImages.read(new File(name));
+      images[i] = TextureImages.pixels(image);
+      for (int p : images[i]) {
+        if (p >>> 24 != 0xff) {
+          System.err.println("warning: " + name + " is not opaque, ETC1 and RGB565 drop its alpha");
+          break;
+        }
+      }
+      packer.add(image.getWidth(), image.getHeight());
+    }
+    packer.pack();
+
+    final List<int[]> levels = new ArrayList<int[]>();
+    int width = packer.getAtlasWidth();
+    int height = packer.getAtlasHeight();
+    int[] level = new int[width * height];
+    for (int shift = 0; ; shift++) {
+      if (shift > 0) {
+        level = TextureImages.downsample(level, width, height);
+        width = Math.max(1, width / 2);
+        height = Math.max(1, height / 2);
+      }
+      final int padding = PADDING >> shift;
+      for (int i = 0; i < images.length; i++) {
+        final int w = packer.getWidth(i) >> shift;
+        final int h = packer.getHeight(i) >> shift;
+        // once the alignment or the image's size no longer halves evenly, the atlas-wide filter takes over
+        if ((ALIGNMENT >> shift) == 0 || w << shift != packer.getWidth(i) || h << shift != packer.getHeight(i))
+          continue;
+        if (shift > 0)
+          images[i] = TextureImages.downsample(images[i], w * 2, h * 2);
+        AtlasPacker.blit(level, width, height, images[i], w, h, packer.getX(i) >> shift, packer.getY(i) >> shift, padding, repeats[i]);
+      }
+      levels.add(level);
+      if (width == 1 && height == 1)
+        break;
+    }
+    return new Atlas(packer, levels);
+  }
+
+  static void write(OutputStream out, Atlas atlas, int[] formats, byte[][][] chains) throws IOException {
+    final AtlasPacker packer = atlas.getPacker();
+    writeInt(out, TextureContainer.MAGIC);
+    writeInt(out, TextureContainer.VERSION);
+    writeInt(out, packer.getAtlasWidth());
+    writeInt(out, packer.getAtlasHeight());
+    writeInt(out, packer.getCount());
+    for (int i = 0; i < packer.getCount(); i++) {
+      writeInt(out, packer.getX(i));
+      writeInt(out, packer.getY(i));
+      writeInt(out, packer.getWidth(i));
+      writeInt(out, packer.getHeight(i));
+    }
+    writeInt(out, formats.length);
+    int offset = 4 * (6 + packer.getCount() * 4);
+    for (byte[][] chain : chains)
+      offset += 4 * (2 + chain.length * 4);
+    for (int c = 0; c < formats.length; c++) {
+      writeInt(out, formats[c]);
+      writeInt(out, chains[c].length);
+      for (int level = 0; level < chains[c].length; level++) {
+        writeInt(out, atlas.getLevelWidth(level));
+        writeInt(out, atlas.getLevelHeight(level));
+        writeInt(out, offset);
+        writeInt(out, chains[c][level].length);
+        offset += (chains[c][level].length + 3) / 4 * 4;
+      }
+    }
+    for (byte[][] chain : chains) {
+      for (byte[] data : chain) {
+        out.write(data);
+        for (int pad = data.length; pad % 4 != 0; pad++)
+          out.write(0);
+      }
+    }
+  }
+
+  private static void writeInt(OutputStream out, int value) throws IOException {
+    out.write(value);
+    out.write(value >>> 8);
+    out.write(value >>> 16);
+    out.write(value >>> 24);
+  }
+
+  /**
+   * The packed images and every mip level of the atlas, uncompressed.
+   */
+  public static class Atlas {
+    private final AtlasPacker mPacker;
+    private final List<int[]> mLevels;
+
+    Atlas(AtlasPacker packer, List<int[]> levels) {
+      mPacker = packer;
+      mLevels = levels;
+    }
+
+    public AtlasPacker getPacker() {
+      return mPacker;
+    }
+
+    public int getLevelCount() {
+      return mLevels.size();
+    }
+
+    public int getLevelWidth(int level) {
+      return Math.max(1, mPacker.getAtlasWidth() >> level);
+    }
+
+    public int getLevelHeight(int level) {
+      return Math.max(1, mPacker.getAtlasHeight() >> level);
+    }
+
+    public int[] getLevel(int level) {
+      return mLevels.get(level);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.erik.and.caleb.tarddroidball.texture;
+
+import com.erik.and.caleb.tarddroidball.AtlasPacker;
+import com.erik.and.caleb.tarddroidball.TextureContainer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles the app's textures the way {@link TextureCompiler} does and
+ * measures what compression costs: PSNR of every image at level 0 and of
+ * every whole mip level, for ETC1 and RGB565, against the uncompressed atlas.
+ * Also round-trips the container through {@link TextureContainer}. Exits
+ * non-zero when a level 0 image falls under {@link #MIN_ETC1_PSNR} or the
+ * container does not read back.
+ * <p/>
+ * Compile as for the benchmarks, then, from the project root:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.texture.TextureCompressionCheck [image.png[:repeat] ...]
+ * </pre>
+ */
+public class TextureCompressionCheck {
+
+  /** Where ETC1 starts to look blotchy on these textures. */
+  private static final double MIN_ETC1_PSNR = 30.0;
+
+  public static void main(String[] args) throws IOException {
+    final List<String> inputs = Arrays.asList(args.length > 0 ? args : new String[]{
+        "res/drawable/grass_side.png:repeat", "res/drawable/grass_top.png:repeat", "res/drawable/tard_tex.png"});
+    final TextureCompiler.Atlas atlas = TextureCompiler.build(inputs);
+    final AtlasPacker packer = atlas.getPacker();
+
+    final byte[][] etc1 = new byte[atlas.getLevelCount()][];
+    final byte[][] rgb565 = new byte[atlas.getLevelCount()][];
+    for (int level = 0; level < atlas.getLevelCount(); level++) {
+      final int width = atlas.getLevelWidth(level);
+      final int height = atlas.getLevelHeight(level);
+      etc1[level] = Etc1Codec.encode(atlas.getLevel(level), width, height);
+      rgb565[level] = TextureImages.encodeRgb565(atlas.getLevel(level), width, height);
+    }
+
+    boolean failed = false;
+    final int width = atlas.getLevelWidth(0);
+    final int[] source = atlas.getLevel(0);
+    final int[] etc1Decoded = Etc1Codec.decode(etc1[0], 0, width, atlas.getLevelHeight(0));
+    final int[] rgb565Decoded = TextureImages.decodeRgb565(rgb565[0], 0, width, atlas.getLevelHeight(0));
+    System.out.println(String.format("%-40s %10s %10s", "level 0 image", "ETC1 dB", "RGB565 dB"));
+    for (int i = 0; i < packer.getCount(); i++) {
+      final double etc1Psnr = TextureImages.psnr(source, etc1Decoded, width, packer.getX(i), packer.getY(i), packer.getWidth(i), packer.getHeight(i));
+      final double rgb565Psnr = TextureImages.psnr(source, rgb565Decoded, width, packer.getX(i), packer.getY(i), packer.getWidth(i), packer.getHeight(i));
+      System.out.println(String.format("%-40s %10.2f %10.2f", inputs.get(i), etc1Psnr, rgb565Psnr));
+      if (etc1Psnr < MIN_ETC1_PSNR) {
+        System.err.println(inputs.get(i) + ": ETC1 PSNR " + etc1Psnr + " dB is under " + MIN_ETC1_PSNR);
+        failed = true;
+      }
+    }
+
+    System.out.println(String.format("%-40s %10s %10s %10s", "whole level", "ETC1 dB", "RGB565 dB", "ETC1 B"));
+    for (int level = 0; level < atlas.getLevelCount(); level++) {
+      final int w = atlas.getLevelWidth(level);
+      final int h = atlas.getLevelHeight(level);
+      System.out.println(String.format("%-40s %10.2f %10.2f %10d", level + ": " + w + "x" + h,
+          TextureImages.psnr(atlas.getLevel(level), Etc1Codec.decode(etc1[level], 0, w, h), w, 0, 0, w, h),
+          TextureImages.psnr(atlas.getLevel(level), TextureImages.decodeRgb565(rgb565[level], 0, w, h), w, 0, 0, w, h),
+          etc1[level].length));
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TextureCompiler.write(bytes, atlas, new int[]{TextureContainer.FORMAT_ETC1, TextureContainer.FORMAT_RGB565},
+        new byte[][][]{etc1, rgb565});
+    final TextureContainer container = new TextureContainer(ByteBuffer.wrap(bytes.toByteArray()));
+    failed |= !readsBack(container, packer, TextureContainer.FORMAT_ETC1, etc1)
+        || !readsBack(container, packer, TextureContainer.FORMAT_RGB565, rgb565);
+    if (failed)
+      System.exit(1);
+    System.out.println("container reads back, " + bytes.size() + " bytes");
+  }
+
+  private static boolean readsBack(TextureContainer container, AtlasPacker packer, int format, byte[][] levels) {
+    if (container.getWidth() != packer.getAtlasWidth() || container.getHeight() != packer.getAtlasHeight()
+        || container.getImageCount() != packer.getCount() || container.getLevelCount(format) != levels.length) {
+      System.err.println("Container header does not match what was written");
+      return false;
+    }
+    for (int i = 0; i < packer.getCount(); i++) {
+      if (container.getImageX(i) != packer.getX(i) || container.getImageY(i) != packer.getY(i)
+          || container.getImageWidth(i) != packer.getWidth(i) || container.getImageHeight(i) != packer.getHeight(i)) {
+        System.err.println("Image " + i + " moved in the container");
+        return false;
+      }
+    }
+    for (int level = 0; level < levels.length; level++) {
+      final ByteBuffer data = container.getLevelData(format, level);
+      final byte[] read = new byte[data.remaining()];
+      data.get(read);
+      if (!Arrays.equals(read, levels[level])) {
+        System.err.println("Format " + format + " level " + level + " does not read back");
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,115 @@
+package com.erik.and.caleb.tarddroidball.texture;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Pixel helpers for the texture tools. Images are packed 0xAARRGGBB ints, row by row.
+ */
+final class TextureImages {
+
+  private TextureImages() {
+  }
+
+  static BufferedImage read(File file) throws IOException {
+    final BufferedImage image = ImageIO.read(file);
+    if (image == null)
+      throw new IOException("Cannot read " + file);
+    return image;
+  }
+
+  static int[] pixels(BufferedImage image) {
+    return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+  }
+
+  /**
+   * Halves each side that is bigger than 1 with a box filter.
+   */
+  static int[] downsample(int[] pixels, int width, int height) {
+    final int halfWidth = Math.max(1, width / 2);
+    final int halfHeight = Math.max(1, height / 2);
+    final int[] out = new int[halfWidth * halfHeight];
+    for (int y = 0; y < halfHeight; y++) {
+      final int row0 = 2 * y * width;
+      final int row1 = Math.min(2 * y + 1, height - 1) * width;
+      for (int x = 0; x < halfWidth; x++) {
+        final int x0 = 2 * x;
+        final int x1 = Math.min(2 * x + 1, width - 1);
+        out[y * halfWidth + x] = average(pixels[row0 + x0], pixels[row0 + x1], pixels[row1 + x0], pixels[row1 + x1]);
+      }
+    }
+    return out;
+  }
+
+  private static int average(int a, int b, int c, int d) {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 8) {
+      final int sum = (a >>> shift & 0xff) + (b >>> shift & 0xff) + (c >>> shift & 0xff) + (d >>> shift & 0xff);
+      result |= (sum + 2) / 4 << shift;
+    }
+    return result;
+  }
+
+  static int rgb565RowBytes(int width) {
+    return (width * 2 + 3) / 4 * 4;
+  }
+
+  /**
+   * Encodes to little-endian GL_UNSIGNED_SHORT_5_6_5 texels, rows padded to 4 bytes.
+   */
+  static byte[] encodeRgb565(int[] pixels, int width, int height) {
+    final int rowBytes = rgb565RowBytes(width);
+    final byte[] out = new byte[rowBytes * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        final int p = pixels[y * width + x];
+        final int r = ((p >> 16 & 0xff) * 31 + 127) / 255;
+        final int g = ((p >> 8 & 0xff) * 63 + 127) / 255;
+        final int b = ((p & 0xff) * 31 + 127) / 255;
+        final int texel = r << 11 | g << 5 | b;
+        out[y * rowBytes + x * 2] = (byte) texel;
+        out[y * rowBytes + x * 2 + 1] = (byte) (texel >> 8);
+      }
+    }
+    return out;
+  }
+
+  static int[] decodeRgb565(byte[] data, int offset, int width, int height) {
+    final int rowBytes = rgb565RowBytes(width);
+    final int[] pixels = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        final int i = offset + y * rowBytes + x * 2;
+        final int texel = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8;
+        final int r = texel >> 11 & 0x1f, g = texel >> 5 & 0x3f, b = texel & 0x1f;
+        pixels[y * width + x] = 0xff000000 | (r << 3 | r >> 2) << 16 | (g << 2 | g >> 4) << 8 | (b << 3 | b >> 2);
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Peak signal to noise ratio over the RGB channels of a region of two
+   * images of the same width, in dB; infinite when they are identical.
+   */
+  static double psnr(int[] expected, int[] actual, int width, int x, int y, int regionWidth, int regionHeight) {
+    long squared = 0;
+    for (int row = y; row < y + regionHeight; row++) {
+      for (int column = x; column < x + regionWidth; column++) {
+        final int e = expected[row * width + column];
+        final int a = actual[row * width + column];
+        for (int shift = 0; shift < 24; shift += 8) {
+          final int d = (e >> shift & 0xff) - (a >> shift & 0xff);
+          squared += d * d;
+        }
+      }
+    }
+    if (squared == 0)
+      return Double.POSITIVE_INFINITY;
+    final double mse = (double) squared / (regionWidth * regionHeight * 3);
+    return 10 * Math.log10(255.0 * 255.0 / mse);
+  }
+}
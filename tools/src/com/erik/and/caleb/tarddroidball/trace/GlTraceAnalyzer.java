@@ -0,0 +1,410 @@
+package com.erik.and.caleb.tarddroidball.trace;
+
+import com.erik.and.caleb.tarddroidball.gl.GlTrace;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Replays a GL trace recorded on a device (the record_gl_trace extra of
+ * GraphicsActivity) against a model of the GL state, and reports per frame how
+ * many calls were made, how many of them changed nothing, how much was drawn
+ * and how many bytes were uploaded. Needs nothing but a JVM:
+ * <pre>
+ * adb shell run-as com.erik.and.caleb.tarddroidball cat files/gl_trace.bin > gl_trace.bin
+ * javac -d /tmp/trace src/com/erik/and/caleb/tarddroidball/gl/GlTrace.java \
+ *     tools/src/com/erik/and/caleb/tarddroidball/trace/*.java
+ * java -cp /tmp/trace com.erik.and.caleb.tarddroidball.trace.GlTraceAnalyzer [--frames] \
+ *     [--baseline old.bin [--tolerance percent]] gl_trace.bin
+ * </pre>
+ * With a baseline, the per-frame means of both traces are compared and the
+ * exit status is 1 if any of them grew by more than the tolerance (default 5%),
+ * so a CI job can hold a change against a trace recorded before it.
+ */
+public class GlTraceAnalyzer {
+
+  private static final String[] METRICS = {"calls", "draw calls", "vertices", "redundant calls", "bytes uploaded"};
+  private static final int CALLS = 0;
+  private static final int DRAW_CALLS = 1;
+  private static final int VERTICES = 2;
+  private static final int REDUNDANT_CALLS = 3;
+  private static final int BYTES_UPLOADED = 4;
+
+  public static void main(String[] args) throws IOException {
+    boolean printFrames = false;
+    String baselineFile = null;
+    double tolerance = 5;
+    String traceFile = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--frames"))
+        printFrames = true;
+      else if (args[i].equals("--baseline"))
+        baselineFile = args[++i];
+      else if (args[i].equals("--tolerance"))
+        tolerance = Double.parseDouble(args[++i]);
+      else
+        traceFile = args[i];
+    }
+    if (traceFile == null) {
+      System.err.println("usage: GlTraceAnalyzer [--frames] [--baseline trace [--tolerance percent]] trace");
+      System.exit(2);
+    }
+
+    final Analysis analysis = analyze(new File(traceFile));
+    analysis.print(printFrames);
+    if (baselineFile != null) {
+      final Analysis baseline = analyze(new File(baselineFile));
+      System.out.println();
+      if (!analysis.compareWith(baseline, tolerance))
+        System.exit(1);
+    }
+  }
+
+  static Analysis analyze(File file) throws IOException {
+    final InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+    try {
+      final GlTraceReader reader = new GlTraceReader(in);
+      final Analysis analysis = new Analysis(file);
+      final StateModel state = new StateModel();
+      Segment segment = analysis.mSetup;
+      int opcode;
+      while ((opcode = reader.next()) >= 0) {
+        if (opcode == GlTrace.FRAME) {
+          segment = new Segment();
+          analysis.mFrames.add(segment);
+          continue;
+        }
+        segment.count(opcode, state.apply(reader, opcode), bytesUploaded(reader, opcode));
+        if (opcode == GlTrace.DRAW_ARRAYS)
+          segment.mMetrics[VERTICES] += reader.getInt(2);
+        else if (opcode == GlTrace.DRAW_ELEMENTS)
+          segment.mMetrics[VERTICES] += reader.getInt(1);
+      }
+      analysis.mDistinctBlobBytes = reader.getBlobBytes();
+      return analysis;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static long bytesUploaded(GlTraceReader reader, int opcode) {
+    switch (opcode) {
+      case GlTrace.BUFFER_DATA:
+        // with no data the call only allocates (or orphans) storage
+        return reader.getBlob(2) == null ? 0 : reader.getInt(1);
+      case GlTrace.BUFFER_SUB_DATA:
+        return reader.getInt(2);
+      case GlTrace.TEX_IMAGE_2D:
+        return reader.getBlob(4).length;
+      case GlTrace.COMPRESSED_TEX_IMAGE_2D:
+        return reader.getBlob(6).length;
+      case GlTrace.TEX_IMAGE_2D_BUFFER:
+        // with no pixels the call only allocates storage
+        return reader.getBlob(8) == null ? 0 : reader.getBlob(8).length;
+      case GlTrace.UNIFORM1F:
+      case GlTrace.UNIFORM1I:
+        return 4;
+      case GlTrace.UNIFORM2F:
+        return 8;
+      case GlTrace.UNIFORM3F:
+      case GlTrace.VERTEX_ATTRIB3F:
+        return 12;
+      case GlTrace.UNIFORM4F:
+      case GlTrace.VERTEX_ATTRIB4F:
+        return 16;
+      case GlTrace.UNIFORM_MATRIX4FV:
+        return reader.getInt(1) * 64;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * What one stretch of the trace did: the setup before the first frame, or one frame.
+   */
+  static class Segment {
+    final long[] mMetrics = new long[METRICS.length];
+    final int[] mCalls = new int[GlTrace.OPCODE_COUNT];
+    final int[] mRedundant = new int[GlTrace.OPCODE_COUNT];
+    final long[] mBytes = new long[GlTrace.OPCODE_COUNT];
+
+    void count(int opcode, boolean redundant, long bytes) {
+      mMetrics[CALLS]++;
+      mCalls[opcode]++;
+      if (redundant) {
+        mMetrics[REDUNDANT_CALLS]++;
+        mRedundant[opcode]++;
+      }
+      mMetrics[BYTES_UPLOADED] += bytes;
+      mBytes[opcode] += bytes;
+      if (opcode == GlTrace.DRAW_ARRAYS || opcode == GlTrace.DRAW_ELEMENTS)
+        mMetrics[DRAW_CALLS]++;
+    }
+  }
+
+  static class Analysis {
+    private final File mFile;
+    private final Segment mSetup = new Segment();
+    private final List<Segment> mFrames = new ArrayList<Segment>();
+    private long mDistinctBlobBytes;
+
+    Analysis(File file) {
+      mFile = file;
+    }
+
+    double mean(int metric) {
+      if (mFrames.isEmpty())
+        return 0;
+      long sum = 0;
+      for (Segment frame : mFrames)
+        sum += frame.mMetrics[metric];
+      return (double) sum / mFrames.size();
+    }
+
+    void print(boolean printFrames) {
+      System.out.println(String.format("%s: %d bytes, %d frames, %d bytes of distinct data",
+          mFile, mFile.length(), mFrames.size(), mDistinctBlobBytes));
+      System.out.println(String.format("setup: %d calls, %d redundant, %d bytes uploaded",
+          mSetup.mMetrics[CALLS], mSetup.mMetrics[REDUNDANT_CALLS], mSetup.mMetrics[BYTES_UPLOADED]));
+      if (mFrames.isEmpty())
+        return;
+
+      System.out.println();
+      System.out.println(String.format("%-16s %12s %10s %10s", "per frame", "mean", "min", "max"));
+      for (int m = 0; m < METRICS.length; m++) {
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (Segment frame : mFrames) {
+          min = Math.min(min, frame.mMetrics[m]);
+          max = Math.max(max, frame.mMetrics[m]);
+        }
+        System.out.println(String.format("%-16s %12.1f %10d %10d", METRICS[m], mean(m), min, max));
+      }
+
+      final int[] calls = new int[GlTrace.OPCODE_COUNT];
+      final int[] redundant = new int[GlTrace.OPCODE_COUNT];
+      final long[] bytes = new long[GlTrace.OPCODE_COUNT];
+      final List<Integer> opcodes = new ArrayList<Integer>();
+      for (Segment frame : mFrames) {
+        for (int op = 0; op < GlTrace.OPCODE_COUNT; op++) {
+          calls[op] += frame.mCalls[op];
+          redundant[op] += frame.mRedundant[op];
+          bytes[op] += frame.mBytes[op];
+        }
+      }
+      for (int op = 0; op < GlTrace.OPCODE_COUNT; op++) {
+        if (calls[op] > 0)
+          opcodes.add(op);
+      }
+      Collections.sort(opcodes, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return calls[b] - calls[a];
+        }
+      });
+      final double frames = mFrames.size();
+      System.out.println();
+      System.out.println(String.format("%-28s %10s %10s %12s", "calls per frame", "calls", "redundant", "bytes"));
+      for (int op : opcodes) {
+        System.out.println(String.format("%-28s %10.1f %10.1f %12.1f", GlTrace.getName(op),
+            calls[op] / frames, redundant[op] / frames, bytes[op] / frames));
+      }
+
+      if (printFrames) {
+        System.out.println();
+        System.out.println(String.format("%6s %8s %6s %9s %9s %10s", "frame", "calls", "draws", "vertices", "redundant", "bytes"));
+        for (int f = 0; f < mFrames.size(); f++) {
+          final long[] m = mFrames.get(f).mMetrics;
+          System.out.println(String.format("%6d %8d %6d %9d %9d %10d", f, m[CALLS], m[DRAW_CALLS], m[VERTICES],
+              m[REDUNDANT_CALLS], m[BYTES_UPLOADED]));
+        }
+      }
+    }
+
+    /**
+     * Prints how the per-frame means moved against the baseline.
+     *
+     * @return false if any grew by more than tolerance percent
+     */
+    boolean compareWith(Analysis baseline, double tolerance) {
+      boolean passed = true;
+      System.out.println(String.format("against %s, tolerance %.1f%%", baseline.mFile, tolerance));
+      System.out.println(String.format("%-16s %12s %12s %9s", "per frame", "baseline", "this", "change"));
+      for (int m = 0; m < METRICS.length; m++) {
+        final double before = baseline.mean(m);
+        final double after = mean(m);
+        final boolean regressed = after > before * (1 + tolerance / 100) && after - before > 1e-9;
+        passed &= !regressed;
+        System.out.println(String.format("%-16s %12.1f %12.1f %8s%%%s", METRICS[m], before, after,
+            before == 0 ? (after == 0 ? "0.0" : "inf") : String.format("%+.1f", (after - before) * 100 / before),
+            regressed ? "  REGRESSION" : ""));
+      }
+      return passed;
+    }
+  }
+
+  /**
+   * The slice of GL state the app changes, starting from the defaults of a new
+   * context, so each call can be judged redundant or not.
+   */
+  static class StateModel {
+    private static final int GL_TEXTURE0 = 0x84c0;
+    private static final int GL_DITHER = 0x0bd0;
+    private static final int GL_ARRAY_BUFFER = 0x8892;
+    private static final int GL_ONE = 1;
+    private static final int GL_ZERO = 0;
+
+    private int mProgram;
+    private int mActiveTexture = GL_TEXTURE0;
+    // (texture unit, target) and target to the bound name
+    private final HashMap<Long, Integer> mTextures = new HashMap<Long, Integer>();
+    private final HashMap<Integer, Integer> mBuffers = new HashMap<Integer, Integer>();
+    private final HashMap<Integer, Boolean> mCapabilities = new HashMap<Integer, Boolean>();
+    private final HashMap<Integer, Boolean> mAttribArrays = new HashMap<Integer, Boolean>();
+    private final HashMap<Integer, int[]> mAttribPointers = new HashMap<Integer, int[]>();
+    private final HashMap<Integer, int[]> mAttribValues = new HashMap<Integer, int[]>();
+    // (program, location) to the raw value last uploaded
+    private final HashMap<Long, Object> mUniforms = new HashMap<Long, Object>();
+    // (texture, pname) to the value
+    private final HashMap<Long, Integer> mTexParameters = new HashMap<Long, Integer>();
+    private int mBlendSrc = GL_ONE;
+    private int mBlendDst = GL_ZERO;
+    private int[] mViewport;
+    private int[] mClearColor = new int[4];
+
+    StateModel() {
+      mCapabilities.put(GL_DITHER, true);
+    }
+
+    /**
+     * Applies the call the reader is on.
+     *
+     * @return true if it left the modeled state as it was
+     */
+    boolean apply(GlTraceReader r, int opcode) {
+      switch (opcode) {
+        case GlTrace.USE_PROGRAM: {
+          final boolean same = mProgram == r.getInt(0);
+          mProgram = r.getInt(0);
+          return same;
+        }
+        case GlTrace.ACTIVE_TEXTURE: {
+          final boolean same = mActiveTexture == r.getInt(0);
+          mActiveTexture = r.getInt(0);
+          return same;
+        }
+        case GlTrace.BIND_TEXTURE:
+          return set(mTextures, textureKey(r.getInt(0)), r.getInt(1));
+        case GlTrace.BIND_BUFFER:
+          return set(mBuffers, r.getInt(0), r.getInt(1));
+        case GlTrace.DELETE_BUFFERS:
+          for (int buffer : r.getIntArray(0)) {
+            for (Iterator<Integer> it = mBuffers.values().iterator(); it.hasNext(); ) {
+              if (it.next() == buffer)
+                it.remove();
+            }
+          }
+          return false;
+        case GlTrace.ENABLE:
+        case GlTrace.DISABLE:
+          return set(mCapabilities, r.getInt(0), opcode == GlTrace.ENABLE, false);
+        case GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY:
+        case GlTrace.DISABLE_VERTEX_ATTRIB_ARRAY:
+          return set(mAttribArrays, r.getInt(0), opcode == GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY, false);
+        case GlTrace.VERTEX_ATTRIB_POINTER:
+          return set(mAttribPointers, r.getInt(0), new int[]{bound(mBuffers, GL_ARRAY_BUFFER), r.getInt(1), r.getInt(2),
+              r.getInt(3), r.getInt(4), r.getInt(5)});
+        case GlTrace.VERTEX_ATTRIB3F:
+          return set(mAttribValues, r.getInt(0), new int[]{r.getInt(1), r.getInt(2), r.getInt(3)});
+        case GlTrace.VERTEX_ATTRIB4F:
+          return set(mAttribValues, r.getInt(0), new int[]{r.getInt(1), r.getInt(2), r.getInt(3), r.getInt(4)});
+        case GlTrace.BLEND_FUNC: {
+          final boolean same = mBlendSrc == r.getInt(0) && mBlendDst == r.getInt(1);
+          mBlendSrc = r.getInt(0);
+          mBlendDst = r.getInt(1);
+          return same;
+        }
+        case GlTrace.VIEWPORT: {
+          final int[] viewport = {r.getInt(0), r.getInt(1), r.getInt(2), r.getInt(3)};
+          final boolean same = Arrays.equals(mViewport, viewport);
+          mViewport = viewport;
+          return same;
+        }
+        case GlTrace.CLEAR_COLOR: {
+          final int[] color = {r.getInt(0), r.getInt(1), r.getInt(2), r.getInt(3)};
+          final boolean same = Arrays.equals(mClearColor, color);
+          mClearColor = color;
+          return same;
+        }
+        case GlTrace.TEX_PARAMETERI: {
+          final long key = (long) bound(mTextures, textureKey(r.getInt(0))) << 32 | r.getInt(1);
+          return set(mTexParameters, key, r.getInt(2));
+        }
+        case GlTrace.UNIFORM1I:
+        case GlTrace.UNIFORM1F:
+          return setUniform(r.getInt(0), new int[]{opcode, r.getInt(1)});
+        case GlTrace.UNIFORM2F:
+          return setUniform(r.getInt(0), new int[]{opcode, r.getInt(1), r.getInt(2)});
+        case GlTrace.UNIFORM3F:
+          return setUniform(r.getInt(0), new int[]{opcode, r.getInt(1), r.getInt(2), r.getInt(3)});
+        case GlTrace.UNIFORM4F:
+          return setUniform(r.getInt(0), new int[]{opcode, r.getInt(1), r.getInt(2), r.getInt(3), r.getInt(4)});
+        case GlTrace.UNIFORM_MATRIX4FV:
+          return setUniform(r.getInt(0), r.getBlob(3));
+        case GlTrace.LINK_PROGRAM:
+          // linking resets every uniform of the program
+          final int program = r.getInt(0);
+          for (Iterator<Long> it = mUniforms.keySet().iterator(); it.hasNext(); ) {
+            if ((int) (it.next() >>> 32) == program)
+              it.remove();
+          }
+          return false;
+        default:
+          return false;
+      }
+    }
+
+    private long textureKey(int target) {
+      return (long) mActiveTexture << 32 | target;
+    }
+
+    private boolean setUniform(int location, Object value) {
+      if (location < 0)
+        return true;
+      final Long key = (long) mProgram << 32 | (location & 0xffffffffL);
+      final Object previous = mUniforms.put(key, value);
+      if (previous instanceof int[] && value instanceof int[])
+        return Arrays.equals((int[]) previous, (int[]) value);
+      return previous instanceof byte[] && value instanceof byte[] && Arrays.equals((byte[]) previous, (byte[]) value);
+    }
+
+    private static <K> int bound(HashMap<K, Integer> bindings, K key) {
+      final Integer name = bindings.get(key);
+      return name == null ? 0 : name;
+    }
+
+    private static <K> boolean set(HashMap<K, Integer> map, K key, int value) {
+      final Integer previous = map.put(key, value);
+      return (previous == null ? 0 : previous) == value;
+    }
+
+    private static <K> boolean set(HashMap<K, Boolean> map, K key, boolean value, boolean initial) {
+      final Boolean previous = map.put(key, value);
+      return (previous == null ? initial : previous) == value;
+    }
+
+    private static <K> boolean set(HashMap<K, int[]> map, K key, int[] value) {
+      return Arrays.equals(map.put(key, value), value);
+    }
+  }
+}
@@ -0,0 +1,249 @@
+package com.erik.and.caleb.tarddroidball.trace;
+
+import android.opengl.GLES20;
+import com.erik.and.caleb.tarddroidball.bench.NoOpGl;
+import com.erik.and.caleb.tarddroidball.gl.GlTrace;
+import com.erik.and.caleb.tarddroidball.gl.RecordingGl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records a short, known call sequence through {@link RecordingGl}, reads it
+ * back with {@link GlTraceReader}, and checks every call and every argument:
+ * ints at both ends of the zigzag range, float bits including -0 and NaN,
+ * strings, returned names and locations, and blobs, those uploaded twice
+ * included. Exits non-zero on failure.
+ * <p/>
+ * Compile as for the benchmarks, then:
+ * <pre>
+ * java -cp /tmp/bench com.erik.and.caleb.tarddroidball.trace.GlTraceCheck
+ * </pre>
+ */
+public class GlTraceCheck {
+
+  // opcode, then the arguments as the reader should return them; blobs as their bytes
+  private static final List<Object[]> sExpected = new ArrayList<Object[]>();
+
+  public static void main(String[] args) throws IOException {
+    final ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    // never closed: closing logs through android.util.Log, and everything is written to trace as it is called
+    final RecordingGl gl = new RecordingGl(new NoOpGl(128), trace, 10);
+    record(gl);
+
+    final GlTraceReader reader = new GlTraceReader(new ByteArrayInputStream(trace.toByteArray()));
+    for (int call = 0; call < sExpected.size(); call++) {
+      final Object[] expected = sExpected.get(call);
+      final int opcode = (Integer) expected[0];
+      final int actual = reader.next();
+      check(actual == opcode, "call " + call + " reads back as " + (actual < 0 ? "the end" : GlTrace.getName(actual))
+          + ", not " + GlTrace.getName(opcode));
+      final String signature = GlTrace.getSignature(opcode);
+      check(signature.length() == expected.length - 1, "call " + call + " expects the wrong number of arguments");
+      for (int a = 0; a < signature.length(); a++)
+        checkArgument(reader, signature.charAt(a), a, expected[a + 1], call + " " + GlTrace.getName(opcode));
+    }
+    check(reader.next() == -1, "the trace holds more calls than were made");
+    System.out.println(String.format("%d calls, %d bytes, %d bytes of distinct data read back unchanged",
+        sExpected.size(), trace.size(), reader.getBlobBytes()));
+  }
+
+  private static void record(RecordingGl gl) {
+    final String extensions = gl.glGetString(GLES20.GL_EXTENSIONS);
+    expect(GlTrace.GET_STRING, GLES20.GL_EXTENSIONS, extensions);
+    final int[] values = new int[1];
+    gl.glGetIntegerv(GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, values, 0);
+    expect(GlTrace.GET_INTEGERV, GLES20.GL_MAX_VERTEX_UNIFORM_VECTORS, 128);
+
+    final String source = "void main() { gl_Position = vec4(0.0); } // \u00e9";
+    final int shader = gl.glCreateShader(GLES20.GL_VERTEX_SHADER);
+    expect(GlTrace.CREATE_SHADER, GLES20.GL_VERTEX_SHADER, shader);
+    gl.glShaderSource(shader, source);
+    expect(GlTrace.SHADER_SOURCE, shader, utf8(source));
+    gl.glCompileShader(shader);
+    expect(GlTrace.COMPILE_SHADER, shader);
+    final int program = gl.glCreateProgram();
+    expect(GlTrace.CREATE_PROGRAM, program);
+    gl.glAttachShader(program, shader);
+    expect(GlTrace.ATTACH_SHADER, program, shader);
+    gl.glBindAttribLocation(program, 0, "a_Position");
+    expect(GlTrace.BIND_ATTRIB_LOCATION, program, 0, "a_Position");
+    gl.glLinkProgram(program);
+    expect(GlTrace.LINK_PROGRAM, program);
+    final int mvp = gl.glGetUniformLocation(program, "u_MVPMatrix");
+    expect(GlTrace.GET_UNIFORM_LOCATION, program, "u_MVPMatrix", mvp);
+    final int missing = gl.glGetUniformLocation(program, "u_Missing");
+    check(missing == -1, "NoOpGl found a uniform that is not there");
+    expect(GlTrace.GET_UNIFORM_LOCATION, program, "u_Missing", -1);
+
+    final int[] buffers = new int[2];
+    gl.glGenBuffers(2, buffers, 0);
+    expect(GlTrace.GEN_BUFFERS, buffers.clone());
+    final float[] vertices = {0.0f, -0.0f, 1.5f, -1e-30f, Float.MAX_VALUE, Float.NaN};
+    final ByteBuffer vertexBytes = ByteBuffer.allocate(vertices.length * 4).order(ByteOrder.nativeOrder());
+    final FloatBuffer vertexBuffer = vertexBytes.asFloatBuffer();
+    vertexBuffer.put(vertices).position(0);
+    gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+    expect(GlTrace.BIND_BUFFER, GLES20.GL_ARRAY_BUFFER, buffers[0]);
+    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertices.length * 4, vertexBuffer, GLES20.GL_STATIC_DRAW);
+    expect(GlTrace.BUFFER_DATA, GLES20.GL_ARRAY_BUFFER, vertices.length * 4, vertexBytes.array(), GLES20.GL_STATIC_DRAW);
+    check(vertexBuffer.position() == 0, "recording moved the buffer's position");
+    final ByteBuffer indexBytes = ByteBuffer.allocate(6).order(ByteOrder.nativeOrder());
+    final ShortBuffer indexBuffer = indexBytes.asShortBuffer();
+    indexBuffer.put(new short[]{0, 1, (short) 65535}).position(0);
+    gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    expect(GlTrace.BIND_BUFFER, GLES20.GL_ELEMENT_ARRAY_BUFFER, buffers[1]);
+    gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 6, null, GLES20.GL_DYNAMIC_DRAW);
+    expect(GlTrace.BUFFER_DATA, GLES20.GL_ELEMENT_ARRAY_BUFFER, 6, null, GLES20.GL_DYNAMIC_DRAW);
+    gl.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, 6, indexBuffer);
+    expect(GlTrace.BUFFER_SUB_DATA, GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, 6, indexBytes.array());
+
+    final int[] textures = new int[1];
+    gl.glGenTextures(1, textures, 0);
+    expect(GlTrace.GEN_TEXTURES, textures.clone());
+    gl.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+    expect(GlTrace.BIND_TEXTURE, GLES20.GL_TEXTURE_2D, textures[0]);
+    // 3 by 2 RGB rows are padded from 9 bytes to 12
+    final byte[] pixels = new byte[24];
+    for (int i = 0; i < pixels.length; i++)
+      pixels[i] = (byte) (i * 37);
+    gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, 3, 2, 0, GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE,
+        ByteBuffer.wrap(pixels));
+    expect(GlTrace.TEX_IMAGE_2D_BUFFER, GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, 3, 2, 0, GLES20.GL_RGB,
+        GLES20.GL_UNSIGNED_BYTE, pixels);
+    gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+    expect(GlTrace.TEX_PARAMETERI, GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+
+    final float[] matrices = new float[40];
+    for (int i = 0; i < matrices.length; i++)
+      matrices[i] = i * 0.25f - 3.0f;
+    for (int frame = 0; frame < 2; frame++) {
+      gl.markFrame();
+      expect(GlTrace.FRAME);
+      gl.glViewport(0, 0, 800, 480);
+      expect(GlTrace.VIEWPORT, 0, 0, 800, 480);
+      gl.glClearColor(-0.0f, Float.NaN, Float.MIN_VALUE, 1.0f);
+      expect(GlTrace.CLEAR_COLOR, -0.0f, Float.NaN, Float.MIN_VALUE, 1.0f);
+      gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+      expect(GlTrace.CLEAR, GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+      gl.glEnable(GLES20.GL_CULL_FACE);
+      expect(GlTrace.ENABLE, GLES20.GL_CULL_FACE);
+      gl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+      expect(GlTrace.BLEND_FUNC, GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+      gl.glUseProgram(program);
+      expect(GlTrace.USE_PROGRAM, program);
+      gl.glActiveTexture(GLES20.GL_TEXTURE0);
+      expect(GlTrace.ACTIVE_TEXTURE, GLES20.GL_TEXTURE0);
+      gl.glUniform1i(-1, Integer.MIN_VALUE);
+      expect(GlTrace.UNIFORM1I, -1, Integer.MIN_VALUE);
+      gl.glUniform1f(3, -2.5f);
+      expect(GlTrace.UNIFORM1F, 3, -2.5f);
+      gl.glUniform2f(4, 0.5f, Float.NEGATIVE_INFINITY);
+      expect(GlTrace.UNIFORM2F, 4, 0.5f, Float.NEGATIVE_INFINITY);
+      gl.glUniform3f(5, 1.0f, 2.0f, 3.0f);
+      expect(GlTrace.UNIFORM3F, 5, 1.0f, 2.0f, 3.0f);
+      gl.glUniform4f(Integer.MAX_VALUE, 1.0f, 0.0f, -1.0f, 0.25f);
+      expect(GlTrace.UNIFORM4F, Integer.MAX_VALUE, 1.0f, 0.0f, -1.0f, 0.25f);
+      // the second matrix of two, from an offset; the same values both frames, so stored once
+      gl.glUniformMatrix4fv(mvp, 2, frame == 1, matrices, 8);
+      expect(GlTrace.UNIFORM_MATRIX4FV, mvp, 2, frame == 1, littleEndian(matrices, 8, 32));
+      gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[0]);
+      expect(GlTrace.BIND_BUFFER, GLES20.GL_ARRAY_BUFFER, buffers[0]);
+      gl.glEnableVertexAttribArray(0);
+      expect(GlTrace.ENABLE_VERTEX_ATTRIB_ARRAY, 0);
+      gl.glVertexAttribPointer(0, 3, GLES20.GL_FLOAT, frame == 0, 12, 0);
+      expect(GlTrace.VERTEX_ATTRIB_POINTER, 0, 3, GLES20.GL_FLOAT, frame == 0, 12, 0);
+      gl.glDisableVertexAttribArray(1);
+      expect(GlTrace.DISABLE_VERTEX_ATTRIB_ARRAY, 1);
+      gl.glVertexAttrib3f(1, 0.0f, 1.0f, 0.0f);
+      expect(GlTrace.VERTEX_ATTRIB3F, 1, 0.0f, 1.0f, 0.0f);
+      gl.glVertexAttrib4f(2, 1.0f, 1.0f, 1.0f, 1.0f);
+      expect(GlTrace.VERTEX_ATTRIB4F, 2, 1.0f, 1.0f, 1.0f, 1.0f);
+      gl.glDrawElements(GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 0);
+      expect(GlTrace.DRAW_ELEMENTS, GLES20.GL_TRIANGLES, 3, GLES20.GL_UNSIGNED_SHORT, 0);
+      gl.glDrawArrays(GLES20.GL_POINTS, 0, 1);
+      expect(GlTrace.DRAW_ARRAYS, GLES20.GL_POINTS, 0, 1);
+      // the vertex data again, which the trace refers back to
+      gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, vertices.length * 4, vertexBuffer);
+      expect(GlTrace.BUFFER_SUB_DATA, GLES20.GL_ARRAY_BUFFER, 0, vertices.length * 4, vertexBytes.array());
+      gl.glDisable(GLES20.GL_CULL_FACE);
+      expect(GlTrace.DISABLE, GLES20.GL_CULL_FACE);
+    }
+    gl.glDeleteBuffers(2, buffers, 0);
+    expect(GlTrace.DELETE_BUFFERS, buffers.clone());
+    gl.glDeleteProgram(program);
+    expect(GlTrace.DELETE_PROGRAM, program);
+    gl.glDeleteShader(shader);
+    expect(GlTrace.DELETE_SHADER, shader);
+  }
+
+  private static void expect(int opcode, Object... arguments) {
+    final Object[] call = new Object[arguments.length + 1];
+    call[0] = opcode;
+    System.arraycopy(arguments, 0, call, 1, arguments.length);
+    sExpected.add(call);
+  }
+
+  private static void checkArgument(GlTraceReader reader, char type, int argument, Object expected, String call) {
+    final String where = "call " + call + ", argument " + argument;
+    switch (type) {
+      case 'i':
+        check(reader.getInt(argument) == (Integer) expected, where + " reads back as " + reader.getInt(argument)
+            + ", not " + expected);
+        break;
+      case 'f':
+        check(Float.floatToRawIntBits(reader.getFloat(argument)) == Float.floatToRawIntBits((Float) expected),
+            where + " reads back as " + reader.getFloat(argument) + ", not " + expected);
+        break;
+      case 'z':
+        check(reader.getBoolean(argument) == (Boolean) expected, where + " reads back as " + reader.getBoolean(argument));
+        break;
+      case 's':
+        check(expected.equals(reader.getString(argument)), where + " reads back as \"" + reader.getString(argument)
+            + "\", not \"" + expected + "\"");
+        break;
+      case 'b':
+        check(Arrays.equals(reader.getBlob(argument), (byte[]) expected), where + " reads back with other data");
+        break;
+      case 'I':
+        check(Arrays.equals(reader.getIntArray(argument), (int[]) expected), where + " reads back as "
+            + Arrays.toString(reader.getIntArray(argument)) + ", not " + Arrays.toString((int[]) expected));
+        break;
+      default:
+        fail("no argument type " + type);
+    }
+  }
+
+  private static byte[] utf8(String value) {
+    try {
+      return value.getBytes("UTF-8");
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static byte[] littleEndian(float[] values, int offset, int count) {
+    final ByteBuffer bytes = ByteBuffer.allocate(count * 4).order(ByteOrder.LITTLE_ENDIAN);
+    for (int i = 0; i < count; i++)
+      bytes.putFloat(values[offset + i]);
+    return bytes.array();
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition)
+      fail(message);
+  }
+
+  private static void fail(String message) {
+    System.err.println("FAIL: " + message);
+    System.exit(1);
+  }
+}
@@ -0,0 +1,160 @@
+package com.erik.and.caleb.tarddroidball.trace;
+
+import com.erik.and.caleb.tarddroidball.gl.GlTrace;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * Decodes a {@link GlTrace} one call at a time. Blob records are consumed
+ * internally; the calls that reference them get the bytes from {@link #getBlob}.
+ */
+class GlTraceReader {
+
+  private static final int MAX_ARGUMENTS = 9;
+
+  private final InputStream mIn;
+  private final HashMap<Integer, byte[]> mBlobs = new HashMap<Integer, byte[]>();
+  // ints, booleans, blob ids and the raw bits of floats, by argument position
+  private final int[] mValues = new int[MAX_ARGUMENTS];
+  private final String[] mStrings = new String[MAX_ARGUMENTS];
+  private final int[][] mArrays = new int[MAX_ARGUMENTS][];
+  private long mBlobBytes;
+
+  /**
+   * @param in should be buffered
+   */
+  GlTraceReader(InputStream in) throws IOException {
+    mIn = in;
+    if (readIntLittleEndian() != GlTrace.MAGIC)
+      throw new IOException("Not a GL trace");
+    final int version = readIntLittleEndian();
+    if (version < 1 || version > GlTrace.VERSION)
+      throw new IOException("Unsupported GL trace version " + version);
+  }
+
+  /**
+   * Reads the next call and its arguments.
+   *
+   * @return its opcode, or -1 at the end of the trace
+   */
+  int next() throws IOException {
+    while (true) {
+      final int opcode = mIn.read();
+      if (opcode < 0)
+        return -1;
+      if (opcode >= GlTrace.OPCODE_COUNT)
+        throw new IOException("Corrupt GL trace: opcode " + opcode);
+      if (opcode == GlTrace.BLOB) {
+        final int id = readVarint();
+        final byte[] data = new byte[readVarint()];
+        readFully(data);
+        mBlobs.put(id, data);
+        mBlobBytes += data.length;
+        continue;
+      }
+      final String signature = GlTrace.getSignature(opcode);
+      for (int a = 0; a < signature.length(); a++) {
+        switch (signature.charAt(a)) {
+          case 'i':
+            final int zigzag = readVarint();
+            mValues[a] = (zigzag >>> 1) ^ -(zigzag & 1);
+            break;
+          case 'f':
+            mValues[a] = readIntLittleEndian();
+            break;
+          case 'z':
+            mValues[a] = readByte();
+            break;
+          case 'b':
+            mValues[a] = readVarint();
+            break;
+          case 's':
+            final byte[] bytes = new byte[readVarint()];
+            readFully(bytes);
+            mStrings[a] = new String(bytes, "UTF-8");
+            break;
+          case 'I':
+            final int[] values = new int[readVarint()];
+            for (int i = 0; i < values.length; i++) {
+              final int v = readVarint();
+              values[i] = (v >>> 1) ^ -(v & 1);
+            }
+            mArrays[a] = values;
+            break;
+          default:
+            throw new IllegalStateException("Bad signature for " + GlTrace.getName(opcode));
+        }
+      }
+      return opcode;
+    }
+  }
+
+  int getInt(int argument) {
+    return mValues[argument];
+  }
+
+  float getFloat(int argument) {
+    return Float.intBitsToFloat(mValues[argument]);
+  }
+
+  boolean getBoolean(int argument) {
+    return mValues[argument] != 0;
+  }
+
+  String getString(int argument) {
+    return mStrings[argument];
+  }
+
+  int[] getIntArray(int argument) {
+    return mArrays[argument];
+  }
+
+  /**
+   * @return the data a blob argument refers to, or null if the call passed none
+   */
+  byte[] getBlob(int argument) {
+    return mValues[argument] == 0 ? null : mBlobs.get(mValues[argument]);
+  }
+
+  /**
+   * @return bytes of distinct data read so far
+   */
+  long getBlobBytes() {
+    return mBlobBytes;
+  }
+
+  private int readByte() throws IOException {
+    final int b = mIn.read();
+    if (b < 0)
+      throw new EOFException("GL trace ends mid-call");
+    return b;
+  }
+
+  private int readVarint() throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      final int b = readByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Corrupt GL trace: varint too long");
+  }
+
+  private int readIntLittleEndian() throws IOException {
+    return readByte() | readByte() << 8 | readByte() << 16 | readByte() << 24;
+  }
+
+  private void readFully(byte[] data) throws IOException {
+    int read = 0;
+    while (read < data.length) {
+      final int n = mIn.read(data, read, data.length - read);
+      if (n < 0)
+        throw new EOFException("GL trace ends mid-blob");
+      read += n;
+    }
+  }
+}